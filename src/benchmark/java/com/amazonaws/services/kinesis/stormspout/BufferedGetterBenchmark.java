@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * BufferedGetter.getNext(), which nextTuple calls for every record (or batch). The underlying getter returns the same
+ * pre-built records on every fetch, so only buffering is measured (a Mockito mock would dominate the measurement).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BufferedGetterBenchmark {
+    private static final int MAX_RECORDS_PER_CALL = 10000;
+
+    /** Records requested per getNext() call (1 when a tuple is emitted per record). */
+    @Param({ "1", "100" })
+    private int recordsPerCall;
+
+    private BufferedGetter getter;
+
+    /**
+     * Creates a getter buffering up to MAX_RECORDS_PER_CALL records.
+     */
+    @Setup
+    public void setUp() {
+        final SyntheticShardGetter source = new SyntheticShardGetter("shardId-000000000000", MAX_RECORDS_PER_CALL, 100);
+        final Records fetched = source.getNext(MAX_RECORDS_PER_CALL);
+        getter = new BufferedGetter(new FixedGetter(fetched), MAX_RECORDS_PER_CALL, 0L);
+    }
+
+    /**
+     * @return the next records.
+     */
+    @Benchmark
+    public ImmutableList<Record> getNext() {
+        return getter.getNext(recordsPerCall).getRecords();
+    }
+
+    /**
+     * Returns the same records on every call.
+     */
+    private static class FixedGetter implements IShardGetter {
+        private final Records records;
+
+        FixedGetter(final Records records) {
+            this.records = records;
+        }
+
+        @Override
+        public Records getNext(final int maxNumberOfRecords) {
+            return records;
+        }
+
+        @Override
+        public void seek(final ShardPosition position) {
+        }
+
+        @Override
+        public String getAssociatedShard() {
+            return "shardId-000000000000";
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import backtype.storm.Config;
+import backtype.storm.spout.ISpoutOutputCollector;
+import backtype.storm.spout.SpoutOutputCollector;
+
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer;
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer.Phase;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.netflix.curator.test.TestingServer;
+
+/**
+ * Checkpoint commits to an embedded ZooKeeper server: a spout task reads all the (synthetic) shards, every emitted
+ * tuple is acked right away (so every shard read since the last commit has a checkpoint to commit), and nextTuple()
+ * commits every checkpointIntervalMillis. Besides the tuples per second, reports the shard checkpoints committed per
+ * second ("commits") and the milliseconds per second nextTuple() spent committing ("stallMillis", 1000 meaning the
+ * spout did nothing else).
+ * 
+ * Each shard commit includes a 100-200 ms back-off, so a commit of 1000 shards stalls the spout for minutes: the
+ * iterations are long, and runs with many shards take a while.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 30)
+@Measurement(iterations = 3, time = 60)
+public class CheckpointCommitBenchmark {
+    private static final String COMPONENT_ID = "spout";
+
+    /** Number of shards read by the task. */
+    @Param({ "10", "100", "1000" })
+    private int numShards;
+
+    /** Minimum time between two commits. */
+    @Param({ "100", "1000", "10000" })
+    private int checkpointIntervalMillis;
+
+    private TestingServer zookeeper;
+    private KinesisSpout spout;
+    private SpoutMetrics metrics;
+    private PhaseTimer phaseTimer;
+    private Object lastMessageId;
+
+    /**
+     * Shard checkpoints committed, and time spent committing, during an iteration (reported per second).
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Commits {
+        /** Shard checkpoints committed. */
+        public long commits;
+        /** Milliseconds nextTuple() spent committing. */
+        public long stallMillis;
+
+        /**
+         * Resets the counters at the start of each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            commits = 0L;
+            stallMillis = 0L;
+        }
+    }
+
+    /**
+     * Starts ZooKeeper, then opens and activates the spout (as the single task of its component).
+     * 
+     * @throws Exception if ZooKeeper couldn't be started.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        zookeeper = new TestingServer();
+        // Commits are timed whenever phase timing is enabled: sample the other phases as rarely as possible.
+        final KinesisSpoutConfig config =
+                new KinesisSpoutConfig("benchmark", zookeeper.getConnectString())
+                        .withCheckpointIntervalMillis(checkpointIntervalMillis)
+                        .withPhaseTimingSampleRate(Integer.MAX_VALUE);
+        final SyntheticShards shards = new SyntheticShards(numShards, config.getMaxRecordsPerCall(), 100);
+        spout = new KinesisSpout(config, shards, shards);
+
+        final Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_NAME, "benchmark-" + System.nanoTime());
+        final SpoutTaskContext context = new SpoutTaskContext(COMPONENT_ID);
+        spout.open(conf, context.newTopologyContext(), new SpoutOutputCollector(new ISpoutOutputCollector() {
+            @Override
+            public List<Integer> emit(final String streamId, final List<Object> tuple, final Object messageId) {
+                lastMessageId = messageId;
+                return null;
+            }
+
+            @Override
+            public void emitDirect(final int taskId, final String streamId, final List<Object> tuple,
+                    final Object messageId) {
+                lastMessageId = messageId;
+            }
+
+            @Override
+            public void reportError(final Throwable error) {
+            }
+        }));
+        metrics = context.getMetrics();
+        phaseTimer = metrics.getPhaseTimer();
+        spout.activate();
+    }
+
+    /**
+     * Deactivates the spout and stops ZooKeeper.
+     * 
+     * @throws Exception if ZooKeeper couldn't be stopped.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        spout.deactivate();
+        spout.close();
+        zookeeper.close();
+    }
+
+    /**
+     * Emits (and acks) the next tuple, committing checkpoints if the checkpoint interval has elapsed.
+     * 
+     * @param commits Counters of the iteration.
+     */
+    @Benchmark
+    public void nextTuple(final Commits commits) {
+        final long commitRounds = phaseTimer.getCount(Phase.COMMIT);
+        final long commitNanos = phaseTimer.getNanos(Phase.COMMIT);
+        lastMessageId = null;
+        spout.nextTuple();
+        if (lastMessageId != null) {
+            spout.ack(lastMessageId);
+        }
+        if (phaseTimer.getCount(Phase.COMMIT) != commitRounds) {
+            commits.stallMillis += TimeUnit.NANOSECONDS.toMillis(phaseTimer.getNanos(Phase.COMMIT) - commitNanos);
+            commits.commits += drainCheckpointCommits();
+        }
+    }
+
+    // The spout's metrics aren't collected by Storm here: reset them after each commit.
+    private long drainCheckpointCommits() {
+        long total = 0L;
+        for (int i = 0; i < numShards; i++) {
+            final String shardId = String.format("shardId-%012d", i);
+            total += metrics.forShard(shardId).get(Counter.CHECKPOINT_COMMITS);
+        }
+        metrics.getValueAndReset();
+        return total;
+    }
+}
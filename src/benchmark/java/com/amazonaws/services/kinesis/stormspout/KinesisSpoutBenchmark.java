@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import backtype.storm.Config;
+import backtype.storm.spout.ISpoutOutputCollector;
+import backtype.storm.spout.SpoutOutputCollector;
+
+import com.netflix.curator.test.TestingServer;
+
+/**
+ * KinesisSpout.nextTuple() end to end (fetch, deserialize, emit, track, periodic commits), reading synthetic shards
+ * and checkpointing to an embedded ZooKeeper server. Every emitted tuple is acked right away, so the number of
+ * in-flight records stays constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class KinesisSpoutBenchmark {
+    private static final String COMPONENT_ID = "spout";
+
+    /** Number of shards read by the task. */
+    @Param({ "1", "16" })
+    private int numShards;
+
+    /** Max records per tuple (1 emits a tuple per record). */
+    @Param({ "1", "100" })
+    private int maxRecordsPerTuple;
+
+    private TestingServer zookeeper;
+    private KinesisSpout spout;
+    private Object lastMessageId;
+
+    /**
+     * Starts ZooKeeper, then opens and activates the spout (as the single task of its component).
+     * 
+     * @throws Exception if ZooKeeper couldn't be started.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        zookeeper = new TestingServer();
+        final KinesisSpoutConfig config =
+                new KinesisSpoutConfig("benchmark", zookeeper.getConnectString())
+                        .withMaxRecordsPerTuple(maxRecordsPerTuple);
+        final SyntheticShards shards = new SyntheticShards(numShards, config.getMaxRecordsPerCall(), 100);
+        spout = new KinesisSpout(config, shards, shards);
+
+        final Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_NAME, "benchmark-" + System.nanoTime());
+        spout.open(conf, new SpoutTaskContext(COMPONENT_ID).newTopologyContext(), new SpoutOutputCollector(new ISpoutOutputCollector() {
+            @Override
+            public List<Integer> emit(final String streamId, final List<Object> tuple, final Object messageId) {
+                lastMessageId = messageId;
+                return null;
+            }
+
+            @Override
+            public void emitDirect(final int taskId, final String streamId, final List<Object> tuple,
+                    final Object messageId) {
+                lastMessageId = messageId;
+            }
+
+            @Override
+            public void reportError(final Throwable error) {
+            }
+        }));
+        spout.activate();
+    }
+
+    /**
+     * Deactivates the spout and stops ZooKeeper.
+     * 
+     * @throws Exception if ZooKeeper couldn't be stopped.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        spout.deactivate();
+        spout.close();
+        zookeeper.close();
+    }
+
+    /**
+     * Emits (and acks) the next tuple.
+     */
+    @Benchmark
+    public void nextTuple() {
+        lastMessageId = null;
+        spout.nextTuple();
+        if (lastMessageId != null) {
+            spout.ack(lastMessageId);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Message IDs are built for every emitted tuple and parsed for every ack and fail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MessageIdUtilBenchmark {
+    private String shardId;
+    private String sequenceNumber;
+    private String messageId;
+
+    /**
+     * Builds a message ID with realistic shard ID and sequence number lengths.
+     */
+    @Setup
+    public void setUp() {
+        shardId = "shardId-000000000042";
+        sequenceNumber = SyntheticShardGetter.sequenceNumber(123456789L);
+        messageId = (String) MessageIdUtil.constructMessageId(shardId, sequenceNumber);
+    }
+
+    /**
+     * @return message ID of a tuple (as built in nextTuple).
+     */
+    @Benchmark
+    public Object construct() {
+        return MessageIdUtil.constructMessageId(shardId, sequenceNumber);
+    }
+
+    /**
+     * Parses a message ID the way ack() and fail() do.
+     * 
+     * @param blackhole Consumes the shard ID and sequence number.
+     */
+    @Benchmark
+    public void parse(final Blackhole blackhole) {
+        blackhole.consume(MessageIdUtil.sequenceNumberOfMessageId(messageId));
+        blackhole.consume(MessageIdUtil.shardIdOfMessageId(messageId));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Arrays;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import backtype.storm.task.TopologyContext;
+
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+
+/**
+ * TopologyContext of a spout running as the single task of its component, keeping the metrics registered by the
+ * spout so that benchmarks can read them.
+ */
+class SpoutTaskContext {
+    private final String componentId;
+    private SpoutMetrics metrics;
+
+    /**
+     * @param componentId ID of the spout component.
+     */
+    SpoutTaskContext(final String componentId) {
+        this.componentId = componentId;
+    }
+
+    /**
+     * Stub-only mocks don't record invocations (toString() asks the context for the task index in nextTuple).
+     * 
+     * @return a new context to open the spout with.
+     */
+    TopologyContext newTopologyContext() {
+        final TopologyContext context = mock(TopologyContext.class, withSettings().stubOnly());
+        when(context.getThisTaskIndex()).thenReturn(0);
+        when(context.getThisComponentId()).thenReturn(componentId);
+        when(context.getComponentTasks(componentId)).thenReturn(Arrays.asList(0));
+        when(context.registerMetric(anyString(), any(SpoutMetrics.class), anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                metrics = (SpoutMetrics) invocation.getArguments()[1];
+                return metrics;
+            }
+        });
+        return context;
+    }
+
+    /**
+     * @return metrics registered by the spout (null until it is opened).
+     */
+    SpoutMetrics getMetrics() {
+        return metrics;
+    }
+}
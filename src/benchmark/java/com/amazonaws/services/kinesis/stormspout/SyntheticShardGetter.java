@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Shard getter returning an endless sequence of synthetic records with increasing sequence numbers, without any
+ * network calls. Used by benchmarks to measure the spout itself rather than Kinesis.
+ */
+class SyntheticShardGetter implements IShardGetter {
+    // Kinesis sequence numbers are large decimal numbers, compared as BigIntegers.
+    private static final BigInteger FIRST_SEQUENCE_NUMBER = new BigInteger("49540000000000000000000000000000000000");
+
+    private final String shardId;
+    private final int maxRecordsPerCall;
+    private final ByteBuffer payload;
+    private long next;
+
+    /**
+     * @param shardId Shard ID.
+     * @param maxRecordsPerCall Max number of records returned by a getNext() call.
+     * @param payloadBytes Size of the data of each record.
+     */
+    SyntheticShardGetter(final String shardId, final int maxRecordsPerCall, final int payloadBytes) {
+        this.shardId = shardId;
+        this.maxRecordsPerCall = maxRecordsPerCall;
+        this.payload = ByteBuffer.allocate(payloadBytes).asReadOnlyBuffer();
+    }
+
+    @Override
+    public Records getNext(final int maxNumberOfRecords) {
+        final int n = Math.min(maxNumberOfRecords, maxRecordsPerCall);
+        final ImmutableList.Builder<Record> records = new ImmutableList.Builder<>();
+        for (int i = 0; i < n; i++) {
+            records.add(new Record().withPartitionKey(shardId)
+                    .withSequenceNumber(sequenceNumber(next++))
+                    .withData(payload.duplicate()));
+        }
+        return new Records(records.build(), false);
+    }
+
+    @Override
+    public void seek(final ShardPosition position) {
+        switch (position.getPosition()) {
+            case AT_SEQUENCE_NUMBER:
+                next = offsetOf(position.getSequenceNum());
+                break;
+            case AFTER_SEQUENCE_NUMBER:
+                next = offsetOf(position.getSequenceNum()) + 1;
+                break;
+            case TRIM_HORIZON:
+                next = 0L;
+                break;
+            default:
+                // LATEST: keep going from the current position.
+                break;
+        }
+    }
+
+    @Override
+    public String getAssociatedShard() {
+        return shardId;
+    }
+
+    /**
+     * @param offset Offset of a record in the shard.
+     * @return the sequence number of the record.
+     */
+    static String sequenceNumber(final long offset) {
+        return FIRST_SEQUENCE_NUMBER.add(BigInteger.valueOf(offset)).toString();
+    }
+
+    private static long offsetOf(final String sequenceNumber) {
+        return new BigInteger(ExtendedSequenceNumber.parse(sequenceNumber).getSequenceNumber())
+                .subtract(FIRST_SEQUENCE_NUMBER).longValue();
+    }
+}
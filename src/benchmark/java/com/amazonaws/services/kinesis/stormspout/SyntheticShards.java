@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Lists a fixed number of open shards, and builds buffered SyntheticShardGetters for them (see SyntheticShardGetter).
+ */
+class SyntheticShards implements IShardListGetter, IShardGetterBuilder {
+    private static final long serialVersionUID = 1L;
+
+    private final int numShards;
+    private final int maxRecordsPerCall;
+    private final int payloadBytes;
+
+    /**
+     * @param numShards Number of shards in the stream.
+     * @param maxRecordsPerCall Max number of records fetched at once (size of the getter buffers).
+     * @param payloadBytes Size of the data of each record.
+     */
+    SyntheticShards(final int numShards, final int maxRecordsPerCall, final int payloadBytes) {
+        this.numShards = numShards;
+        this.maxRecordsPerCall = maxRecordsPerCall;
+        this.payloadBytes = payloadBytes;
+    }
+
+    @Override
+    public ImmutableSortedMap<String, ShardInfo> getShardList() {
+        final ImmutableSortedMap.Builder<String, ShardInfo> shards = ImmutableSortedMap.naturalOrder();
+        for (int i = 0; i < numShards; i++) {
+            final String shardId = String.format("shardId-%012d", i);
+            shards.put(shardId, new ShardInfo(shardId));
+        }
+        return shards.build();
+    }
+
+    @Override
+    public ImmutableList<IShardGetter> buildGetters(final ImmutableList<String> shards) {
+        final ImmutableList.Builder<IShardGetter> getters = new ImmutableList.Builder<>();
+        for (String shardId : shards) {
+            getters.add(new BufferedGetter(new SyntheticShardGetter(shardId, maxRecordsPerCall, payloadBytes),
+                    maxRecordsPerCall, 0L));
+        }
+        return getters.build();
+    }
+}
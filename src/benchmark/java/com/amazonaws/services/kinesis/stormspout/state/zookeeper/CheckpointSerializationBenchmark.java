@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.kinesis.stormspout.ShardLoad;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serialization of the shard state committed to ZooKeeper at every checkpoint (and read on rebalance). The
+ * "newMapper" benchmarks create an ObjectMapper per call like ZookeeperShardState does, the "sharedMapper" ones show
+ * the cost without it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CheckpointSerializationBenchmark {
+    private String checkpoint;
+    private ShardLoad load;
+    private ObjectMapper sharedMapper;
+    private byte[] serialized;
+
+    /**
+     * Builds a shard state with a realistic sequence number.
+     * 
+     * @throws IOException if the state can't be serialized.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        checkpoint = "49540000000000000000000000000000000000000000000123456789";
+        load = new ShardLoad(1024.0 * 1024.0, 1000.0);
+        sharedMapper = new ObjectMapper();
+        serialized = sharedMapper.writeValueAsBytes(new ShardStateV0(checkpoint, new ShardLoadV0(load)));
+    }
+
+    /**
+     * @return the serialized shard state.
+     * @throws IOException if the state can't be serialized.
+     */
+    @Benchmark
+    public byte[] writeNewMapper() throws IOException {
+        return new ObjectMapper().writeValueAsBytes(new ShardStateV0(checkpoint, new ShardLoadV0(load)));
+    }
+
+    /**
+     * @return the serialized shard state.
+     * @throws IOException if the state can't be serialized.
+     */
+    @Benchmark
+    public byte[] writeSharedMapper() throws IOException {
+        return sharedMapper.writeValueAsBytes(new ShardStateV0(checkpoint, new ShardLoadV0(load)));
+    }
+
+    /**
+     * @return the checkpoint of the deserialized shard state.
+     * @throws IOException if the state can't be deserialized.
+     */
+    @Benchmark
+    public String readNewMapper() throws IOException {
+        return new ObjectMapper().readValue(serialized, ShardStateV0.class).getCheckpoint();
+    }
+
+    /**
+     * @return the checkpoint of the deserialized shard state.
+     * @throws IOException if the state can't be deserialized.
+     */
+    @Benchmark
+    public String readSharedMapper() throws IOException {
+        return sharedMapper.readValue(serialized, ShardStateV0.class).getCheckpoint();
+    }
+}
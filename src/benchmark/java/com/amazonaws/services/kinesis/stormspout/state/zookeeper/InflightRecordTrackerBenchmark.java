@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * In-flight record tracking (emit, ack, fail and retry of a window of records), for both tracker implementations.
+ * Acks arrive in emit order (a single bolt) or shuffled (several bolt tasks with different latencies). Scores are per
+ * record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InflightRecordTrackerBenchmark {
+    private static final int WINDOW = 1000;
+    private static final int FAIL_EVERY = 10;
+    private static final int RETRY_LIMIT = 3;
+    private static final BigInteger FIRST_SEQUENCE_NUMBER = new BigInteger("49540000000000000000000000000000000000");
+
+    /** Tracker implementation: "list" (InflightRecordTracker) or "range" (RangeInflightRecordTracker). */
+    @Param({ "list", "range" })
+    private String tracker;
+
+    /** Order of the acks: "inOrder" or "shuffled". */
+    @Param({ "inOrder", "shuffled" })
+    private String ackOrder;
+
+    private Record[] records;
+    private String[] acks;
+
+    /**
+     * Builds a window of records, and the order they are acked in.
+     */
+    @Setup
+    public void setUp() {
+        records = new Record[WINDOW];
+        final List<String> sequenceNumbers = new ArrayList<>(WINDOW);
+        for (int i = 0; i < WINDOW; i++) {
+            final String sequenceNumber = FIRST_SEQUENCE_NUMBER.add(BigInteger.valueOf(i)).toString();
+            records[i] = new Record().withPartitionKey("key")
+                    .withSequenceNumber(sequenceNumber)
+                    .withData(ByteBuffer.allocate(0));
+            sequenceNumbers.add(sequenceNumber);
+        }
+        if ("shuffled".equals(ackOrder)) {
+            Collections.shuffle(sequenceNumbers, new Random(42L));
+        }
+        acks = sequenceNumbers.toArray(new String[WINDOW]);
+    }
+
+    /**
+     * Emits the window, then acks every record.
+     * 
+     * @return the checkpoint.
+     */
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public String emitAck() {
+        final IInflightRecordTracker t = newTracker();
+        for (Record record : records) {
+            t.onEmit(record, false);
+        }
+        for (String sequenceNumber : acks) {
+            t.onAck(sequenceNumber);
+        }
+        return t.getCheckpointSequenceNumber();
+    }
+
+    /**
+     * Emits the window, fails one record in FAIL_EVERY (which are retried once), then acks every record.
+     * 
+     * @return the checkpoint.
+     */
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public String emitFailRetryAck() {
+        final IInflightRecordTracker t = newTracker();
+        for (Record record : records) {
+            t.onEmit(record, false);
+        }
+        for (int i = 0; i < WINDOW; i += FAIL_EVERY) {
+            t.onFail(acks[i]);
+        }
+        while (t.shouldRetry()) {
+            t.onEmit(t.recordToRetry(), true);
+        }
+        for (String sequenceNumber : acks) {
+            t.onAck(sequenceNumber);
+        }
+        return t.getCheckpointSequenceNumber();
+    }
+
+    private IInflightRecordTracker newTracker() {
+        if ("range".equals(tracker)) {
+            return new RangeInflightRecordTracker("shardId-000000000000", "", RETRY_LIMIT);
+        }
+        return new InflightRecordTracker("shardId-000000000000", "", RETRY_LIMIT);
+    }
+}
@@ -15,6 +15,8 @@
 
 package com.amazonaws.services.kinesis.stormspout;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -22,21 +24,31 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 
 import com.amazonaws.services.kinesis.model.Record;
 import com.amazonaws.services.kinesis.stormspout.exceptions.InvalidSeekPositionException;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Gauge;
 import com.google.common.collect.ImmutableList;
 
 /**
  * Allows users to do efficient getter.getNext(1) calls in exchange for maybe pulling
  * more data than necessary from Kinesis.
+ * 
+ * The buffer holds the records of one fetch. With a byte budget, the number of records fetched at once is adapted to
+ * the size of the records and to how fast they are consumed (see FetchSizer), so the buffer stays within the budget.
  */
-class BufferedGetter implements IShardGetter {
+class BufferedGetter implements IShardGetter, Closeable {
     private final IShardGetter getter;
-    private final int maxBufferSize;
     private final long emptyRecordListBackoffTime;
     private long nextRebufferTime = 0L;
     private final TimeProvider timeProvider;
+    private final ShardMetrics metrics;
+    private final FetchSizer sizer;
 
     private Records buffer;
     private Iterator<Record> it;
+    // Number of records left in buffer.
+    private int buffered;
+    // Time buffer was fetched.
+    private long bufferMillis;
 
     /**
      * Creates a (shard) getter that buffers records.
@@ -46,9 +58,9 @@ class BufferedGetter implements IShardGetter {
      * @param emptyRecordListBackoffMillis Backoff time between GetRecords calls if previous call fetched no records.
      */
     public BufferedGetter(final IShardGetter underlyingGetter, final int maxBufferSize, final long emptyRecordListBackoffMillis) {
-        this(underlyingGetter, maxBufferSize, emptyRecordListBackoffMillis, new TimeProvider());
+        this(underlyingGetter, maxBufferSize, 0L, emptyRecordListBackoffMillis, new TimeProvider(), new ShardMetrics());
     }
-    
+
     /**
      * Used for unit testing.
      * 
@@ -61,10 +73,30 @@ class BufferedGetter implements IShardGetter {
             final int maxBufferSize,
             final long emptyRecordListBackoffMillis,
             final TimeProvider timeProvider) {
+        this(underlyingGetter, maxBufferSize, 0L, emptyRecordListBackoffMillis, timeProvider, new ShardMetrics());
+    }
+
+    /**
+     * Creates a (shard) getter that buffers records.
+     * 
+     * @param underlyingGetter Unbuffered shard getter
+     * @param maxBufferSize Max number of records to fetch from the underlying getter
+     * @param maxBufferBytes Byte budget of the buffer (0 to only bound it by maxBufferSize).
+     * @param emptyRecordListBackoffMillis Backoff time between GetRecords calls if previous call fetched no records.
+     * @param timeProvider Useful for testing timing based behavior (e.g. backoff)
+     * @param metrics Metrics of the shard (number of buffered records, fetch limit).
+     */
+    BufferedGetter(final IShardGetter underlyingGetter,
+            final int maxBufferSize,
+            final long maxBufferBytes,
+            final long emptyRecordListBackoffMillis,
+            final TimeProvider timeProvider,
+            final ShardMetrics metrics) {
         this.getter = underlyingGetter;
-        this.maxBufferSize = maxBufferSize;
         this.emptyRecordListBackoffTime = emptyRecordListBackoffMillis;
         this.timeProvider = timeProvider;
+        this.metrics = metrics;
+        this.sizer = new FetchSizer(maxBufferSize, maxBufferBytes);
     }
 
     @Override
@@ -82,6 +114,7 @@ class BufferedGetter implements IShardGetter {
             if (it.hasNext()) {
                 recs.add(it.next());
                 recsSize++;
+                buffered--;
             } else if (!it.hasNext() && !buffer.isEndOfShard()) {
                 rebuffer();
                 // No more data in shard.
@@ -94,7 +127,9 @@ class BufferedGetter implements IShardGetter {
             }
         }
 
-        return new Records(recs.build(), false);
+        metrics.set(Gauge.BUFFERED_RECORDS, buffered);
+        // The records left from a fetch at the tip were read at the tip.
+        return new Records(recs.build(), false, buffer.isAtTip());
     }
 
     @Override
@@ -102,6 +137,7 @@ class BufferedGetter implements IShardGetter {
         getter.seek(position);
         buffer = null;
         it = null;
+        buffered = 0;
     }
 
     @Override
@@ -109,6 +145,16 @@ class BufferedGetter implements IShardGetter {
         return getter.getAssociatedShard();
     }
 
+    /**
+     * Closes the underlying getter.
+     */
+    @Override
+    public void close() throws IOException {
+        if (getter instanceof Closeable) {
+            ((Closeable) getter).close();
+        }
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("getter", getter.toString())
@@ -124,15 +170,23 @@ class BufferedGetter implements IShardGetter {
     // Post : buffer != null && it != null
     private void rebuffer() {
         if ((buffer == null) || (it == null) || (timeProvider.getCurrentTimeMillis() >= nextRebufferTime)) {
-            buffer = getter.getNext(maxBufferSize);
+            final long now = timeProvider.getCurrentTimeMillis();
+            if (buffer != null && it != null && !it.hasNext()) {
+                sizer.onDrain(buffer.getFetchedRecords(), now - bufferMillis);
+            }
+            buffer = getter.getNext(sizer.getLimit());
+            bufferMillis = now;
             it = buffer.getRecords().iterator();
+            buffered = buffer.getRecords().size();
+            sizer.onFetch(buffer.getFetchedRecords(), buffer.getFetchedBytes());
+            metrics.set(Gauge.FETCH_LIMIT, sizer.getLimit());
             // Backoff if we get an empty record list
             if (buffer.isEmpty()) {
                 nextRebufferTime = timeProvider.getCurrentTimeMillis() + emptyRecordListBackoffTime;
             }
         }
     }
-    
+
     /** 
      * Time provider - helpful for unit tests of BufferedGetter.
      */
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer for heap ByteBuffers (e.g. the read-only payload views emitted by DefaultKinesisPayloadScheme).
+ * Only the remaining bytes (from position to limit) are written. Read-only buffers are read back as read-only.
+ */
+public class ByteBufferSerializer extends Serializer<ByteBuffer> {
+    private static final Class<?> READ_ONLY_HEAP_BUFFER_CLASS = ByteBuffer.allocate(0).asReadOnlyBuffer().getClass();
+
+    /**
+     * Constructor.
+     */
+    public ByteBufferSerializer() {
+        setAcceptsNull(false);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, ByteBuffer buffer) {
+        writeBytes(output, buffer);
+    }
+
+    @Override
+    public ByteBuffer read(Kryo kryo, Input input, Class<ByteBuffer> type) {
+        final ByteBuffer buffer = readBytes(input);
+        return (type == READ_ONLY_HEAP_BUFFER_CLASS) ? buffer.asReadOnlyBuffer() : buffer;
+    }
+
+    /**
+     * Writes the length of the buffer (remaining bytes), followed by its content. The position of buffer is not
+     * modified.
+     * 
+     * @param output Kryo output.
+     * @param buffer Buffer to write.
+     */
+    static void writeBytes(final Output output, final ByteBuffer buffer) {
+        output.writeInt(buffer.remaining(), true);
+        if (buffer.hasArray()) {
+            output.writeBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            output.writeBytes(SerializationHelper.copyData(buffer));
+        }
+    }
+
+    /**
+     * @param input Kryo input.
+     * @return a new heap buffer with the content written by writeBytes().
+     */
+    static ByteBuffer readBytes(final Input input) {
+        final int length = input.readInt(true);
+        return ByteBuffer.wrap(input.readBytes(length));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.exceptions.InvalidSeekPositionException;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Expands the KPL aggregated records fetched by the underlying getter into user records (see KplDeaggregator).
+ * 
+ * Seeking to a position inside an aggregated record (e.g. after "sequenceNumber.subSequenceNumber") reads the
+ * aggregated record again and skips the user records that precede the position. A single call to getNext() can
+ * return more records than requested (all the user records of the fetched Kinesis records).
+ */
+class DeaggregatingGetter implements IShardGetter, Closeable {
+    private final IShardGetter getter;
+
+    // Sequence number of the aggregated record we seeked into, and first sub-sequence number to return from it.
+    private String skipSequenceNumber;
+    private long firstSubSequenceNumber;
+
+    /**
+     * @param underlyingGetter Getter returning Kinesis records (possibly aggregated).
+     */
+    DeaggregatingGetter(final IShardGetter underlyingGetter) {
+        this.getter = underlyingGetter;
+    }
+
+    @Override
+    public Records getNext(int maxNumberOfRecords) {
+        final Records records = getter.getNext(maxNumberOfRecords);
+        if (records.isEmpty()) {
+            return records;
+        }
+
+        final ImmutableList<Record> userRecords = KplDeaggregator.deaggregate(records.getRecords());
+        if (skipSequenceNumber == null) {
+            return new Records(userRecords, records.isEndOfShard(), records.isAtTip(), records.getFetchedRecords(),
+                    records.getFetchedBytes());
+        }
+
+        final ImmutableList.Builder<Record> builder = new ImmutableList.Builder<>();
+        for (Record rec : userRecords) {
+            if (skipSequenceNumber != null) {
+                if (rec.getSequenceNumber().equals(skipSequenceNumber) && (rec instanceof UserRecord)
+                        && ((UserRecord) rec).getSubSequenceNumber() < firstSubSequenceNumber) {
+                    continue;
+                }
+                skipSequenceNumber = null;
+            }
+            builder.add(rec);
+        }
+        return new Records(builder.build(), records.isEndOfShard(), records.isAtTip(), records.getFetchedRecords(),
+                records.getFetchedBytes());
+    }
+
+    @Override
+    public void seek(ShardPosition position) throws InvalidSeekPositionException {
+        skipSequenceNumber = null;
+        final String sequenceNumber = position.getSequenceNum();
+        if (sequenceNumber != null) {
+            final ExtendedSequenceNumber extended = ExtendedSequenceNumber.parse(sequenceNumber);
+            if (extended.hasSubSequenceNumber()) {
+                getter.seek(ShardPosition.atSequenceNumber(extended.getSequenceNumber()));
+                skipSequenceNumber = extended.getSequenceNumber();
+                firstSubSequenceNumber = extended.getSubSequenceNumber();
+                if (position.getPosition() == ShardPosition.Position.AFTER_SEQUENCE_NUMBER) {
+                    firstSubSequenceNumber++;
+                }
+                return;
+            }
+        }
+        getter.seek(position);
+    }
+
+    @Override
+    public String getAssociatedShard() {
+        return getter.getAssociatedShard();
+    }
+
+    /**
+     * Closes the underlying getter.
+     */
+    @Override
+    public void close() throws IOException {
+        if (getter instanceof Closeable) {
+            ((Closeable) getter).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("getter", getter.toString())
+                .toString();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import backtype.storm.tuple.Fields;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Default batch scheme. It emits a tuple of (shardId, records), where records is a list of the Kinesis records.
+ */
+public class DefaultKinesisBatchScheme implements IKinesisBatchScheme {
+    private static final long serialVersionUID = 2846170943626113379L;
+    /**
+     * Name of the (shard ID) value in the tuple.
+     */
+    public static final String FIELD_SHARD_ID = "shardId";
+    /**
+     * Name of the (list of Kinesis records) value in the tuple.
+     */
+    public static final String FIELD_RECORDS = "records";
+
+    /**
+     * Constructor.
+     */
+    public DefaultKinesisBatchScheme() {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.amazonaws.services.kinesis.stormspout.IKinesisBatchScheme#deserialize(java.lang.String,
+     * java.util.List)
+     */
+    @Override
+    public List<Object> deserialize(String shardId, List<Record> records) {
+        // ArrayList rather than the (immutable) list we are given, so it can be serialized by any Storm serializer.
+        return Arrays.<Object> asList(shardId, new ArrayList<>(records));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.amazonaws.services.kinesis.stormspout.IKinesisBatchScheme#getOutputFields()
+     */
+    @Override
+    public Fields getOutputFields() {
+        return new Fields(FIELD_SHARD_ID, FIELD_RECORDS);
+    }
+}
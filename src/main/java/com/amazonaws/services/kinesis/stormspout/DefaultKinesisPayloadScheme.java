@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import backtype.storm.tuple.Fields;
+
+/**
+ * Default payload scheme. It emits a tuple of (partitionKey, sequenceNumber, payload), where payload is the read-only
+ * ByteBuffer view of the record data. When the tuple is consumed in the same worker, the bolt reads the record data
+ * directly (nothing is copied). When it is sent to another worker, the view is serialized (only the remaining bytes).
+ */
+public class DefaultKinesisPayloadScheme implements IKinesisPayloadScheme {
+    private static final long serialVersionUID = -2391870618208454167L;
+    /**
+     * Name of the (partition key) value in the tuple.
+     */
+    public static final String FIELD_PARTITION_KEY = "partitionKey";
+    /**
+     * Name of the (sequence number) value in the tuple.
+     */
+    public static final String FIELD_SEQUENCE_NUMBER = "sequenceNumber";
+    /**
+     * Name of the (read-only ByteBuffer payload) value in the tuple.
+     */
+    public static final String FIELD_PAYLOAD = "payload";
+
+    /**
+     * Constructor.
+     */
+    public DefaultKinesisPayloadScheme() {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.amazonaws.services.kinesis.stormspout.IKinesisPayloadScheme#deserialize(java.lang.String,
+     * java.lang.String, java.nio.ByteBuffer)
+     */
+    @Override
+    public List<Object> deserialize(String partitionKey, String sequenceNumber, ByteBuffer payload) {
+        return Arrays.<Object> asList(partitionKey, sequenceNumber, payload);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.amazonaws.services.kinesis.stormspout.IKinesisPayloadScheme#getOutputFields()
+     */
+    @Override
+    public Fields getOutputFields() {
+        return new Fields(FIELD_PARTITION_KEY, FIELD_SEQUENCE_NUMBER, FIELD_PAYLOAD);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Sequence number of a record, extended with the sub-sequence number for user records of KPL aggregated records.
+ * The string form is "sequenceNumber" or "sequenceNumber.subSequenceNumber", and is used in message IDs and
+ * checkpoints.
+ * 
+ * A sequence number without a sub-sequence number covers the whole Kinesis record, so it is ordered after all the
+ * user records of that Kinesis record.
+ */
+public final class ExtendedSequenceNumber implements Comparable<ExtendedSequenceNumber>, Serializable {
+    private static final long serialVersionUID = -1937470214926463924L;
+    private static final char SEPARATOR = '.';
+
+    private final String sequenceNumber;
+    private final long subSequenceNumber;
+    private final boolean hasSubSequenceNumber;
+
+    private ExtendedSequenceNumber(String sequenceNumber, long subSequenceNumber, boolean hasSubSequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+        this.subSequenceNumber = subSequenceNumber;
+        this.hasSubSequenceNumber = hasSubSequenceNumber;
+    }
+
+    /**
+     * @param value String form of an extended sequence number (see toString()).
+     * @return the parsed extended sequence number.
+     */
+    public static ExtendedSequenceNumber parse(String value) {
+        int i = value.indexOf(SEPARATOR);
+        if (i < 0) {
+            return new ExtendedSequenceNumber(value, 0L, false);
+        }
+        return new ExtendedSequenceNumber(value.substring(0, i), Long.parseLong(value.substring(i + 1)), true);
+    }
+
+    /**
+     * @param record Kinesis record or user record.
+     * @return the extended sequence number of the record.
+     */
+    public static ExtendedSequenceNumber of(Record record) {
+        if (record instanceof UserRecord) {
+            return new ExtendedSequenceNumber(record.getSequenceNumber(),
+                    ((UserRecord) record).getSubSequenceNumber(), true);
+        }
+        return new ExtendedSequenceNumber(record.getSequenceNumber(), 0L, false);
+    }
+
+    /**
+     * @param record Kinesis record or user record.
+     * @return String form of the extended sequence number of the record (uniquely identifies it in a shard).
+     */
+    public static String keyOf(Record record) {
+        if (record instanceof UserRecord) {
+            return record.getSequenceNumber() + SEPARATOR + ((UserRecord) record).getSubSequenceNumber();
+        }
+        return record.getSequenceNumber();
+    }
+
+    /**
+     * @return Sequence number of the Kinesis record.
+     */
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @return Sub-sequence number (only valid if hasSubSequenceNumber()).
+     */
+    public long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    /**
+     * @return true if this identifies a user record within an aggregated Kinesis record.
+     */
+    public boolean hasSubSequenceNumber() {
+        return hasSubSequenceNumber;
+    }
+
+    @Override
+    public int compareTo(ExtendedSequenceNumber other) {
+        int c = new BigInteger(sequenceNumber).compareTo(new BigInteger(other.sequenceNumber));
+        if (c != 0) {
+            return c;
+        }
+        if (hasSubSequenceNumber != other.hasSubSequenceNumber) {
+            return hasSubSequenceNumber ? -1 : 1;
+        }
+        return Long.compare(subSequenceNumber, other.subSequenceNumber);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof ExtendedSequenceNumber) && toString().equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return hasSubSequenceNumber ? sequenceNumber + SEPARATOR + subSequenceNumber : sequenceNumber;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+/**
+ * Adapts the number of records requested per GetRecords call (Limit) of a shard, so that the records fetched for the
+ * shard stay within a byte budget while each call fetches as many records as possible. The limit is the smallest of:
+ * <ul>
+ * <li>maxRecordsPerCall,</li>
+ * <li>the byte budget divided by the average size of the records fetched (an estimate that follows increases of the
+ * record size right away, and decreases gradually),</li>
+ * <li>the records the consumer drains in DRAIN_TARGET_MILLIS (at the rate observed when previous fetches were
+ * drained), so that a slow consumer doesn't hold large buffers for a long time.</li>
+ * </ul>
+ * Until records were fetched, the records are assumed to have the max size of a Kinesis record.
+ * 
+ * Not thread safe (each getter has its own sizer).
+ */
+class FetchSizer {
+    // Max size of a Kinesis record: assumed until the average size is known.
+    private static final long MAX_RECORD_BYTES = 1024L * 1024L;
+    // Size a fetch for the consumer to drain it in about this long.
+    static final long DRAIN_TARGET_MILLIS = 1000L;
+    // Weight of the latest observation in the average record size (when it decreases) and drain rate.
+    private static final double SMOOTHING = 0.25;
+
+    private final int maxRecordsPerCall;
+    private final long maxBytes;
+
+    // 0 until records were fetched.
+    private double avgRecordBytes;
+    // Records drained per millisecond (0 until measured).
+    private double drainRate;
+
+    /**
+     * @param maxRecordsPerCall Max number of records to fetch in a single call.
+     * @param maxBytes Byte budget of a fetch (0 to only bound fetches by maxRecordsPerCall).
+     */
+    FetchSizer(final int maxRecordsPerCall, final long maxBytes) {
+        this.maxRecordsPerCall = maxRecordsPerCall;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return number of records to request in the next call (at least 1).
+     */
+    int getLimit() {
+        if (maxBytes <= 0) {
+            return maxRecordsPerCall;
+        }
+        double limit = Math.min(maxRecordsPerCall, maxBytes / (avgRecordBytes > 0 ? avgRecordBytes : MAX_RECORD_BYTES));
+        if (drainRate > 0) {
+            limit = Math.min(limit, drainRate * DRAIN_TARGET_MILLIS);
+        }
+        return Math.max(1, (int) limit);
+    }
+
+    /**
+     * Call when records were fetched.
+     * 
+     * @param records Number of records fetched.
+     * @param bytes Total size of their data.
+     */
+    void onFetch(final int records, final long bytes) {
+        if (records == 0) {
+            return;
+        }
+        final double avg = (double) bytes / records;
+        if (avg > avgRecordBytes) {
+            avgRecordBytes = avg;
+        } else {
+            avgRecordBytes += SMOOTHING * (avg - avgRecordBytes);
+        }
+    }
+
+    /**
+     * Call when the records of a fetch were all consumed.
+     * 
+     * @param records Number of records fetched.
+     * @param elapsedMillis Time from the fetch until its last record was consumed.
+     */
+    void onDrain(final int records, final long elapsedMillis) {
+        if (records == 0) {
+            return;
+        }
+        // A fetch drained within a millisecond counts as drained in one.
+        final double rate = (double) records / Math.max(1L, elapsedMillis);
+        drainRate = (drainRate == 0) ? rate : drainRate + SMOOTHING * (rate - drainRate);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
+
+/**
+ * Creates the fetcher threads of ThreadedShardGetters: daemon platform threads, or virtual threads if enabled and
+ * supported by the JVM (Java 21 or later). Virtual threads are created through reflection, since the spout is built
+ * for Java 7.
+ *
+ * Not thread safe (like Thread.Builder): used from the spout thread only.
+ */
+final class FetcherThreadFactory implements ThreadFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(FetcherThreadFactory.class);
+
+    // Thread.Builder.OfVirtual and Thread.Builder.unstarted(Runnable), or null to create platform threads.
+    private final Object virtualThreadBuilder;
+    private final Method unstarted;
+
+    /**
+     * @param virtualThreadsEnabled Create virtual threads if the JVM supports them.
+     */
+    FetcherThreadFactory(final boolean virtualThreadsEnabled) {
+        Object builder = null;
+        Method method = null;
+        if (virtualThreadsEnabled) {
+            try {
+                builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                method = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Virtual threads are not supported by this JVM, fetching records on platform threads.");
+                builder = null;
+                method = null;
+            }
+        }
+        this.virtualThreadBuilder = builder;
+        this.unstarted = method;
+    }
+
+    /**
+     * @return true if the threads created are virtual threads.
+     */
+    boolean isVirtual() {
+        return virtualThreadBuilder != null;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        if (virtualThreadBuilder != null) {
+            try {
+                return (Thread) unstarted.invoke(virtualThreadBuilder, runnable);
+            } catch (ReflectiveOperationException e) {
+                throw new KinesisSpoutException("Could not create a virtual thread.", e);
+            }
+        }
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
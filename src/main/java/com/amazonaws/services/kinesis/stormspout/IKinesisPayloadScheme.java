@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import backtype.storm.tuple.Fields;
+
+/**
+ * Used to convert the payload of a Kinesis record into a tuple. Unlike IKinesisRecordScheme, the spout doesn't copy
+ * the record before handing it to the scheme.
+ */
+public interface IKinesisPayloadScheme extends java.io.Serializable {
+
+    /**
+     * @param partitionKey Partition key of the record.
+     * @param sequenceNumber Sequence number of the record ("sequenceNumber.subSequenceNumber" for user records of
+     *        KPL aggregated records, see ExtendedSequenceNumber).
+     * @param payload Read-only view of the record data, from position() to limit(). The view shares its content with
+     *        the record (which may be re-emitted on failure), so it should not be assumed to be backed by an
+     *        accessible array, nor be modified.
+     * @return List of values (to be emitted as a tuple)
+     */
+    List<Object> deserialize(String partitionKey, String sequenceNumber, ByteBuffer payload);
+
+    /**
+     * @return output fields
+     */
+    Fields getOutputFields();
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.Serializable;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Receives the records the spout gave up on (quarantined), e.g. to store them in a dead letter queue. The checkpoint
+ * advances past quarantined records, so they are not replayed from Kinesis.
+ * 
+ * The spout hands records to the sink from a background thread, one call at a time, so that a slow sink doesn't stall
+ * the spout. The checkpoint of a shard is not committed while records of the shard are waiting for the sink (or the
+ * sink hasn't returned from the call for them yet).
+ */
+public interface IQuarantineSink extends Serializable {
+    /**
+     * Why a record was quarantined.
+     */
+    enum Reason {
+        /** The record failed, and was retried up to the record retry limit. */
+        RETRIES_EXHAUSTED,
+        /** The record was neither acked nor failed within the max record age. */
+        MAX_AGE_EXCEEDED
+    }
+
+    /**
+     * @param shardId Shard the records were read from.
+     * @param records Records emitted in one tuple (a single record unless records are batched).
+     * @param reason Why the records were quarantined.
+     */
+    void quarantine(String shardId, ImmutableList<Record> records, Reason reason);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.Serializable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Decides which shards a spout task is responsible for.
+ * 
+ * Every task computes its own assignment from the shard list stored in ZooKeeper, so implementations must be
+ * deterministic: given the same shard list and number of tasks, all tasks must agree on a partitioning where each
+ * shard is assigned to exactly one task.
+ */
+public interface IShardAssignmentStrategy extends Serializable {
+    /**
+     * @param shardList Sorted list of shards in the stream.
+     * @param shardLoads Last observed load of the shards in shardList (shards that were never measured are absent).
+     * @param taskIndex Index of the task computing its assignment.
+     * @param totalNumTasks Total number of spout tasks.
+     * @return Shards the task is responsible for.
+     */
+    ImmutableList<String> getShardAssignment(ImmutableList<String> shardList,
+            ImmutableMap<String, ShardLoad> shardLoads,
+            int taskIndex,
+            int totalNumTasks);
+
+    /**
+     * Publishing loads costs ZooKeeper writes, so tasks only do it for strategies that use them.
+     * 
+     * @return true if getShardAssignment uses shardLoads (shardLoads is empty otherwise).
+     */
+    boolean usesShardLoads();
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.InvalidArgumentException;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.ResourceNotFoundException;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
+
+/**
+ * In-process stand-in for an Amazon Kinesis stream, to load test topologies without a provisioned stream or network.
+ *
+ * The stream serves DescribeStream, GetShardIterator and GetRecords through an AmazonKinesisClient, so the spout runs
+ * its usual code path (KinesisHelper, KinesisShardGetter, buffering, de-aggregation, metrics) against it. Get the
+ * spout's shard list getter and getter builder from getShardListGetter() and getShardGetterBuilder(). Like Kinesis:
+ * <ul>
+ * <li>records are routed to shards by the MD5 hash of their partition key, and get increasing sequence numbers;</li>
+ * <li>shard iterators expire (after 5 minutes by default);</li>
+ * <li>GetRecords calls are throttled (5 calls and 2 MB per second per shard by default) and return at most 10000
+ * records or 10 MB;</li>
+ * <li>shards can be split and merged: the parent shards are closed, the child shards take their hash key ranges.</li>
+ * </ul>
+ * Records are kept in memory for the life of the stream (there is no retention period). Streams are registered by
+ * name in the JVM, so spouts deserialized by a LocalCluster read the same stream.
+ */
+public final class InMemoryKinesis {
+    private static final ConcurrentMap<String, InMemoryKinesis> STREAMS = new ConcurrentHashMap<>();
+
+    private static final BigInteger MAX_HASH_KEY = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+    private static final BigInteger FIRST_SEQUENCE_NUMBER = new BigInteger("49540000000000000000000000000000000000");
+    private static final int MAX_RECORDS_PER_GET_RECORDS = 10000;
+    private static final long MAX_BYTES_PER_GET_RECORDS = 10L * 1024L * 1024L;
+    private static final int DEFAULT_DESCRIBE_STREAM_LIMIT = 100;
+    private static final String ITERATOR_SEPARATOR = "/";
+
+    private final String streamName;
+    // Shards by shard ID (IDs are zero padded, so this is creation order).
+    private final Map<String, InMemoryShard> shards = new TreeMap<>();
+    private int nextShardIndex;
+    private BigInteger nextSequenceNumber = FIRST_SEQUENCE_NUMBER;
+
+    private volatile long getRecordsLatencyMillis = 0L;
+    private volatile int maxGetRecordsPerSecond = 5;
+    private volatile long maxBytesReadPerSecond = 2L * 1024L * 1024L;
+    private volatile long iteratorExpiryMillis = 5L * 60L * 1000L;
+
+    private InMemoryKinesis(final String streamName, final int numShards) {
+        this.streamName = streamName;
+        final BigInteger width = MAX_HASH_KEY.add(BigInteger.ONE).divide(BigInteger.valueOf(numShards));
+        for (int i = 0; i < numShards; i++) {
+            final BigInteger start = width.multiply(BigInteger.valueOf(i));
+            final BigInteger end = (i == numShards - 1) ? MAX_HASH_KEY : start.add(width).subtract(BigInteger.ONE);
+            addShard(start, end, null, null);
+        }
+    }
+
+    /**
+     * @param streamName Name of the stream.
+     * @param numShards Number of (open) shards, splitting the hash key space evenly.
+     * @return the new stream.
+     */
+    public static InMemoryKinesis createStream(final String streamName, final int numShards) {
+        if (numShards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be positive, but was " + numShards);
+        }
+        if (streamName.contains(ITERATOR_SEPARATOR)) {
+            throw new IllegalArgumentException("Invalid stream name " + streamName);
+        }
+        final InMemoryKinesis stream = new InMemoryKinesis(streamName, numShards);
+        if (STREAMS.putIfAbsent(streamName, stream) != null) {
+            throw new IllegalArgumentException("Stream " + streamName + " already exists.");
+        }
+        return stream;
+    }
+
+    /**
+     * @param streamName Name of the stream.
+     * @return the stream, or null if there is no stream with that name.
+     */
+    public static InMemoryKinesis getStream(final String streamName) {
+        return STREAMS.get(streamName);
+    }
+
+    /**
+     * Deletes the stream (and its records).
+     *
+     * @param streamName Name of the stream.
+     */
+    public static void deleteStream(final String streamName) {
+        STREAMS.remove(streamName);
+    }
+
+    /**
+     * @return name of the stream.
+     */
+    public String getStreamName() {
+        return streamName;
+    }
+
+    /**
+     * @param latencyMillis Time each GetRecords call takes (in addition to the time spent in this class).
+     * @return this stream.
+     */
+    public InMemoryKinesis withGetRecordsLatencyMillis(final long latencyMillis) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("Latency must be non-negative, but was " + latencyMillis);
+        }
+        this.getRecordsLatencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param callsPerSecond Max GetRecords calls per second per shard (0 for no limit). Calls over the limit fail with
+     *        ProvisionedThroughputExceededException.
+     * @return this stream.
+     */
+    public InMemoryKinesis withMaxGetRecordsPerSecond(final int callsPerSecond) {
+        if (callsPerSecond < 0) {
+            throw new IllegalArgumentException("Calls per second must be non-negative, but was " + callsPerSecond);
+        }
+        this.maxGetRecordsPerSecond = callsPerSecond;
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond Max bytes read per second per shard (0 for no limit). Once a shard has returned that many
+     *        bytes within a second, GetRecords calls fail with ProvisionedThroughputExceededException until the end of
+     *        the second.
+     * @return this stream.
+     */
+    public InMemoryKinesis withMaxBytesReadPerSecond(final long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bytes per second must be non-negative, but was " + bytesPerSecond);
+        }
+        this.maxBytesReadPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param expiryMillis Time after which a shard iterator can no longer be used (GetRecords fails with
+     *        ExpiredIteratorException).
+     * @return this stream.
+     */
+    public InMemoryKinesis withIteratorExpiryMillis(final long expiryMillis) {
+        if (expiryMillis <= 0) {
+            throw new IllegalArgumentException("Iterator expiry must be positive, but was " + expiryMillis);
+        }
+        this.iteratorExpiryMillis = expiryMillis;
+        return this;
+    }
+
+    /**
+     * @return shard list getter for the spout.
+     */
+    public IShardListGetter getShardListGetter() {
+        return new Helper(streamName);
+    }
+
+    /**
+     * @param config Spout configuration (max records per call, empty record list backoff, KPL de-aggregation,
+     *        threaded fetch, shard iterator refresh).
+     * @return shard getter builder for the spout.
+     */
+    public IShardGetterBuilder getShardGetterBuilder(final KinesisSpoutConfig config) {
+        return new KinesisShardGetterBuilder(streamName,
+                new Helper(streamName),
+                config.getMaxRecordsPerCall(),
+                config.getEmptyRecordListBackoffMillis(),
+                config.isKplDeaggregationEnabled(),
+                config.getMaxBufferBytesPerShard(),
+                config.isThreadedFetchEnabled() ? config.getFetchQueueCapacity() : 0,
+                config.isVirtualFetchThreadsEnabled(),
+                config.getMaxShardIteratorAgeMillis());
+    }
+
+    /**
+     * Adds a record to the open shard whose hash key range contains the MD5 hash of the partition key.
+     *
+     * @param partitionKey Partition key of the record.
+     * @param data Data of the record (copied).
+     * @return sequence number of the record.
+     */
+    public String putRecord(final String partitionKey, final ByteBuffer data) {
+        final BigInteger hashKey = new BigInteger(1, md5(partitionKey.getBytes(StandardCharsets.UTF_8)));
+        final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate()).flip();
+        synchronized (this) {
+            for (InMemoryShard shard : shards.values()) {
+                if (shard.isOpen() && shard.containsHashKey(hashKey)) {
+                    final String sequenceNumber = nextSequenceNumber();
+                    shard.records.add(new Record().withPartitionKey(partitionKey)
+                            .withSequenceNumber(sequenceNumber)
+                            .withData(copy.asReadOnlyBuffer()));
+                    return sequenceNumber;
+                }
+            }
+        }
+        throw new IllegalStateException("No open shard for hash key " + hashKey);
+    }
+
+    /**
+     * Splits an open shard in two at the middle of its hash key range.
+     *
+     * @param shardId Shard to split.
+     * @return IDs of the two child shards.
+     */
+    public synchronized List<String> splitShard(final String shardId) {
+        final InMemoryShard parent = getOpenShard(shardId);
+        final BigInteger middle = parent.startingHashKey.add(parent.endingHashKey).shiftRight(1);
+        parent.endingSequenceNumber = nextSequenceNumber();
+        final List<String> children = new ArrayList<>(2);
+        children.add(addShard(parent.startingHashKey, middle, shardId, null).shardId);
+        children.add(addShard(middle.add(BigInteger.ONE), parent.endingHashKey, shardId, null).shardId);
+        return children;
+    }
+
+    /**
+     * Merges two open shards with adjacent hash key ranges.
+     *
+     * @param shardId Shard to merge.
+     * @param adjacentShardId Shard to merge with.
+     * @return ID of the child shard.
+     */
+    public synchronized String mergeShards(final String shardId, final String adjacentShardId) {
+        final InMemoryShard parent = getOpenShard(shardId);
+        final InMemoryShard adjacentParent = getOpenShard(adjacentShardId);
+        final InMemoryShard low;
+        final InMemoryShard high;
+        if (parent.endingHashKey.add(BigInteger.ONE).equals(adjacentParent.startingHashKey)) {
+            low = parent;
+            high = adjacentParent;
+        } else if (adjacentParent.endingHashKey.add(BigInteger.ONE).equals(parent.startingHashKey)) {
+            low = adjacentParent;
+            high = parent;
+        } else {
+            throw new IllegalArgumentException("Shards " + shardId + " and " + adjacentShardId + " are not adjacent.");
+        }
+        final String endingSequenceNumber = nextSequenceNumber();
+        parent.endingSequenceNumber = endingSequenceNumber;
+        adjacentParent.endingSequenceNumber = endingSequenceNumber;
+        return addShard(low.startingHashKey, high.endingHashKey, shardId, adjacentShardId).shardId;
+    }
+
+    /**
+     * @return IDs of the open shards.
+     */
+    public synchronized List<String> getOpenShardIds() {
+        final List<String> open = new ArrayList<>();
+        for (InMemoryShard shard : shards.values()) {
+            if (shard.isOpen()) {
+                open.add(shard.shardId);
+            }
+        }
+        return open;
+    }
+
+    /**
+     * @param shardId Shard ID.
+     * @param sequenceNumber Sequence number of a record of the shard (null or empty for none).
+     * @return number of records of the shard after the sequence number (e.g. records not covered by a checkpoint).
+     */
+    public synchronized int countRecordsAfter(final String shardId, final String sequenceNumber) {
+        final InMemoryShard shard = getShard(shardId);
+        if (sequenceNumber == null || sequenceNumber.isEmpty()) {
+            return shard.records.size();
+        }
+        return shard.records.size() - shard.offsetOf(sequenceNumber, true);
+    }
+
+    private synchronized DescribeStreamResult describeStream(final DescribeStreamRequest request) {
+        final int limit = (request.getLimit() == null) ? DEFAULT_DESCRIBE_STREAM_LIMIT : request.getLimit();
+        final String exclusiveStart = request.getExclusiveStartShardId();
+        final List<Shard> page = new ArrayList<>();
+        boolean hasMoreShards = false;
+        for (InMemoryShard shard : shards.values()) {
+            if (exclusiveStart != null && shard.shardId.compareTo(exclusiveStart) <= 0) {
+                continue;
+            }
+            if (page.size() == limit) {
+                hasMoreShards = true;
+                break;
+            }
+            page.add(shard.describe());
+        }
+        return new DescribeStreamResult().withStreamDescription(new StreamDescription().withStreamName(streamName)
+                .withStreamStatus("ACTIVE")
+                .withShards(page)
+                .withHasMoreShards(hasMoreShards));
+    }
+
+    private synchronized GetShardIteratorResult getShardIterator(final GetShardIteratorRequest request) {
+        final InMemoryShard shard = getShard(request.getShardId());
+        final ShardIteratorType type = ShardIteratorType.valueOf(request.getShardIteratorType());
+        final int offset;
+        switch (type) {
+            case TRIM_HORIZON:
+                offset = 0;
+                break;
+            case LATEST:
+                offset = shard.records.size();
+                break;
+            case AT_SEQUENCE_NUMBER:
+                offset = shard.offsetOf(request.getStartingSequenceNumber(), false);
+                break;
+            case AFTER_SEQUENCE_NUMBER:
+                offset = shard.offsetOf(request.getStartingSequenceNumber(), true);
+                break;
+            default:
+                throw new InvalidArgumentException("Unsupported shard iterator type " + type);
+        }
+        return new GetShardIteratorResult().withShardIterator(iterator(shard, offset));
+    }
+
+    private GetRecordsResult getRecords(final String[] iterator, final Integer requestedLimit) {
+        if (getRecordsLatencyMillis > 0) {
+            try {
+                Thread.sleep(getRecordsLatencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KinesisSpoutException(e);
+            }
+        }
+        final long now = System.currentTimeMillis();
+        if (now - Long.parseLong(iterator[3]) > iteratorExpiryMillis) {
+            throw new ExpiredIteratorException("Shard iterator for " + iterator[1] + " has expired.");
+        }
+        final int limit = (requestedLimit == null)
+                ? MAX_RECORDS_PER_GET_RECORDS : Math.min(requestedLimit, MAX_RECORDS_PER_GET_RECORDS);
+
+        synchronized (this) {
+            final InMemoryShard shard = getShard(iterator[1]);
+            shard.throttle(now, maxGetRecordsPerSecond, maxBytesReadPerSecond);
+            final List<Record> records = new ArrayList<>();
+            long bytes = 0L;
+            int next = Integer.parseInt(iterator[2]);
+            while (next < shard.records.size() && records.size() < limit) {
+                final Record stored = shard.records.get(next);
+                if (!records.isEmpty() && bytes + stored.getData().remaining() > MAX_BYTES_PER_GET_RECORDS) {
+                    break;
+                }
+                // New objects on every call, like the SDK: consumers may change the buffer positions.
+                records.add(new Record().withPartitionKey(stored.getPartitionKey())
+                        .withSequenceNumber(stored.getSequenceNumber())
+                        .withData(stored.getData().duplicate()));
+                bytes += stored.getData().remaining();
+                next++;
+            }
+            shard.bytesRead(now, bytes);
+            // Reading to the end of a closed shard ends it (no next iterator).
+            final String nextIterator =
+                    (!shard.isOpen() && next == shard.records.size()) ? null : iterator(shard, next);
+            return new GetRecordsResult().withRecords(records).withNextShardIterator(nextIterator);
+        }
+    }
+
+    private InMemoryShard addShard(final BigInteger startingHashKey,
+            final BigInteger endingHashKey,
+            final String parentShardId,
+            final String adjacentParentShardId) {
+        final InMemoryShard shard = new InMemoryShard(String.format("shardId-%012d", nextShardIndex++),
+                startingHashKey, endingHashKey, parentShardId, adjacentParentShardId, nextSequenceNumber.toString());
+        shards.put(shard.shardId, shard);
+        return shard;
+    }
+
+    private InMemoryShard getShard(final String shardId) {
+        final InMemoryShard shard = shards.get(shardId);
+        if (shard == null) {
+            throw new ResourceNotFoundException("Shard " + shardId + " in stream " + streamName + " not found.");
+        }
+        return shard;
+    }
+
+    private InMemoryShard getOpenShard(final String shardId) {
+        final InMemoryShard shard = getShard(shardId);
+        if (!shard.isOpen()) {
+            throw new IllegalArgumentException("Shard " + shardId + " is closed.");
+        }
+        return shard;
+    }
+
+    private String nextSequenceNumber() {
+        final String sequenceNumber = nextSequenceNumber.toString();
+        nextSequenceNumber = nextSequenceNumber.add(BigInteger.ONE);
+        return sequenceNumber;
+    }
+
+    // Iterators are "streamName/shardId/offset/issuedAtMillis".
+    private String iterator(final InMemoryShard shard, final int offset) {
+        return streamName + ITERATOR_SEPARATOR + shard.shardId + ITERATOR_SEPARATOR + offset + ITERATOR_SEPARATOR
+                + System.currentTimeMillis();
+    }
+
+    private static byte[] md5(final byte[] data) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new KinesisSpoutException(e);
+        }
+    }
+
+    private static InMemoryKinesis getExistingStream(final String streamName) {
+        final InMemoryKinesis stream = STREAMS.get(streamName);
+        if (stream == null) {
+            throw new ResourceNotFoundException("Stream " + streamName + " not found.");
+        }
+        return stream;
+    }
+
+    /**
+     * A shard: its records (in sequence number order) and its read throttling state. Guarded by the stream.
+     */
+    private static final class InMemoryShard {
+        private final String shardId;
+        private final BigInteger startingHashKey;
+        private final BigInteger endingHashKey;
+        private final String parentShardId;
+        private final String adjacentParentShardId;
+        private final String startingSequenceNumber;
+        private final List<Record> records = new ArrayList<>();
+        // Set when the shard is closed by a split or merge.
+        private String endingSequenceNumber;
+        // Times of the last GetRecords calls (ring buffer), and bytes read in the current second.
+        private long[] callTimes = new long[0];
+        private int nextCall;
+        private long bytesReadSecond;
+        private long bytesReadInSecond;
+
+        InMemoryShard(final String shardId,
+                final BigInteger startingHashKey,
+                final BigInteger endingHashKey,
+                final String parentShardId,
+                final String adjacentParentShardId,
+                final String startingSequenceNumber) {
+            this.shardId = shardId;
+            this.startingHashKey = startingHashKey;
+            this.endingHashKey = endingHashKey;
+            this.parentShardId = parentShardId;
+            this.adjacentParentShardId = adjacentParentShardId;
+            this.startingSequenceNumber = startingSequenceNumber;
+        }
+
+        boolean isOpen() {
+            return endingSequenceNumber == null;
+        }
+
+        boolean containsHashKey(final BigInteger hashKey) {
+            return hashKey.compareTo(startingHashKey) >= 0 && hashKey.compareTo(endingHashKey) <= 0;
+        }
+
+        // Offset of the first record at (or after) the sequence number.
+        int offsetOf(final String sequenceNumber, final boolean after) {
+            final BigInteger value;
+            try {
+                value = new BigInteger(sequenceNumber);
+            } catch (NumberFormatException | NullPointerException e) {
+                throw new InvalidArgumentException("Invalid sequence number " + sequenceNumber);
+            }
+            if (value.compareTo(new BigInteger(startingSequenceNumber)) < 0
+                    || (!isOpen() && value.compareTo(new BigInteger(endingSequenceNumber)) > 0)) {
+                throw new InvalidArgumentException("Sequence number " + sequenceNumber + " is not in shard " + shardId);
+            }
+            int low = 0;
+            int high = records.size();
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                final int cmp = new BigInteger(records.get(middle).getSequenceNumber()).compareTo(value);
+                if (cmp < 0 || (after && cmp == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void throttle(final long now, final int maxCallsPerSecond, final long maxBytesPerSecond) {
+            if (maxCallsPerSecond > 0) {
+                if (callTimes.length != maxCallsPerSecond) {
+                    callTimes = new long[maxCallsPerSecond];
+                    nextCall = 0;
+                }
+                // The oldest of the last maxCallsPerSecond calls must be at least a second ago.
+                if (now - callTimes[nextCall] < 1000L) {
+                    throw new ProvisionedThroughputExceededException("Rate exceeded for shard " + shardId);
+                }
+                callTimes[nextCall] = now;
+                nextCall = (nextCall + 1) % callTimes.length;
+            }
+            if (maxBytesPerSecond > 0 && now / 1000L == bytesReadSecond && bytesReadInSecond >= maxBytesPerSecond) {
+                throw new ProvisionedThroughputExceededException("Read throughput exceeded for shard " + shardId);
+            }
+        }
+
+        void bytesRead(final long now, final long bytes) {
+            if (now / 1000L != bytesReadSecond) {
+                bytesReadSecond = now / 1000L;
+                bytesReadInSecond = 0L;
+            }
+            bytesReadInSecond += bytes;
+        }
+
+        Shard describe() {
+            return new Shard().withShardId(shardId)
+                    .withParentShardId(parentShardId)
+                    .withAdjacentParentShardId(adjacentParentShardId)
+                    .withHashKeyRange(new HashKeyRange().withStartingHashKey(startingHashKey.toString())
+                            .withEndingHashKey(endingHashKey.toString()))
+                    .withSequenceNumberRange(new SequenceNumberRange()
+                            .withStartingSequenceNumber(startingSequenceNumber)
+                            .withEndingSequenceNumber(endingSequenceNumber));
+        }
+    }
+
+    /**
+     * Kinesis client serving the in-memory streams (by stream name).
+     */
+    private static final class InMemoryKinesisClient extends AmazonKinesisClient {
+        @Override
+        public DescribeStreamResult describeStream(final DescribeStreamRequest request) {
+            return getExistingStream(request.getStreamName()).describeStream(request);
+        }
+
+        @Override
+        public GetShardIteratorResult getShardIterator(final GetShardIteratorRequest request) {
+            return getExistingStream(request.getStreamName()).getShardIterator(request);
+        }
+
+        @Override
+        public GetRecordsResult getRecords(final GetRecordsRequest request) {
+            final String shardIterator = request.getShardIterator();
+            final String[] iterator = (shardIterator == null) ? null : shardIterator.split(ITERATOR_SEPARATOR);
+            if (iterator == null || iterator.length != 4) {
+                throw new InvalidArgumentException("Invalid shard iterator " + shardIterator);
+            }
+            return getExistingStream(iterator[0]).getRecords(iterator, request.getLimit());
+        }
+    }
+
+    /**
+     * KinesisHelper using the in-memory client. Serializable (with the spout), the client is shared in the JVM.
+     */
+    private static final class Helper extends KinesisHelper {
+        private static final long serialVersionUID = -3712538475120853316L;
+        private static final InMemoryKinesisClient CLIENT = new InMemoryKinesisClient();
+
+        Helper(final String streamName) {
+            super(streamName);
+        }
+
+        @Override
+        AmazonKinesisClient getSharedkinesisClient() {
+            return CLIENT;
+        }
+    }
+}
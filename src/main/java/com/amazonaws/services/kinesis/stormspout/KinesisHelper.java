@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +33,11 @@ import com.amazonaws.services.kinesis.AmazonKinesisClient;
 import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
 import com.amazonaws.services.kinesis.model.DescribeStreamResult;
 import com.amazonaws.services.kinesis.model.Shard;
-import com.amazonaws.services.kinesis.stormspout.utils.InfiniteConstantBackoffRetry;
+import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.amazonaws.services.kinesis.stormspout.utils.AsyncRetrier;
+import com.amazonaws.services.kinesis.stormspout.utils.CircuitBreaker;
+import com.amazonaws.services.kinesis.stormspout.utils.RetryPolicy;
 import com.amazonaws.services.kinesis.stormspout.utils.ShardIdComparator;
 import com.google.common.collect.ImmutableSortedMap;
 
@@ -45,7 +50,10 @@ class KinesisHelper implements IShardListGetter {
     private static final ShardIdComparator SHARD_ID_COMPARATOR = new ShardIdComparator();
     private static final Integer DESCRIBE_STREAM_LIMIT = 1000;
     private static final String KINESIS_STORM_SPOUT_USER_AGENT = "kinesis-storm-spout-java-1.1.1";
-    private static final long BACKOFF_MILLIS = 1000L;
+    private static final RetryPolicy DESCRIBE_STREAM_RETRY =
+            new RetryPolicy(AmazonClientException.class, 1000L, 30000L, 600000L);
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = 10000L;
 
     private final byte[] serializedKinesisCredsProvider;
     private final byte[] serializedkinesisClientConfig;
@@ -56,6 +64,7 @@ class KinesisHelper implements IShardListGetter {
     private transient ClientConfiguration kinesisClientConfig;
     private transient AmazonKinesisClient kinesisClient;
     private transient Region region;
+    private transient CircuitBreaker describeStreamBreaker;
 
     /**
      * @param streamName Kinesis stream name to interact with.
@@ -77,6 +86,18 @@ class KinesisHelper implements IShardListGetter {
         this.kinesisClient = null;
     }
 
+    /**
+     * For helpers that provide their own client (by overriding getSharedkinesisClient()).
+     * 
+     * @param streamName Kinesis stream name to interact with.
+     */
+    KinesisHelper(final String streamName) {
+        this.streamName = streamName;
+        this.serializedKinesisCredsProvider = null;
+        this.serializedkinesisClientConfig = null;
+        this.serializedRegion = null;
+    }
+
     @Override
     public ImmutableSortedMap<String, ShardInfo> getShardList() {
         Map<String, ShardInfo> spoutShards = new HashMap<>();
@@ -104,14 +125,42 @@ class KinesisHelper implements IShardListGetter {
         return ImmutableSortedMap.copyOf(spoutShards, SHARD_ID_COMPARATOR);
     }
 
+    /**
+     * @param spoutMetrics Metrics to report the retries of DescribeStream calls to.
+     */
+    void setMetrics(final SpoutMetrics spoutMetrics) {
+        spoutMetrics.registerApi(getDescribeStreamBreaker());
+    }
+
+    // The calls are retried by AsyncRetrier until the deadline of DESCRIBE_STREAM_RETRY (instead of forever): this
+    // fails if DescribeStream could not be called by then. Only the shard discovery thread waits for them (see
+    // ShardDiscovery), never the spout thread.
     private DescribeStreamResult getDescribeStreamResult(final DescribeStreamRequest request) {
-        return new InfiniteConstantBackoffRetry<DescribeStreamResult>(BACKOFF_MILLIS, AmazonClientException.class,
-                new Callable<DescribeStreamResult>() {
-            public DescribeStreamResult call() throws Exception {
-                DescribeStreamResult result = getSharedkinesisClient().describeStream(request);
-                return result;
+        try {
+            return AsyncRetrier.shared().submit(new Callable<DescribeStreamResult>() {
+                @Override
+                public DescribeStreamResult call() throws Exception {
+                    DescribeStreamResult result = getSharedkinesisClient().describeStream(request);
+                    return result;
+                }
+            }, DESCRIBE_STREAM_RETRY, getDescribeStreamBreaker()).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-        }).call();
+            throw new KinesisSpoutException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KinesisSpoutException(e);
+        }
+    }
+
+    private synchronized CircuitBreaker getDescribeStreamBreaker() {
+        if (describeStreamBreaker == null) {
+            describeStreamBreaker =
+                    new CircuitBreaker("describeStream", BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS);
+        }
+        return describeStreamBreaker;
     }
 
     /**
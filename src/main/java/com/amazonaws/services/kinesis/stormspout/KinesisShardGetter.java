@@ -15,7 +15,10 @@
 
 package com.amazonaws.services.kinesis.stormspout;
 
+import java.io.Closeable;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -35,25 +38,55 @@ import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededExcepti
 import com.amazonaws.services.kinesis.model.Record;
 import com.amazonaws.services.kinesis.model.ResourceNotFoundException;
 import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import com.amazonaws.services.kinesis.stormspout.exceptions.CircuitBreakerOpenException;
 import com.amazonaws.services.kinesis.stormspout.exceptions.InvalidSeekPositionException;
 import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
-import com.amazonaws.services.kinesis.stormspout.utils.InfiniteConstantBackoffRetry;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.utils.AsyncRetrier;
+import com.amazonaws.services.kinesis.stormspout.utils.CircuitBreaker;
+import com.amazonaws.services.kinesis.stormspout.utils.RetryPolicy;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * Fetches data from a Kinesis shard.
+ * 
+ * The shard iterator can be refreshed by a ShardIteratorRefresher thread while the shard is idle: the iterator, the
+ * position in the shard and the time the iterator was obtained are guarded by this.
+ * 
+ * GetShardIterator calls are retried by AsyncRetrier, so that a Kinesis outage doesn't block the spout thread (or the
+ * thread that assigns shards): seek (and getNext, when an iterator expires) only submits the call, and getNext returns
+ * no records until the iterator is there. An invalid seek position is reported by the getNext call that finds out.
  */
-class KinesisShardGetter implements IShardGetter {
+class KinesisShardGetter implements IShardGetter, Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(KinesisShardGetter.class);
 
-    private static final long BACKOFF_MILLIS = 500L;
+    private static final RetryPolicy GET_SHARD_ITERATOR_RETRY =
+            new RetryPolicy(AmazonClientException.class, 500L, 30000L, 60000L, InvalidArgumentException.class);
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = 10000L;
 
     private final String streamName;
     private final String shardId;
     private final AmazonKinesisClient kinesisClient;
+    private final ShardMetrics metrics;
+    // Keeps the iterator fresh while the shard is idle (null if iterators are not refreshed).
+    private final ShardIteratorRefresher refresher;
+    // Iterators refreshed by the refresher thread, not yet counted in metrics.
+    private final AtomicLong refreshes = new AtomicLong();
+    // Circuit breaker of GetShardIterator (shared by the getters of the task).
+    private final CircuitBreaker breaker;
 
     private String shardIterator;
     private ShardPosition positionInShard;
+    // Time shardIterator was obtained (0 if the getter hasn't seeked yet).
+    private long iteratorMillis;
+    // GetShardIterator call in progress (null if none), the position it is for and the time it was submitted.
+    private ListenableFuture<String> pendingSeek;
+    private ShardPosition pendingPosition;
+    private long pendingMillis;
 
     /**
      * @param streamName Name of the Kinesis stream
@@ -61,9 +94,59 @@ class KinesisShardGetter implements IShardGetter {
      * @param kinesisClient Kinesis client to use when making requests.
      */
     KinesisShardGetter(final String streamName, final String shardId, final AmazonKinesisClient kinesisClient) {
+        this(streamName, shardId, kinesisClient, new ShardMetrics());
+    }
+
+    /**
+     * @param streamName Name of the Kinesis stream
+     * @param shardId Fetch data from this shard
+     * @param kinesisClient Kinesis client to use when making requests.
+     * @param metrics Metrics of the shard (GetRecords calls, latency, records and bytes fetched, throttles).
+     */
+    KinesisShardGetter(final String streamName,
+            final String shardId,
+            final AmazonKinesisClient kinesisClient,
+            final ShardMetrics metrics) {
+        this(streamName, shardId, kinesisClient, metrics, null);
+    }
+
+    /**
+     * @param streamName Name of the Kinesis stream
+     * @param shardId Fetch data from this shard
+     * @param kinesisClient Kinesis client to use when making requests.
+     * @param metrics Metrics of the shard (GetRecords calls, latency, records and bytes fetched, throttles).
+     * @param refresher Refreshes the shard iterator while the shard is idle (null to only get a new iterator when
+     *        it expires). The getter registers when it seeks, and unregisters when it is closed.
+     */
+    KinesisShardGetter(final String streamName,
+            final String shardId,
+            final AmazonKinesisClient kinesisClient,
+            final ShardMetrics metrics,
+            final ShardIteratorRefresher refresher) {
+        this(streamName, shardId, kinesisClient, metrics, refresher, newIteratorBreaker());
+    }
+
+    /**
+     * @param streamName Name of the Kinesis stream
+     * @param shardId Fetch data from this shard
+     * @param kinesisClient Kinesis client to use when making requests.
+     * @param metrics Metrics of the shard (GetRecords calls, latency, records and bytes fetched, throttles).
+     * @param refresher Refreshes the shard iterator while the shard is idle (null to only get a new iterator when
+     *        it expires). The getter registers when it seeks, and unregisters when it is closed.
+     * @param breaker Circuit breaker of GetShardIterator calls (see newIteratorBreaker).
+     */
+    KinesisShardGetter(final String streamName,
+            final String shardId,
+            final AmazonKinesisClient kinesisClient,
+            final ShardMetrics metrics,
+            final ShardIteratorRefresher refresher,
+            final CircuitBreaker breaker) {
         this.streamName = streamName;
         this.shardId = shardId;
         this.kinesisClient = kinesisClient;
+        this.metrics = metrics;
+        this.refresher = refresher;
+        this.breaker = breaker;
         this.shardIterator = "";
         this.positionInShard = ShardPosition.end();
     }
@@ -71,43 +154,194 @@ class KinesisShardGetter implements IShardGetter {
     @Override
     public Records getNext(int maxNumberOfRecords)
         throws AmazonClientException, ResourceNotFoundException, InvalidArgumentException {
-        if (shardIterator == null) {
+        if (refreshes.get() > 0L) {
+            metrics.add(Counter.ITERATOR_REFRESHES, refreshes.getAndSet(0L));
+        }
+        try {
+            if (!completePendingSeek()) {
+                return Records.empty(false);
+            }
+        } catch (InvalidSeekPositionException e) {
+            throw new KinesisSpoutException(e);
+        }
+        String iterator = currentIterator();
+        if (iterator == null) {
             LOG.debug(this + " Null shardIterator for " + shardId + ". This can happen if shard is closed.");
             return Records.empty(true);
         }
 
         final ImmutableList.Builder<Record> records = new ImmutableList.Builder<>();
-        
+        boolean atTip = false;
+
         try {
             final GetRecordsRequest request = new GetRecordsRequest();
-            request.setShardIterator(shardIterator);
+            request.setShardIterator(iterator);
             request.setLimit(maxNumberOfRecords);
+            final long startMillis = System.currentTimeMillis();
+            metrics.increment(Counter.GET_RECORDS_CALLS);
             final GetRecordsResult result = safeGetRecords(request);
+            if (result == null) {
+                // The iterator expired, and the new one isn't there yet.
+                return Records.empty(false);
+            }
+            final long endMillis = System.currentTimeMillis();
+            metrics.add(Counter.GET_RECORDS_MILLIS, endMillis - startMillis);
 
+            long bytes = 0L;
+            ShardPosition position = null;
             for (Record rec : result.getRecords()) {
                 records.add(rec);
-                positionInShard = ShardPosition.afterSequenceNumber(rec.getSequenceNumber());
+                position = ShardPosition.afterSequenceNumber(rec.getSequenceNumber());
+                bytes += rec.getData().remaining();
             }
+            atTip = result.getRecords().size() < maxNumberOfRecords;
+            metrics.add(Counter.RECORDS_FETCHED, result.getRecords().size());
+            metrics.add(Counter.BYTES_FETCHED, bytes);
             if (LOG.isDebugEnabled()) {
                 LOG.debug(this + " fetched " + result.getRecords().size() + " records from Kinesis (requested "
                         + maxNumberOfRecords + ").");
             }
 
-            shardIterator = result.getNextShardIterator();            
+            iterator = result.getNextShardIterator();
+            advance(iterator, position, startMillis);
         } catch (AmazonClientException e) {
+            if (e instanceof ProvisionedThroughputExceededException) {
+                metrics.increment(Counter.GET_RECORDS_THROTTLES);
+            } else {
+                metrics.increment(Counter.GET_RECORDS_ERRORS);
+            }
             // We'll treat this equivalent to fetching 0 records - the spout drives the retry as part of nextTuple()
             // We don't sleep here - we can continue processing ack/fail on the spout thread.
             LOG.error(this + "Caught exception when fetching records for " + shardId, e);
         }
 
-        return new Records(records.build(), shardIterator == null);
+        return new Records(records.build(), iterator == null, atTip);
     }
 
     @Override
     public void seek(ShardPosition position)
         throws AmazonClientException, ResourceNotFoundException, InvalidSeekPositionException {
         LOG.info("Seeking to " + position);
+        requestIterator(position);
+    }
 
+    /**
+     * @return true if the GetShardIterator call of the last seek (or of an expired iterator) is still in progress.
+     */
+    synchronized boolean isSeeking() {
+        return pendingSeek != null && !pendingSeek.isDone();
+    }
+
+    /**
+     * @return a circuit breaker for the GetShardIterator calls of the getters of a spout task.
+     */
+    static CircuitBreaker newIteratorBreaker() {
+        return new CircuitBreaker("getShardIterator", BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS);
+    }
+
+    /**
+     * Gets a new shard iterator (for the last known position in the shard) if the current one was obtained at least
+     * maxAgeMillis ago, so that the next GetRecords call doesn't fail with ExpiredIteratorException. Called by the
+     * ShardIteratorRefresher thread. The GetShardIterator call is made once: if it fails, the next refresh (or the
+     * next GetRecords call, if the iterator has expired by then) will get a new iterator.
+     * 
+     * Only an iterator for a sequence number position is refreshed: an iterator at LATEST (or TRIM_HORIZON) that hasn't
+     * read a record yet would move to the current tip (or trim horizon), and the records in between would be skipped.
+     * 
+     * @param maxAgeMillis Refresh the iterator if it was obtained this long ago.
+     * @return true if the iterator was refreshed.
+     */
+    boolean refreshIterator(final long maxAgeMillis) {
+        final long startMillis = System.currentTimeMillis();
+        final String iterator;
+        final ShardPosition position;
+        synchronized (this) {
+            if (shardIterator == null || iteratorMillis == 0L || startMillis - iteratorMillis < maxAgeMillis
+                    || pendingSeek != null) {
+                return false;
+            }
+            iterator = shardIterator;
+            position = positionInShard;
+        }
+        if (position.getPosition() != ShardPosition.Position.AT_SEQUENCE_NUMBER
+                && position.getPosition() != ShardPosition.Position.AFTER_SEQUENCE_NUMBER) {
+            return false;
+        }
+        // Leave GetShardIterator alone while it is failing: the breaker lets a seek probe it.
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            return false;
+        }
+
+        final String refreshed;
+        try {
+            refreshed = kinesisClient.getShardIterator(makeIteratorRequest(position)).getShardIterator();
+            breaker.onSuccess();
+        } catch (AmazonClientException | InvalidSeekPositionException e) {
+            if (GET_SHARD_ITERATOR_RETRY.isRetryable(e)) {
+                breaker.onFailure(System.currentTimeMillis());
+            }
+            LOG.warn(this + " could not refresh its shard iterator, will try again.", e);
+            return false;
+        }
+
+        synchronized (this) {
+            // A GetRecords call (or seek) got a newer iterator in the meantime.
+            if (shardIterator != iterator) {
+                return false;
+            }
+            shardIterator = refreshed;
+            iteratorMillis = startMillis;
+        }
+        refreshes.incrementAndGet();
+        LOG.debug(this + " refreshed its shard iterator at " + position + ".");
+        return true;
+    }
+
+    /**
+     * Stops refreshing the shard iterator, and cancels the pending seek (if any).
+     */
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.unregister(this);
+        }
+        synchronized (this) {
+            if (pendingSeek != null) {
+                pendingSeek.cancel(false);
+                pendingSeek = null;
+            }
+        }
+    }
+
+    @Override
+    public String getAssociatedShard() {
+        return shardId;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("shardId", shardId).toString();
+    }
+
+    private synchronized String currentIterator() {
+        return shardIterator;
+    }
+
+    private synchronized ShardPosition lastPosition() {
+        return positionInShard;
+    }
+
+    // Records the iterator returned by a GetRecords call, and the position after the last record it returned.
+    private synchronized void advance(final String nextIterator, final ShardPosition position, final long millis) {
+        shardIterator = nextIterator;
+        iteratorMillis = millis;
+        if (position != null) {
+            positionInShard = position;
+        }
+    }
+
+    private GetShardIteratorRequest makeIteratorRequest(final ShardPosition position)
+        throws InvalidSeekPositionException {
         ShardIteratorType iteratorType;
         String seqNum = null;
         switch (position.getPosition()) {
@@ -119,42 +353,21 @@ class KinesisShardGetter implements IShardGetter {
                 break;
             case AT_SEQUENCE_NUMBER:
                 iteratorType = ShardIteratorType.AT_SEQUENCE_NUMBER;
-                seqNum = position.getSequenceNum();
+                seqNum = ExtendedSequenceNumber.parse(position.getSequenceNum()).getSequenceNumber();
                 break;
             case AFTER_SEQUENCE_NUMBER:
-                iteratorType = ShardIteratorType.AFTER_SEQUENCE_NUMBER;
-                seqNum = position.getSequenceNum();
+                ExtendedSequenceNumber extended = ExtendedSequenceNumber.parse(position.getSequenceNum());
+                seqNum = extended.getSequenceNumber();
+                // Kinesis doesn't know about user records: start at the aggregated record so that the rest of its
+                // user records are read again (they are skipped by DeaggregatingGetter, if used).
+                iteratorType = extended.hasSubSequenceNumber() ? ShardIteratorType.AT_SEQUENCE_NUMBER
+                        : ShardIteratorType.AFTER_SEQUENCE_NUMBER;
                 break;
             default:
                 LOG.error("Invalid seek position " + position);
                 throw new InvalidSeekPositionException(position);
         }
 
-        try {
-            shardIterator = seek(iteratorType, seqNum);
-        } catch (InvalidArgumentException e) {
-            LOG.error("Error occured while seeking, cannot seek to " + position + ".", e);
-            throw new InvalidSeekPositionException(position);
-        } catch (Exception e) {
-            LOG.error("Irrecoverable exception, rethrowing.", e);
-            throw e;
-        }
-
-        positionInShard = position;
-    }
-
-    @Override
-    public String getAssociatedShard() {
-        return shardId;
-    }
-
-    @Override
-    public String toString() {
-        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("shardId", shardId).toString();
-    }
-
-    private String seek(final ShardIteratorType iteratorType, final String seqNum)
-        throws AmazonClientException, ResourceNotFoundException, InvalidArgumentException {
         final GetShardIteratorRequest request = new GetShardIteratorRequest();
 
         request.setStreamName(streamName);
@@ -165,18 +378,82 @@ class KinesisShardGetter implements IShardGetter {
         if (seqNum != null) {
             request.setStartingSequenceNumber(seqNum);
         }
+        return request;
+    }
 
-        return new InfiniteConstantBackoffRetry<String>(BACKOFF_MILLIS,
-                AmazonClientException.class,
-                new Callable<String>() {
-                    @Override
-                    public String call() throws Exception {
-                        GetShardIteratorResult result = kinesisClient.getShardIterator(request);
-                        return result.getShardIterator();
-                    }
-                }).call();
+    // Submits a GetShardIterator call for position (replacing the pending one, if any).
+    private void requestIterator(final ShardPosition position) throws InvalidSeekPositionException {
+        final GetShardIteratorRequest request = makeIteratorRequest(position);
+        final long startMillis = System.currentTimeMillis();
+        final ListenableFuture<String> future = AsyncRetrier.shared().submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                GetShardIteratorResult result = kinesisClient.getShardIterator(request);
+                return result.getShardIterator();
+            }
+        }, GET_SHARD_ITERATOR_RETRY, breaker);
+
+        synchronized (this) {
+            if (pendingSeek != null) {
+                pendingSeek.cancel(false);
+            }
+            pendingSeek = future;
+            pendingPosition = position;
+            pendingMillis = startMillis;
+        }
     }
 
+    // Installs the iterator of the pending GetShardIterator call, if it completed. If it was given up on, it is
+    // submitted again. Returns false if there is still no iterator.
+    private boolean completePendingSeek() throws InvalidSeekPositionException {
+        final ListenableFuture<String> future;
+        final ShardPosition position;
+        final long startMillis;
+        synchronized (this) {
+            if (pendingSeek == null) {
+                return true;
+            }
+            if (!pendingSeek.isDone()) {
+                return false;
+            }
+            future = pendingSeek;
+            position = pendingPosition;
+            startMillis = pendingMillis;
+            pendingSeek = null;
+            pendingPosition = null;
+        }
+
+        final String iterator;
+        try {
+            iterator = Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof InvalidArgumentException) {
+                LOG.error("Error occured while seeking, cannot seek to " + position + ".", cause);
+                throw new InvalidSeekPositionException(position);
+            } else if (GET_SHARD_ITERATOR_RETRY.isRetryable(cause) || cause instanceof CircuitBreakerOpenException) {
+                LOG.warn(this + " could not get a shard iterator for " + position + ", trying again.", cause);
+                requestIterator(position);
+                return false;
+            } else if (cause instanceof RuntimeException) {
+                LOG.error("Irrecoverable exception, rethrowing.", cause);
+                throw (RuntimeException) cause;
+            }
+            throw new KinesisSpoutException(cause);
+        }
+
+        synchronized (this) {
+            shardIterator = iterator;
+            positionInShard = position;
+            iteratorMillis = startMillis;
+        }
+        if (refresher != null) {
+            refresher.register(this);
+        }
+        return true;
+    }
+
+    // Returns null if the iterator expired and the new one isn't there yet (the next getNext call picks it up).
     private GetRecordsResult safeGetRecords(final GetRecordsRequest request)
         throws AmazonClientException, ResourceNotFoundException, InvalidArgumentException {
         while (true) {
@@ -184,13 +461,17 @@ class KinesisShardGetter implements IShardGetter {
                 return kinesisClient.getRecords(request);
             } catch (ExpiredIteratorException e) {
                 LOG.info("Expired shard iterator, seeking to last known position.");
+                metrics.increment(Counter.EXPIRED_ITERATORS);
                 try {
-                    seek(positionInShard);
+                    requestIterator(lastPosition());
+                    if (!completePendingSeek()) {
+                        return null;
+                    }
                 } catch (InvalidSeekPositionException e1) {
                     LOG.error("Could not seek to last known position after iterator expired.");
                     throw new KinesisSpoutException(e1);
                 }
-                request.setShardIterator(shardIterator);
+                request.setShardIterator(currentIterator());
             }
         }
     }
@@ -15,6 +15,9 @@
 
 package com.amazonaws.services.kinesis.stormspout;
 
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.amazonaws.services.kinesis.stormspout.utils.CircuitBreaker;
 import com.google.common.collect.ImmutableList;
 
 /**
@@ -25,10 +28,25 @@ class KinesisShardGetterBuilder implements IShardGetterBuilder {
 
     private final int maxRecordsPerCall;
     private final long emptyRecordListBackoffMillis;
+    // Byte budget of the records buffered per shard (0 to only bound them by maxRecordsPerCall).
+    private final long maxBufferBytes;
+    private final boolean kplDeaggregationEnabled;
+    // Fetches queued per shard by fetcher threads (0 to fetch on the spout thread).
+    private final int fetchQueueCapacity;
+    private final boolean virtualFetchThreadsEnabled;
+    // Refresh the shard iterators of idle shards this long after they were obtained (0 to disable).
+    private final long maxIteratorAgeMillis;
 
     private final String streamName;
     private final KinesisHelper helper;
 
+    // Set on the spout task (metrics are registered in open()).
+    private transient SpoutMetrics metrics;
+    // Created on the spout task, shared by its getters.
+    private transient ShardIteratorRefresher refresher;
+    // Circuit breaker of the GetShardIterator calls of the task's getters.
+    private transient CircuitBreaker iteratorBreaker;
+
     /**
      * Constructor.
      * 
@@ -39,20 +57,120 @@ class KinesisShardGetterBuilder implements IShardGetterBuilder {
             final KinesisHelper helper,
             final int maxRecordsPerCall,
             final long emptyRecordListBackoffMillis) {
+        this(streamName, helper, maxRecordsPerCall, emptyRecordListBackoffMillis, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param streamName Kinesis stream to create the getters in.
+     * @param helper Used to get the AmazonKinesisClient object (used by the getters).
+     * @param kplDeaggregationEnabled Expand KPL aggregated records into user records.
+     */
+    public KinesisShardGetterBuilder(final String streamName,
+            final KinesisHelper helper,
+            final int maxRecordsPerCall,
+            final long emptyRecordListBackoffMillis,
+            final boolean kplDeaggregationEnabled) {
+        this(streamName,
+                helper,
+                maxRecordsPerCall,
+                emptyRecordListBackoffMillis,
+                kplDeaggregationEnabled,
+                0L,
+                0,
+                false,
+                0L);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param streamName Kinesis stream to create the getters in.
+     * @param helper Used to get the AmazonKinesisClient object (used by the getters).
+     * @param kplDeaggregationEnabled Expand KPL aggregated records into user records.
+     * @param maxBufferBytes If positive, the records buffered per shard are kept within this many bytes, by adapting
+     *        the number of records fetched at once to the record size (see FetchSizer).
+     * @param fetchQueueCapacity If positive, each getter fetches records on its own thread, and queues up to this
+     *        many fetches for the spout thread (see ThreadedShardGetter).
+     * @param virtualFetchThreadsEnabled Run the fetchers on virtual threads, if the JVM supports them.
+     * @param maxIteratorAgeMillis If positive, the shard iterators of idle shards are refreshed in the background
+     *        this long after they were obtained (see ShardIteratorRefresher).
+     */
+    public KinesisShardGetterBuilder(final String streamName,
+            final KinesisHelper helper,
+            final int maxRecordsPerCall,
+            final long emptyRecordListBackoffMillis,
+            final boolean kplDeaggregationEnabled,
+            final long maxBufferBytes,
+            final int fetchQueueCapacity,
+            final boolean virtualFetchThreadsEnabled,
+            final long maxIteratorAgeMillis) {
         this.streamName = streamName;
         this.helper = helper;
         this.maxRecordsPerCall = maxRecordsPerCall;
         this.emptyRecordListBackoffMillis = emptyRecordListBackoffMillis;
+        this.kplDeaggregationEnabled = kplDeaggregationEnabled;
+        this.maxBufferBytes = maxBufferBytes;
+        this.fetchQueueCapacity = fetchQueueCapacity;
+        this.virtualFetchThreadsEnabled = virtualFetchThreadsEnabled;
+        this.maxIteratorAgeMillis = maxIteratorAgeMillis;
+    }
+
+    /**
+     * @param spoutMetrics Metrics the getters report to (per shard).
+     */
+    void setMetrics(final SpoutMetrics spoutMetrics) {
+        this.metrics = spoutMetrics;
+        spoutMetrics.registerApi(getIteratorBreaker());
+    }
+
+    private CircuitBreaker getIteratorBreaker() {
+        if (iteratorBreaker == null) {
+            iteratorBreaker = KinesisShardGetter.newIteratorBreaker();
+        }
+        return iteratorBreaker;
     }
 
     @Override
     public ImmutableList<IShardGetter> buildGetters(ImmutableList<String> shardAssignment) {
         ImmutableList.Builder<IShardGetter> builder = new ImmutableList.Builder<>();
+        final FetcherThreadFactory threadFactory =
+                (fetchQueueCapacity > 0) ? new FetcherThreadFactory(virtualFetchThreadsEnabled) : null;
+        if (refresher == null && maxIteratorAgeMillis > 0) {
+            refresher = new ShardIteratorRefresher(maxIteratorAgeMillis);
+        }
 
         for (String shard : shardAssignment) {
-            builder.add(new BufferedGetter(new KinesisShardGetter(streamName, shard, helper.getSharedkinesisClient()),
-                    maxRecordsPerCall,
-                    emptyRecordListBackoffMillis));
+            final ShardMetrics shardMetrics = (metrics == null) ? new ShardMetrics() : metrics.forShard(shard);
+            // The fetcher thread of a threaded getter reports to its own metrics (see ThreadedShardGetter).
+            final ShardMetrics fetchMetrics = (threadFactory == null) ? shardMetrics : new ShardMetrics();
+            IShardGetter getter = new KinesisShardGetter(streamName,
+                    shard,
+                    helper.getSharedkinesisClient(),
+                    fetchMetrics,
+                    refresher,
+                    getIteratorBreaker());
+            if (kplDeaggregationEnabled) {
+                getter = new DeaggregatingGetter(getter);
+            }
+            if (threadFactory == null) {
+                builder.add(new BufferedGetter(getter,
+                        maxRecordsPerCall,
+                        maxBufferBytes,
+                        emptyRecordListBackoffMillis,
+                        new BufferedGetter.TimeProvider(),
+                        shardMetrics));
+            } else {
+                builder.add(new ThreadedShardGetter(getter,
+                        maxRecordsPerCall,
+                        emptyRecordListBackoffMillis,
+                        maxBufferBytes,
+                        fetchQueueCapacity,
+                        threadFactory,
+                        fetchMetrics,
+                        shardMetrics));
+            }
         }
 
         return builder.build();
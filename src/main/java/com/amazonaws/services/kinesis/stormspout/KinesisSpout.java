@@ -16,6 +16,7 @@
 package com.amazonaws.services.kinesis.stormspout;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +34,9 @@ import backtype.storm.topology.OutputFieldsDeclarer;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer;
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer.Phase;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
 import com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager;
 import com.amazonaws.services.kinesis.stormspout.state.zookeeper.ZookeeperStateManager;
 import com.google.common.collect.ImmutableList;
@@ -45,6 +49,7 @@ import com.google.common.collect.ImmutableList;
 public class KinesisSpout implements IRichSpout, Serializable {
     private static final long serialVersionUID = 7707829996758189836L;
     private static final Logger LOG = LoggerFactory.getLogger(KinesisSpout.class);
+    private static final String METRICS_NAME = "kinesis-spout";
 
     private final InitialPositionInStream initialPosition;
 
@@ -59,6 +64,9 @@ public class KinesisSpout implements IRichSpout, Serializable {
     private transient TopologyContext context;
     private transient IKinesisSpoutStateManager stateManager;
     private transient long lastCommitTime;
+    // Batches being accumulated per shard (null when a tuple is emitted per record).
+    private transient Map<String, RecordBatcher> batchers;
+    private transient PhaseTimer phaseTimer;
 
     /**
      * Constructs an instance of the spout with just enough data to bootstrap the state from.
@@ -82,16 +90,24 @@ public class KinesisSpout implements IRichSpout, Serializable {
                 new KinesisShardGetterBuilder(config.getStreamName(),
                         helper,
                         config.getMaxRecordsPerCall(),
-                        config.getEmptyRecordListBackoffMillis());
+                        config.getEmptyRecordListBackoffMillis(),
+                        config.isKplDeaggregationEnabled(),
+                        config.getMaxBufferBytesPerShard(),
+                        config.isThreadedFetchEnabled() ? config.getFetchQueueCapacity() : 0,
+                        config.isVirtualFetchThreadsEnabled(),
+                        config.getMaxShardIteratorAgeMillis());
         this.initialPosition = config.getInitialPositionInStream();
     }
 
     /**
+     * Constructs an instance of the spout reading shards through the given getters, e.g. from an InMemoryKinesis
+     * stream.
+     * 
      * @param config Spout configuration.
      * @param shardListGetter Used to list the shards in the stream.
      * @param getterBuilder Used for creating shard getters for a task.
      */
-    KinesisSpout(final KinesisSpoutConfig config,
+    public KinesisSpout(final KinesisSpoutConfig config,
             final IShardListGetter shardListGetter,
             final IShardGetterBuilder getterBuilder) {
         this.config = config;
@@ -108,7 +124,22 @@ public class KinesisSpout implements IRichSpout, Serializable {
 
         this.context = spoutContext;
         this.collector = spoutCollector;
-        this.stateManager = new ZookeeperStateManager(config, shardListGetter, getterBuilder, initialPosition);
+        final SpoutMetrics metrics =
+                spoutContext.registerMetric(METRICS_NAME,
+                        new SpoutMetrics(config.getPhaseTimingSampleRate()),
+                        config.getMetricsTimeBucketSecs());
+        this.phaseTimer = metrics.getPhaseTimer();
+        if (getterBuilder instanceof KinesisShardGetterBuilder) {
+            ((KinesisShardGetterBuilder) getterBuilder).setMetrics(metrics);
+        }
+        if (shardListGetter instanceof KinesisHelper) {
+            ((KinesisHelper) shardListGetter).setMetrics(metrics);
+        }
+        this.stateManager =
+                new ZookeeperStateManager(config, shardListGetter, getterBuilder, initialPosition, metrics);
+        if (config.getMaxRecordsPerTuple() > 1) {
+            this.batchers = new HashMap<>();
+        }
         LOG.info(this + " open() called with topoConfig task index " + spoutContext.getThisTaskIndex()
                 + " for processing stream " + config.getStreamName());
     }
@@ -158,37 +189,16 @@ public class KinesisSpout implements IRichSpout, Serializable {
                 return;
             }
 
+            phaseTimer.beginCall();
             final IShardGetter getter = stateManager.getNextGetter();
-            String currentShardId = getter.getAssociatedShard();
-            Record rec = null;
-            boolean isRetry = false;
-            
-            if (stateManager.shouldRetry(currentShardId)) {
-                rec = stateManager.recordToRetry(currentShardId);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("ShardId " + currentShardId + ": Re-emitting record with partition key " + rec.getPartitionKey() + ", sequence number "
-                            + rec.getSequenceNumber());
-                }
-                isRetry = true;
+            final boolean emitted;
+            if (batchers != null) {
+                emitted = emitNextBatch(getter);
             } else {
-                final ImmutableList<Record> records = getter.getNext(1).getRecords();
-                if ((records != null) && (!records.isEmpty())) {
-                    rec = records.get(0);
-                }
+                emitted = emitNextRecord(getter);
             }
 
-            if (rec != null) {
-                // Copy record (ByteBuffer.duplicate()) so bolts in the same JVM don't affect the object (e.g. retries)
-                Record recordToEmit = copyRecord(rec);
-                List<Object> tuple = config.getScheme().deserialize(recordToEmit);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(this + " emitting record with seqnum " + recordToEmit.getSequenceNumber() + " from shard "
-                            + currentShardId + ".");
-                }
-
-                collector.emit(tuple, MessageIdUtil.constructMessageId(currentShardId, recordToEmit.getSequenceNumber()));
-                stateManager.emit(currentShardId, recordToEmit, isRetry);
-            } else {
+            if (!emitted) {
                 // Sleep here for a bit if there were no records to emit.
                 try {
                     Thread.sleep(emptyRecordListSleepTimeMillis);
@@ -209,6 +219,150 @@ public class KinesisSpout implements IRichSpout, Serializable {
         }
     }
 
+    /**
+     * Emits the next record (or record to retry) of the shard as a tuple.
+     * 
+     * @param getter Getter of the shard.
+     * @return true if a tuple was emitted.
+     */
+    private boolean emitNextRecord(final IShardGetter getter) {
+        String currentShardId = getter.getAssociatedShard();
+        Record rec = null;
+        boolean isRetry = false;
+        
+        if (stateManager.shouldRetry(currentShardId)) {
+            rec = stateManager.recordToRetry(currentShardId);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("ShardId " + currentShardId + ": Re-emitting record with partition key " + rec.getPartitionKey() + ", sequence number "
+                        + ExtendedSequenceNumber.keyOf(rec));
+            }
+            isRetry = true;
+        } else {
+            final long fetchStart = phaseTimer.start();
+            final Records fetched = getter.getNext(1);
+            phaseTimer.stop(Phase.FETCH, fetchStart);
+            final ImmutableList<Record> records = fetched.getRecords();
+            if ((records != null) && (!records.isEmpty())) {
+                rec = records.get(0);
+                if (fetched.isAtTip()) {
+                    stateManager.caughtUp(currentShardId);
+                }
+            } else if (fetched.isEndOfShard()) {
+                stateManager.shardEnded(currentShardId);
+            } else {
+                stateManager.caughtUp(currentShardId);
+            }
+        }
+
+        if (rec != null) {
+            final Record recordToEmit;
+            final List<Object> tuple;
+            final long deserializeStart = phaseTimer.start();
+            if (config.getPayloadScheme() != null) {
+                // Read-only view, so bolts in the same JVM can't affect the record data or position (e.g. retries)
+                recordToEmit = rec;
+                tuple = config.getPayloadScheme().deserialize(rec.getPartitionKey(),
+                        ExtendedSequenceNumber.keyOf(rec), rec.getData().asReadOnlyBuffer());
+            } else {
+                // Copy record (ByteBuffer.duplicate()) so bolts in the same JVM don't affect the object
+                // (e.g. retries)
+                recordToEmit = copyRecord(rec);
+                tuple = config.getScheme().deserialize(recordToEmit);
+            }
+            phaseTimer.stop(Phase.DESERIALIZE, deserializeStart);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this + " emitting record with seqnum " + ExtendedSequenceNumber.keyOf(recordToEmit)
+                        + " from shard " + currentShardId + ".");
+            }
+
+            final long emitStart = phaseTimer.start();
+            emitTuple(tuple, currentShardId, ExtendedSequenceNumber.keyOf(recordToEmit));
+            phaseTimer.stop(Phase.EMIT, emitStart);
+            final long trackStart = phaseTimer.start();
+            stateManager.emit(currentShardId, recordToEmit, isRetry);
+            phaseTimer.stop(Phase.TRACK, trackStart);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Emits the next batch (or batch to retry) of contiguous records of the shard as a single tuple.
+     * 
+     * @param getter Getter of the shard.
+     * @return true if a tuple was emitted.
+     */
+    private boolean emitNextBatch(final IShardGetter getter) {
+        final String currentShardId = getter.getAssociatedShard();
+        ImmutableList<Record> batch = null;
+        boolean isRetry = false;
+
+        if (stateManager.shouldRetry(currentShardId)) {
+            batch = stateManager.batchToRetry(currentShardId);
+            isRetry = true;
+        } else {
+            RecordBatcher batcher = batchers.get(currentShardId);
+            if (batcher == null) {
+                batcher = new RecordBatcher(config.getMaxRecordsPerTuple(),
+                        config.getMaxBytesPerTuple(),
+                        config.getTupleLingerMillis());
+                batchers.put(currentShardId, batcher);
+            }
+            final long fetchStart = phaseTimer.start();
+            batch = batcher.next(getter, System.currentTimeMillis());
+            phaseTimer.stop(Phase.FETCH, fetchStart);
+            if (batch == null && batcher.isEndOfShard()) {
+                // The shard state is dropped once its records are acked: start a new batcher if it is read again.
+                batchers.remove(currentShardId);
+                stateManager.shardEnded(currentShardId);
+            } else if (batcher.isLastFetchAtTip()) {
+                stateManager.caughtUp(currentShardId);
+            }
+        }
+
+        if (batch == null || batch.isEmpty()) {
+            return false;
+        }
+
+        final ImmutableList.Builder<Record> copies = new ImmutableList.Builder<>();
+        for (Record rec : batch) {
+            copies.add(copyRecord(rec));
+        }
+        final ImmutableList<Record> batchToEmit = copies.build();
+        final String lastSequenceNumber = ExtendedSequenceNumber.keyOf(batchToEmit.get(batchToEmit.size() - 1));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(this + " emitting " + batchToEmit.size() + " records up to seqnum " + lastSequenceNumber
+                    + " from shard " + currentShardId + (isRetry ? " (retry)." : "."));
+        }
+
+        final long deserializeStart = phaseTimer.start();
+        final List<Object> tuple = config.getBatchScheme().deserialize(currentShardId, batchToEmit);
+        phaseTimer.stop(Phase.DESERIALIZE, deserializeStart);
+        final long emitStart = phaseTimer.start();
+        emitTuple(tuple, currentShardId, lastSequenceNumber);
+        phaseTimer.stop(Phase.EMIT, emitStart);
+        final long trackStart = phaseTimer.start();
+        stateManager.emitBatch(currentShardId, batchToEmit, isRetry);
+        phaseTimer.stop(Phase.TRACK, trackStart);
+        return true;
+    }
+
+    /**
+     * Emits a tuple, anchored to the message ID of its (last) record unless records are delivered at most once.
+     * 
+     * @param tuple Tuple to emit.
+     * @param shardId Shard the records of the tuple come from.
+     * @param sequenceNumber Sequence number of the (last) record of the tuple.
+     */
+    private void emitTuple(final List<Object> tuple, final String shardId, final String sequenceNumber) {
+        if (config.isAtMostOnceEnabled()) {
+            // Unanchored: Storm doesn't track the tuple, and never calls ack() or fail() for it.
+            collector.emit(tuple);
+        } else {
+            collector.emit(tuple, MessageIdUtil.constructMessageId(shardId, sequenceNumber));
+        }
+    }
+
     /**
      * Creates a copy of the record so we don't get interference from bolts that execute in the same JVM.
      * We invoke ByteBuffer.duplicate() so the ByteBuffer state is decoupled.
@@ -217,6 +371,10 @@ public class KinesisSpout implements IRichSpout, Serializable {
      * @return Copied record.
      */
     private Record copyRecord(Record record) {
+        if (record instanceof UserRecord) {
+            return new UserRecord(record.getPartitionKey(), record.getSequenceNumber(),
+                    ((UserRecord) record).getSubSequenceNumber(), record.getData().duplicate());
+        }
         Record duplicate = new Record();
         duplicate.setPartitionKey(record.getPartitionKey());
         duplicate.setSequenceNumber(record.getSequenceNumber());
@@ -250,12 +408,24 @@ public class KinesisSpout implements IRichSpout, Serializable {
 
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
-        declarer.declare(config.getScheme().getOutputFields());
+        if (config.getMaxRecordsPerTuple() > 1) {
+            declarer.declare(config.getBatchScheme().getOutputFields());
+        } else if (config.getPayloadScheme() != null) {
+            declarer.declare(config.getPayloadScheme().getOutputFields());
+        } else {
+            declarer.declare(config.getScheme().getOutputFields());
+        }
     }
 
+    /**
+     * Registers compact Kryo serializers for the types emitted in tuples (Kinesis records, ByteBuffer payloads), so
+     * that Storm doesn't fall back on Java serialization when tuples are sent to other workers.
+     */
     @Override
     public Map<String, Object> getComponentConfiguration() {
-        return null;
+        final Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_KRYO_REGISTER, SerializationHelper.getKryoRegistrations());
+        return conf;
     }
 
     @Override
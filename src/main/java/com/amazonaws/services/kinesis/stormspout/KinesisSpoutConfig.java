@@ -28,11 +28,23 @@ public class KinesisSpoutConfig implements Serializable {
 
     private final String streamName;
     private int maxRecordsPerCall = 10000;
+    // Records buffered per shard are kept within this many bytes (0 to only bound them by maxRecordsPerCall).
+    private long maxBufferBytesPerShard = 0L;
     private InitialPositionInStream initialPositionInStream = InitialPositionInStream.LATEST;
     private int checkpointIntervalMillis = 60000;
     // Backoff time between Kinesis GetRecords API calls (per shard) when a call returns an empty list of records.
     private long emptyRecordListBackoffMillis = 500L;
     private int recordRetryLimit = 3;
+    private long retryBackoffMillis = 0L;
+    private long maxRetryBackoffMillis = 60000L;
+    private long maxRecordAgeMillis = 0L;
+    private IQuarantineSink quarantineSink = new LoggingQuarantineSink();
+    // Period of the (per shard) metrics reported to Storm.
+    private int metricsTimeBucketSecs = 60;
+    // Time one nextTuple() call in phaseTimingSampleRate (0 disables phase timing).
+    private int phaseTimingSampleRate = 0;
+    // When enabled, in-flight records are tracked as ranges rather than with a node and map entry per record.
+    private boolean rangeInflightTrackingEnabled = false;
     private Regions region = Regions.US_EAST_1;
 
     private final String zookeeperConnectionString;
@@ -40,6 +52,29 @@ public class KinesisSpoutConfig implements Serializable {
     private int zookeeperSessionTimeoutMillis = 10000;
 
     private IKinesisRecordScheme scheme = new DefaultKinesisRecordScheme();
+    // When set, used instead of scheme.
+    private IKinesisPayloadScheme payloadScheme = null;
+    // Used instead of scheme and payloadScheme when more than one record is emitted per tuple.
+    private IKinesisBatchScheme batchScheme = new DefaultKinesisBatchScheme();
+    private int maxRecordsPerTuple = 1;
+    private long maxBytesPerTuple = 1024L * 1024L;
+    private long tupleLingerMillis = 0L;
+    private IShardAssignmentStrategy shardAssignmentStrategy = new ModuloShardAssignmentStrategy();
+    // When enabled, tasks hold ZooKeeper leases on shards and steal leases from tasks that fall behind.
+    private boolean shardLeasesEnabled = false;
+    private long leaseStealLagMillis = 120000L;
+    // One task lists the shards in the stream (DescribeStream) this often, and publishes them to the other tasks.
+    private long shardDiscoveryIntervalMillis = 60000L;
+    // When enabled, records aggregated by the Kinesis Producer Library are emitted as individual user records.
+    private boolean kplDeaggregationEnabled = false;
+    // When enabled, each shard is fetched on its own thread, which queues up to fetchQueueCapacity GetRecords results.
+    private boolean threadedFetchEnabled = false;
+    private int fetchQueueCapacity = 4;
+    private boolean virtualFetchThreadsEnabled = false;
+    // Shard iterators of idle shards are refreshed this long after they were obtained (they expire after 5 minutes).
+    private long maxShardIteratorAgeMillis = 240000L;
+    // When enabled, tuples are emitted unanchored and the checkpoint follows the last emitted record.
+    private boolean atMostOnceEnabled = false;
 
     // Gets set by the spout later on.
     private String topologyName = "UNNAMED_TOPOLOGY";
@@ -116,6 +151,285 @@ public class KinesisSpoutConfig implements Serializable {
         return this;
     }
 
+    /**
+     * @return Scheme used to convert the payload of a Kinesis record to a tuple (null if the record scheme is used).
+     */
+    public IKinesisPayloadScheme getPayloadScheme() {
+        return payloadScheme;
+    }
+
+    /**
+     * @param payloadScheme Scheme used to convert the payload of a Kinesis record to a tuple. Takes precedence over
+     *        the record scheme, and avoids copying each record before emitting it (e.g. DefaultKinesisPayloadScheme).
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withKinesisPayloadScheme(IKinesisPayloadScheme payloadScheme) {
+        checkValueIsNotNull(payloadScheme, "payloadScheme");
+        this.payloadScheme = payloadScheme;
+        return this;
+    }
+
+    /**
+     * @return Strategy used to assign shards to spout tasks.
+     */
+    public IShardAssignmentStrategy getShardAssignmentStrategy() {
+        return shardAssignmentStrategy;
+    }
+
+    /**
+     * @param shardAssignmentStrategy Strategy used to assign shards to spout tasks (e.g.
+     *        RendezvousShardAssignmentStrategy to minimize shard movement when tasks or shards are added).
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withShardAssignmentStrategy(IShardAssignmentStrategy shardAssignmentStrategy) {
+        checkValueIsNotNull(shardAssignmentStrategy, "shardAssignmentStrategy");
+        this.shardAssignmentStrategy = shardAssignmentStrategy;
+        return this;
+    }
+
+    /**
+     * @return true if shard ownership is managed with ZooKeeper leases (see withShardLeasesEnabled).
+     */
+    public boolean isShardLeasesEnabled() {
+        return shardLeasesEnabled;
+    }
+
+    /**
+     * @param shardLeasesEnabled If true, tasks acquire ephemeral leases on shards (preferring the shards the
+     *        shardAssignmentStrategy gives them) instead of using a static assignment, and tasks that are caught up
+     *        steal leases from tasks that are falling behind. Ownership then adapts to slow workers without a
+     *        rebalance.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withShardLeasesEnabled(boolean shardLeasesEnabled) {
+        this.shardLeasesEnabled = shardLeasesEnabled;
+        return this;
+    }
+
+    /**
+     * @return A task is considered behind on a shard if it hasn't caught up with the tip of the shard in this long.
+     */
+    public long getLeaseStealLagMillis() {
+        return leaseStealLagMillis;
+    }
+
+    /**
+     * @param leaseStealLagMillis A task is considered behind on a shard if it hasn't caught up with the tip of the
+     *        shard in this long. Leases of such shards can be stolen (once they have been held this long). Only used
+     *        when shard leases are enabled.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withLeaseStealLagMillis(long leaseStealLagMillis) {
+        if (leaseStealLagMillis <= 0) {
+            throw new IllegalArgumentException("Value of leaseStealLagMillis must be positive, but was "
+                    + leaseStealLagMillis);
+        }
+        this.leaseStealLagMillis = leaseStealLagMillis;
+        return this;
+    }
+
+    /**
+     * @return Time between two listings of the shards in the stream by the shard discovery leader.
+     */
+    public long getShardDiscoveryIntervalMillis() {
+        return shardDiscoveryIntervalMillis;
+    }
+
+    /**
+     * @param shardDiscoveryIntervalMillis A single (elected) task lists the shards in the stream this often to detect
+     *        new shards, and publishes them in ZooKeeper for the other tasks.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withShardDiscoveryIntervalMillis(long shardDiscoveryIntervalMillis) {
+        if (shardDiscoveryIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Value of shardDiscoveryIntervalMillis must be positive, but was "
+                    + shardDiscoveryIntervalMillis);
+        }
+        this.shardDiscoveryIntervalMillis = shardDiscoveryIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @return scheme used to convert a batch of Kinesis records into a tuple (when maxRecordsPerTuple > 1).
+     */
+    public IKinesisBatchScheme getBatchScheme() {
+        return batchScheme;
+    }
+
+    /**
+     * @param batchScheme Scheme used to convert a batch of Kinesis records into a tuple, when more than one record
+     *        is emitted per tuple (see withMaxRecordsPerTuple).
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withKinesisBatchScheme(IKinesisBatchScheme batchScheme) {
+        checkValueIsNotNull(batchScheme, "batchScheme");
+        this.batchScheme = batchScheme;
+        return this;
+    }
+
+    /**
+     * @return max number of records emitted in a single tuple.
+     */
+    public int getMaxRecordsPerTuple() {
+        return maxRecordsPerTuple;
+    }
+
+    /**
+     * @param maxRecordsPerTuple Max number of contiguous records (from one shard) emitted in a single tuple, using
+     *        the batch scheme. The batch has a single message ID, and is acked, failed and retried as a whole.
+     *        Defaults to 1 (one tuple per record, using the record or payload scheme).
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMaxRecordsPerTuple(int maxRecordsPerTuple) {
+        if (maxRecordsPerTuple <= 0) {
+            throw new IllegalArgumentException("Value of maxRecordsPerTuple must be positive, but was "
+                    + maxRecordsPerTuple);
+        }
+        this.maxRecordsPerTuple = maxRecordsPerTuple;
+        return this;
+    }
+
+    /**
+     * @return max number of data bytes emitted in a single tuple.
+     */
+    public long getMaxBytesPerTuple() {
+        return maxBytesPerTuple;
+    }
+
+    /**
+     * @param maxBytesPerTuple Max number of data bytes in a batch of records emitted in a single tuple (a record
+     *        larger than this is emitted on its own). Only used when maxRecordsPerTuple > 1.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMaxBytesPerTuple(long maxBytesPerTuple) {
+        if (maxBytesPerTuple <= 0) {
+            throw new IllegalArgumentException("Value of maxBytesPerTuple must be positive, but was "
+                    + maxBytesPerTuple);
+        }
+        this.maxBytesPerTuple = maxBytesPerTuple;
+        return this;
+    }
+
+    /**
+     * @return how long an incomplete batch of records waits for more records before being emitted.
+     */
+    public long getTupleLingerMillis() {
+        return tupleLingerMillis;
+    }
+
+    /**
+     * @param tupleLingerMillis How long an incomplete batch of records waits for more records (from its shard)
+     *        before being emitted. With 0 (default), a batch is emitted as soon as no more records are available.
+     *        Only used when maxRecordsPerTuple > 1.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withTupleLingerMillis(long tupleLingerMillis) {
+        if (tupleLingerMillis < 0) {
+            throw new IllegalArgumentException("Value of tupleLingerMillis must be non-negative, but was "
+                    + tupleLingerMillis);
+        }
+        this.tupleLingerMillis = tupleLingerMillis;
+        return this;
+    }
+
+    /**
+     * @return period (in seconds) of the metrics reported by the spout.
+     */
+    public int getMetricsTimeBucketSecs() {
+        return metricsTimeBucketSecs;
+    }
+
+    /**
+     * @param metricsTimeBucketSecs Period (in seconds) of the per-shard metrics the spout reports to Storm (see
+     *        SpoutMetrics), e.g. to the metrics consumers registered in the topology configuration.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMetricsTimeBucketSecs(int metricsTimeBucketSecs) {
+        if (metricsTimeBucketSecs <= 0) {
+            throw new IllegalArgumentException("Value of metricsTimeBucketSecs must be positive, but was "
+                    + metricsTimeBucketSecs);
+        }
+        this.metricsTimeBucketSecs = metricsTimeBucketSecs;
+        return this;
+    }
+
+    /**
+     * @return sample rate of the nextTuple() phase timer (0 if phase timing is disabled).
+     */
+    public int getPhaseTimingSampleRate() {
+        return phaseTimingSampleRate;
+    }
+
+    /**
+     * @param phaseTimingSampleRate Time the phases of one nextTuple() call in phaseTimingSampleRate (fetch,
+     *        deserialize, emit, track and commit), reported as "phase/..." spout metrics. 0 disables phase timing.
+     *        Can be overridden at runtime by setting the phaseTimingSampleRate node (under the ZooKeeper path of the
+     *        topology and stream) to a non-negative integer; the configured value applies again once it is deleted.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withPhaseTimingSampleRate(int phaseTimingSampleRate) {
+        checkValueIsNotNegative(phaseTimingSampleRate, "phaseTimingSampleRate");
+        this.phaseTimingSampleRate = phaseTimingSampleRate;
+        return this;
+    }
+
+    /**
+     * @return true if in-flight records are tracked as ranges (see withRangeInflightTrackingEnabled).
+     */
+    public boolean isRangeInflightTrackingEnabled() {
+        return rangeInflightTrackingEnabled;
+    }
+
+    /**
+     * @param rangeInflightTrackingEnabled Track the in-flight records of a shard as a contiguous range (ring buffer
+     *        with an acked flag per record, plus retry state for failed records only) instead of a linked list node
+     *        and a map entry per record. Reduces the memory and allocations per emitted record.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withRangeInflightTrackingEnabled(boolean rangeInflightTrackingEnabled) {
+        this.rangeInflightTrackingEnabled = rangeInflightTrackingEnabled;
+        return this;
+    }
+
+    /**
+     * @return true if records aggregated by the Kinesis Producer Library are expanded into user records.
+     */
+    public boolean isKplDeaggregationEnabled() {
+        return kplDeaggregationEnabled;
+    }
+
+    /**
+     * @param kplDeaggregationEnabled Expand records aggregated by the Kinesis Producer Library into user records.
+     *        Each user record is emitted (and acked, retried, checkpointed) on its own, and is identified by
+     *        "sequenceNumber.subSequenceNumber" (see ExtendedSequenceNumber). Records that are not aggregated are
+     *        emitted as is.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withKplDeaggregationEnabled(boolean kplDeaggregationEnabled) {
+        this.kplDeaggregationEnabled = kplDeaggregationEnabled;
+        return this;
+    }
+
+    /**
+     * @return true if records are delivered at most once (see withAtMostOnceEnabled).
+     */
+    public boolean isAtMostOnceEnabled() {
+        return atMostOnceEnabled;
+    }
+
+    /**
+     * @param atMostOnceEnabled Emit tuples without a message ID (unanchored), and checkpoint the last emitted record
+     *        instead of the last acked one. Storm doesn't track the tuples (no acker traffic, no ack or fail calls), so
+     *        records are neither retried nor quarantined, and the records in flight when a task dies are lost. Note
+     *        that topology.max.spout.pending doesn't limit unanchored tuples. For streams where losing records is
+     *        acceptable (e.g. metrics), in exchange for throughput.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withAtMostOnceEnabled(boolean atMostOnceEnabled) {
+        this.atMostOnceEnabled = atMostOnceEnabled;
+        return this;
+    }
+
     /**
      * @return Prefix used when storing spout state in Zookeeper.
      */
@@ -227,6 +541,30 @@ public class KinesisSpoutConfig implements Serializable {
         return this;
     }
 
+    /**
+     * @return Byte budget of the records buffered per shard (0 if they are only bounded by maxRecordsPerCall).
+     */
+    public long getMaxBufferBytesPerShard() {
+        return maxBufferBytesPerShard;
+    }
+
+    /**
+     * @param maxBufferBytesPerShard Keep the records fetched from a shard and not yet emitted within this many bytes
+     *        (e.g. 2 MB, a second of the read throughput of a shard). The number of records requested per GetRecords
+     *        call is adapted to the average size of the records fetched and to the rate they are emitted, up to
+     *        maxRecordsPerCall. With threaded fetch, the budget covers the queued fetches. With 0 (the default), each
+     *        call requests maxRecordsPerCall records (up to 10 MB per shard).
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMaxBufferBytesPerShard(long maxBufferBytesPerShard) {
+        if (maxBufferBytesPerShard < 0) {
+            throw new IllegalArgumentException("Value of maxBufferBytesPerShard must be non-negative, but was "
+                    + maxBufferBytesPerShard);
+        }
+        this.maxBufferBytesPerShard = maxBufferBytesPerShard;
+        return this;
+    }
+
     /**
      * @return recordRetryLimit Max retry attempts for a record (upon failure).
      */
@@ -244,6 +582,91 @@ public class KinesisSpoutConfig implements Serializable {
         return this;
     }
 
+    /**
+     * @return backoff of the first retry of a failed record (0 if failed records are retried right away).
+     */
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * @param retryBackoffMillis Wait this long before retrying a failed record the first time. The backoff doubles
+     *        with each retry of the record (up to maxRetryBackoffMillis), with jitter: the actual backoff is drawn at
+     *        random from the upper half of that. With 0 (default), failed records are retried right away.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withRetryBackoffMillis(long retryBackoffMillis) {
+        if (retryBackoffMillis < 0) {
+            throw new IllegalArgumentException("Value of retryBackoffMillis must be non-negative, but was "
+                    + retryBackoffMillis);
+        }
+        this.retryBackoffMillis = retryBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @return max backoff of a retry of a failed record.
+     */
+    public long getMaxRetryBackoffMillis() {
+        return maxRetryBackoffMillis;
+    }
+
+    /**
+     * @param maxRetryBackoffMillis Max backoff of a retry of a failed record (default 60 seconds). Only used when
+     *        retryBackoffMillis > 0.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMaxRetryBackoffMillis(long maxRetryBackoffMillis) {
+        if (maxRetryBackoffMillis <= 0) {
+            throw new IllegalArgumentException("Value of maxRetryBackoffMillis must be positive, but was "
+                    + maxRetryBackoffMillis);
+        }
+        this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @return max time a record can be pending (emitted and neither acked nor failed) before it is quarantined (0 if
+     *         disabled).
+     */
+    public long getMaxRecordAgeMillis() {
+        return maxRecordAgeMillis;
+    }
+
+    /**
+     * @param maxRecordAgeMillis Quarantine a record holding back the checkpoint of its shard if it was emitted this
+     *        long ago (checked on each checkpoint) and was neither acked nor failed since, so that the checkpoint
+     *        advances past it. This should be longer than the message timeout of the topology plus the max retry
+     *        backoff. With 0 (default), records are only quarantined when they exhaust their retries.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMaxRecordAgeMillis(long maxRecordAgeMillis) {
+        if (maxRecordAgeMillis < 0) {
+            throw new IllegalArgumentException("Value of maxRecordAgeMillis must be non-negative, but was "
+                    + maxRecordAgeMillis);
+        }
+        this.maxRecordAgeMillis = maxRecordAgeMillis;
+        return this;
+    }
+
+    /**
+     * @return sink receiving the records the spout gives up on.
+     */
+    public IQuarantineSink getQuarantineSink() {
+        return quarantineSink;
+    }
+
+    /**
+     * @param quarantineSink Receives the records that exhausted their retries or exceeded the max record age (default
+     *        LoggingQuarantineSink).
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withQuarantineSink(IQuarantineSink quarantineSink) {
+        checkValueIsNotNull(quarantineSink, "quarantineSink");
+        this.quarantineSink = quarantineSink;
+        return this;
+    }
+
     /**
      * @return the region
      */
@@ -274,4 +697,83 @@ public class KinesisSpoutConfig implements Serializable {
         this.emptyRecordListBackoffMillis = emptyRecordListBackoffMillis;
         return this;
     }
+
+    /**
+     * @return true if each shard is fetched on its own thread (see withThreadedFetchEnabled).
+     */
+    public boolean isThreadedFetchEnabled() {
+        return threadedFetchEnabled;
+    }
+
+    /**
+     * @param threadedFetchEnabled Fetch the records of each shard on a dedicated thread, which makes the GetRecords
+     *        calls (backing off after empty results, and refreshing expired shard iterators) and queues the results
+     *        for the spout thread. nextTuple() then only takes records from the queues, and doesn't wait for
+     *        Kinesis.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withThreadedFetchEnabled(boolean threadedFetchEnabled) {
+        this.threadedFetchEnabled = threadedFetchEnabled;
+        return this;
+    }
+
+    /**
+     * @return Max number of GetRecords results queued per shard by its fetcher thread.
+     */
+    public int getFetchQueueCapacity() {
+        return fetchQueueCapacity;
+    }
+
+    /**
+     * @param fetchQueueCapacity Max number of GetRecords results (up to maxRecordsPerCall records each) queued per
+     *        shard by its fetcher thread, when threaded fetch is enabled. The fetcher waits while the queue is full.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withFetchQueueCapacity(int fetchQueueCapacity) {
+        checkValueIsPositive(fetchQueueCapacity, "fetchQueueCapacity");
+        this.fetchQueueCapacity = fetchQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return true if fetcher threads are virtual threads (when supported by the JVM).
+     */
+    public boolean isVirtualFetchThreadsEnabled() {
+        return virtualFetchThreadsEnabled;
+    }
+
+    /**
+     * @param virtualFetchThreadsEnabled Run the fetcher threads (see withThreadedFetchEnabled) on virtual threads, so
+     *        that a worker reading hundreds of shards doesn't need hundreds of platform threads. Requires Java 21 or
+     *        later; platform threads are used on older JVMs.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withVirtualFetchThreadsEnabled(boolean virtualFetchThreadsEnabled) {
+        this.virtualFetchThreadsEnabled = virtualFetchThreadsEnabled;
+        return this;
+    }
+
+    /**
+     * @return Age at which the shard iterators of idle shards are refreshed (0 if they are not refreshed).
+     */
+    public long getMaxShardIteratorAgeMillis() {
+        return maxShardIteratorAgeMillis;
+    }
+
+    /**
+     * @param maxShardIteratorAgeMillis Refresh the shard iterator of a shard that wasn't read for this long (e.g.
+     *        because of backpressure), in the background, from the last record read. Kinesis shard iterators expire
+     *        after 5 minutes, and a GetRecords call with an expired iterator has to seek again before it can read.
+     *        Iterators are checked every maxShardIteratorAgeMillis / 8, so this should be well under 5 minutes
+     *        (default: 4 minutes). With 0, iterators are only replaced when they expire.
+     * @return KinesisSpoutConfig
+     */
+    public KinesisSpoutConfig withMaxShardIteratorAgeMillis(long maxShardIteratorAgeMillis) {
+        if (maxShardIteratorAgeMillis < 0) {
+            throw new IllegalArgumentException("Value of maxShardIteratorAgeMillis must be non-negative, but was "
+                    + maxShardIteratorAgeMillis);
+        }
+        this.maxShardIteratorAgeMillis = maxShardIteratorAgeMillis;
+        return this;
+    }
 }
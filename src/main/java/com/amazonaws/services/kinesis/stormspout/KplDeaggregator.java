@@ -0,0 +1,267 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Expands Kinesis records aggregated by the Kinesis Producer Library (KPL) into user records.
+ * 
+ * An aggregated record is laid out as: 4 magic bytes, a protobuf encoded AggregatedRecord message, and the 16 byte
+ * MD5 digest of the protobuf bytes. The message is decoded by hand (only the fields needed to rebuild the user
+ * records are read), so no protobuf runtime is required. User record data are views over the aggregated record's
+ * data, no payload bytes are copied.
+ * 
+ * Records that aren't aggregated (or fail validation) are returned as is.
+ */
+class KplDeaggregator {
+    private static final Logger LOG = LoggerFactory.getLogger(KplDeaggregator.class);
+
+    static final byte[] MAGIC = new byte[] { (byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2 };
+    static final int DIGEST_LENGTH = 16;
+
+    // AggregatedRecord fields
+    private static final int PARTITION_KEY_TABLE = 1;
+    private static final int RECORDS = 3;
+    // Record fields
+    private static final int PARTITION_KEY_INDEX = 1;
+    private static final int DATA = 3;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    private KplDeaggregator() {
+    }
+
+    /**
+     * @param records Kinesis records.
+     * @return records with every aggregated record replaced by its user records (in order).
+     */
+    static ImmutableList<Record> deaggregate(final List<Record> records) {
+        final ImmutableList.Builder<Record> builder = new ImmutableList.Builder<>();
+        for (Record rec : records) {
+            builder.addAll(deaggregate(rec));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param record Kinesis record.
+     * @return the user records of the record if it is a valid aggregated record, the record itself otherwise.
+     */
+    static List<Record> deaggregate(final Record record) {
+        final ByteBuffer data = record.getData();
+        if (data == null || data.remaining() < MAGIC.length + DIGEST_LENGTH || !hasMagic(data)) {
+            return ImmutableList.of(record);
+        }
+
+        final byte[] array;
+        final int start;
+        if (data.hasArray()) {
+            array = data.array();
+            start = data.arrayOffset() + data.position();
+        } else {
+            array = new byte[data.remaining()];
+            data.duplicate().get(array);
+            start = 0;
+        }
+        final int messageStart = start + MAGIC.length;
+        final int messageEnd = start + data.remaining() - DIGEST_LENGTH;
+
+        if (!digestMatches(array, messageStart, messageEnd)) {
+            return ImmutableList.of(record);
+        }
+
+        try {
+            return parse(record, array, messageStart, messageEnd);
+        } catch (IllegalStateException e) {
+            LOG.warn("Record " + record.getSequenceNumber() + " looks aggregated but could not be decoded ("
+                    + e.getMessage() + "), emitting it as is.");
+            return ImmutableList.of(record);
+        }
+    }
+
+    private static boolean hasMagic(final ByteBuffer data) {
+        final int position = data.position();
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(position + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean digestMatches(final byte[] array, final int messageStart, final int messageEnd) {
+        final MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+        md5.update(array, messageStart, messageEnd - messageStart);
+        final byte[] digest = md5.digest();
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            if (digest[i] != array[messageEnd + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Record> parse(final Record record, final byte[] array, final int start, final int end) {
+        final List<String> partitionKeys = new ArrayList<>();
+        // {partition key index, data offset, data length} per user record, resolved once the key table is read.
+        final List<long[]> entries = new ArrayList<>();
+
+        final Reader reader = new Reader(array, start, end);
+        while (reader.hasMore()) {
+            final long tag = reader.readVarint();
+            final int field = (int) (tag >>> 3);
+            final int wireType = (int) (tag & 0x7);
+            if (field == PARTITION_KEY_TABLE && wireType == WIRE_LENGTH_DELIMITED) {
+                final int length = reader.readLength();
+                partitionKeys.add(new String(array, reader.position, length, Charsets.UTF_8));
+                reader.skip(length);
+            } else if (field == RECORDS && wireType == WIRE_LENGTH_DELIMITED) {
+                final int length = reader.readLength();
+                entries.add(parseUserRecord(array, reader.position, reader.position + length));
+                reader.skip(length);
+            } else {
+                reader.skipField(wireType);
+            }
+        }
+
+        final List<Record> userRecords = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final long[] entry = entries.get(i);
+            if (entry[0] < 0 || entry[0] >= partitionKeys.size()) {
+                throw new IllegalStateException("invalid partition key index " + entry[0]);
+            }
+            final ByteBuffer userData = ByteBuffer.wrap(array, (int) entry[1], (int) entry[2]).slice();
+            userRecords.add(new UserRecord(partitionKeys.get((int) entry[0]), record.getSequenceNumber(), i,
+                    userData));
+        }
+        return userRecords;
+    }
+
+    private static long[] parseUserRecord(final byte[] array, final int start, final int end) {
+        long partitionKeyIndex = -1;
+        int dataOffset = -1;
+        int dataLength = 0;
+
+        final Reader reader = new Reader(array, start, end);
+        while (reader.hasMore()) {
+            final long tag = reader.readVarint();
+            final int field = (int) (tag >>> 3);
+            final int wireType = (int) (tag & 0x7);
+            if (field == PARTITION_KEY_INDEX && wireType == WIRE_VARINT) {
+                partitionKeyIndex = reader.readVarint();
+            } else if (field == DATA && wireType == WIRE_LENGTH_DELIMITED) {
+                dataLength = reader.readLength();
+                dataOffset = reader.position;
+                reader.skip(dataLength);
+            } else {
+                reader.skipField(wireType);
+            }
+        }
+
+        if (dataOffset < 0) {
+            throw new IllegalStateException("user record without data");
+        }
+        return new long[] { partitionKeyIndex, dataOffset, dataLength };
+    }
+
+    /**
+     * Minimal protobuf wire format reader over a byte array range.
+     */
+    private static final class Reader {
+        private final byte[] array;
+        private final int end;
+        private int position;
+
+        Reader(final byte[] array, final int start, final int end) {
+            this.array = array;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= end) {
+                    throw new IllegalStateException("truncated varint");
+                }
+                final byte b = array[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("malformed varint");
+        }
+
+        int readLength() {
+            final long length = readVarint();
+            if (length < 0 || length > end - position) {
+                throw new IllegalStateException("invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        void skip(final int length) {
+            if (length > end - position) {
+                throw new IllegalStateException("truncated field");
+            }
+            position += length;
+        }
+
+        void skipField(final int wireType) {
+            switch (wireType) {
+                case WIRE_VARINT:
+                    readVarint();
+                    break;
+                case WIRE_FIXED64:
+                    skip(8);
+                    break;
+                case WIRE_LENGTH_DELIMITED:
+                    skip(readLength());
+                    break;
+                case WIRE_FIXED32:
+                    skip(4);
+                    break;
+                default:
+                    throw new IllegalStateException("unsupported wire type " + wireType);
+            }
+        }
+    }
+}
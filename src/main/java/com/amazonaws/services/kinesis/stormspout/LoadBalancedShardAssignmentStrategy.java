@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Bin-packs shards across tasks based on their observed load, so that tasks handle a similar amount of traffic
+ * rather than a similar number of shards. Shards are placed in decreasing order of load, each on the task with the
+ * lowest total load so far (longest processing time first).
+ * 
+ * The load of a shard is its bytes/s plus its records/s multiplied by a per record overhead (accounts for the per
+ * tuple cost of small records). Shards without measurements (e.g. new shards) are assumed to carry the average load.
+ * Loads are snapshotted when the shard list is initialized in ZooKeeper, so assignments are recomputed on rebalance.
+ */
+public class LoadBalancedShardAssignmentStrategy implements IShardAssignmentStrategy {
+    private static final long serialVersionUID = -5279113480327473542L;
+
+    private static final double DEFAULT_RECORD_OVERHEAD_BYTES = 1024.0;
+
+    private final double recordOverheadBytes;
+
+    /**
+     * Constructor (uses a per record overhead of 1 KB).
+     */
+    public LoadBalancedShardAssignmentStrategy() {
+        this(DEFAULT_RECORD_OVERHEAD_BYTES);
+    }
+
+    /**
+     * @param recordOverheadBytes Cost of processing a record, in bytes, on top of its payload size.
+     */
+    public LoadBalancedShardAssignmentStrategy(double recordOverheadBytes) {
+        if (recordOverheadBytes < 0) {
+            throw new IllegalArgumentException("Value of recordOverheadBytes must be >= 0, but was "
+                    + recordOverheadBytes);
+        }
+        this.recordOverheadBytes = recordOverheadBytes;
+    }
+
+    @Override
+    public boolean usesShardLoads() {
+        return true;
+    }
+
+    @Override
+    public ImmutableList<String> getShardAssignment(ImmutableList<String> shardList,
+            ImmutableMap<String, ShardLoad> shardLoads,
+            int taskIndex,
+            int totalNumTasks) {
+        final double[] weights = getWeights(shardList, shardLoads);
+
+        // Order shards by decreasing weight. Ties are broken by position in the shard list, so all tasks agree.
+        List<Integer> order = new ArrayList<>(shardList.size());
+        for (int i = 0; i < shardList.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = Double.compare(weights[b], weights[a]);
+                return (c != 0) ? c : a.compareTo(b);
+            }
+        });
+
+        PriorityQueue<TaskBin> bins = new PriorityQueue<>(totalNumTasks);
+        for (int task = 0; task < totalNumTasks; task++) {
+            bins.add(new TaskBin(task));
+        }
+
+        final ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        for (int shard : order) {
+            TaskBin bin = bins.poll();
+            bin.load += weights[shard];
+            bin.numShards++;
+            if (bin.taskIndex == taskIndex) {
+                builder.add(shardList.get(shard));
+            }
+            bins.add(bin);
+        }
+        return builder.build();
+    }
+
+    private double[] getWeights(ImmutableList<String> shardList, ImmutableMap<String, ShardLoad> shardLoads) {
+        final double[] weights = new double[shardList.size()];
+        double total = 0.0;
+        int measured = 0;
+        for (int i = 0; i < shardList.size(); i++) {
+            ShardLoad load = shardLoads.get(shardList.get(i));
+            if (load == null) {
+                weights[i] = Double.NaN;
+            } else {
+                weights[i] = load.getBytesPerSecond() + load.getRecordsPerSecond() * recordOverheadBytes;
+                total += weights[i];
+                measured++;
+            }
+        }
+
+        final double average = (measured > 0) ? total / measured : 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            if (Double.isNaN(weights[i])) {
+                weights[i] = average;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Shards (and load) assigned to a task so far. Orders by load, then number of shards, then task index.
+     */
+    private static class TaskBin implements Comparable<TaskBin> {
+        private final int taskIndex;
+        private double load;
+        private int numShards;
+
+        TaskBin(int taskIndex) {
+            this.taskIndex = taskIndex;
+        }
+
+        @Override
+        public int compareTo(TaskBin other) {
+            int c = Double.compare(load, other.load);
+            if (c == 0) {
+                c = Integer.compare(numShards, other.numShards);
+            }
+            if (c == 0) {
+                c = Integer.compare(taskIndex, other.taskIndex);
+            }
+            return c;
+        }
+    }
+}
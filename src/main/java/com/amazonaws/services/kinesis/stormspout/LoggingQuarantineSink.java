@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Logs the partition key and sequence number of quarantined records (their data is not logged).
+ */
+public class LoggingQuarantineSink implements IQuarantineSink {
+    private static final long serialVersionUID = -6032178829152740215L;
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingQuarantineSink.class);
+
+    @Override
+    public void quarantine(final String shardId, final ImmutableList<Record> records, final Reason reason) {
+        for (Record record : records) {
+            LOG.warn("Quarantined record from " + shardId + " (" + reason + "): partitionKey="
+                    + record.getPartitionKey() + ", sequenceNumber=" + ExtendedSequenceNumber.keyOf(record));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Assigns the i-th shard of the (sorted) shard list to task (i % totalNumTasks).
+ * 
+ * Note: adding a shard or a task moves most shards to a different task. Consider using
+ * RendezvousShardAssignmentStrategy if the shard list or the number of tasks changes often.
+ */
+public class ModuloShardAssignmentStrategy implements IShardAssignmentStrategy {
+    private static final long serialVersionUID = -3410297611826355120L;
+
+    @Override
+    public boolean usesShardLoads() {
+        return false;
+    }
+
+    @Override
+    public ImmutableList<String> getShardAssignment(ImmutableList<String> shardList,
+            ImmutableMap<String, ShardLoad> shardLoads,
+            int taskIndex,
+            int totalNumTasks) {
+        final ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        for (int i = taskIndex; i < shardList.size(); i += totalNumTasks) {
+            builder.add(shardList.get(i));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Accumulates contiguous records read from a shard into batches, each emitted as a single tuple. A batch is complete
+ * when it reaches the max number of records or bytes, when the linger time has elapsed since its first record was
+ * read and no more records are available, or when the end of the shard is reached.
+ * 
+ * Records of an incomplete batch are not tracked as in-flight (they haven't been emitted). The batch is discarded if
+ * the getter of the shard changes (e.g. the shard was re-assigned), since the new getter starts reading from the last
+ * checkpoint.
+ */
+class RecordBatcher {
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long lingerMillis;
+
+    private IShardGetter getter;
+    private final List<Record> pending = new ArrayList<>();
+    private long pendingBytes;
+    private long firstRecordMillis;
+    // Record that didn't fit in the previous batch.
+    private Record carryOver;
+    private boolean lastFetchEmpty;
+    private boolean lastFetchAtTip;
+    private boolean endOfShard;
+    // The last call to next() returned no batch.
+    private boolean noBatch;
+
+    /**
+     * @param maxRecords Max number of records in a batch.
+     * @param maxBytes Max number of data bytes in a batch (a single larger record makes a batch on its own).
+     * @param lingerMillis How long to wait for more records before emitting an incomplete batch.
+     */
+    RecordBatcher(final int maxRecords, final long maxBytes, final long lingerMillis) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Reads records from the getter, and returns a batch if one is complete.
+     * 
+     * @param shardGetter Getter of the shard this batcher accumulates records for.
+     * @param nowMillis Current time.
+     * @return a complete batch, or null if no batch is ready.
+     */
+    ImmutableList<Record> next(final IShardGetter shardGetter, final long nowMillis) {
+        if (shardGetter != getter) {
+            reset();
+            getter = shardGetter;
+        }
+
+        if (carryOver != null) {
+            final Record rec = carryOver;
+            carryOver = null;
+            add(rec, nowMillis);
+        }
+
+        lastFetchEmpty = false;
+        lastFetchAtTip = false;
+        boolean full = pending.size() >= maxRecords;
+        while (!full) {
+            final Records fetched = getter.getNext(1);
+            lastFetchAtTip = fetched.isAtTip();
+            if (fetched.isEmpty()) {
+                lastFetchEmpty = true;
+                endOfShard = fetched.isEndOfShard();
+                break;
+            }
+            final Record rec = fetched.getRecords().get(0);
+            final long size = sizeOf(rec);
+            if (!pending.isEmpty() && pendingBytes + size > maxBytes) {
+                carryOver = rec;
+                full = true;
+            } else {
+                add(rec, nowMillis);
+                full = (pending.size() >= maxRecords) || (pendingBytes >= maxBytes);
+            }
+        }
+
+        noBatch = true;
+        if (pending.isEmpty()) {
+            return null;
+        }
+        if (full || endOfShard || (nowMillis - firstRecordMillis >= lingerMillis)) {
+            final ImmutableList<Record> batch = ImmutableList.copyOf(pending);
+            pending.clear();
+            pendingBytes = 0L;
+            noBatch = false;
+            return batch;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the last read from the getter returned no records.
+     */
+    boolean isLastFetchEmpty() {
+        return lastFetchEmpty;
+    }
+
+    /**
+     * @return true if the last read from the getter was at the tip of the shard (see Records.isAtTip()).
+     */
+    boolean isLastFetchAtTip() {
+        return lastFetchAtTip;
+    }
+
+    /**
+     * @return true if the end of the shard was reached, and there are no records left to emit: the last call to
+     *         next() returned no batch (the call returning the last batch of the shard doesn't count, so that the
+     *         shard isn't ended before its last batch is emitted).
+     */
+    boolean isEndOfShard() {
+        return endOfShard && noBatch && pending.isEmpty() && carryOver == null;
+    }
+
+    private void add(final Record rec, final long nowMillis) {
+        if (pending.isEmpty()) {
+            firstRecordMillis = nowMillis;
+        }
+        pending.add(rec);
+        pendingBytes += sizeOf(rec);
+    }
+
+    private void reset() {
+        pending.clear();
+        pendingBytes = 0L;
+        carryOver = null;
+        lastFetchEmpty = false;
+        lastFetchAtTip = false;
+        endOfShard = false;
+        noBatch = false;
+    }
+
+    private static long sizeOf(final Record rec) {
+        return (rec.getData() == null) ? 0L : rec.getData().remaining();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Compact Kryo serializer for Kinesis records (and user records of KPL aggregated records). Writes the partition key,
+ * sequence number, sub-sequence number (user records only) and the remaining bytes of the data.
+ */
+public class RecordSerializer extends Serializer<Record> {
+
+    /**
+     * Constructor.
+     */
+    public RecordSerializer() {
+        setAcceptsNull(false);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Record record) {
+        output.writeString(record.getPartitionKey());
+        output.writeString(record.getSequenceNumber());
+        if (record instanceof UserRecord) {
+            output.writeLong(((UserRecord) record).getSubSequenceNumber(), true);
+        }
+        if (record.getData() == null) {
+            output.writeBoolean(false);
+        } else {
+            output.writeBoolean(true);
+            ByteBufferSerializer.writeBytes(output, record.getData());
+        }
+    }
+
+    @Override
+    public Record read(Kryo kryo, Input input, Class<Record> type) {
+        final String partitionKey = input.readString();
+        final String sequenceNumber = input.readString();
+        if (UserRecord.class.isAssignableFrom(type)) {
+            final long subSequenceNumber = input.readLong(true);
+            return new UserRecord(partitionKey, sequenceNumber, subSequenceNumber, readData(input));
+        }
+        final Record record = new Record();
+        record.setPartitionKey(partitionKey);
+        record.setSequenceNumber(sequenceNumber);
+        record.setData(readData(input));
+        return record;
+    }
+
+    private static ByteBuffer readData(final Input input) {
+        return input.readBoolean() ? ByteBufferSerializer.readBytes(input) : null;
+    }
+}
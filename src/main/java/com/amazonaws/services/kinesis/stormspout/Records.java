@@ -25,6 +25,10 @@ import com.google.common.collect.ImmutableList;
 class Records {
     private final ImmutableList<Record> records;
     private final boolean endOfShard;
+    private final boolean atTip;
+    // Number and size of the Kinesis records the records were read from (-1 if they are the records themselves).
+    private final int fetchedRecords;
+    private final long fetchedBytes;
 
     /**
      * Constructor.
@@ -33,8 +37,39 @@ class Records {
      * @param endOfShard Did we reach the end of the shard?
      */
     Records(final ImmutableList<Record> records, final boolean endOfShard) {
+        this(records, endOfShard, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param records Kinesis records
+     * @param endOfShard Did we reach the end of the shard?
+     * @param atTip Were the records read at the tip of the shard (the fetch returned all the records available)?
+     */
+    Records(final ImmutableList<Record> records, final boolean endOfShard, final boolean atTip) {
+        this(records, endOfShard, atTip, -1, -1L);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param records Kinesis records
+     * @param endOfShard Did we reach the end of the shard?
+     * @param atTip Were the records read at the tip of the shard (the fetch returned all the records available)?
+     * @param fetchedRecords Number of Kinesis records the records were read from (e.g. before KPL de-aggregation).
+     * @param fetchedBytes Total size of the data of those Kinesis records.
+     */
+    Records(final ImmutableList<Record> records,
+            final boolean endOfShard,
+            final boolean atTip,
+            final int fetchedRecords,
+            final long fetchedBytes) {
         this.records = records;
         this.endOfShard = endOfShard;
+        this.atTip = atTip;
+        this.fetchedRecords = fetchedRecords;
+        this.fetchedBytes = fetchedBytes;
     }
 
     /**
@@ -66,6 +101,42 @@ class Records {
         return endOfShard;
     }
 
+    /**
+     * A shard that is read as fast as records are written rarely gets an empty fetch: a fetch that returned fewer
+     * records than requested shows that the reader is caught up as well.
+     * 
+     * @return true if the records were read at the tip of the shard (always true for an empty set of records).
+     */
+    boolean isAtTip() {
+        return atTip || records.isEmpty();
+    }
+
+    /**
+     * GetRecords limits count Kinesis records: fetch sizes are based on this rather than on the number of (user)
+     * records.
+     * 
+     * @return number of Kinesis records the records were read from.
+     */
+    int getFetchedRecords() {
+        return (fetchedRecords < 0) ? records.size() : fetchedRecords;
+    }
+
+    /**
+     * @return total size of the data of the Kinesis records the records were read from.
+     */
+    long getFetchedBytes() {
+        if (fetchedBytes >= 0) {
+            return fetchedBytes;
+        }
+        long bytes = 0L;
+        for (Record record : records) {
+            if (record.getData() != null) {
+                bytes += record.getData().remaining();
+            }
+        }
+        return bytes;
+    }
+
     /**
      * Does the Records instance contain records?
      * 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Assigns shards to tasks using rendezvous (highest random weight) hashing. Each (shard, task) pair gets a
+ * pseudo-random weight and a shard is assigned to the task with the highest weight.
+ * 
+ * Unlike ModuloShardAssignmentStrategy, only about 1/n of the shards move to a different task when a task is
+ * added or removed, and adding or removing a shard does not move any other shard. This reduces the number of shards
+ * that are replayed from their last checkpoint after a rebalance.
+ */
+public class RendezvousShardAssignmentStrategy implements IShardAssignmentStrategy {
+    private static final long serialVersionUID = 2469187720523604453L;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    @Override
+    public boolean usesShardLoads() {
+        return false;
+    }
+
+    @Override
+    public ImmutableList<String> getShardAssignment(ImmutableList<String> shardList,
+            ImmutableMap<String, ShardLoad> shardLoads,
+            int taskIndex,
+            int totalNumTasks) {
+        final ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        for (String shardId : shardList) {
+            if (getOwner(shardId, totalNumTasks) == taskIndex) {
+                builder.add(shardId);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param shardId Shard to look up.
+     * @param totalNumTasks Total number of spout tasks.
+     * @return index of the task responsible for the shard.
+     */
+    int getOwner(String shardId, int totalNumTasks) {
+        final long shardHash = hash(shardId);
+        int owner = 0;
+        long maxWeight = Long.MIN_VALUE;
+        for (int task = 0; task < totalNumTasks; task++) {
+            long weight = mix(shardHash ^ mix(task + 1L));
+            if (weight > maxWeight) {
+                maxWeight = weight;
+                owner = task;
+            }
+        }
+        return owner;
+    }
+
+    // 64 bit FNV-1a hash. String.hashCode() is too narrow (and too regular for shard IDs) to use directly.
+    private static long hash(String s) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    // Finalization step of MurmurHash3 (64 bit), spreads the bits of the input over the whole output.
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb93fe53ec48bL;
+        k ^= k >>> 33;
+        return k;
+    }
+}
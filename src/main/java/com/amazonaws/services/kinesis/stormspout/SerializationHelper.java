@@ -15,15 +15,21 @@
 
 package com.amazonaws.services.kinesis.stormspout;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.objenesis.strategy.StdInstantiatorStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.services.kinesis.model.Record;
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
@@ -33,44 +39,114 @@ import com.esotericsoftware.kryo.io.Output;
 class SerializationHelper {
     private static final Logger LOG = LoggerFactory.getLogger(SerializationHelper.class);
 
+    // Types emitted in tuples by the spout (and its default schemes), with their Kryo serializers.
+    private static final Map<Class<?>, Class<? extends Serializer<?>>> SERIALIZERS = buildSerializers();
+
+    private static final int INITIAL_OUTPUT_BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Kryo> KRYO = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            return newKryo();
+        }
+    };
+
+    private static final ThreadLocal<Output> OUTPUT = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output(INITIAL_OUTPUT_BUFFER_SIZE, -1);
+        }
+    };
+
     // Utility class should not be instantiated.
     private SerializationHelper() { }
 
+    private static Map<Class<?>, Class<? extends Serializer<?>>> buildSerializers() {
+        final Map<Class<?>, Class<? extends Serializer<?>>> serializers = new LinkedHashMap<>();
+        serializers.put(Record.class, RecordSerializer.class);
+        serializers.put(UserRecord.class, RecordSerializer.class);
+        // Concrete (package-private) classes of heap buffers and of their read-only views.
+        serializers.put(ByteBuffer.allocate(0).getClass(), ByteBufferSerializer.class);
+        serializers.put(ByteBuffer.allocate(0).asReadOnlyBuffer().getClass(), ByteBufferSerializer.class);
+        return Collections.unmodifiableMap(serializers);
+    }
+
     /**
-     * If the ByteBuffer is backed by an array, return this array. Otherwise, dump the ByteBuffer
-     * to a byte array (the latter is an expensive operation).
+     * @return Kryo registrations of the types emitted by the spout, in the format of Config.TOPOLOGY_KRYO_REGISTER
+     *         (maps of class name to serializer class name).
+     */
+    static List<Object> getKryoRegistrations() {
+        final List<Object> registrations = new ArrayList<>();
+        for (Map.Entry<Class<?>, Class<? extends Serializer<?>>> e : SERIALIZERS.entrySet()) {
+            registrations.add(Collections.singletonMap(e.getKey().getName(), e.getValue().getName()));
+        }
+        return registrations;
+    }
+
+    /**
+     * Returns the remaining bytes of the ByteBuffer (from position to limit). If the ByteBuffer is backed by an
+     * array that holds exactly these bytes, return this array. Otherwise, copy them to a new byte array. The position
+     * of buf is not modified.
      * @param buf  buffer to read from.
      * @return data or copy of data in buf as a byte array.
      */
     public static byte[] copyData(ByteBuffer buf) {
-        if (buf.hasArray()) {
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0 && buf.limit() == buf.array().length) {
             return buf.array();
+        } else if (buf.hasArray()) {
+            int start = buf.arrayOffset() + buf.position();
+            return Arrays.copyOfRange(buf.array(), start, start + buf.remaining());
         } else {
-            LOG.trace("ByteBuffer is not backed by byte[], copying.");
+            LOG.trace("ByteBuffer is not backed by an accessible byte[], copying.");
 
             byte[] data = new byte[buf.remaining()];
-            buf.get(data);
+            buf.duplicate().get(data);
             return data;
         }
     }
 
-    public static byte[] kryoSerializeObject(final Object obj) {
-        final Kryo kryo = new Kryo();
-        final ByteArrayOutputStream os = new ByteArrayOutputStream();
-        final Output output = new Output(os);
+    /**
+     * @return a Kryo instance owned by the calling thread, with the spout serializers registered (see getKryo()).
+     */
+    static Kryo getKryo() {
+        return KRYO.get();
+    }
 
+    /**
+     * Creates a Kryo instance that can instantiate classes without a no-arg constructor, with the serializers of the
+     * types emitted by the spout registered. Kryo instances are expensive to create and not thread safe, so the
+     * spout uses one per thread (getKryo()).
+     * 
+     * @return a new Kryo instance.
+     */
+    static Kryo newKryo() {
+        final Kryo kryo = new Kryo();
         kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-        kryo.writeClassAndObject(output, obj);
+        for (Map.Entry<Class<?>, Class<? extends Serializer<?>>> e : SERIALIZERS.entrySet()) {
+            try {
+                kryo.register(e.getKey(), e.getValue().newInstance());
+            } catch (InstantiationException | IllegalAccessException ex) {
+                throw new IllegalStateException("Could not create serializer " + e.getValue().getName(), ex);
+            }
+        }
+        return kryo;
+    }
+
+    public static byte[] kryoSerializeObject(final Object obj) {
+        Output output = OUTPUT.get();
+        output.clear();
+        getKryo().writeClassAndObject(output, obj);
+        final byte[] bytes = output.toBytes();
 
-        output.flush();
-        return os.toByteArray();
+        // Don't hold on to a large buffer after serializing a large object.
+        if (output.getBuffer().length > MAX_RETAINED_OUTPUT_BUFFER_SIZE) {
+            OUTPUT.remove();
+        }
+        return bytes;
     }
 
     public static Object kryoDeserializeObject(final byte[] ser) {
-        final Kryo kryo = new Kryo();
-        final Input input = new Input(new ByteArrayInputStream(ser));
-
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-        return kryo.readClassAndObject(input);
+        return getKryo().readClassAndObject(new Input(ser));
     }
 }
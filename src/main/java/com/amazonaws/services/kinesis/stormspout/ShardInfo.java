@@ -24,7 +24,7 @@ import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 /**
  * In this class we track the children for a shard.
  */
-class ShardInfo {
+public class ShardInfo {
     private final String shardId;
     private String mergesInto;
     private List<String> splitsInto;
@@ -43,7 +43,7 @@ class ShardInfo {
     /**
      * @return the shard ID.
      */
-    String getShardId() {
+    public String getShardId() {
         return shardId;
     }
 
@@ -74,7 +74,7 @@ class ShardInfo {
      * @return the shard ID of the shard that getShardId() merges into. Empty string if the shard
      *         does not merge into another shard.
      */
-    String getMergesInto() {
+    public String getMergesInto() {
         return mergesInto;
     }
 
@@ -82,7 +82,7 @@ class ShardInfo {
      * @return immutable view of the shards resulting from the split. Empty list if the shard does
      *         not split.
      */
-    List<String> getSplitsInto() {
+    public List<String> getSplitsInto() {
         return Collections.unmodifiableList(splitsInto);
     }
 
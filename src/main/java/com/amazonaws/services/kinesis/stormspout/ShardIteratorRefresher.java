@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes the shard iterators of idle KinesisShardGetters in the background, before they expire (Kinesis shard
+ * iterators expire 5 minutes after they are returned). A getter that is read regularly gets a new iterator with each
+ * GetRecords call, and is left alone. Without this, a shard that isn't read for 5 minutes (e.g. because the topology
+ * is applying backpressure) fails its next GetRecords call, and the getter seeks again before it can read.
+ */
+class ShardIteratorRefresher {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardIteratorRefresher.class);
+
+    private final long maxIteratorAgeMillis;
+    private final Set<KinesisShardGetter> getters =
+            Collections.newSetFromMap(new ConcurrentHashMap<KinesisShardGetter, Boolean>());
+    // Started when the first getter is registered.
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param maxIteratorAgeMillis Refresh iterators obtained this long ago (should be well under 5 minutes). The
+     *        iterators are checked every maxIteratorAgeMillis / 8.
+     */
+    ShardIteratorRefresher(final long maxIteratorAgeMillis) {
+        this.maxIteratorAgeMillis = maxIteratorAgeMillis;
+    }
+
+    /**
+     * @param getter Getter whose iterator should be kept fresh (until it is unregistered).
+     */
+    synchronized void register(final KinesisShardGetter getter) {
+        getters.add(getter);
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "kinesis-spout-iterator-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            final long periodMillis = Math.max(1L, maxIteratorAgeMillis / 8);
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshIterators();
+                }
+            }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param getter Getter no longer in use.
+     */
+    void unregister(final KinesisShardGetter getter) {
+        getters.remove(getter);
+    }
+
+    /**
+     * Refreshes the iterators older than maxIteratorAgeMillis.
+     */
+    void refreshIterators() {
+        for (KinesisShardGetter getter : getters) {
+            try {
+                getter.refreshIterator(maxIteratorAgeMillis);
+            } catch (RuntimeException e) {
+                // Don't let one getter stop the scheduled refreshes.
+                LOG.warn("Could not refresh the shard iterator of " + getter + ".", e);
+            }
+        }
+    }
+}
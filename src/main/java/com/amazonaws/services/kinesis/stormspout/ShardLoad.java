@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Observed throughput of a shard (as measured by the spout task processing it).
+ */
+public class ShardLoad {
+    private final double bytesPerSecond;
+    private final double recordsPerSecond;
+
+    /**
+     * @param bytesPerSecond Bytes emitted per second.
+     * @param recordsPerSecond Records emitted per second.
+     */
+    public ShardLoad(double bytesPerSecond, double recordsPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.recordsPerSecond = recordsPerSecond;
+    }
+
+    /**
+     * @return a ShardLoad for an idle shard.
+     */
+    public static ShardLoad zero() {
+        return new ShardLoad(0.0, 0.0);
+    }
+
+    /**
+     * @return Bytes emitted per second.
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return Records emitted per second.
+     */
+    public double getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    /**
+     * @return true if no records were emitted.
+     */
+    public boolean isZero() {
+        return recordsPerSecond == 0.0 && bytesPerSecond == 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("bytesPerSecond", bytesPerSecond)
+                .append("recordsPerSecond", recordsPerSecond)
+                .toString();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free queue for exactly one producer thread and one consumer thread. Each side only writes its own
+ * index (published with an ordered store), so offer and poll never contend on a lock.
+ *
+ * @param <E> Type of the elements.
+ */
+final class SpscArrayQueue<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final int capacity;
+    // Index of the next element to poll (written by the consumer only).
+    private final AtomicLong head = new AtomicLong();
+    // Index of the next element to offer (written by the producer only).
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity Max number of elements in the queue.
+     */
+    SpscArrayQueue(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Value of capacity must be positive, but was " + capacity);
+        }
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Called by the producer thread only.
+     *
+     * @param element Element to add.
+     * @return false if the queue is full (the element was not added).
+     */
+    boolean offer(final E element) {
+        final long t = tail.get();
+        if (t - head.get() >= capacity) {
+            return false;
+        }
+        buffer.lazySet((int) (t % capacity), element);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Called by the consumer thread only.
+     *
+     * @return the oldest element, or null if the queue is empty.
+     */
+    E poll() {
+        final long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        final int index = (int) (h % capacity);
+        final E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.exceptions.InvalidSeekPositionException;
+import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Gauge;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Fetches records from a shard on a dedicated thread, so that nextTuple() never waits for a GetRecords call. The
+ * fetcher thread calls the underlying getter in a loop (backing off when it returns no records; the underlying getter
+ * handles errors and expired iterators) and hands the records over through a bounded single-producer/single-consumer
+ * queue, which getNext() polls without blocking. The fetcher waits while the queue is full.
+ * 
+ * getNext(), seek() and close() must be called from the spout thread. The underlying getter is only used by the
+ * fetcher thread while it runs: seek() stops the fetcher, and the next getNext() starts a new one.
+ * 
+ * With a byte budget, each fetch gets an equal share of it (the queue holds up to queueCapacity fetches, and the
+ * spout thread one more), and the number of records fetched at once is adapted to the size of the records (see
+ * FetchSizer). The fetcher waiting while the queue is full adapts fetching to the rate records are consumed.
+ * 
+ * The fetch counters the underlying getter reports go to a metrics object of the fetcher thread, and are moved to
+ * the shard metrics on the spout thread (ShardMetrics is not thread safe).
+ */
+class ThreadedShardGetter implements IShardGetter, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadedShardGetter.class);
+
+    private static final Counter[] FETCH_COUNTERS = { Counter.GET_RECORDS_CALLS, Counter.GET_RECORDS_MILLIS,
+            Counter.RECORDS_FETCHED, Counter.BYTES_FETCHED, Counter.GET_RECORDS_THROTTLES,
+            Counter.GET_RECORDS_ERRORS, Counter.EXPIRED_ITERATORS, Counter.ITERATOR_REFRESHES };
+    // Time the fetcher waits before offering records to a full queue again.
+    private static final long QUEUE_FULL_BACKOFF_MILLIS = 1L;
+
+    private final IShardGetter getter;
+    private final long emptyRecordListBackoffMillis;
+    private final ThreadFactory threadFactory;
+    private final SpscArrayQueue<Records> queue;
+    // Updated by the underlying getter (fetcher thread).
+    private final ShardMetrics fetchMetrics;
+    // Fetch counters handed over by the fetcher thread, not yet added to metrics.
+    private final AtomicLongArray fetchCounts = new AtomicLongArray(FETCH_COUNTERS.length);
+    // Records in the queue.
+    private final AtomicLong queuedRecords = new AtomicLong();
+    // Updated by the spout thread.
+    private final ShardMetrics metrics;
+    // Used by the fetcher thread (one at a time: seek waits for the previous fetcher to stop).
+    private final FetchSizer sizer;
+    // Records requested by the next fetch, set by the fetcher thread.
+    private volatile int fetchLimit;
+
+    private Fetcher fetcher;
+    // Records taken from the queue and not yet returned by getNext.
+    private Iterator<Record> it;
+    private int buffered;
+    private boolean endOfShard;
+    // The records taken from the queue were read at the tip of the shard.
+    private boolean atTip;
+
+    /**
+     * @param underlyingGetter Shard getter used by the fetcher thread.
+     * @param maxRecordsPerCall Max number of records to fetch from the underlying getter at once.
+     * @param emptyRecordListBackoffMillis Backoff time between fetches if the previous fetch returned no records.
+     * @param maxBufferBytes Byte budget of the records queued and buffered for the spout thread (0 to only bound them
+     *        by maxRecordsPerCall and queueCapacity).
+     * @param queueCapacity Max number of fetches (up to maxRecordsPerCall records each) queued for the spout thread.
+     * @param threadFactory Creates the fetcher threads.
+     * @param fetchMetrics Metrics the underlying getter reports to (used by the fetcher thread only).
+     * @param metrics Metrics of the shard (fetch counters, number of buffered records).
+     */
+    ThreadedShardGetter(final IShardGetter underlyingGetter,
+            final int maxRecordsPerCall,
+            final long emptyRecordListBackoffMillis,
+            final long maxBufferBytes,
+            final int queueCapacity,
+            final ThreadFactory threadFactory,
+            final ShardMetrics fetchMetrics,
+            final ShardMetrics metrics) {
+        this.getter = underlyingGetter;
+        this.emptyRecordListBackoffMillis = emptyRecordListBackoffMillis;
+        this.queue = new SpscArrayQueue<>(queueCapacity);
+        this.threadFactory = threadFactory;
+        this.fetchMetrics = fetchMetrics;
+        this.metrics = metrics;
+        this.sizer = new FetchSizer(maxRecordsPerCall, maxBufferBytes / (queueCapacity + 1));
+        this.fetchLimit = sizer.getLimit();
+    }
+
+    @Override
+    public Records getNext(int maxNumberOfRecords) {
+        if (fetcher == null) {
+            startFetcher();
+        } else if (fetcher.error != null) {
+            throw new KinesisSpoutException("Fetcher of " + getAssociatedShard() + " failed.", fetcher.error);
+        }
+
+        final ImmutableList.Builder<Record> recs = new ImmutableList.Builder<>();
+        int recsSize = 0;
+
+        while (recsSize < maxNumberOfRecords) {
+            if (it != null && it.hasNext()) {
+                recs.add(it.next());
+                recsSize++;
+                buffered--;
+            } else if (endOfShard) {
+                break;
+            } else {
+                final Records next = queue.poll();
+                // After the poll, so the counts handed over before next was queued are moved too.
+                moveFetchCounts();
+                if (next == null) {
+                    // Nothing fetched yet (the fetcher may be waiting for a GetRecords call, or caught up).
+                    break;
+                }
+                queuedRecords.addAndGet(-next.getRecords().size());
+                it = next.getRecords().iterator();
+                buffered = next.getRecords().size();
+                endOfShard = next.isEndOfShard();
+                atTip = next.isAtTip();
+            }
+        }
+
+        metrics.set(Gauge.BUFFERED_RECORDS, buffered + queuedRecords.get());
+        metrics.set(Gauge.FETCH_LIMIT, fetchLimit);
+        if (recsSize == 0) {
+            return Records.empty(endOfShard);
+        }
+        return new Records(recs.build(), false, atTip);
+    }
+
+    @Override
+    public void seek(ShardPosition position) throws InvalidSeekPositionException {
+        stopFetcher(true);
+        while (queue.poll() != null) {
+            // Drop the records fetched from the previous position.
+        }
+        queuedRecords.set(0L);
+        it = null;
+        buffered = 0;
+        endOfShard = false;
+        atTip = false;
+        getter.seek(position);
+    }
+
+    /**
+     * Stops the fetcher thread (without waiting for a GetRecords call in progress to complete), and closes the
+     * underlying getter.
+     */
+    @Override
+    public void close() throws IOException {
+        stopFetcher(false);
+        if (getter instanceof Closeable) {
+            ((Closeable) getter).close();
+        }
+    }
+
+    @Override
+    public String getAssociatedShard() {
+        return getter.getAssociatedShard();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("getter", getter.toString())
+                .toString();
+    }
+
+    private void startFetcher() {
+        fetcher = new Fetcher();
+        final Thread thread = threadFactory.newThread(fetcher);
+        thread.setName("kinesis-spout-fetcher-" + getAssociatedShard());
+        fetcher.thread = thread;
+        thread.start();
+    }
+
+    // Post : fetcher == null
+    private void stopFetcher(final boolean await) {
+        if (fetcher != null) {
+            fetcher.stopped = true;
+            fetcher.thread.interrupt();
+            if (await) {
+                Uninterruptibles.joinUninterruptibly(fetcher.thread);
+            }
+            fetcher = null;
+        }
+    }
+
+    // Adds the fetch counters handed over by the fetcher thread to the shard metrics.
+    private void moveFetchCounts() {
+        for (int i = 0; i < FETCH_COUNTERS.length; i++) {
+            if (fetchCounts.get(i) != 0L) {
+                metrics.add(FETCH_COUNTERS[i], fetchCounts.getAndSet(i, 0L));
+            }
+        }
+    }
+
+    /**
+     * Fetches records from the underlying getter and queues them, until stopped or the end of the shard is reached.
+     */
+    private final class Fetcher implements Runnable {
+        private volatile boolean stopped;
+        private volatile RuntimeException error;
+        private Thread thread;
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    final Records records = getter.getNext(fetchLimit);
+                    handOverFetchCounts();
+                    sizer.onFetch(records.getFetchedRecords(), records.getFetchedBytes());
+                    fetchLimit = sizer.getLimit();
+                    if (records.isEmpty() && !records.isEndOfShard()) {
+                        Thread.sleep(emptyRecordListBackoffMillis);
+                        continue;
+                    }
+                    queuedRecords.addAndGet(records.getRecords().size());
+                    while (!queue.offer(records)) {
+                        Thread.sleep(QUEUE_FULL_BACKOFF_MILLIS);
+                    }
+                    if (records.isEndOfShard()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOG.debug(ThreadedShardGetter.this + " fetcher was interrupted.");
+            } catch (RuntimeException e) {
+                if (!stopped) {
+                    LOG.error(ThreadedShardGetter.this + " fetcher failed.", e);
+                    error = e;
+                }
+            }
+        }
+
+        private void handOverFetchCounts() {
+            for (int i = 0; i < FETCH_COUNTERS.length; i++) {
+                final long count = fetchMetrics.get(FETCH_COUNTERS[i]);
+                if (count != 0L) {
+                    fetchCounts.addAndGet(i, count);
+                    fetchMetrics.add(FETCH_COUNTERS[i], -count);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * User record extracted from a Kinesis record aggregated by the Kinesis Producer Library (KPL). It shares the
+ * sequence number of the aggregated record, and is identified within it by a sub-sequence number.
+ */
+public class UserRecord extends Record {
+    private static final long serialVersionUID = 4383870516735624458L;
+
+    private final long subSequenceNumber;
+
+    /**
+     * @param partitionKey Partition key of the user record.
+     * @param sequenceNumber Sequence number of the aggregated Kinesis record.
+     * @param subSequenceNumber Index of the user record in the aggregated record.
+     * @param data Data of the user record.
+     */
+    public UserRecord(String partitionKey, String sequenceNumber, long subSequenceNumber, ByteBuffer data) {
+        this.subSequenceNumber = subSequenceNumber;
+        setPartitionKey(partitionKey);
+        setSequenceNumber(sequenceNumber);
+        setData(data);
+    }
+
+    /**
+     * @return Index of the user record in the aggregated record.
+     */
+    public long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "{SubSequenceNumber: " + subSequenceNumber + "}";
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.exceptions;
+
+/**
+ * Thrown (as the cause of a failed future) when a call is given up on because the circuit breaker of its API stays
+ * open until after the deadline of the call.
+ */
+public class CircuitBreakerOpenException extends KinesisSpoutException {
+    private static final long serialVersionUID = -3317718916384613262L;
+
+    /** Constructor.
+     * @param message Message with details.
+     */
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size, log-linear histogram of latencies (milliseconds), in the style of HdrHistogram: values below 32 are
+ * counted exactly, larger values in 16 buckets per power of two (relative error below 1/16). Values are clamped to
+ * about 70 minutes. Recording is a single array increment (no locks or allocation); like the rest of ShardMetrics it
+ * is only updated and read on the spout's executor thread.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_SUB_COUNT = SUB_COUNT >> 1;
+    private static final int MAX_BITS = 22;
+    /** Largest value tracked (larger values are counted as this value). */
+    public static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int NUM_BUCKETS = SUB_COUNT + (MAX_BITS - SUB_BITS) * HALF_SUB_COUNT;
+
+    private final long[] buckets = new long[NUM_BUCKETS];
+    private long count;
+    private long max;
+
+    /**
+     * @param value Latency to record (negative values are counted as 0).
+     */
+    public void record(final long value) {
+        final long v = Math.min(Math.max(value, 0L), MAX_VALUE);
+        buckets[bucketIndex(v)]++;
+        count++;
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    /**
+     * @return number of values recorded since the last reset.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return largest value recorded since the last reset (0 if none).
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile Percentile in [0, 100].
+     * @return the highest value equivalent to the value at the percentile (0 if nothing was recorded).
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Percentile must be in [0, 100].");
+        }
+        if (count == 0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, Math.round(percentile / 100.0 * count));
+        long seen = 0L;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        if (count > 0) {
+            Arrays.fill(buckets, 0L);
+            count = 0L;
+            max = 0L;
+        }
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+        return SUB_COUNT + (shift - 1) * HALF_SUB_COUNT + (int) ((value >>> shift) - HALF_SUB_COUNT);
+    }
+
+    static long highestEquivalentValue(final int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_COUNT) / HALF_SUB_COUNT + 1;
+        final long sub = (index - SUB_COUNT) % HALF_SUB_COUNT + HALF_SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
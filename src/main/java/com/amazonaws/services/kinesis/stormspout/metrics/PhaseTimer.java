@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import java.util.Map;
+
+/**
+ * Cumulative time spent by a spout task in each phase of nextTuple(), to find where time goes when throughput drops.
+ * 
+ * Timing is sampled: when the sample rate is N, one nextTuple() call in N is timed (phases that run rarely, like
+ * commits, are timed every time while sampling is enabled). A sample rate of 0 disables timing, so that a disabled
+ * timer costs a branch per phase. The sample rate can be changed at runtime from any thread (see
+ * KinesisSpoutConfig.withPhaseTimingSampleRate); times are recorded and collected on the spout's executor thread.
+ */
+public final class PhaseTimer {
+    /** Value returned by the start methods when the phase isn't timed. */
+    private static final long NOT_TIMED = -1L;
+
+    /**
+     * Phases of nextTuple().
+     */
+    public static enum Phase {
+        /** Fetching records from the shard getter (including GetRecords calls when its buffer is empty). */
+        FETCH("fetch"),
+        /** Deserializing records into tuples (record, payload or batch scheme). */
+        DESERIALIZE("deserialize"),
+        /** Emitting tuples to the collector. */
+        EMIT("emit"),
+        /** Tracking emitted records in the state manager. */
+        TRACK("track"),
+        /** Committing shard states to ZooKeeper. */
+        COMMIT("commit");
+
+        private final String metricName;
+
+        private Phase(final String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private volatile int sampleRate;
+    private int countdown;
+    private boolean sampling;
+    private long sampledCalls;
+    private final long[] nanos = new long[PHASES.length];
+    private final long[] counts = new long[PHASES.length];
+
+    /**
+     * @param sampleRate Time one nextTuple() call in sampleRate (0 to disable timing).
+     */
+    public PhaseTimer(final int sampleRate) {
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * @param sampleRate Time one nextTuple() call in sampleRate (0 to disable timing).
+     */
+    public void setSampleRate(final int sampleRate) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Sample rate must be non-negative, but was " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @return current sample rate (0 if timing is disabled).
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Call at the start of nextTuple(), to decide whether its phases are timed.
+     */
+    public void beginCall() {
+        final int rate = sampleRate;
+        if (rate == 0) {
+            sampling = false;
+        } else if (--countdown <= 0) {
+            countdown = rate;
+            sampling = true;
+            sampledCalls++;
+        } else {
+            sampling = false;
+        }
+    }
+
+    /**
+     * @return start time to pass to stop(), if the current call is sampled.
+     */
+    public long start() {
+        return sampling ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * For rare phases (e.g. commits), which are timed whenever timing is enabled.
+     * 
+     * @return start time to pass to stop(), if timing is enabled.
+     */
+    public long startIfEnabled() {
+        return sampleRate > 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * @param phase Phase that ended.
+     * @param startNanos Value returned by start() or startIfEnabled() when the phase started.
+     */
+    public void stop(final Phase phase, final long startNanos) {
+        if (startNanos != NOT_TIMED) {
+            nanos[phase.ordinal()] += System.nanoTime() - startNanos;
+            counts[phase.ordinal()]++;
+        }
+    }
+
+    /**
+     * @param phase Phase.
+     * @return time (in nanoseconds) spent in the phase by timed calls, since the last reset.
+     */
+    public long getNanos(final Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @param phase Phase.
+     * @return number of times the phase was timed, since the last reset.
+     */
+    public long getCount(final Phase phase) {
+        return counts[phase.ordinal()];
+    }
+
+    /**
+     * Adds "sampleRate", "sampledCalls" and, for each phase, "[phase]Micros" (time spent in the phase by the sampled calls) and
+     * "[phase]Count" to values, then resets them.
+     * 
+     * @param prefix Prefix of the metric names.
+     * @param values Map to add values to.
+     */
+    void snapshotAndReset(final String prefix, final Map<String, Object> values) {
+        values.put(prefix + "sampleRate", (long) sampleRate);
+        values.put(prefix + "sampledCalls", sampledCalls);
+        sampledCalls = 0L;
+        for (int i = 0; i < PHASES.length; i++) {
+            values.put(prefix + PHASES[i].metricName + "Micros", nanos[i] / 1000L);
+            values.put(prefix + PHASES[i].metricName + "Count", counts[i]);
+            nanos[i] = 0L;
+            counts[i] = 0L;
+        }
+    }
+}
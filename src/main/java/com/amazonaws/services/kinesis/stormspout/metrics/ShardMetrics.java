@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of a shard read by a spout task.
+ * 
+ * Counters and gauges are plain (unsynchronized) longs: they are updated by the spout executor thread (nextTuple,
+ * ack and fail), which is also the thread Storm uses to collect metrics from the task. Fetcher threads (threaded
+ * fetch) don't update them: their counts are handed over to the spout thread.
+ */
+public final class ShardMetrics {
+
+    /**
+     * Counters, reset every time metrics are collected.
+     */
+    public static enum Counter {
+        /** Records emitted (excluding retries). */
+        RECORDS_EMITTED("recordsEmitted"),
+        /** Data bytes of the records emitted (excluding retries). */
+        BYTES_EMITTED("bytesEmitted"),
+        /** Records (or batches) acked. */
+        RECORDS_ACKED("recordsAcked"),
+        /** Records (or batches) failed. */
+        RECORDS_FAILED("recordsFailed"),
+        /** Records (or batches) re-emitted after a failure. */
+        RECORDS_RETRIED("recordsRetried"),
+        /** Records given up on (retries exhausted or max record age exceeded), handed to the quarantine sink. */
+        RECORDS_QUARANTINED("recordsQuarantined"),
+        /** GetRecords calls. */
+        GET_RECORDS_CALLS("getRecordsCalls"),
+        /** Total time spent in GetRecords calls. */
+        GET_RECORDS_MILLIS("getRecordsMillis"),
+        /** Records fetched from Kinesis. */
+        RECORDS_FETCHED("recordsFetched"),
+        /** Data bytes of the records fetched from Kinesis. */
+        BYTES_FETCHED("bytesFetched"),
+        /** GetRecords calls rejected because the shard's read throughput was exceeded. */
+        GET_RECORDS_THROTTLES("getRecordsThrottles"),
+        /** GetRecords calls that failed for other reasons. */
+        GET_RECORDS_ERRORS("getRecordsErrors"),
+        /** GetRecords calls that failed because the shard iterator had expired (the getter then seeks again). */
+        EXPIRED_ITERATORS("expiredIterators"),
+        /** Shard iterators refreshed in the background while the shard was idle, before they expired. */
+        ITERATOR_REFRESHES("iteratorRefreshes"),
+        /** Checkpoints (and loads) committed to ZooKeeper. */
+        CHECKPOINT_COMMITS("checkpointCommits");
+
+        private final String metricName;
+
+        private Counter(final String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    /**
+     * Gauges, reporting the last value set.
+     */
+    public static enum Gauge {
+        /** Records (or batches) emitted and not yet acked (or exhausted their retries). */
+        INFLIGHT_RECORDS("inflightRecords"),
+        /** Records fetched from Kinesis and not yet emitted. */
+        BUFFERED_RECORDS("bufferedRecords"),
+        /** Records requested by the next GetRecords call (adapted to the record size, see FetchSizer). */
+        FETCH_LIMIT("fetchLimit"),
+        /** Time since a fetch from the shard was last at the tip (how far behind the tip the task may be). */
+        LAG_MILLIS("lagMillis");
+
+        private final String metricName;
+
+        private Gauge(final String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Gauge[] GAUGES = Gauge.values();
+
+    private final long[] counters = new long[COUNTERS.length];
+    private final long[] gauges = new long[GAUGES.length];
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final LatencyHistogram failLatency = new LatencyHistogram();
+
+    /**
+     * Creates metrics that are not reported (see SpoutMetrics.forShard() for reported metrics).
+     */
+    public ShardMetrics() {
+    }
+
+    /**
+     * @param counter Counter to increment.
+     */
+    public void increment(final Counter counter) {
+        counters[counter.ordinal()]++;
+    }
+
+    /**
+     * @param counter Counter to add to.
+     * @param delta Value to add.
+     */
+    public void add(final Counter counter, final long delta) {
+        counters[counter.ordinal()] += delta;
+    }
+
+    /**
+     * @param gauge Gauge to set.
+     * @param value New value.
+     */
+    public void set(final Gauge gauge, final long value) {
+        gauges[gauge.ordinal()] = value;
+    }
+
+    /**
+     * @param millis Time from (the last) emit to ack of a record or batch.
+     */
+    public void recordAckLatency(final long millis) {
+        ackLatency.record(millis);
+    }
+
+    /**
+     * @param millis Time from (the last) emit to fail of a record or batch.
+     */
+    public void recordFailLatency(final long millis) {
+        failLatency.record(millis);
+    }
+
+    /**
+     * @return ack latencies recorded since the last reset.
+     */
+    public LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    /**
+     * @return fail latencies recorded since the last reset.
+     */
+    public LatencyHistogram getFailLatency() {
+        return failLatency;
+    }
+
+    /**
+     * @param counter Counter.
+     * @return current value of the counter (since the last reset).
+     */
+    public long get(final Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * @param gauge Gauge.
+     * @return last value set.
+     */
+    public long get(final Gauge gauge) {
+        return gauges[gauge.ordinal()];
+    }
+
+    /**
+     * Adds the current values to values (keyed by prefix + metric name), and resets the counters.
+     * 
+     * @param prefix Prefix of the metric names (e.g. shard ID).
+     * @param values Map to add values to.
+     */
+    void snapshotAndReset(final String prefix, final Map<String, Object> values) {
+        for (int i = 0; i < counters.length; i++) {
+            values.put(prefix + COUNTERS[i].metricName, counters[i]);
+            counters[i] = 0L;
+        }
+        for (int i = 0; i < gauges.length; i++) {
+            values.put(prefix + GAUGES[i].metricName, gauges[i]);
+        }
+        snapshotAndReset(prefix + "ackLatency", ackLatency, values);
+        snapshotAndReset(prefix + "failLatency", failLatency, values);
+    }
+
+    private static void snapshotAndReset(final String prefix,
+            final LatencyHistogram histogram,
+            final Map<String, Object> values) {
+        values.put(prefix + "P50", histogram.getValueAtPercentile(50.0));
+        values.put(prefix + "P99", histogram.getValueAtPercentile(99.0));
+        values.put(prefix + "P999", histogram.getValueAtPercentile(99.9));
+        values.put(prefix + "Max", histogram.getMax());
+        histogram.reset();
+    }
+}
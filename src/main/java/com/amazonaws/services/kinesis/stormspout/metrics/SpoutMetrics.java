@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import backtype.storm.metric.api.IMetric;
+
+import com.amazonaws.services.kinesis.stormspout.utils.CircuitBreaker;
+
+/**
+ * Storm metric reporting the ShardMetrics of the shards read by a spout task. Values are keyed by
+ * "shardId/metricName" (e.g. "shardId-000000000001/recordsEmitted"). The task's PhaseTimer is reported under
+ * "phase/metricName" (e.g. "phase/fetchMicros"), and the retries and circuit breakers of the Kinesis APIs called by the
+ * task under "api/apiName/metricName" (e.g. "api/getShardIterator/retries").
+ * 
+ * Shard metrics can be created from the ZooKeeper event thread (when shards are re-assigned), so access to the set of
+ * shards is synchronized. This is only done when getters are built and when metrics are collected.
+ */
+public class SpoutMetrics implements IMetric {
+    private static final String SEPARATOR = "/";
+    private static final String PHASE_PREFIX = "phase" + SEPARATOR;
+    private static final String API_PREFIX = "api" + SEPARATOR;
+
+    private final Map<String, ShardMetrics> shards = new TreeMap<>();
+    private final Map<String, CircuitBreaker> apis = new TreeMap<>();
+    private final PhaseTimer phaseTimer;
+
+    /**
+     * Creates metrics with phase timing disabled.
+     */
+    public SpoutMetrics() {
+        this(0);
+    }
+
+    /**
+     * @param phaseTimingSampleRate Initial sample rate of the phase timer (0 to disable phase timing).
+     */
+    public SpoutMetrics(final int phaseTimingSampleRate) {
+        this.phaseTimer = new PhaseTimer(phaseTimingSampleRate);
+    }
+
+    /**
+     * @return timer of the phases of nextTuple().
+     */
+    public PhaseTimer getPhaseTimer() {
+        return phaseTimer;
+    }
+
+    /**
+     * @param shardId Shard ID.
+     * @return metrics of the shard (created on first use, and reported from then on).
+     */
+    public synchronized ShardMetrics forShard(final String shardId) {
+        ShardMetrics metrics = shards.get(shardId);
+        if (metrics == null) {
+            metrics = new ShardMetrics();
+            shards.put(shardId, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @param breaker Circuit breaker of an API: its retry counters and state are reported from then on.
+     */
+    public synchronized void registerApi(final CircuitBreaker breaker) {
+        apis.put(breaker.getName(), breaker);
+    }
+
+    @Override
+    public synchronized Object getValueAndReset() {
+        final Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, ShardMetrics> e : shards.entrySet()) {
+            e.getValue().snapshotAndReset(e.getKey() + SEPARATOR, values);
+        }
+        phaseTimer.snapshotAndReset(PHASE_PREFIX, values);
+        for (Map.Entry<String, CircuitBreaker> e : apis.entrySet()) {
+            e.getValue().snapshotAndReset(API_PREFIX + e.getKey() + SEPARATOR, values);
+        }
+        return values;
+    }
+}
@@ -17,6 +17,7 @@ package com.amazonaws.services.kinesis.stormspout.state;
 
 import com.amazonaws.services.kinesis.model.Record;
 import com.amazonaws.services.kinesis.stormspout.IShardGetter;
+import com.google.common.collect.ImmutableList;
 
 /**
  * State manager for storing Amazon Kinesis Storm Spout specific state.
@@ -89,6 +90,18 @@ public interface IKinesisSpoutStateManager {
      */
     void emit(String shardId, Record record, boolean isRetry);
 
+    /**
+     * Mark a contiguous batch of records as emitted into the topology in a single tuple. The batch is acked, failed
+     * and retried as a whole, using the sequence number of its last record.
+     * 
+     * Implementations that don't support emit should silently return.
+     * 
+     * @param shardId Shard containing the emitted records.
+     * @param batch Records emitted (ascending order of sequence numbers).
+     * @param isRetry Is the batch a retry attempt?
+     */
+    void emitBatch(String shardId, ImmutableList<Record> batch, boolean isRetry);
+
     /**
      * Checks whether there is a record pending retry in a shard.
      * 
@@ -108,6 +121,35 @@ public interface IKinesisSpoutStateManager {
      */
     Record recordToRetry(String shardId);
 
+    /**
+     * Batch of Amazon Kinesis records to retry (see emitBatch).
+     * This should be called only if shouldRetry returned true.
+     * 
+     * @param shardId Shard to get the batch to retry from.
+     * @return records to retry.
+     */
+    ImmutableList<Record> batchToRetry(String shardId);
+
+    /**
+     * Inform the state that a fetch from the shard was at the tip of the shard: it returned no records, or fewer
+     * records than requested (the task is caught up with the shard).
+     * 
+     * Implementations that don't track how far behind a task is should silently return.
+     * 
+     * @param shardId Shard read at its tip.
+     */
+    void caughtUp(String shardId);
+
+    /**
+     * Inform the state that the task read all the records of a closed shard (e.g. after a split or merge).
+     * 
+     * Implementations that handle resharding should stop reading the shard once all its records are acknowledged,
+     * and start reading its child shards. Other implementations should silently return.
+     * 
+     * @param shardId Closed shard.
+     */
+    void shardEnded(String shardId);
+
     /**
      * Commit shard states into the persistent backing store of the implementation.
      */
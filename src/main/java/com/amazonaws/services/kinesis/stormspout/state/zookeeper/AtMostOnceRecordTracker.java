@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.ExtendedSequenceNumber;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tracker used in at-most-once mode (tuples are emitted unanchored, so Storm never acks or fails them). Nothing is
+ * kept in flight: the checkpoint is the sequence number of the last record emitted, so records emitted but not
+ * processed when the task dies are not replayed.
+ */
+class AtMostOnceRecordTracker implements IInflightRecordTracker {
+
+    // Sequence number of the last record emitted.
+    private String checkpointSequenceNumber;
+
+    /**
+     * @param initialSequenceNumber Initial sequence number (e.g. from stored checkpoint)
+     */
+    AtMostOnceRecordTracker(final String initialSequenceNumber) {
+        this.checkpointSequenceNumber = initialSequenceNumber;
+    }
+
+    @Override
+    public String getCheckpointSequenceNumber() {
+        return checkpointSequenceNumber;
+    }
+
+    @Override
+    public void onEmit(final Record record, final boolean isRetry) {
+        checkpointSequenceNumber = ExtendedSequenceNumber.keyOf(record);
+    }
+
+    @Override
+    public void onEmitBatch(final ImmutableList<Record> batch, final boolean isRetry) {
+        checkpointSequenceNumber = ExtendedSequenceNumber.keyOf(batch.get(batch.size() - 1));
+    }
+
+    @Override
+    public long onAck(final String sequenceNumber) {
+        return -1L;
+    }
+
+    @Override
+    public long onFail(final String sequenceNumber) {
+        return -1L;
+    }
+
+    @Override
+    public int expireRecords(final long emittedBeforeMillis) {
+        return 0;
+    }
+
+    @Override
+    public boolean shouldRetry() {
+        return false;
+    }
+
+    @Override
+    public Record recordToRetry() {
+        return null;
+    }
+
+    @Override
+    public ImmutableList<Record> batchToRetry() {
+        return null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return true;
+    }
+
+    @Override
+    public int getNumInflightRecords() {
+        return 0;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tracks in-flight records of a shard, to retry failed records and compute the checkpoint sequence number (all
+ * records up to and including it have been acked, retried up to the retry limit or quarantined). Emit times are kept,
+ * so ack and fail latencies can be measured, and records pending for too long can be quarantined. Records are not
+ * tracked if failed records are not retried (retry limit of 0).
+ * 
+ * Records are identified by ExtendedSequenceNumber.keyOf(record), and must be emitted in ascending order.
+ */
+interface IInflightRecordTracker {
+
+    /**
+     * @return the checkpoint sequence number.
+     */
+    String getCheckpointSequenceNumber();
+
+    /**
+     * @param record Record emitted.
+     * @param isRetry Is this a retry attempt of a previously emitted record.
+     */
+    void onEmit(Record record, boolean isRetry);
+
+    /**
+     * Tracks a contiguous batch of records emitted as a single tuple. The batch is acked/failed/retried as a whole,
+     * using the sequence number of its last record.
+     * 
+     * @param batch Records emitted in one tuple (ascending order of sequence numbers).
+     * @param isRetry Is this a retry attempt of a previously emitted batch.
+     */
+    void onEmitBatch(ImmutableList<Record> batch, boolean isRetry);
+
+    /**
+     * @param sequenceNumber Sequence number of the acked record.
+     * @return time the record was (last) emitted, or -1 if the record isn't tracked.
+     */
+    long onAck(String sequenceNumber);
+
+    /**
+     * @param sequenceNumber Sequence number of the failed record.
+     * @return time the record was (last) emitted, or -1 if the record isn't tracked.
+     */
+    long onFail(String sequenceNumber);
+
+    /**
+     * Quarantines the first in-flight records (the ones holding back the checkpoint) if they were last emitted before
+     * a time, and advances the checkpoint past them, as if they had exhausted their retries.
+     * 
+     * @param emittedBeforeMillis Quarantine records last emitted before this time.
+     * @return number of records (or batches) quarantined.
+     */
+    int expireRecords(long emittedBeforeMillis);
+
+    /**
+     * @return true if there are failed records to retry.
+     */
+    boolean shouldRetry();
+
+    /**
+     * @return the record to retry, or null.
+     */
+    Record recordToRetry();
+
+    /**
+     * @return the batch of records to retry (a single record if it wasn't emitted as a batch), or null.
+     */
+    ImmutableList<Record> batchToRetry();
+
+    /**
+     * @return true if there are no in-flight records (all emitted records were acked or exhausted their retries).
+     */
+    boolean isEmpty();
+
+    /**
+     * @return number of records (or batches) emitted and not yet acked or exhausted their retries.
+     */
+    int getNumInflightRecords();
+}
@@ -15,7 +15,6 @@
 
 package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 
-import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
@@ -25,6 +24,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.stormspout.IQuarantineSink.Reason;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
 
 // @formatter:off
 /**
@@ -64,7 +67,7 @@ import com.amazonaws.services.kinesis.model.Record;
  * 
  */
 // @formatter:on
-class InflightRecordTracker {
+class InflightRecordTracker implements IInflightRecordTracker {
 
     private static final Logger LOG = LoggerFactory.getLogger(InflightRecordTracker.class);
 
@@ -78,6 +81,10 @@ class InflightRecordTracker {
     private transient RecordNodeList recordNodeList;
     // Used to keep a queue of sequence numbers (corresponding to failed records that should be retried).
     private transient Queue<String> retryQueue;
+    // Failed records waiting for their retry backoff to elapse (they are then added to retryQueue).
+    private transient RetryTimerWheel retryWheel;
+    // Receives the records given up on.
+    private transient RecordQuarantine quarantine;
 
     // Max number of retries for a record.
     private final int recordRetryLimit;
@@ -86,37 +93,76 @@ class InflightRecordTracker {
      * @param initialSequenceNumber Initial sequence number (e.g. from stored checkpoint)
      */
     InflightRecordTracker(final String shardId, final String initialSequenceNumber, final int recordRetryLimit) {
+        this(shardId,
+                initialSequenceNumber,
+                recordRetryLimit,
+                new RetryTimerWheel(0L, 0L),
+                new RecordQuarantine(null, new SpoutMetrics()));
+    }
+
+    /**
+     * @param initialSequenceNumber Initial sequence number (e.g. from stored checkpoint)
+     * @param retryWheel Delays the retries of failed records.
+     * @param quarantine Receives the records that exhausted their retries or expired.
+     */
+    InflightRecordTracker(final String shardId,
+            final String initialSequenceNumber,
+            final int recordRetryLimit,
+            final RetryTimerWheel retryWheel,
+            final RecordQuarantine quarantine) {
         this.shardId = shardId;
         checkpointSequenceNumber = initialSequenceNumber;
         seqNumToRecordInfoMap = new HashMap<>();
         recordNodeList = new RecordNodeList();
         retryQueue = new LinkedList<>();
+        this.retryWheel = retryWheel;
+        this.quarantine = quarantine;
         this.recordRetryLimit = recordRetryLimit;
     }
 
     /**
      * @return the checkpointSequenceNumber
      */
-    String getCheckpointSequenceNumber() {
+    @Override
+    public String getCheckpointSequenceNumber() {
         return checkpointSequenceNumber;
     }
 
-    void onEmit(final Record record, boolean isRetry) {
+    @Override
+    public void onEmit(final Record record, boolean isRetry) {
+        onEmit(record, null, isRetry);
+    }
+
+    /**
+     * Tracks a contiguous batch of records emitted as a single tuple. The batch is acked/failed/retried as a whole,
+     * using the sequence number of its last record.
+     * 
+     * @param batch Records emitted in one tuple (ascending order of sequence numbers).
+     * @param isRetry Is this a retry attempt of a previously emitted batch.
+     */
+    @Override
+    public void onEmitBatch(final ImmutableList<Record> batch, boolean isRetry) {
+        onEmit(batch.get(batch.size() - 1), batch, isRetry);
+    }
+
+    private void onEmit(final Record record, final ImmutableList<Record> batch, boolean isRetry) {
         // Only track records if we are going to retry/redrive upon failure.
-        String sequenceNumber = record.getSequenceNumber();
+        String sequenceNumber = ExtendedSequenceNumber.keyOf(record);
         if (recordRetryLimit > 0) {
             int retryNum = 0;
             RecordNode node = seqNumToRecordInfoMap.get(sequenceNumber);
             if (node == null) {
                 // Add to in-flight records being tracked, if this is not a retry
                 if (!isRetry) {
-                    node = recordNodeList.addToList(record);
+                    node = recordNodeList.addToList(record, batch);
+                    node.setEmitMillis(System.currentTimeMillis());
                     seqNumToRecordInfoMap.put(sequenceNumber, node);
                 }
             } else {
                 // For retries, increment retry count and remove from queue of records that need to be redriven.
                 if (isRetry) {
                     node.incrementRetryCount();
+                    node.setEmitMillis(System.currentTimeMillis());
                     retryQueue.remove(sequenceNumber);
                     retryNum = node.getRetryCount();
                 }
@@ -133,18 +179,22 @@ class InflightRecordTracker {
         }
     }
 
-    void onAck(final String sequenceNumber) {
+    @Override
+    public long onAck(final String sequenceNumber) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Shard " + shardId + ": Processing ack for sequence number " + sequenceNumber);
         }
         RecordNode node = seqNumToRecordInfoMap.get(sequenceNumber);
         // Ignore if we already removed it from the map (e.g. acked or exhausted retries).
         if (node != null) {
+            final boolean wasAcked = node.isAcked();
             node.setAcked(true);
             RecordNode previous = node.getPrev();
             RecordNode next = node.getNext();
             handleAck(previous, node, next);
+            return wasAcked ? -1L : node.getEmitMillis();
         }
+        return -1L;
     }
 
     private void handleAck(RecordNode previous, RecordNode node, RecordNode next) {
@@ -170,50 +220,115 @@ class InflightRecordTracker {
 
     private void removeNodeAndUpdateCheckpoint(RecordNode node) {
         if (recordNodeList.getFirst() == node) {
-            checkpointSequenceNumber = node.getRecord().getSequenceNumber();
+            checkpointSequenceNumber = ExtendedSequenceNumber.keyOf(node.getRecord());
         }
         recordNodeList.remove(node);
-        seqNumToRecordInfoMap.remove(node.getRecord().getSequenceNumber());
+        seqNumToRecordInfoMap.remove(ExtendedSequenceNumber.keyOf(node.getRecord()));
     }
 
-    void onFail(final String sequenceNumber) {
+    @Override
+    public long onFail(final String sequenceNumber) {
         if (LOG.isInfoEnabled()) {
             LOG.info("Shard " + shardId + ": Processing failed for record with sequence number " + sequenceNumber);
         }
         RecordNode node = seqNumToRecordInfoMap.get(sequenceNumber);
         if ((node != null) && (!node.isAcked())) {
             if (node.getRetryCount() < recordRetryLimit) {
-                retryQueue.add(node.getRecord().getSequenceNumber());
+                final String key = ExtendedSequenceNumber.keyOf(node.getRecord());
+                final long backoffMillis = retryWheel.backoffMillis(node.getRetryCount());
+                if (backoffMillis == 0) {
+                    retryQueue.add(key);
+                } else {
+                    retryWheel.schedule(key, System.currentTimeMillis(), backoffMillis);
+                }
             } else {
                 if (recordRetryLimit > 0) {
-                    LOG.error("Record with sequence number " + node.getRecord().getSequenceNumber() + " was retried "
+                    LOG.error("Record with sequence number " + sequenceNumber + " was retried "
                             + node.getRetryCount() + " time(s). It has exceeded the retry limit " + recordRetryLimit
                             + ". Skipping the record.");
+                    quarantine.add(shardId, node.getBatch(), Reason.RETRIES_EXHAUSTED);
                 }
                 onAck(sequenceNumber);
             }
+            return node.getEmitMillis();
         }
+        return -1L;
+    }
 
+    @Override
+    public int expireRecords(final long emittedBeforeMillis) {
+        int expired = 0;
+        RecordNode node = recordNodeList.getFirst();
+        while ((node != null) && (!node.isAcked()) && (node.getEmitMillis() < emittedBeforeMillis)) {
+            String sequenceNumber = ExtendedSequenceNumber.keyOf(node.getRecord());
+            LOG.warn("Shard " + shardId + ": Record with sequence number " + sequenceNumber + " was emitted "
+                    + (System.currentTimeMillis() - node.getEmitMillis()) + " ms ago and is still pending."
+                    + " Quarantining the record.");
+            quarantine.add(shardId, node.getBatch(), Reason.MAX_AGE_EXCEEDED);
+            retryQueue.remove(sequenceNumber);
+            onAck(sequenceNumber);
+            expired++;
+            node = recordNodeList.getFirst();
+        }
+        return expired;
     }
 
-    boolean shouldRetry() {
+    @Override
+    public boolean shouldRetry() {
+        if (!retryWheel.isEmpty()) {
+            for (String sequenceNumber : retryWheel.expire(System.currentTimeMillis())) {
+                // Skip records acked in the meantime.
+                RecordNode node = seqNumToRecordInfoMap.get(sequenceNumber);
+                if (node != null && !node.isAcked()) {
+                    retryQueue.add(sequenceNumber);
+                }
+            }
+        }
         return !retryQueue.isEmpty();
     }
 
-    Record recordToRetry() {
-        Record recordToRetry = null;
+    /**
+     * @return true if there are no in-flight records (all emitted records were acked or exhausted their retries).
+     */
+    @Override
+    public boolean isEmpty() {
+        return recordNodeList.size() == 0 && retryQueue.isEmpty();
+    }
+
+    @Override
+    public int getNumInflightRecords() {
+        return recordNodeList.size();
+    }
+
+    @Override
+    public Record recordToRetry() {
+        RecordNode node = nodeToRetry();
+        return (node == null) ? null : node.getRecord();
+    }
+
+    /**
+     * @return the batch of records to retry (a single record if it wasn't emitted as a batch), or null.
+     */
+    @Override
+    public ImmutableList<Record> batchToRetry() {
+        RecordNode node = nodeToRetry();
+        return (node == null) ? null : node.getBatch();
+    }
+
+    private RecordNode nodeToRetry() {
         String sequenceNumber = retryQueue.peek();
         if (sequenceNumber != null) {
             RecordNode node = seqNumToRecordInfoMap.get(sequenceNumber);
             if (node != null) {
-                recordToRetry = node.getRecord();
+                Record recordToRetry = node.getRecord();
                 if (LOG.isInfoEnabled()) {
                     LOG.info("Retrying record with partition key " + recordToRetry.getPartitionKey() + " sequence number "
-                            + recordToRetry.getSequenceNumber() + ". Retry attempt " + (node.getRetryCount() + 1));
+                            + sequenceNumber + ". Retry attempt " + (node.getRetryCount() + 1));
                 }
             }
+            return node;
         }
-        return recordToRetry;
+        return null;
     }
 
     /**
@@ -248,13 +363,21 @@ class InflightRecordTracker {
      */
     class RecordNode {
         private final Record record;
+        // Records emitted together with (and ending with) record, null if record was emitted on its own.
+        private final ImmutableList<Record> batch;
         private int retryCount;
+        private long emitMillis;
         private boolean isAcked;
         private RecordNode next;
         private RecordNode prev;
 
         RecordNode(Record record) {
+            this(record, null);
+        }
+
+        RecordNode(Record record, ImmutableList<Record> batch) {
             this.record = record;
+            this.batch = batch;
             this.retryCount = 0;
             this.isAcked = false;
         }
@@ -308,6 +431,27 @@ class InflightRecordTracker {
             return record;
         }
 
+        /**
+         * @return the records tracked by this node (the last one is getRecord()).
+         */
+        ImmutableList<Record> getBatch() {
+            return (batch == null) ? ImmutableList.of(record) : batch;
+        }
+
+        /**
+         * @return time the record was (last) emitted
+         */
+        long getEmitMillis() {
+            return emitMillis;
+        }
+
+        /**
+         * @param emitMillis time the record was (last) emitted
+         */
+        void setEmitMillis(long emitMillis) {
+            this.emitMillis = emitMillis;
+        }
+
         /**
          * @return the retryCount
          */
@@ -337,15 +481,24 @@ class InflightRecordTracker {
          *         node of the list
          */
         RecordNode addToList(Record record) {
-            RecordNode node = new RecordNode(record);
+            return addToList(record, null);
+        }
+
+        /**
+         * @param record Last record of the batch (node will be keyed by this record)
+         * @param batch Contiguous records emitted together, or null
+         * @return Newly added node
+         */
+        RecordNode addToList(Record record, ImmutableList<Record> batch) {
+            RecordNode node = new RecordNode(record, batch);
 
             node.setPrev(last);
             node.setNext(null);
 
             if (last != null) {
                 // Assert that sequence number of node is > sequence number of last node in list
-                BigInteger currentLastSeqNum = new BigInteger(last.getRecord().getSequenceNumber());
-                BigInteger nodeSeqNum = new BigInteger(node.getRecord().getSequenceNumber());
+                ExtendedSequenceNumber currentLastSeqNum = ExtendedSequenceNumber.of(last.getRecord());
+                ExtendedSequenceNumber nodeSeqNum = ExtendedSequenceNumber.of(node.getBatch().get(0));
                 if (currentLastSeqNum.compareTo(nodeSeqNum) > 0) {
                     throw new IllegalArgumentException("OUT OF ORDER INSERT: ShardId " + shardId
                             + " Inserting record with seq num " + nodeSeqNum + " after " + currentLastSeqNum);
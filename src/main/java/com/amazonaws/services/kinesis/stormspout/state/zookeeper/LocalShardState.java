@@ -22,6 +22,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.ShardLoad;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Gauge;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
 
 /**
  * This class tracks the state of a shard (e.g. current shard position).
@@ -31,9 +37,21 @@ class LocalShardState {
 
     private final String shardId;
 
-    private InflightRecordTracker tracker;
+    private IInflightRecordTracker tracker;
     private String committedSequenceNumber;
 
+    // Records/bytes emitted (excluding retries) since loadWindowStartMillis. Used to measure the load of the shard.
+    private long emittedRecords;
+    private long emittedBytes;
+    private long loadWindowStartMillis;
+    private ShardLoad lastLoad;
+
+    // Last time a fetch from the shard was at the tip (returned fewer records than requested, or none). Used as a
+    // proxy for how far behind the tip the task is.
+    private long lastCaughtUpMillis;
+
+    private ShardMetrics metrics = new ShardMetrics();
+
     /**
      * Constructor.
      * 
@@ -42,9 +60,74 @@ class LocalShardState {
      * @param recordRetryLimit Number of times a failed record should be retried.
      */
     LocalShardState(final String shardId, final String latestZookeeperSeqNum, final int recordRetryLimit) {
+        this(shardId, latestZookeeperSeqNum, recordRetryLimit, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param shardId ID of the shard this LocalShardState is tracking.
+     * @param latestZookeeperSeqNum the last checkpoint stored in Zookeeper.
+     * @param recordRetryLimit Number of times a failed record should be retried.
+     * @param rangeTracking Track in-flight records with a RangeInflightRecordTracker.
+     */
+    LocalShardState(final String shardId,
+            final String latestZookeeperSeqNum,
+            final int recordRetryLimit,
+            final boolean rangeTracking) {
+        this(shardId,
+                latestZookeeperSeqNum,
+                recordRetryLimit,
+                rangeTracking,
+                new RetryTimerWheel(0L, 0L),
+                new RecordQuarantine(null, new SpoutMetrics()));
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param shardId ID of the shard this LocalShardState is tracking.
+     * @param latestZookeeperSeqNum the last checkpoint stored in Zookeeper.
+     * @param recordRetryLimit Number of times a failed record should be retried.
+     * @param rangeTracking Track in-flight records with a RangeInflightRecordTracker.
+     * @param retryWheel Delays the retries of failed records.
+     * @param quarantine Receives the records that exhausted their retries or expired.
+     */
+    LocalShardState(final String shardId,
+            final String latestZookeeperSeqNum,
+            final int recordRetryLimit,
+            final boolean rangeTracking,
+            final RetryTimerWheel retryWheel,
+            final RecordQuarantine quarantine) {
+        this(shardId,
+                latestZookeeperSeqNum,
+                rangeTracking
+                        ? new RangeInflightRecordTracker(shardId,
+                                latestZookeeperSeqNum,
+                                recordRetryLimit,
+                                retryWheel,
+                                quarantine)
+                        : new InflightRecordTracker(shardId,
+                                latestZookeeperSeqNum,
+                                recordRetryLimit,
+                                retryWheel,
+                                quarantine));
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param shardId ID of the shard this LocalShardState is tracking.
+     * @param latestZookeeperSeqNum the last checkpoint stored in Zookeeper.
+     * @param tracker Tracks the emitted records and computes the checkpoint (initialized with latestZookeeperSeqNum).
+     */
+    LocalShardState(final String shardId, final String latestZookeeperSeqNum, final IInflightRecordTracker tracker) {
         this.shardId = shardId;
-        this.tracker = new InflightRecordTracker(shardId, latestZookeeperSeqNum, recordRetryLimit);
+        this.tracker = tracker;
         this.committedSequenceNumber = latestZookeeperSeqNum;
+        this.loadWindowStartMillis = System.currentTimeMillis();
+        this.lastLoad = ShardLoad.zero();
+        this.lastCaughtUpMillis = loadWindowStartMillis;
     }
 
     /**
@@ -55,6 +138,42 @@ class LocalShardState {
      */
     void emit(final Record record, boolean isRetry) {
         tracker.onEmit(record, isRetry);
+        if (!isRetry) {
+            emittedRecords++;
+            metrics.increment(Counter.RECORDS_EMITTED);
+            if (record.getData() != null) {
+                emittedBytes += record.getData().remaining();
+                metrics.add(Counter.BYTES_EMITTED, record.getData().remaining());
+            }
+        } else {
+            metrics.increment(Counter.RECORDS_RETRIED);
+        }
+        metrics.set(Gauge.INFLIGHT_RECORDS, tracker.getNumInflightRecords());
+    }
+
+    /**
+     * Call when a contiguous batch of records is emitted as a single tuple in nextTuple.
+     *
+     * @param batch the Kinesis records emitted (ascending order of sequence numbers).
+     * @param isRetry Is this a retry attempt of a previously emitted batch.
+     */
+    void emitBatch(final ImmutableList<Record> batch, boolean isRetry) {
+        tracker.onEmitBatch(batch, isRetry);
+        if (!isRetry) {
+            long bytes = 0L;
+            for (Record record : batch) {
+                if (record.getData() != null) {
+                    bytes += record.getData().remaining();
+                }
+            }
+            emittedRecords += batch.size();
+            emittedBytes += bytes;
+            metrics.add(Counter.RECORDS_EMITTED, batch.size());
+            metrics.add(Counter.BYTES_EMITTED, bytes);
+        } else {
+            metrics.increment(Counter.RECORDS_RETRIED);
+        }
+        metrics.set(Gauge.INFLIGHT_RECORDS, tracker.getNumInflightRecords());
     }
 
     /**
@@ -64,7 +183,12 @@ class LocalShardState {
      * @param seqNum  the sequence number of the record.
      */
     void ack(final String seqNum) {
-        tracker.onAck(seqNum);
+        final long emitMillis = tracker.onAck(seqNum);
+        if (emitMillis >= 0) {
+            metrics.recordAckLatency(System.currentTimeMillis() - emitMillis);
+        }
+        metrics.increment(Counter.RECORDS_ACKED);
+        metrics.set(Gauge.INFLIGHT_RECORDS, tracker.getNumInflightRecords());
     }
 
     /** 
@@ -74,7 +198,37 @@ class LocalShardState {
      * @param failedSequenceNumber  sequence number of failed record.
      */
     void fail(final String failedSequenceNumber) {
-        tracker.onFail(failedSequenceNumber);
+        final long emitMillis = tracker.onFail(failedSequenceNumber);
+        if (emitMillis >= 0) {
+            metrics.recordFailLatency(System.currentTimeMillis() - emitMillis);
+        }
+        metrics.increment(Counter.RECORDS_FAILED);
+        metrics.set(Gauge.INFLIGHT_RECORDS, tracker.getNumInflightRecords());
+    }
+
+    /**
+     * Quarantines the in-flight records holding back the checkpoint if they were last emitted before a time.
+     *
+     * @param emittedBeforeMillis Quarantine records last emitted before this time.
+     */
+    void expireRecords(final long emittedBeforeMillis) {
+        if (tracker.expireRecords(emittedBeforeMillis) > 0) {
+            metrics.set(Gauge.INFLIGHT_RECORDS, tracker.getNumInflightRecords());
+        }
+    }
+
+    /**
+     * @return metrics of the shard.
+     */
+    ShardMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param shardMetrics Metrics to report the shard's emits, acks, fails and in-flight records to.
+     */
+    void setMetrics(final ShardMetrics shardMetrics) {
+        this.metrics = shardMetrics;
     }
 
     /**
@@ -88,6 +242,15 @@ class LocalShardState {
         return tracker.recordToRetry();
     }
 
+    /**
+     * Pre : shouldRetry().
+     * @return a batch of records to retry - may be null if we can't find a batch to retry.
+     */
+    ImmutableList<Record> batchToRetry() {
+        assert shouldRetry() : "Nothing to retry.";
+        return tracker.batchToRetry();
+    }
+
     /**
      * @return true if there are sequence numbers that need to be retried.
      */
@@ -112,6 +275,65 @@ class LocalShardState {
         return !committedSequenceNumber.equals(tracker.getCheckpointSequenceNumber());
     }
 
+    /**
+     * @return true if all the records emitted from the shard have been acked (or exhausted their retries).
+     */
+    boolean isDrained() {
+        return tracker.isEmpty();
+    }
+
+    /**
+     * Call when a fetch from the shard returned no records, or fewer than requested (the task is reading at the tip of
+     * the shard).
+     *
+     * @param nowMillis Current time.
+     */
+    void caughtUp(long nowMillis) {
+        lastCaughtUpMillis = nowMillis;
+    }
+
+    /**
+     * @param nowMillis Current time.
+     * @return Time since the task was last caught up with the tip of the shard.
+     */
+    long getLagMillis(long nowMillis) {
+        return Math.max(0L, nowMillis - lastCaughtUpMillis);
+    }
+
+    /**
+     * @return true if the load should be published (records were emitted, or the shard went idle since the last
+     *         sample).
+     */
+    boolean isLoadDirty() {
+        return emittedRecords > 0 || !lastLoad.isZero();
+    }
+
+    /**
+     * @param nowMillis Current time.
+     * @param intervalMillis Min time between two samples.
+     * @return true if the load should be published, and was last sampled at least intervalMillis ago.
+     */
+    boolean isLoadDue(long nowMillis, long intervalMillis) {
+        return isLoadDirty() && nowMillis - loadWindowStartMillis >= intervalMillis;
+    }
+
+    /**
+     * Computes the load of the shard since the previous sample, and starts a new sampling window.
+     *
+     * @param nowMillis Current time.
+     * @return Load observed since the previous call.
+     */
+    ShardLoad sampleLoad(long nowMillis) {
+        long elapsedMillis = nowMillis - loadWindowStartMillis;
+        if (elapsedMillis > 0) {
+            lastLoad = new ShardLoad(emittedBytes * 1000.0 / elapsedMillis, emittedRecords * 1000.0 / elapsedMillis);
+            emittedRecords = 0;
+            emittedBytes = 0;
+            loadWindowStartMillis = nowMillis;
+        }
+        return lastLoad;
+    }
+
     /**
      * Record the sequenced number we checkpointed.
      * @param checkpointSequenceNumber Sequence number we used to checkpoint.
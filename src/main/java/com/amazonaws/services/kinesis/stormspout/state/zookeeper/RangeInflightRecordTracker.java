@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.stormspout.IQuarantineSink.Reason;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * In-flight record tracker relying on records being emitted from a shard in ascending order of sequence numbers.
+ * 
+ * In-flight records are kept in a ring buffer, in emit order, with an acked flag per slot: the emitted records form a
+ * contiguous range starting right after the checkpoint, and acking the first record of the range advances the
+ * checkpoint over the run of acked records that follows it. Records are looked up by binary search, so there is no
+ * per-record node or map entry (unlike InflightRecordTracker). Per-record state is only kept for the exceptions:
+ * failed records (retry count and retry queue).
+ * 
+ * Records still have to be kept until they are acked, so they can be re-emitted on failure without fetching them
+ * again from Kinesis.
+ */
+class RangeInflightRecordTracker implements IInflightRecordTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(RangeInflightRecordTracker.class);
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String shardId;
+    // Max number of retries for a record.
+    private final int recordRetryLimit;
+    // All records up to (and including) this sequence number have been acked or retried up to the retry limit.
+    private String checkpointSequenceNumber;
+
+    // Ring buffer of in-flight records: each slot holds a Record, or an ImmutableList<Record> for a batch.
+    private Object[] slots;
+    private boolean[] acked;
+    private long[] emitMillis;
+    private int head;
+    private int size;
+
+    // Exceptions to the range: number of retries of failed records, and sequence numbers of records to retry.
+    private final Map<String, Integer> retryCounts;
+    private final Queue<String> retryQueue;
+    // Failed records waiting for their retry backoff to elapse (they are then added to retryQueue).
+    private final RetryTimerWheel retryWheel;
+    // Receives the records given up on.
+    private final RecordQuarantine quarantine;
+
+    /**
+     * @param shardId Shard the records are emitted from.
+     * @param initialSequenceNumber Initial sequence number (e.g. from stored checkpoint)
+     * @param recordRetryLimit Max number of retries for a record.
+     */
+    RangeInflightRecordTracker(final String shardId, final String initialSequenceNumber, final int recordRetryLimit) {
+        this(shardId,
+                initialSequenceNumber,
+                recordRetryLimit,
+                new RetryTimerWheel(0L, 0L),
+                new RecordQuarantine(null, new SpoutMetrics()));
+    }
+
+    /**
+     * @param shardId Shard the records are emitted from.
+     * @param initialSequenceNumber Initial sequence number (e.g. from stored checkpoint)
+     * @param recordRetryLimit Max number of retries for a record.
+     * @param retryWheel Delays the retries of failed records.
+     * @param quarantine Receives the records that exhausted their retries or expired.
+     */
+    RangeInflightRecordTracker(final String shardId,
+            final String initialSequenceNumber,
+            final int recordRetryLimit,
+            final RetryTimerWheel retryWheel,
+            final RecordQuarantine quarantine) {
+        this.shardId = shardId;
+        this.checkpointSequenceNumber = initialSequenceNumber;
+        this.recordRetryLimit = recordRetryLimit;
+        this.slots = new Object[INITIAL_CAPACITY];
+        this.acked = new boolean[INITIAL_CAPACITY];
+        this.emitMillis = new long[INITIAL_CAPACITY];
+        this.retryCounts = new HashMap<>();
+        this.retryQueue = new LinkedList<>();
+        this.retryWheel = retryWheel;
+        this.quarantine = quarantine;
+    }
+
+    @Override
+    public String getCheckpointSequenceNumber() {
+        return checkpointSequenceNumber;
+    }
+
+    @Override
+    public void onEmit(final Record record, boolean isRetry) {
+        onEmit(record, record, record, isRetry);
+    }
+
+    @Override
+    public void onEmitBatch(final ImmutableList<Record> batch, boolean isRetry) {
+        onEmit(batch, batch.get(0), batch.get(batch.size() - 1), isRetry);
+    }
+
+    private void onEmit(final Object slot, final Record first, final Record last, boolean isRetry) {
+        // Only track records if we are going to retry/redrive upon failure.
+        if (recordRetryLimit <= 0) {
+            return;
+        }
+
+        final String sequenceNumber = ExtendedSequenceNumber.keyOf(last);
+        if (isRetry) {
+            final int i = indexOf(sequenceNumber);
+            if (i >= 0) {
+                emitMillis[index(i)] = System.currentTimeMillis();
+                final Integer retryCount = retryCounts.get(sequenceNumber);
+                retryCounts.put(sequenceNumber, (retryCount == null) ? 1 : retryCount + 1);
+                retryQueue.remove(sequenceNumber);
+            }
+            return;
+        }
+
+        if (size > 0) {
+            final Record tail = lastRecordOf(slots[index(size - 1)]);
+            if (sequenceNumber.equals(ExtendedSequenceNumber.keyOf(tail))) {
+                // Already tracked.
+                return;
+            }
+            if (ExtendedSequenceNumber.of(tail).compareTo(ExtendedSequenceNumber.of(first)) >= 0) {
+                throw new IllegalArgumentException("OUT OF ORDER INSERT: ShardId " + shardId
+                        + " Inserting record with seq num " + ExtendedSequenceNumber.keyOf(first) + " after "
+                        + ExtendedSequenceNumber.keyOf(tail));
+            }
+        }
+
+        if (size == slots.length) {
+            grow();
+        }
+        slots[index(size)] = slot;
+        emitMillis[index(size)] = System.currentTimeMillis();
+        size++;
+    }
+
+    @Override
+    public long onAck(final String sequenceNumber) {
+        final int i = indexOf(sequenceNumber);
+        // Ignore if we are not tracking it (e.g. acked or exhausted retries).
+        if (i < 0) {
+            return -1L;
+        }
+        final long emittedAt = acked[index(i)] ? -1L : emitMillis[index(i)];
+        acked[index(i)] = true;
+        retryCounts.remove(sequenceNumber);
+        retryQueue.remove(sequenceNumber);
+
+        // Advance the checkpoint over the acked prefix of the range.
+        while (size > 0 && acked[head]) {
+            checkpointSequenceNumber = ExtendedSequenceNumber.keyOf(lastRecordOf(slots[head]));
+            slots[head] = null;
+            acked[head] = false;
+            head = (head + 1) % slots.length;
+            size--;
+        }
+        return emittedAt;
+    }
+
+    @Override
+    public long onFail(final String sequenceNumber) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Shard " + shardId + ": Processing failed for record with sequence number " + sequenceNumber);
+        }
+        final int i = indexOf(sequenceNumber);
+        if (i < 0 || acked[index(i)]) {
+            return -1L;
+        }
+        final long emittedAt = emitMillis[index(i)];
+        final Integer retryCount = retryCounts.get(sequenceNumber);
+        if (retryCount == null || retryCount < recordRetryLimit) {
+            final long backoffMillis = retryWheel.backoffMillis((retryCount == null) ? 0 : retryCount);
+            if (backoffMillis == 0) {
+                retryQueue.add(sequenceNumber);
+            } else {
+                retryWheel.schedule(sequenceNumber, System.currentTimeMillis(), backoffMillis);
+            }
+        } else {
+            LOG.error("Record with sequence number " + sequenceNumber + " was retried " + retryCount
+                    + " time(s). It has exceeded the retry limit " + recordRetryLimit + ". Skipping the record.");
+            quarantine.add(shardId, batchOf(slots[index(i)]), Reason.RETRIES_EXHAUSTED);
+            onAck(sequenceNumber);
+        }
+        return emittedAt;
+    }
+
+    @Override
+    public int expireRecords(final long emittedBeforeMillis) {
+        int expired = 0;
+        while (size > 0 && emitMillis[head] < emittedBeforeMillis) {
+            final String sequenceNumber = ExtendedSequenceNumber.keyOf(lastRecordOf(slots[head]));
+            LOG.warn("Shard " + shardId + ": Record with sequence number " + sequenceNumber + " was emitted "
+                    + (System.currentTimeMillis() - emitMillis[head]) + " ms ago and is still pending."
+                    + " Quarantining the record.");
+            quarantine.add(shardId, batchOf(slots[head]), Reason.MAX_AGE_EXCEEDED);
+            onAck(sequenceNumber);
+            expired++;
+        }
+        return expired;
+    }
+
+    @Override
+    public boolean shouldRetry() {
+        if (!retryWheel.isEmpty()) {
+            for (String sequenceNumber : retryWheel.expire(System.currentTimeMillis())) {
+                // Skip records acked in the meantime.
+                final int i = indexOf(sequenceNumber);
+                if (i >= 0 && !acked[index(i)]) {
+                    retryQueue.add(sequenceNumber);
+                }
+            }
+        }
+        return !retryQueue.isEmpty();
+    }
+
+    @Override
+    public Record recordToRetry() {
+        final Object slot = slotToRetry();
+        return (slot == null) ? null : lastRecordOf(slot);
+    }
+
+    @Override
+    public ImmutableList<Record> batchToRetry() {
+        final Object slot = slotToRetry();
+        return (slot == null) ? null : batchOf(slot);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0 && retryQueue.isEmpty();
+    }
+
+    @Override
+    public int getNumInflightRecords() {
+        return size;
+    }
+
+    private Object slotToRetry() {
+        final String sequenceNumber = retryQueue.peek();
+        if (sequenceNumber == null) {
+            return null;
+        }
+        final int i = indexOf(sequenceNumber);
+        if (i < 0) {
+            return null;
+        }
+        if (LOG.isInfoEnabled()) {
+            final Integer retryCount = retryCounts.get(sequenceNumber);
+            LOG.info("Retrying record with sequence number " + sequenceNumber + ". Retry attempt "
+                    + ((retryCount == null) ? 1 : retryCount + 1));
+        }
+        return slots[index(i)];
+    }
+
+    /**
+     * @param sequenceNumber Sequence number of a record (last record of a batch).
+     * @return position of the record in the range (0 is the oldest), or -1 if it isn't tracked.
+     */
+    private int indexOf(final String sequenceNumber) {
+        if (size == 0) {
+            return -1;
+        }
+        // Acks mostly arrive in emit order.
+        if (sequenceNumber.equals(ExtendedSequenceNumber.keyOf(lastRecordOf(slots[head])))) {
+            return 0;
+        }
+
+        final ExtendedSequenceNumber target = ExtendedSequenceNumber.parse(sequenceNumber);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int c = ExtendedSequenceNumber.of(lastRecordOf(slots[index(mid)])).compareTo(target);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int index(final int i) {
+        return (head + i) % slots.length;
+    }
+
+    private void grow() {
+        final Object[] newSlots = new Object[slots.length * 2];
+        final boolean[] newAcked = new boolean[slots.length * 2];
+        final long[] newEmitMillis = new long[slots.length * 2];
+        for (int i = 0; i < size; i++) {
+            newSlots[i] = slots[index(i)];
+            newAcked[i] = acked[index(i)];
+            newEmitMillis[i] = emitMillis[index(i)];
+        }
+        slots = newSlots;
+        acked = newAcked;
+        emitMillis = newEmitMillis;
+        head = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ImmutableList<Record> batchOf(final Object slot) {
+        return (slot instanceof Record) ? ImmutableList.of((Record) slot) : (ImmutableList<Record>) slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Record lastRecordOf(final Object slot) {
+        if (slot instanceof Record) {
+            return (Record) slot;
+        }
+        final ImmutableList<Record> batch = (ImmutableList<Record>) slot;
+        return batch.get(batch.size() - 1);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.IQuarantineSink;
+import com.amazonaws.services.kinesis.stormspout.IQuarantineSink.Reason;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Hands the records a spout task gives up on to the quarantine sink, from a background (daemon) thread started on
+ * first use. The spout thread never waits for the sink: records are queued for it (a warning is logged when more than
+ * WARN_QUEUED tuples are waiting, e.g. because the sink hangs).
+ * 
+ * hasPending() tells whether records of a shard are still waiting for the sink, so that a checkpoint past them is
+ * only committed once they are safe with the sink (the commit of the shard is skipped until then).
+ */
+class RecordQuarantine {
+    private static final Logger LOG = LoggerFactory.getLogger(RecordQuarantine.class);
+    private static final int WARN_QUEUED = 1000;
+
+    private final IQuarantineSink sink;
+    private final SpoutMetrics metrics;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    private final Object lock = new Object();
+    // Tuples added and not yet handled by the sink, in total and per shard. Guarded by lock.
+    private int pending;
+    private final Map<String, Integer> pendingPerShard = new HashMap<>();
+    private Thread thread;
+
+    /**
+     * @param sink Sink to hand quarantined records to (null to only count and drop them).
+     * @param metrics Metrics the quarantined records are counted in.
+     */
+    RecordQuarantine(final IQuarantineSink sink, final SpoutMetrics metrics) {
+        this.sink = sink;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param shardId Shard the records were read from.
+     * @param records Records emitted in one tuple.
+     * @param reason Why the records are quarantined.
+     */
+    void add(final String shardId, final ImmutableList<Record> records, final Reason reason) {
+        metrics.forShard(shardId).add(Counter.RECORDS_QUARANTINED, records.size());
+        if (sink == null) {
+            return;
+        }
+        synchronized (lock) {
+            pending++;
+            final Integer shardPending = pendingPerShard.get(shardId);
+            pendingPerShard.put(shardId, (shardPending == null) ? 1 : shardPending + 1);
+            if (pending == WARN_QUEUED + 1) {
+                LOG.warn(pending + " tuples are waiting for the quarantine sink, the checkpoints of their shards are"
+                        + " held back until it takes them.");
+            }
+            if (thread == null) {
+                thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverForever();
+                    }
+                }, "kinesis-spout-quarantine");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        // Unbounded: doesn't wait.
+        queue.add(new Entry(shardId, records, reason));
+    }
+
+    /**
+     * @param shardId Shard ID.
+     * @return true if records of the shard were added and the sink hasn't returned for them yet.
+     */
+    boolean hasPending(final String shardId) {
+        synchronized (lock) {
+            return pendingPerShard.containsKey(shardId);
+        }
+    }
+
+    /**
+     * Waits until the sink has returned for all the records added so far, or until a timeout.
+     * 
+     * @param timeoutMillis Max time to wait.
+     * @return true if the sink has returned for all the records.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitDelivered(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            long remaining = timeoutMillis;
+            while (pending > 0 && remaining > 0) {
+                lock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return pending == 0;
+        }
+    }
+
+    private void deliverForever() {
+        while (true) {
+            final Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                sink.quarantine(entry.shardId, entry.records, entry.reason);
+            } catch (RuntimeException e) {
+                LOG.error("Quarantine sink failed, " + entry.records.size() + " record(s) from " + entry.shardId
+                        + " were lost.", e);
+            } finally {
+                done(entry.shardId);
+            }
+        }
+    }
+
+    private void done(final String shardId) {
+        synchronized (lock) {
+            pending--;
+            final int shardPending = pendingPerShard.get(shardId) - 1;
+            if (shardPending == 0) {
+                pendingPerShard.remove(shardId);
+            } else {
+                pendingPerShard.put(shardId, shardPending);
+            }
+            if (pending == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String shardId;
+        private final ImmutableList<Record> records;
+        private final Reason reason;
+
+        Entry(final String shardId, final ImmutableList<Record> records, final Reason reason) {
+            this.shardId = shardId;
+            this.records = records;
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.amazonaws.services.kinesis.stormspout.utils.Backoff;
+
+/**
+ * Delays the retries of failed records of a shard: computes the backoff of a retry (exponential in the number of
+ * retries so far, capped, with jitter), and holds the sequence numbers of the records until their retry is due.
+ * 
+ * Retries are kept in a hashed timer wheel: a ring of buckets, each covering a tick of time, holding the retries due in
+ * that tick (or in the same tick of a later turn of the wheel). Scheduling a retry is O(1), and expire() only visits
+ * the buckets of the ticks that elapsed since its last call (at most a full turn), so pending retries cost nothing
+ * until their bucket comes up. The tick is a quarter of the initial backoff, so delays are accurate to within that.
+ * 
+ * Not thread safe: used from the spout thread, like the in-flight record trackers.
+ */
+class RetryTimerWheel {
+    // Number of buckets (a power of two).
+    private static final int WHEEL_SIZE = 256;
+    private static final int TICKS_PER_INITIAL_BACKOFF = 4;
+
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long tickMillis;
+    private final Random random;
+
+    // Allocated on the first retry that is scheduled.
+    private Entry[] buckets;
+    // Next tick to visit.
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param initialBackoffMillis Backoff of the first retry of a record (0 to retry failed records right away).
+     * @param maxBackoffMillis Max backoff of a retry.
+     */
+    RetryTimerWheel(final long initialBackoffMillis, final long maxBackoffMillis) {
+        this(initialBackoffMillis, maxBackoffMillis, new Random());
+    }
+
+    /**
+     * @param initialBackoffMillis Backoff of the first retry of a record (0 to retry failed records right away).
+     * @param maxBackoffMillis Max backoff of a retry.
+     * @param random Source of the jitter.
+     */
+    RetryTimerWheel(final long initialBackoffMillis, final long maxBackoffMillis, final Random random) {
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.tickMillis = Math.max(1L, initialBackoffMillis / TICKS_PER_INITIAL_BACKOFF);
+        this.random = random;
+    }
+
+    /**
+     * The backoff is exponential in the number of retries, with jitter (see Backoff).
+     * 
+     * @param retryCount Number of times the record was already retried.
+     * @return how long to wait before retrying the record (0 to retry it right away).
+     */
+    long backoffMillis(final int retryCount) {
+        if (initialBackoffMillis == 0) {
+            return 0L;
+        }
+        return Backoff.exponentialWithJitter(initialBackoffMillis, maxBackoffMillis, retryCount, random);
+    }
+
+    /**
+     * @param sequenceNumber Sequence number of the record to retry.
+     * @param nowMillis Current time.
+     * @param delayMillis Time to wait before retrying the record.
+     */
+    void schedule(final String sequenceNumber, final long nowMillis, final long delayMillis) {
+        if (buckets == null) {
+            buckets = new Entry[WHEEL_SIZE];
+            currentTick = nowMillis / tickMillis;
+        }
+        final long dueMillis = nowMillis + delayMillis;
+        final long tick = Math.max(currentTick, dueMillis / tickMillis);
+        final int bucket = (int) (tick & (WHEEL_SIZE - 1));
+        buckets[bucket] = new Entry(sequenceNumber, dueMillis, buckets[bucket]);
+        size++;
+    }
+
+    /**
+     * @param nowMillis Current time.
+     * @return sequence numbers of the records whose retry is due (in no particular order), removed from the wheel.
+     */
+    List<String> expire(final long nowMillis) {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        final long nowTick = nowMillis / tickMillis;
+        // A full turn visits every bucket.
+        final long lastTick = Math.min(nowTick, currentTick + WHEEL_SIZE - 1);
+        List<String> due = null;
+        for (long tick = currentTick; tick <= lastTick; tick++) {
+            final int bucket = (int) (tick & (WHEEL_SIZE - 1));
+            Entry kept = null;
+            for (Entry e = buckets[bucket]; e != null;) {
+                final Entry next = e.next;
+                if (e.dueMillis <= nowMillis) {
+                    if (due == null) {
+                        due = new ArrayList<>();
+                    }
+                    due.add(e.sequenceNumber);
+                    size--;
+                } else {
+                    // Due in a later turn of the wheel (or later in the current tick).
+                    e.next = kept;
+                    kept = e;
+                }
+                e = next;
+            }
+            buckets[bucket] = kept;
+        }
+        // The bucket of the current tick may still hold retries due later in the tick: visit it again next time.
+        currentTick = Math.max(currentTick, nowTick);
+        return (due == null) ? Collections.<String>emptyList() : due;
+    }
+
+    /**
+     * @return true if no retries are pending.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return number of pending retries.
+     */
+    int size() {
+        return size;
+    }
+
+    private static final class Entry {
+        private final String sequenceNumber;
+        private final long dueMillis;
+        private Entry next;
+
+        Entry(final String sequenceNumber, final long dueMillis, final Entry next) {
+            this.sequenceNumber = sequenceNumber;
+            this.dueMillis = dueMillis;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.stormspout.IShardListGetter;
+import com.amazonaws.services.kinesis.stormspout.ShardInfo;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Shard discovery. A single task (elected through ZK) lists the shards of the stream (DescribeStream) and publishes
+ * them in the ZK shardList, then keeps doing so periodically in the background to pick up new shards (e.g. after a
+ * reshard). All other tasks only read the ZK shardList, which keeps the number of DescribeStream calls independent of
+ * the number of tasks.
+ */
+class ShardDiscovery {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardDiscovery.class);
+
+    private final ZookeeperShardState zk;
+    private final IShardListGetter shardListGetter;
+    private final String owner;
+    private final long intervalMillis;
+
+    private ScheduledExecutorService executor;
+    // Set once the leader published the shardList (only accessed by the discovery thread).
+    private boolean initialized;
+
+    /**
+     * @param zk Used to elect the leader and publish the shardList.
+     * @param shardListGetter Used to list the shards in the stream.
+     * @param owner Unique ID of this task.
+     * @param intervalMillis Time between two discoveries.
+     */
+    ShardDiscovery(final ZookeeperShardState zk, final IShardListGetter shardListGetter, final String owner,
+            final long intervalMillis) {
+        this.zk = zk;
+        this.shardListGetter = shardListGetter;
+        this.owner = owner;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Tries to become the discovery leader. The new leader publishes the ZK shardList right away, then refreshes it
+     * periodically. DescribeStream is only called in the background, so that the caller (the spout thread, or the ZK
+     * watcher thread) never waits for it: the caller waits for the shardList to be in ZK, as other tasks do.
+     *
+     * @return true if this task is the leader.
+     * @throws Exception
+     */
+    synchronized boolean tryLead() throws Exception {
+        if (executor != null) {
+            return true;
+        }
+        if (!zk.tryBecomeDiscoveryLeader(owner)) {
+            return false;
+        }
+
+        LOG.info(this + " elected shard discovery leader.");
+        initialized = false;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "kinesis-spout-shard-discovery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (initialized) {
+                    discover();
+                } else {
+                    initialize();
+                }
+            }
+        }, 0L, intervalMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Stops periodic discovery (leadership is given up when the ZK session is closed).
+     */
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("owner", owner).toString();
+    }
+
+    // Publishes the shardList (or refreshes it, when taking over from a previous leader). Failures are retried on the
+    // next run.
+    private void initialize() {
+        try {
+            ImmutableSortedMap<String, ShardInfo> shards = shardListGetter.getShardList();
+            zk.initialize(ImmutableList.copyOf(shards.keySet()), getShardParents(shards));
+            initialized = true;
+        } catch (Exception e) {
+            LOG.warn(this + " could not publish the shardList, will retry in " + intervalMillis + " ms.", e);
+        }
+    }
+
+    // Merges shards that appeared since the last discovery into the ZK shardList, and removes the closed shards that
+    // expired out of the stream. Failures are retried on the next run.
+    private void discover() {
+        try {
+            ImmutableSortedMap<String, ShardInfo> shards = shardListGetter.getShardList();
+            zk.refreshShardList(ImmutableList.copyOf(shards.keySet()), getShardParents(shards));
+        } catch (Exception e) {
+            LOG.warn(this + " shard discovery failed, will retry in " + intervalMillis + " ms.", e);
+        }
+    }
+
+    /**
+     * @param shards Shards of the stream.
+     * @return Lineage of the shards (shardId -> parents), for shards created by a split or a merge.
+     */
+    static Map<String, List<String>> getShardParents(final ImmutableSortedMap<String, ShardInfo> shards) {
+        Map<String, List<String>> parents = new HashMap<>();
+        for (ShardInfo shard : shards.values()) {
+            List<String> children = new ArrayList<>(shard.getSplitsInto());
+            if (!shard.getMergesInto().isEmpty()) {
+                children.add(shard.getMergesInto());
+            }
+            for (String child : children) {
+                if (!parents.containsKey(child)) {
+                    parents.put(child, new ArrayList<String>());
+                }
+                parents.get(child).add(shard.getShardId());
+            }
+        }
+        return parents;
+    }
+}
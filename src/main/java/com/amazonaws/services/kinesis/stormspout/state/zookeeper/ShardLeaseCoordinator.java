@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Lease based shard ownership. Each task holds an ephemeral lease (ZK node) per shard it processes, so leases of a
+ * task that dies are released when its session expires. Every coordination cycle, a task:
+ *   1. gives up leases it lost, leases another task asked to steal, and leases more than one above its fair share
+ *      (the slack leaves room for a stolen shard),
+ *   2. acquires free shards up to its fair share (ceil(#shards / #tasks)), preferring the shards of its static
+ *      assignment,
+ *   3. publishes how many leases it holds and how far behind its most lagging shard is,
+ *   4. if it is caught up, asks a task that is behind (and holds more than one lease) to hand over its most lagging
+ *      shard. The owner commits its checkpoint and releases the lease on its next cycle, and the thief acquires it.
+ */
+class ShardLeaseCoordinator {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardLeaseCoordinator.class);
+
+    private final ZookeeperShardState zk;
+    private final String owner;
+    private final int taskIndex;
+    private final long stealLagMillis;
+
+    // Shard we asked another task to hand over, null if none.
+    private String pendingSteal;
+
+    /**
+     * @param zk Used to read and write leases.
+     * @param owner Unique ID of this task (lease owner).
+     * @param taskIndex Storm task index (informational).
+     * @param stealLagMillis Shards that haven't been caught up with in this long can be stolen.
+     */
+    ShardLeaseCoordinator(final ZookeeperShardState zk, final String owner, final int taskIndex,
+            final long stealLagMillis) {
+        this.zk = zk;
+        this.owner = owner;
+        this.taskIndex = taskIndex;
+        this.stealLagMillis = stealLagMillis;
+    }
+
+    /**
+     * @param numShards Number of shards in the stream.
+     * @return Max number of leases this task should hold, based on the number of live tasks.
+     * @throws Exception
+     */
+    int getTargetNumLeases(int numShards) throws Exception {
+        int numTasks = 0;
+        boolean self = false;
+        for (TaskStateV0 task : zk.getTaskStates()) {
+            numTasks++;
+            self |= owner.equals(task.getOwner());
+        }
+        return targetNumLeases(numShards, self ? numTasks : numTasks + 1);
+    }
+
+    /**
+     * Renews the leases of myShards, and returns the ones the task should stop processing. Callers should commit
+     * the state of those shards, then call release().
+     *
+     * @param myShards Shards currently processed by this task.
+     * @param target Fair share of leases for the task.
+     * @param preferred Shards assigned to the task by the static assignment strategy (released last).
+     * @param nowMillis Current time.
+     * @return Shards to stop processing.
+     * @throws Exception
+     */
+    ImmutableList<String> getShardsToRelease(final Collection<String> myShards, final int target,
+            final Set<String> preferred, final long nowMillis) throws Exception {
+        ImmutableList.Builder<String> toRelease = new ImmutableList.Builder<>();
+        List<String> kept = new ArrayList<>();
+
+        for (String shardId : myShards) {
+            ShardLeaseV0 lease = zk.getLease(shardId);
+            if (lease == null && !zk.tryAcquireLease(shardId, new ShardLeaseV0(owner, taskIndex, nowMillis))) {
+                // Lease expired with our session and was picked up by another task.
+                LOG.warn(this + " lost lease of " + shardId + ".");
+                toRelease.add(shardId);
+            } else if (lease != null && !owner.equals(lease.getOwner())) {
+                LOG.warn(this + " lost lease of " + shardId + " to " + lease.getOwner() + ".");
+                toRelease.add(shardId);
+            } else if (lease != null && lease.getStealRequestedBy() != null) {
+                LOG.info(this + " handing over " + shardId + " to " + lease.getStealRequestedBy() + ".");
+                toRelease.add(shardId);
+            } else {
+                kept.add(shardId);
+            }
+        }
+
+        toRelease.addAll(pickShardsToShed(kept, preferred, kept.size() - (target + 1)));
+        return toRelease.build();
+    }
+
+    /**
+     * Release the lease of a shard (the task must have committed the state of the shard).
+     *
+     * @param shardId Shard to release.
+     * @throws Exception
+     */
+    void release(final String shardId) throws Exception {
+        zk.releaseLease(shardId, owner);
+    }
+
+    /**
+     * Acquires free shards, up to target leases (a shard we asked to steal is acquired regardless of target).
+     *
+     * @param shardList Shards in the stream.
+     * @param numHeld Number of leases currently held by the task.
+     * @param target Max number of leases the task should hold.
+     * @param preferred Shards assigned to the task by the static assignment strategy (acquired first).
+     * @param nowMillis Current time.
+     * @return Shards acquired.
+     * @throws Exception
+     */
+    ImmutableList<String> acquireShards(final List<String> shardList, final int numHeld, final int target,
+            final Set<String> preferred, final long nowMillis) throws Exception {
+        final ImmutableSet<String> leased = zk.getLeasedShards();
+        final ImmutableList.Builder<String> acquired = new ImmutableList.Builder<>();
+        int held = numHeld;
+
+        if (pendingSteal != null) {
+            if (!leased.contains(pendingSteal)) {
+                if (zk.tryAcquireLease(pendingSteal, new ShardLeaseV0(owner, taskIndex, nowMillis))) {
+                    LOG.info(this + " stole " + pendingSteal + ".");
+                    acquired.add(pendingSteal);
+                    held++;
+                }
+                pendingSteal = null;
+            } else {
+                ShardLeaseV0 lease = zk.getLease(pendingSteal);
+                if (lease == null || !owner.equals(lease.getStealRequestedBy())) {
+                    pendingSteal = null;
+                }
+            }
+        }
+
+        for (String shardId : orderFreeShards(shardList, leased, preferred)) {
+            if (held >= target) {
+                break;
+            }
+            if (zk.tryAcquireLease(shardId, new ShardLeaseV0(owner, taskIndex, nowMillis))) {
+                acquired.add(shardId);
+                held++;
+            }
+        }
+        return acquired.build();
+    }
+
+    /**
+     * Publishes the state of the task, and if the task is caught up, asks a task that is behind to hand over a
+     * shard.
+     *
+     * @param numHeld Number of leases held by the task.
+     * @param target Fair share of leases for the task (the task doesn't steal beyond target + 1 leases).
+     * @param mostLaggingShard Shard the task is the most behind on (null if none).
+     * @param maxLagMillis How far behind the task is on mostLaggingShard.
+     * @param nowMillis Current time.
+     * @throws Exception
+     */
+    void publishAndSteal(final int numHeld, final int target, final String mostLaggingShard,
+            final long maxLagMillis, final long nowMillis) throws Exception {
+        zk.publishTaskState(new TaskStateV0(owner, taskIndex, numHeld, mostLaggingShard, maxLagMillis));
+
+        if (pendingSteal != null || maxLagMillis >= stealLagMillis || numHeld > target) {
+            return;
+        }
+
+        TaskStateV0 victim = pickVictim(zk.getTaskStates(), owner, numHeld, stealLagMillis);
+        if (victim == null) {
+            return;
+        }
+
+        String shardId = victim.getMostLaggingShard();
+        ShardLeaseV0 lease = zk.getLease(shardId);
+        // Give new owners a chance to catch up before moving the shard again.
+        if (lease != null && nowMillis - lease.getAcquiredMillis() >= stealLagMillis
+                && zk.requestLeaseSteal(shardId, victim.getOwner(), owner)) {
+            LOG.info(this + " asked " + victim.getOwner() + " to hand over " + shardId + " (behind by "
+                    + victim.getMaxLagMillis() + " ms).");
+            pendingSteal = shardId;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+            .append("taskIndex", taskIndex)
+            .append("owner", owner)
+            .toString();
+    }
+
+    /**
+     * @param numShards Number of shards.
+     * @param numTasks Number of live tasks.
+     * @return Fair share of leases for a task.
+     */
+    static int targetNumLeases(int numShards, int numTasks) {
+        return (numShards + numTasks - 1) / numTasks;
+    }
+
+    /**
+     * @param tasks States published by the live tasks.
+     * @param self Owner ID of the task looking for work.
+     * @param numHeld Number of leases held by the task looking for work.
+     * @param stealLagMillis Tasks behind by at least this much are candidates.
+     * @return The task furthest behind among the tasks that hold more than one lease, and at least as many leases as
+     *         the thief. Null if there is no such task.
+     */
+    static TaskStateV0 pickVictim(final List<TaskStateV0> tasks, final String self, final int numHeld,
+            final long stealLagMillis) {
+        TaskStateV0 victim = null;
+        for (TaskStateV0 task : tasks) {
+            if (!self.equals(task.getOwner())
+                    && task.getMostLaggingShard() != null
+                    && task.getMaxLagMillis() >= stealLagMillis
+                    && task.getNumLeases() > 1
+                    && task.getNumLeases() >= numHeld
+                    && (victim == null || task.getMaxLagMillis() > victim.getMaxLagMillis())) {
+                victim = task;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * @param shards Shards held by the task.
+     * @param preferred Shards assigned to the task by the static assignment strategy.
+     * @param count Number of shards to shed.
+     * @return count shards (or none if count <= 0), shedding shards that are not preferred first.
+     */
+    static ImmutableList<String> pickShardsToShed(final List<String> shards, final Set<String> preferred,
+            final int count) {
+        ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        int remaining = count;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = shards.size() - 1; i >= 0 && remaining > 0; i--) {
+                String shardId = shards.get(i);
+                if (preferred.contains(shardId) == (pass == 1)) {
+                    builder.add(shardId);
+                    remaining--;
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param shardList Shards in the stream.
+     * @param leased Shards leased by some task.
+     * @param preferred Shards assigned to the task by the static assignment strategy.
+     * @return Free shards, preferred shards first.
+     */
+    static ImmutableList<String> orderFreeShards(final List<String> shardList, final Set<String> leased,
+            final Set<String> preferred) {
+        ImmutableList.Builder<String> first = new ImmutableList.Builder<>();
+        ImmutableList.Builder<String> rest = new ImmutableList.Builder<>();
+        for (String shardId : shardList) {
+            if (!leased.contains(shardId)) {
+                if (preferred.contains(shardId)) {
+                    first.add(shardId);
+                } else {
+                    rest.add(shardId);
+                }
+            }
+        }
+        return first.addAll(rest.build()).build();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Used for JSON serialization/deserialization of a shard lease (ephemeral node held by the owning task).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class ShardLeaseV0 {
+
+    private String owner;
+    private int taskIndex;
+    private long acquiredMillis;
+    private String stealRequestedBy;
+
+    ShardLeaseV0(String owner, int taskIndex, long acquiredMillis) {
+        this.owner = owner;
+        this.taskIndex = taskIndex;
+        this.acquiredMillis = acquiredMillis;
+    }
+
+    public ShardLeaseV0() {
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public int getTaskIndex() {
+        return taskIndex;
+    }
+
+    public void setTaskIndex(int taskIndex) {
+        this.taskIndex = taskIndex;
+    }
+
+    public long getAcquiredMillis() {
+        return acquiredMillis;
+    }
+
+    public void setAcquiredMillis(long acquiredMillis) {
+        this.acquiredMillis = acquiredMillis;
+    }
+
+    public String getStealRequestedBy() {
+        return stealRequestedBy;
+    }
+
+    public void setStealRequestedBy(String stealRequestedBy) {
+        this.stealRequestedBy = stealRequestedBy;
+    }
+
+}
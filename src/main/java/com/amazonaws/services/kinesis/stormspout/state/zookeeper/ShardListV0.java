@@ -15,16 +15,34 @@
 
 package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.amazonaws.services.kinesis.stormspout.ShardLoad;
+import com.amazonaws.services.kinesis.stormspout.utils.ShardIdComparator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * Used for JSON serialization/deserialization of shard list state.
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 class ShardListV0 {
 
     private ImmutableList<String> shards = new ImmutableList.Builder<String>().build(); 
+    // Snapshot of the shard loads taken when the shard list was created (used for shard assignment).
+    private Map<String, ShardLoadV0> shardLoads = new HashMap<>();
+    // Parents of the shards created by a split or merge (shardId -> parent shardIds).
+    private Map<String, List<String>> parents = new HashMap<>();
+    // Shards that have been fully processed (read up to the end of the shard, and all records acked).
+    private Set<String> closedShards = new HashSet<>();
     
     public ShardListV0(List<String> shards) {
         this.shards = ImmutableList.copyOf(shards);
@@ -41,4 +59,114 @@ class ShardListV0 {
         this.shards = ImmutableList.copyOf(shards);
     }
 
+    public Map<String, ShardLoadV0> getShardLoads() {
+        return shardLoads;
+    }
+
+    public void setShardLoads(Map<String, ShardLoadV0> shardLoads) {
+        this.shardLoads = new HashMap<>(shardLoads);
+    }
+
+    public Map<String, List<String>> getParents() {
+        return parents;
+    }
+
+    public void setParents(Map<String, List<String>> parents) {
+        this.parents = new HashMap<>(parents);
+    }
+
+    public Set<String> getClosedShards() {
+        return closedShards;
+    }
+
+    public void setClosedShards(Set<String> closedShards) {
+        this.closedShards = new HashSet<>(closedShards);
+    }
+
+    /**
+     * @return the shard loads, converted to ShardLoad.
+     */
+    ImmutableMap<String, ShardLoad> toShardLoadMap() {
+        ImmutableMap.Builder<String, ShardLoad> builder = new ImmutableMap.Builder<>();
+        for (Map.Entry<String, ShardLoadV0> entry : shardLoads.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().toShardLoad());
+        }
+        return builder.build();
+    }
+
+    /**
+     * A shard can be processed if it isn't closed, and its parents (if they are still in the list) are closed. This
+     * ensures records with the same partition key are processed in order across a reshard.
+     *
+     * @param shardId shard to check.
+     * @return true if the shard can be processed.
+     */
+    boolean canProcess(String shardId) {
+        if (closedShards.contains(shardId)) {
+            return false;
+        }
+        List<String> shardParents = parents.get(shardId);
+        if (shardParents != null) {
+            for (String parent : shardParents) {
+                if (shards.contains(parent) && !closedShards.contains(parent)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds shards, lineage and closed shards to the list (existing entries are kept). The shard list stays sorted.
+     *
+     * @param newShards shards to add.
+     * @param newParents lineage to add.
+     * @param newClosedShards closed shards to add.
+     * @return true if the list was modified.
+     */
+    boolean merge(Collection<String> newShards, Map<String, List<String>> newParents,
+            Collection<String> newClosedShards) {
+        boolean modified = false;
+
+        Set<String> allShards = new HashSet<>(shards);
+        if (allShards.addAll(newShards)) {
+            List<String> sorted = new ArrayList<>(allShards);
+            Collections.sort(sorted, new ShardIdComparator());
+            shards = ImmutableList.copyOf(sorted);
+            modified = true;
+        }
+        for (Map.Entry<String, List<String>> entry : newParents.entrySet()) {
+            if (!parents.containsKey(entry.getKey())) {
+                parents.put(entry.getKey(), entry.getValue());
+                modified = true;
+            }
+        }
+        modified |= closedShards.addAll(newClosedShards);
+
+        return modified;
+    }
+
+    /**
+     * Removes the closed shards that are no longer in the stream (they expired out of its retention period), along
+     * with their lineage and load. Shards that aren't closed are kept, even if they are no longer in the stream.
+     *
+     * @param streamShards shards in the stream (output of DescribeStream).
+     * @return true if the list was modified.
+     */
+    boolean removeExpiredShards(Collection<String> streamShards) {
+        Set<String> expired = new HashSet<>(closedShards);
+        expired.removeAll(new HashSet<>(streamShards));
+        if (expired.isEmpty()) {
+            return false;
+        }
+
+        List<String> remaining = new ArrayList<>(shards);
+        remaining.removeAll(expired);
+        shards = ImmutableList.copyOf(remaining);
+        closedShards.removeAll(expired);
+        parents.keySet().removeAll(expired);
+        shardLoads.keySet().removeAll(expired);
+        return true;
+    }
+
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import com.amazonaws.services.kinesis.stormspout.ShardLoad;
+
+/**
+ * Used for JSON serialization/deserialization of the observed load of a shard.
+ */
+class ShardLoadV0 {
+
+    private double bytesPerSecond;
+    private double recordsPerSecond;
+
+    ShardLoadV0(ShardLoad load) {
+        this.bytesPerSecond = load.getBytesPerSecond();
+        this.recordsPerSecond = load.getRecordsPerSecond();
+    }
+
+    public ShardLoadV0() {
+    }
+
+    ShardLoad toShardLoad() {
+        return new ShardLoad(bytesPerSecond, recordsPerSecond);
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(double bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public double getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    public void setRecordsPerSecond(double recordsPerSecond) {
+        this.recordsPerSecond = recordsPerSecond;
+    }
+
+}
@@ -15,17 +15,26 @@
 
 package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 /**
  * Used for JSON serialization/deserialization of shard state.
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 class ShardStateV0 {
 
     private String checkpoint = "";
+    private ShardLoadV0 load;
 
     ShardStateV0(String sequenceNumber) {
         this.checkpoint = sequenceNumber;
     }
 
+    ShardStateV0(String sequenceNumber, ShardLoadV0 load) {
+        this.checkpoint = sequenceNumber;
+        this.load = load;
+    }
+
     public ShardStateV0() {
     }
 
@@ -37,4 +46,12 @@ class ShardStateV0 {
         this.checkpoint = checkpoint;
     }
 
+    public ShardLoadV0 getLoad() {
+        return load;
+    }
+
+    public void setLoad(ShardLoadV0 load) {
+        this.load = load;
+    }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Used for JSON serialization/deserialization of the lease summary a task publishes for work stealing.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class TaskStateV0 {
+
+    private String owner;
+    private int taskIndex;
+    private int numLeases;
+    private String mostLaggingShard;
+    private long maxLagMillis;
+
+    TaskStateV0(String owner, int taskIndex, int numLeases, String mostLaggingShard, long maxLagMillis) {
+        this.owner = owner;
+        this.taskIndex = taskIndex;
+        this.numLeases = numLeases;
+        this.mostLaggingShard = mostLaggingShard;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    public TaskStateV0() {
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public int getTaskIndex() {
+        return taskIndex;
+    }
+
+    public void setTaskIndex(int taskIndex) {
+        this.taskIndex = taskIndex;
+    }
+
+    public int getNumLeases() {
+        return numLeases;
+    }
+
+    public void setNumLeases(int numLeases) {
+        this.numLeases = numLeases;
+    }
+
+    public String getMostLaggingShard() {
+        return mostLaggingShard;
+    }
+
+    public void setMostLaggingShard(String mostLaggingShard) {
+        this.mostLaggingShard = mostLaggingShard;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+}
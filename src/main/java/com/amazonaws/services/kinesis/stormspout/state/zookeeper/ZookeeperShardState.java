@@ -16,7 +16,14 @@
 package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.apache.zookeeper.CreateMode;
@@ -27,11 +34,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.kinesis.stormspout.KinesisSpoutConfig;
+import com.amazonaws.services.kinesis.stormspout.ShardLoad;
 import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
 import com.amazonaws.services.kinesis.stormspout.state.zookeeper.NodeFunction.Mod;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.netflix.curator.RetryLoop;
 import com.netflix.curator.framework.CuratorFramework;
 import com.netflix.curator.framework.CuratorFrameworkFactory;
@@ -48,6 +57,13 @@ class ZookeeperShardState {
     private static final int MAX_NUM_RETRIES = 5;
     private static final String SHARD_LIST_SUFFIX = "shardList";
     private static final String STATE_SUFFIX = "state";
+    private static final String LEASES_SUFFIX = "leases";
+    private static final String TASKS_SUFFIX = "tasks";
+    private static final String DISCOVERY_LEADER_SUFFIX = "discoveryLeader";
+    private static final String PHASE_TIMING_SUFFIX = "phaseTimingSampleRate";
+
+    /** Checkpoint of a shard that was read up to its end, with all its records acked. */
+    static final String SHARD_END_CHECKPOINT = "SHARD_END";
 
     private final KinesisSpoutConfig config;
     private final Random rand;
@@ -72,59 +88,168 @@ class ZookeeperShardState {
     }
 
     /**
-     * Initialize the shardList in ZK. This is called by every spout task on activate(), and ensures
-     * that the shardList is up to date and correct.
+     * Initialize the shardList in ZK, or merge new shards into it. This is called by the discovery leader when it
+     * is elected, and also refreshes the snapshot of shard loads and closed shards (from the shard checkpoints).
      *
      * @param shards  list of shards (output of DescribeStream).
+     * @param parents  parents of the shards created by a split or merge.
      * @throws Exception
      */
-    void initialize(final ImmutableList<String> shards) throws Exception {
-        NodeFunction verifyOrCreateShardList = new NodeFunction() {
+    void initialize(final ImmutableList<String> shards, final Map<String, List<String>> parents) throws Exception {
+        final Map<String, ShardLoadV0> loads = new HashMap<>();
+        final Set<String> closedShards = new HashSet<>();
+        for (Map.Entry<String, ShardStateV0> entry : readShardStates(shards).entrySet()) {
+            if (entry.getValue().getLoad() != null) {
+                loads.put(entry.getKey(), entry.getValue().getLoad());
+            }
+            if (SHARD_END_CHECKPOINT.equals(entry.getValue().getCheckpoint())) {
+                closedShards.add(entry.getKey());
+            }
+        }
+
+        NodeFunction createOrRefreshShardList = new NodeFunction() {
             @Override
             public byte[] initialize() {
                 LOG.info(this + " First initialization of shardList: " + shards);
                 ShardListV0 shardList = new ShardListV0(shards);
-                ObjectMapper objectMapper = new ObjectMapper();
-                byte[] data;
+                shardList.setParents(parents);
+                shardList.setShardLoads(loads);
+                shardList.setClosedShards(closedShards);
+                return serialize(shardList);
+            }
+
+            @Override
+            public Mod<byte[]> apply(byte[] x) {
+                LOG.info("ShardList already initialized in Zookeeper. Merging in " + shards + " and refreshing loads.");
+                ShardListV0 shardList = deserialize(x);
+                shardList.merge(shards, parents, closedShards);
+                shardList.removeExpiredShards(shards);
+                shardList.setShardLoads(loads);
+                return Mod.modification(serialize(shardList));
+            }
+        };
+
+        atomicUpdate(SHARD_LIST_SUFFIX, createOrRefreshShardList);
+    }
+
+    /**
+     * @return true if the shardList exists in ZK.
+     * @throws Exception
+     */
+    boolean hasShardList() throws Exception {
+        return exists(SHARD_LIST_SUFFIX);
+    }
+
+    /**
+     * Try to become the task in charge of shard discovery. Leadership is an ephemeral node, so it is given up when
+     * the session of the leader expires.
+     *
+     * @param owner Unique ID of the task.
+     * @return true if the task is (or already was) the leader.
+     * @throws Exception
+     */
+    boolean tryBecomeDiscoveryLeader(final String owner) throws Exception {
+        final byte[] data = owner.getBytes(StandardCharsets.UTF_8);
+        return RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                final String path = buildZookeeperPath(DISCOVERY_LEADER_SUFFIX);
                 try {
-                    data = objectMapper.writeValueAsBytes(shardList);
-                } catch (JsonProcessingException e) {
-                    throw new KinesisSpoutException("Unable to serialize shardList " + shardList, e);
+                    zk.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+                    return true;
+                } catch (KeeperException.NodeExistsException e) {
+                    try {
+                        return Arrays.equals(data, zk.getData().forPath(path));
+                    } catch (KeeperException.NoNodeException e1) {
+                        // Leader just went away, try again on the next attempt.
+                        return false;
+                    }
                 }
-                return data;
+            }
+        });
+    }
+
+    /**
+     * Add the shards of the stream (and their lineage) to the shardList in ZK, and remove the closed shards that are
+     * no longer in the stream. The shardList is only modified (and watchers triggered) if something changed.
+     *
+     * @param shards  list of shards (output of DescribeStream).
+     * @param parents  parents of the shards created by a split or merge.
+     * @throws Exception
+     */
+    void refreshShardList(final ImmutableList<String> shards,
+            final Map<String, List<String>> parents) throws Exception {
+        NodeFunction refresh = new NodeFunction() {
+            @Override
+            public byte[] initialize() {
+                ShardListV0 shardList = new ShardListV0(shards);
+                shardList.setParents(parents);
+                return serialize(shardList);
             }
 
             @Override
             public Mod<byte[]> apply(byte[] x) {
-                // At this point, we don't support resharding. We assume the shard list is valid if one exists.
-                LOG.info("ShardList already initialized in Zookeeper. Assuming it is valid.");
+                ShardListV0 shardList = deserialize(x);
+                boolean modified = shardList.merge(shards, parents, ImmutableSet.<String>of());
+                modified |= shardList.removeExpiredShards(shards);
+                if (modified) {
+                    LOG.info("Refreshed shardList with " + shards + ".");
+                    return Mod.modification(serialize(shardList));
+                }
                 return Mod.noModification();
             }
         };
 
-        atomicUpdate(SHARD_LIST_SUFFIX, verifyOrCreateShardList);
+        atomicUpdate(SHARD_LIST_SUFFIX, refresh);
     }
 
     /**
-     * Delete the shard list in ZK. This is called by every spout task on deactivate(), so that
-     * when the task is reactivated, the latest shard list is retrieved.
+     * Add shards (and their lineage) and closed shards to the shardList in ZK. The shardList is only modified (and
+     * watchers triggered) if something was added.
      *
+     * @param shards  list of shards (output of DescribeStream).
+     * @param parents  parents of the shards created by a split or merge.
+     * @param closedShards  shards that have been fully processed.
      * @throws Exception
      */
-    void clearShardList() throws Exception {
-        delete(SHARD_LIST_SUFFIX);
+    void mergeShardList(final ImmutableList<String> shards, final Map<String, List<String>> parents,
+            final ImmutableSet<String> closedShards) throws Exception {
+        NodeFunction merge = new NodeFunction() {
+            @Override
+            public byte[] initialize() {
+                ShardListV0 shardList = new ShardListV0(shards);
+                shardList.setParents(parents);
+                shardList.setClosedShards(closedShards);
+                return serialize(shardList);
+            }
+
+            @Override
+            public Mod<byte[]> apply(byte[] x) {
+                ShardListV0 shardList = deserialize(x);
+                if (shardList.merge(shards, parents, closedShards)) {
+                    LOG.info("Merged shards " + shards + " (closed: " + closedShards + ") into shardList.");
+                    return Mod.modification(serialize(shardList));
+                }
+                return Mod.noModification();
+            }
+        };
+
+        atomicUpdate(SHARD_LIST_SUFFIX, merge);
     }
 
     /**
-     * Commit the checkpoint sequence number for a shard to Zookeeper.
+     * Commit the checkpoint sequence number for a shard to Zookeeper, along with the observed load of the shard.
      *
      * @param  shardId  shard to commit to.
      * @param  seqNum  sequence number to commit.
+     * @param  load  observed load of the shard (null if loads are not published).
      * @throws Exception
      */
-    void commitSeqNum(final String shardId, final String seqNum) throws Exception {
+    void commitSeqNum(final String shardId, final String seqNum, final ShardLoad load) throws Exception {
         ObjectMapper objectMapper = new ObjectMapper();
-        byte[] data = objectMapper.writeValueAsBytes(new ShardStateV0(seqNum));
+        ShardStateV0 state =
+                (load == null) ? new ShardStateV0(seqNum) : new ShardStateV0(seqNum, new ShardLoadV0(load));
+        byte[] data = objectMapper.writeValueAsBytes(state);
         NodeFunction commit = NodeFunction.constant(data);
         atomicUpdate(shardId + "/" + STATE_SUFFIX, commit);
     }
@@ -155,9 +280,19 @@ class ZookeeperShardState {
      * @throws Exception
      */
     ImmutableList<String> getShardList() throws Exception {
+        return ImmutableList.copyOf(getShardListState().getShardList());
+    }
+
+    /**
+     * Get the shardList from ZK, along with the shard loads, lineage and closed shards.
+     *
+     * @return the shardList state.
+     * @throws Exception
+     */
+    ShardListV0 getShardListState() throws Exception {
         byte[] data = get(SHARD_LIST_SUFFIX);
         ObjectMapper objectMapper = new ObjectMapper();
-        return ImmutableList.copyOf(objectMapper.readValue(data, ShardListV0.class).getShardList());
+        return objectMapper.readValue(data, ShardListV0.class);
     }
 
     /**
@@ -178,6 +313,195 @@ class ZookeeperShardState {
         return buildZookeeperPath(SHARD_LIST_SUFFIX).equals(path);
     }
 
+    /**
+     * Set a watcher for the phase timing sample rate (notified when the node is created, changed or deleted).
+     * 
+     * @param callback Zookeeper watcher to be set on the phase timing sample rate.
+     * @throws Exception
+     */
+    void watchPhaseTimingSampleRate(final Watcher callback) throws Exception {
+        watch(PHASE_TIMING_SUFFIX, callback);
+    }
+
+    /**
+     * The phase timing sample rate node lets operators turn phase timing on and off at runtime for all the tasks of
+     * the topology, e.g. by setting it to "100" (time one nextTuple() call in 100) or "0" (disable timing).
+     * 
+     * @return the phase timing sample rate set in ZK, or -1 if it isn't set (or isn't a non-negative integer).
+     * @throws Exception
+     */
+    int getPhaseTimingSampleRate() throws Exception {
+        final byte[] data = RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                try {
+                    return zk.getData().forPath(buildZookeeperPath(PHASE_TIMING_SUFFIX));
+                } catch (KeeperException.NoNodeException e) {
+                    return null;
+                }
+            }
+        });
+        if (data == null || data.length == 0) {
+            return -1;
+        }
+        final String value = new String(data, StandardCharsets.UTF_8).trim();
+        try {
+            final int sampleRate = Integer.parseInt(value);
+            if (sampleRate >= 0) {
+                return sampleRate;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through.
+        }
+        LOG.warn("Ignoring invalid phase timing sample rate " + value + " (must be a non-negative integer).");
+        return -1;
+    }
+
+    /**
+     * Try to acquire the lease of a shard. Leases are ephemeral nodes, so they are released automatically when the
+     * session of the owner expires.
+     *
+     * @param shardId shard to lease.
+     * @param lease lease to store.
+     * @return true if the lease was acquired, false if another task holds it.
+     * @throws Exception
+     */
+    boolean tryAcquireLease(final String shardId, final ShardLeaseV0 lease) throws Exception {
+        final byte[] data = new ObjectMapper().writeValueAsBytes(lease);
+        return RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    zk.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL)
+                      .forPath(buildZookeeperPath(leasePath(shardId)), data);
+                    return true;
+                } catch (KeeperException.NodeExistsException e) {
+                    return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * @param shardId shard to get the lease of.
+     * @return the current lease of the shard, null if no task holds it.
+     * @throws Exception
+     */
+    ShardLeaseV0 getLease(final String shardId) throws Exception {
+        try {
+            return new ObjectMapper().readValue(get(leasePath(shardId)), ShardLeaseV0.class);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the shards currently leased by some task.
+     * @throws Exception
+     */
+    ImmutableSet<String> getLeasedShards() throws Exception {
+        return ImmutableSet.copyOf(getChildren(LEASES_SUFFIX));
+    }
+
+    /**
+     * Ask the owner of a shard lease to hand it over. The owner releases the lease on its next coordination cycle.
+     *
+     * @param shardId shard to steal.
+     * @param expectedOwner task expected to hold the lease.
+     * @param thief task requesting the lease.
+     * @return true if the request was recorded, false if the lease changed hands or a steal is already pending.
+     * @throws Exception
+     */
+    boolean requestLeaseSteal(final String shardId, final String expectedOwner, final String thief)
+        throws Exception {
+        return RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                final String path = buildZookeeperPath(leasePath(shardId));
+                final Stat stat = new Stat();
+                try {
+                    ObjectMapper objectMapper = new ObjectMapper();
+                    ShardLeaseV0 lease = objectMapper.readValue(zk.getData().storingStatIn(stat).forPath(path),
+                            ShardLeaseV0.class);
+                    if (!expectedOwner.equals(lease.getOwner()) || lease.getStealRequestedBy() != null) {
+                        return false;
+                    }
+                    lease.setStealRequestedBy(thief);
+                    zk.setData().withVersion(stat.getVersion()).forPath(path, objectMapper.writeValueAsBytes(lease));
+                    return true;
+                } catch (KeeperException.NoNodeException | KeeperException.BadVersionException e) {
+                    return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Release the lease of a shard, if it is still held by owner.
+     *
+     * @param shardId shard to release.
+     * @param owner task releasing the lease.
+     * @throws Exception
+     */
+    void releaseLease(final String shardId, final String owner) throws Exception {
+        RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final String path = buildZookeeperPath(leasePath(shardId));
+                final Stat stat = new Stat();
+                try {
+                    ShardLeaseV0 lease = new ObjectMapper().readValue(zk.getData().storingStatIn(stat).forPath(path),
+                            ShardLeaseV0.class);
+                    if (owner.equals(lease.getOwner())) {
+                        zk.delete().withVersion(stat.getVersion()).forPath(path);
+                    }
+                } catch (KeeperException.NoNodeException | KeeperException.BadVersionException e) {
+                    LOG.debug("Lease of " + shardId + " changed while releasing it, leaving it alone.");
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Publish the lease summary of a task (ephemeral, removed when the task goes away).
+     *
+     * @param taskState summary to publish.
+     * @throws Exception
+     */
+    void publishTaskState(final TaskStateV0 taskState) throws Exception {
+        final byte[] data = new ObjectMapper().writeValueAsBytes(taskState);
+        RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final String path = buildZookeeperPath(TASKS_SUFFIX + "/" + taskState.getOwner());
+                try {
+                    zk.setData().forPath(path, data);
+                } catch (KeeperException.NoNodeException e) {
+                    zk.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return lease summaries published by the live tasks.
+     * @throws Exception
+     */
+    ImmutableList<TaskStateV0> getTaskStates() throws Exception {
+        ImmutableList.Builder<TaskStateV0> builder = new ImmutableList.Builder<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String owner : getChildren(TASKS_SUFFIX)) {
+            try {
+                builder.add(objectMapper.readValue(get(TASKS_SUFFIX + "/" + owner), TaskStateV0.class));
+            } catch (KeeperException.NoNodeException e) {
+                LOG.debug("Task " + owner + " went away while reading its state.");
+            }
+        }
+        return builder.build();
+    }
+
     /**
      * Closes the connection to ZK.
      * 
@@ -187,6 +511,39 @@ class ZookeeperShardState {
         zk.close();
     }
 
+    // Reads the last state committed for each shard. Failures are not fatal (the shard is treated as having no
+    // state, e.g. its load is unknown).
+    private Map<String, ShardStateV0> readShardStates(final ImmutableList<String> shards) {
+        Map<String, ShardStateV0> states = new HashMap<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String shardId : shards) {
+            try {
+                states.put(shardId, objectMapper.readValue(get(shardId + "/" + STATE_SUFFIX), ShardStateV0.class));
+            } catch (KeeperException.NoNodeException e) {
+                LOG.debug("No shard state for " + shardId + ".");
+            } catch (Exception e) {
+                LOG.warn("Could not read state of " + shardId + ".", e);
+            }
+        }
+        return states;
+    }
+
+    private static byte[] serialize(final ShardListV0 shardList) {
+        try {
+            return new ObjectMapper().writeValueAsBytes(shardList);
+        } catch (JsonProcessingException e) {
+            throw new KinesisSpoutException("Unable to serialize shardList " + shardList, e);
+        }
+    }
+
+    private static ShardListV0 deserialize(final byte[] data) {
+        try {
+            return new ObjectMapper().readValue(data, ShardListV0.class);
+        } catch (IOException e) {
+            throw new KinesisSpoutException("Unable to deserialize shardList", e);
+        }
+    }
+
     /**
      * Optimistic concurrency scheme for tryAtomicUpdate. Try to update, and keep trying
      * until successful.
@@ -219,21 +576,28 @@ class ZookeeperShardState {
         });
     }
 
-    private void delete(final String pathSuffix) throws Exception {
-        RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Void>() {
+    private List<String> getChildren(final String pathSuffix) throws Exception {
+        return RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<List<String>>() {
             @Override
-            public Void call() throws Exception {
+            public List<String> call() throws Exception {
                 try {
-                    zk.delete().forPath(buildZookeeperPath(pathSuffix));
-                    return null;
+                    return zk.getChildren().forPath(buildZookeeperPath(pathSuffix));
                 } catch (KeeperException.NoNodeException e) {
-                    // likely deleted by another task
-                    return null;
+                    return ImmutableList.of();
                 }
             }
         });
     }
 
+    private boolean exists(final String pathSuffix) throws Exception {
+        return RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return zk.checkExists().forPath(buildZookeeperPath(pathSuffix)) != null;
+            }
+        });
+    }
+
     private void watch(final String pathSuffix, final Watcher callback) throws Exception {
         RetryLoop.callWithRetry(zk.getZookeeperClient(), new Callable<Void>() {
             @Override
@@ -282,6 +646,10 @@ class ZookeeperShardState {
         return true;
     }
 
+    private static String leasePath(final String shardId) {
+        return LEASES_SUFFIX + "/" + shardId;
+    }
+
     private String buildZookeeperPath(final String suffix) {
         return "/" + config.getZookeeperPrefix() + "/" + config.getTopologyName() + "/"
                +  config.getStreamName() + "/" + suffix;
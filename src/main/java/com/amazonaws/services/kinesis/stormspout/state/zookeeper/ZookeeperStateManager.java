@@ -18,10 +18,17 @@ package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -37,11 +44,19 @@ import com.amazonaws.services.kinesis.stormspout.IShardGetterBuilder;
 import com.amazonaws.services.kinesis.stormspout.IShardListGetter;
 import com.amazonaws.services.kinesis.stormspout.InitialPositionInStream;
 import com.amazonaws.services.kinesis.stormspout.KinesisSpoutConfig;
+import com.amazonaws.services.kinesis.stormspout.ShardLoad;
 import com.amazonaws.services.kinesis.stormspout.ShardPosition;
 import com.amazonaws.services.kinesis.stormspout.exceptions.InvalidSeekPositionException;
 import com.amazonaws.services.kinesis.stormspout.exceptions.KinesisSpoutException;
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer;
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer.Phase;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Gauge;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
 import com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 
 /**
@@ -49,13 +64,26 @@ import com.google.common.collect.Iterators;
  */
 public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager {
     private static final Logger LOG = LoggerFactory.getLogger(ZookeeperStateManager.class);
+    private static final long SHARD_LIST_WAIT_MILLIS = 1000L;
+    // A shard whose checkpoint didn't move publishes its load at most once per this many checkpoint intervals (loads
+    // are only read when the shardList is initialized). Commits that advance the checkpoint carry the load as well.
+    private static final int LOAD_ONLY_COMMIT_INTERVALS = 10;
 
     private final KinesisSpoutConfig config;
     private final IShardListGetter shardListGetter;
     private final IShardGetterBuilder getterBuilder;
     private final ShardPosition seekToOnOpen;
+    private final SpoutMetrics metrics;
+    private final Watcher phaseTimingWatcher = new PhaseTimingWatcher();
+    private final RecordQuarantine quarantine;
+    // Loads are only published if the assignment strategy uses them.
+    private final boolean publishLoads;
+    private final long loadOnlyCommitMillis;
 
     private ZookeeperShardState zk;
+    private ShardLeaseCoordinator leaseCoordinator;
+    private ShardDiscovery shardDiscovery;
+    private String leaseOwner;
     private int taskIndex;
     private int totalNumTasks;
     private boolean active;
@@ -63,6 +91,11 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
     private ImmutableList<IShardGetter> getters;
     private Iterator<IShardGetter> currentGetter;
     private Map<String, LocalShardState> shardStates;
+    // Lineage from the last shardList read (shardId -> parents). Child shards without a checkpoint start at
+    // TRIM_HORIZON.
+    private Map<String, List<String>> shardParents = new HashMap<>();
+    // Closed shards that could not be recorded in the ZK shardList yet (retried on commit).
+    private Set<String> unpublishedClosedShards = new HashSet<>();
 
     /**
      * @param config Spout configuration with ZK preferences.
@@ -75,10 +108,30 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
             final IShardListGetter shardListGetter,
             final IShardGetterBuilder getterBuilder,
             final InitialPositionInStream initialPosition) {
+        this(config, shardListGetter, getterBuilder, initialPosition, new SpoutMetrics());
+    }
+
+    /**
+     * @param config Spout configuration with ZK preferences.
+     * @param shardListGetter Used to fetch the list of shards in the stream.
+     * @param getterBuilder Used to build getters for shards a task is responsible for.
+     * @param initialPosition Fetch records from this position when there is no pre-existing ZK state.
+     * @param metrics Metrics the shard states report to (emits, acks, fails, in-flight records, lag, commits).
+     */
+    public ZookeeperStateManager(
+            final KinesisSpoutConfig config,
+            final IShardListGetter shardListGetter,
+            final IShardGetterBuilder getterBuilder,
+            final InitialPositionInStream initialPosition,
+            final SpoutMetrics metrics) {
         this.config = config;
         this.shardListGetter = shardListGetter;
         this.getterBuilder = getterBuilder;
         this.seekToOnOpen = getShardPosition(initialPosition);
+        this.metrics = metrics;
+        this.quarantine = new RecordQuarantine(config.getQuarantineSink(), metrics);
+        this.publishLoads = config.getShardAssignmentStrategy().usesShardLoads();
+        this.loadOnlyCommitMillis = LOAD_ONLY_COMMIT_INTERVALS * (long) config.getCheckpointIntervalMillis();
         this.active = false;
     }
 
@@ -101,14 +154,15 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
     @Override
     public void activate() {
         this.zk = new ZookeeperShardState(config);
+        this.leaseOwner = UUID.randomUUID().toString();
         this.active = true;
 
-        // Ensure that the task can safely be activated
-        // This will take care of making sure the list is sorted too.
-        ImmutableList<String> shardList = ImmutableList.copyOf(shardListGetter.getShardList().keySet());
-        LOG.info(this + "Activating with shardList " + shardList);
+        // Ensure that the task can safely be activated: one task lists the shards of the stream and
+        // publishes them in ZK, the others wait for the shardList to be there.
+        this.shardDiscovery = new ShardDiscovery(zk, shardListGetter, leaseOwner,
+                config.getShardDiscoveryIntervalMillis());
         try {
-            zk.initialize(shardList);
+            awaitShardList();
             // Hook shardList watcher for the first time.
             zk.watchShardList(this);
         } catch (Exception e) {
@@ -116,6 +170,7 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
                       + " Assuming it is unsafe to continue.", e);
             throw new KinesisSpoutException(e);
         }
+        refreshPhaseTimingSampleRate();
     }
 
     /* (non-Javadoc)
@@ -123,14 +178,13 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
      */
     @Override
     public void deactivate() throws InterruptedException {
-        commitShardStates();
+        commitLocalShardStates();
 
+        // Leases and discovery leadership are ephemeral, closing the ZK connection releases them.
+        // The shardList is kept, the next discovery leader will refresh it.
+        this.leaseCoordinator = null;
+        shardDiscovery.stop();
         this.active = false;
-        try {
-            zk.clearShardList();
-        } catch (Exception e) {
-            LOG.error(this + " something went wrong while clearing Zookeeper shard list.", e);
-        }
         zk.close();
     }
 
@@ -162,7 +216,12 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
         this.taskIndex = newTaskIndex;
         this.totalNumTasks = newTotalNumTasks;
 
-        commitShardStates();
+        commitLocalShardStates();
+        releaseAllLeases();
+        if (config.isShardLeasesEnabled()) {
+            this.leaseCoordinator = new ShardLeaseCoordinator(zk, leaseOwner, taskIndex,
+                    config.getLeaseStealLagMillis());
+        }
         bootstrapStateFromZookeeper();
     }
 
@@ -208,6 +267,14 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
         safeGetShardState(shardId).emit(record, isRetry);
     }
 
+    /* (non-Javadoc)
+     * @see com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager#emitBatch(java.lang.String, com.google.common.collect.ImmutableList, boolean)
+     */
+    @Override
+    public void emitBatch(final String shardId, final ImmutableList<Record> batch, boolean isRetry) {
+        safeGetShardState(shardId).emitBatch(batch, isRetry);
+    }
+
     /* (non-Javadoc)
      * @see com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager#shouldRetry(java.lang.String)
      */
@@ -224,13 +291,67 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
         return safeGetShardState(shardId).recordToRetry();
     }
 
+    /* (non-Javadoc)
+     * @see com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager#batchToRetry(java.lang.String)
+     */
+    @Override
+    public ImmutableList<Record> batchToRetry(final String shardId) {
+        return safeGetShardState(shardId).batchToRetry();
+    }
+
+    /* (non-Javadoc)
+     * @see com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager#shardEnded(java.lang.String)
+     */
+    @Override
+    public void shardEnded(final String shardId) {
+        final LocalShardState st = shardStates.get(shardId);
+
+        // Wait for in-flight records to be acked (or retried, or taken by the quarantine sink) before retiring the
+        // shard.
+        if (st != null && st.isDrained() && !quarantine.hasPending(shardId)) {
+            retireShard(shardId);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager#caughtUp(java.lang.String)
+     */
+    @Override
+    public void caughtUp(final String shardId) {
+        final LocalShardState st = shardStates.get(shardId);
+
+        if (st != null) {
+            st.caughtUp(System.currentTimeMillis());
+        }
+    }
+
     // Will commit the checkpoint from the local shard states to ZK if the ZK
-    // state needs updating.
+    // state needs updating. When shard leases are enabled, this also runs a lease coordination cycle.
     /* (non-Javadoc)
      * @see com.amazonaws.services.kinesis.stormspout.state.IKinesisSpoutStateManager#commitLocalShardStates()
      */
     @Override
     public void commitShardStates() {
+        final PhaseTimer phaseTimer = metrics.getPhaseTimer();
+        final long start = phaseTimer.startIfEnabled();
+        commitLocalShardStates();
+
+        if (!unpublishedClosedShards.isEmpty()) {
+            publishClosedShards();
+        }
+        // Take over discovery if the leader went away.
+        try {
+            shardDiscovery.tryLead();
+        } catch (Exception e) {
+            LOG.warn(this + " could not take over shard discovery.", e);
+        }
+        if (leaseCoordinator != null) {
+            coordinateLeases();
+        }
+        phaseTimer.stop(Phase.COMMIT, start);
+    }
+
+    private void commitLocalShardStates() {
         checkState(active, "Cannot commit state if state is not active (a ZK"
                 + " connection is necessary).");
 
@@ -240,23 +361,36 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
         }
 
         for (final Entry<String, LocalShardState> entry : shardStates.entrySet()) {
-            final String shardId = entry.getKey();
-            final LocalShardState st = entry.getValue();
+            commitShardState(entry.getKey(), entry.getValue());
+        }
+    }
 
-            if (st.isDirty()) {
-                try {
-                    String checkpointSequenceNumber = st.getLatestValidSeqNum();
-                    zk.commitSeqNum(shardId, checkpointSequenceNumber);
-                    st.commit(checkpointSequenceNumber);
+    private void commitShardState(final String shardId, final LocalShardState st) {
+        final long now = System.currentTimeMillis();
+        st.getMetrics().set(Gauge.LAG_MILLIS, st.getLagMillis(now));
+        if (config.getMaxRecordAgeMillis() > 0) {
+            st.expireRecords(now - config.getMaxRecordAgeMillis());
+        }
+        if (quarantine.hasPending(shardId)) {
+            // Don't checkpoint past quarantined records before the quarantine sink has them.
+            LOG.debug(this + " records of " + shardId + " are waiting for the quarantine sink, not committing.");
+        } else if (st.isDirty() || (publishLoads && st.isLoadDue(now, loadOnlyCommitMillis))) {
+            try {
+                String checkpointSequenceNumber = st.getLatestValidSeqNum();
+                boolean advanced = st.isDirty();
+                zk.commitSeqNum(shardId, checkpointSequenceNumber, publishLoads ? st.sampleLoad(now) : null);
+                st.commit(checkpointSequenceNumber);
+                st.getMetrics().increment(Counter.CHECKPOINT_COMMITS);
+                if (advanced) {
                     LOG.info(this + "Advanced checkpoint for " + shardId + " to " + st.getLatestValidSeqNum());
-                } catch (Exception e) {
-                    String message = this + " could not commit ZK state for shardId=" + shardId + "."
-                            + " The ZK state is now out of date.";
-                    LOG.error(message, e);
                 }
-            } else {
-                LOG.debug(this + "Local shard state for " + shardId + " was not dirty - not doing anything");
+            } catch (Exception e) {
+                String message = this + " could not commit ZK state for shardId=" + shardId + "."
+                        + " The ZK state is now out of date.";
+                LOG.error(message, e);
             }
+        } else {
+            LOG.debug(this + "Local shard state for " + shardId + " was not dirty - not doing anything");
         }
     }
 
@@ -285,13 +419,40 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
         }
 
         // If we are handling a shardList modification, then most probably another task handled
-        // a reshard, and we need to sync with the state in ZK.
+        // a reshard (new child shards, or closed parent shards), and we need to sync with the state in ZK.
         if (event.getType() == EventType.NodeDataChanged && zk.isShardList(event.getPath())) {
-            LOG.info(this + " detected change in shardList. Committing current shard state and "
-                     + "reinitializing spout task from ZK.");
+            LOG.info(this + " detected change in shardList. Reconciling shard assignment with ZK.");
 
-            commitShardStates();
-            bootstrapStateFromZookeeper();
+            if (leaseCoordinator != null) {
+                coordinateLeases();
+            } else {
+                reconcileShardAssignment();
+            }
+        }
+    }
+
+    // Re-hooks the phase timing watcher, then applies the sample rate set in ZK (or the configured one if it isn't
+    // set). Failures are not fatal: phase timing is only a diagnostic.
+    private void refreshPhaseTimingSampleRate() {
+        try {
+            zk.watchPhaseTimingSampleRate(phaseTimingWatcher);
+            final int sampleRate = zk.getPhaseTimingSampleRate();
+            metrics.getPhaseTimer().setSampleRate(sampleRate >= 0 ? sampleRate : config.getPhaseTimingSampleRate());
+        } catch (Exception e) {
+            LOG.warn(this + " could not read the phase timing sample rate from ZK.", e);
+        }
+    }
+
+    // Watches the phase timing sample rate separately from the shardList, so toggling phase timing never
+    // triggers a reconciliation of the shard assignment.
+    private class PhaseTimingWatcher implements Watcher {
+        @Override
+        public void process(final WatchedEvent event) {
+            synchronized (ZookeeperStateManager.this) {
+                if (active && event.getType() != EventType.None) {
+                    refreshPhaseTimingSampleRate();
+                }
+            }
         }
     }
 
@@ -305,6 +466,19 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
     // Recomputes shard assignment for the current task. Then, recreates the local shard state
     // and the getters from whatever data is in Zookeeper.
     private void bootstrapStateFromZookeeper() {
+        if (getters != null) {
+            closeGetters(getters);
+        }
+
+        // With leases, start from scratch and acquire shards right away.
+        if (leaseCoordinator != null) {
+            this.shardStates = new HashMap<>();
+            this.getters = ImmutableList.of();
+            this.currentGetter = Iterators.cycle(getters);
+            coordinateLeases();
+            return;
+        }
+
         ImmutableList<String> shardAssignment = getShardAssignment();
 
         // Task could not get an assignment (e.g. there are too many tasks for too few shards).
@@ -320,6 +494,60 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
         LOG.info(this + " got getter assignment. Handling " + getters + ".");
     }
 
+    // Starts and stops processing shards so the task matches its current assignment. Unlike
+    // bootstrapStateFromZookeeper, shards that stay assigned to the task keep their in-flight state.
+    private void reconcileShardAssignment() {
+        final ImmutableList<String> shardAssignment = getShardAssignment();
+
+        for (String shardId : new ArrayList<>(shardStates.keySet())) {
+            if (!shardAssignment.contains(shardId)) {
+                removeShard(shardId);
+            }
+        }
+        for (String shardId : shardAssignment) {
+            if (!shardStates.containsKey(shardId)) {
+                addShard(shardId);
+            }
+        }
+    }
+
+    // Records that the shard was fully processed and stops processing it. Then, publishes the closed shard in the
+    // ZK shardList, which will get the children (published by shard discovery) started on the tasks they are
+    // assigned to.
+    private void retireShard(final String shardId) {
+        try {
+            zk.commitSeqNum(shardId, ZookeeperShardState.SHARD_END_CHECKPOINT, ShardLoad.zero());
+        } catch (Exception e) {
+            LOG.error(this + " could not checkpoint the end of " + shardId + ", will try again.", e);
+            return;
+        }
+        LOG.info(this + " reached the end of " + shardId + " and all its records were acked. Retiring it.");
+
+        dropShard(shardId);
+        if (leaseCoordinator != null) {
+            try {
+                leaseCoordinator.release(shardId);
+            } catch (Exception e) {
+                LOG.warn(this + " could not release lease of " + shardId + ".", e);
+            }
+        }
+
+        unpublishedClosedShards.add(shardId);
+        publishClosedShards();
+    }
+
+    // Merges the closed shards into the ZK shardList.
+    private void publishClosedShards() {
+        try {
+            zk.mergeShardList(ImmutableList.<String>of(), new HashMap<String, List<String>>(),
+                    ImmutableSet.copyOf(unpublishedClosedShards));
+            unpublishedClosedShards.clear();
+        } catch (Exception e) {
+            LOG.error(this + " could not record closed shards " + unpublishedClosedShards + " in ZK shardList,"
+                    + " will try again on the next commit.", e);
+        }
+    }
+
     // Create the local shard state from Zookeeper.
     private Map<String, LocalShardState> makeLocalState(ImmutableList<String> shardAssignment) {
         Map<String, LocalShardState> state = new HashMap<>();
@@ -333,7 +561,19 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
                           + " from ZooKeeper. Starting from default getter position.");
                 latestValidSeqNum = "";
             }
-            state.put(shardId, new LocalShardState(shardId, latestValidSeqNum, config.getRecordRetryLimit()));
+            final LocalShardState st;
+            if (config.isAtMostOnceEnabled()) {
+                st = new LocalShardState(shardId, latestValidSeqNum, new AtMostOnceRecordTracker(latestValidSeqNum));
+            } else {
+                st = new LocalShardState(shardId,
+                        latestValidSeqNum,
+                        config.getRecordRetryLimit(),
+                        config.isRangeInflightTrackingEnabled(),
+                        new RetryTimerWheel(config.getRetryBackoffMillis(), config.getMaxRetryBackoffMillis()),
+                        quarantine);
+            }
+            st.setMetrics(metrics.forShard(shardId));
+            state.put(shardId, st);
         }
 
         return state;
@@ -351,7 +591,13 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
             final LocalShardState shardState = safeGetShardState(shardId);
 
             try {
-                if (shardState.getLatestValidSeqNum().isEmpty() && seekToOnOpen != null) {
+                if (ZookeeperShardState.SHARD_END_CHECKPOINT.equals(shardState.getLatestValidSeqNum())) {
+                    // Shard was closed, but the shardList doesn't reflect it yet. It'll be retired again right away.
+                    getter.seek(ShardPosition.end());
+                } else if (shardState.getLatestValidSeqNum().isEmpty() && shardParents.containsKey(shardId)) {
+                    // Child of a reshard: its parents have been processed, start from the beginning of the shard.
+                    getter.seek(ShardPosition.trimHorizon());
+                } else if (shardState.getLatestValidSeqNum().isEmpty() && seekToOnOpen != null) {
                     getter.seek(seekToOnOpen);
                 } else if (!shardState.getLatestValidSeqNum().isEmpty()) {
                     getter.seek(ShardPosition.afterSequenceNumber(
@@ -367,26 +613,154 @@ public class ZookeeperStateManager implements Watcher, IKinesisSpoutStateManager
     }
 
     // Computes the task's shard assignment based on the task index and the total number of tasks.
+    // Shards that can't be processed yet (closed shards, or shards whose parents are still open) are left out.
     private ImmutableList<String> getShardAssignment() {
+        final ShardListV0 shardListState = readShardListState();
+        final ImmutableList<String> shardList = ImmutableList.copyOf(shardListState.getShardList());
+        final ImmutableMap<String, ShardLoad> shardLoads = shardListState.toShardLoadMap();
+
         final ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
-        ImmutableList<String> shardList;
+        for (String shardId : config.getShardAssignmentStrategy().getShardAssignment(shardList, shardLoads,
+                taskIndex, totalNumTasks)) {
+            if (shardListState.canProcess(shardId)) {
+                builder.add(shardId);
+            }
+        }
+        return builder.build();
+    }
+
+    // Reads the shardList state from ZK.
+    private ShardListV0 readShardListState() {
+        ShardListV0 shardListState;
 
         // Note that this uses ZK, not DescribeStream API. This ensures that all
         // tasks share a consistent (although possibly outdated) view of the stream.
         try {
-            shardList = zk.getShardList();
-            LOG.info(this + " Got shardList: " + shardList);
+            shardListState = zk.getShardListState();
+            LOG.info(this + " Got shardList: " + shardListState.getShardList());
         } catch (Exception e) {
             LOG.error(this + " could not compute shard assigment: could not retrieve shard list"
                       + " from ZK.", e);
             throw new KinesisSpoutException(e);
         }
 
-        for (int i = taskIndex; i < shardList.size(); i += totalNumTasks) {
-            builder.add(shardList.get(i));
+        this.shardParents = shardListState.getParents();
+        return shardListState;
+    }
+
+    // Runs a lease coordination cycle: drops shards whose lease was lost or stolen (or that are above the fair share
+    // of the task), acquires free shards, then publishes the task lag and possibly asks a lagging task for a shard.
+    // Failures are logged, the next cycle will try again.
+    private void coordinateLeases() {
+        final long now = System.currentTimeMillis();
+        try {
+            final ShardListV0 shardListState = zk.getShardListState();
+            final List<String> shardList = new ArrayList<>();
+            for (String shardId : shardListState.getShardList()) {
+                if (shardListState.canProcess(shardId)) {
+                    shardList.add(shardId);
+                }
+            }
+            final ImmutableSet<String> preferred = ImmutableSet.copyOf(getShardAssignment());
+            final int target = leaseCoordinator.getTargetNumLeases(shardList.size());
+
+            for (String shardId : leaseCoordinator.getShardsToRelease(new ArrayList<>(shardStates.keySet()), target,
+                    preferred, now)) {
+                removeShard(shardId);
+                leaseCoordinator.release(shardId);
+            }
+
+            for (String shardId : leaseCoordinator.acquireShards(shardList, shardStates.size(), target, preferred,
+                    now)) {
+                addShard(shardId);
+            }
+
+            String mostLaggingShard = null;
+            long maxLagMillis = 0L;
+            for (final Entry<String, LocalShardState> entry : shardStates.entrySet()) {
+                long lagMillis = entry.getValue().getLagMillis(now);
+                if (mostLaggingShard == null || lagMillis > maxLagMillis) {
+                    mostLaggingShard = entry.getKey();
+                    maxLagMillis = lagMillis;
+                }
+            }
+            leaseCoordinator.publishAndSteal(shardStates.size(), target, mostLaggingShard, maxLagMillis, now);
+        } catch (Exception e) {
+            LOG.error(this + " lease coordination failed, will retry on the next commit.", e);
         }
+    }
 
-        return builder.build();
+    // Releases the leases of all shards processed by the task. Callers must have committed the shard states.
+    private void releaseAllLeases() {
+        if (leaseCoordinator == null || shardStates == null) {
+            return;
+        }
+        for (String shardId : shardStates.keySet()) {
+            try {
+                leaseCoordinator.release(shardId);
+            } catch (Exception e) {
+                LOG.warn(this + " could not release lease of " + shardId + ".", e);
+            }
+        }
+    }
+
+    // Starts processing a shard (from its last checkpoint).
+    private void addShard(final String shardId) {
+        final ImmutableList<String> shard = ImmutableList.of(shardId);
+        shardStates.putAll(makeLocalState(shard));
+        this.getters = new ImmutableList.Builder<IShardGetter>().addAll(getters).addAll(makeGetters(shard)).build();
+        this.currentGetter = Iterators.cycle(getters);
+        LOG.info(this + " started processing " + shardId + ". Handling " + getters + ".");
+    }
+
+    // Commits the state of a shard and stops processing it.
+    private void removeShard(final String shardId) {
+        final LocalShardState st = shardStates.get(shardId);
+        if (st != null) {
+            commitShardState(shardId, st);
+        }
+        dropShard(shardId);
+    }
+
+    // Stops processing a shard (without committing its state).
+    private void dropShard(final String shardId) {
+        shardStates.remove(shardId);
+
+        final ImmutableList.Builder<IShardGetter> builder = new ImmutableList.Builder<>();
+        for (IShardGetter getter : getters) {
+            if (!getter.getAssociatedShard().equals(shardId)) {
+                builder.add(getter);
+            } else {
+                closeGetters(ImmutableList.of(getter));
+            }
+        }
+        this.getters = builder.build();
+        this.currentGetter = Iterators.cycle(getters);
+        LOG.info(this + " stopped processing " + shardId + ". Handling " + getters + ".");
+    }
+
+    // Releases the resources of getters that are no longer used (e.g. the fetcher threads of threaded getters).
+    private void closeGetters(final ImmutableList<IShardGetter> oldGetters) {
+        for (IShardGetter getter : oldGetters) {
+            if (getter instanceof Closeable) {
+                try {
+                    ((Closeable) getter).close();
+                } catch (IOException e) {
+                    LOG.warn(this + " could not close getter " + getter + ".", e);
+                }
+            }
+        }
+    }
+
+    // Waits until the shardList is in ZK, becoming the discovery leader (which creates it in the background) if there
+    // is no leader.
+    private void awaitShardList() throws Exception {
+        shardDiscovery.tryLead();
+        while (!zk.hasShardList()) {
+            LOG.info(this + " waiting for the shard discovery leader to publish the shardList.");
+            Thread.sleep(SHARD_LIST_WAIT_MILLIS);
+            shardDiscovery.tryLead();
+        }
     }
 
     // Post : getShardState(_) != null
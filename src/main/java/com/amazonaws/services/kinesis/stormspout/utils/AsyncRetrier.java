@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.kinesis.stormspout.exceptions.CircuitBreakerOpenException;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Retries calls on a scheduler, so that no thread sleeps (or is held) between attempts: the attempts of a call run on
+ * the scheduler's threads, and the caller gets a future of the result. Unlike InfiniteConstantBackoffRetry, the
+ * backoff grows exponentially (with jitter), a call is given up on after a deadline, and attempts are held back while
+ * the circuit breaker of the API is open.
+ */
+public class AsyncRetrier {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncRetrier.class);
+
+    private static AsyncRetrier shared;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor.
+     * 
+     * @param scheduler Runs the attempts of the calls.
+     */
+    public AsyncRetrier(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the retrier shared by the spout tasks of the worker (its threads are daemon threads).
+     */
+    public static synchronized AsyncRetrier shared() {
+        if (shared == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            shared = new AsyncRetrier(Executors.newScheduledThreadPool(2, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "kinesis-spout-retry-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }));
+        }
+        return shared;
+    }
+
+    /**
+     * Submits a call. The first attempt is made right away (on the scheduler) unless the breaker is open.
+     * 
+     * @param call Call to make.
+     * @param policy Retry policy of the call.
+     * @param breaker Circuit breaker of the API called.
+     * @param <T> Result type.
+     * @return future of the result. It fails with the exception of the last attempt if the call isn't retryable or
+     *         the deadline is reached, or with CircuitBreakerOpenException if the breaker stayed open until the
+     *         deadline.
+     */
+    public <T> ListenableFuture<T> submit(final Callable<T> call, final RetryPolicy policy,
+            final CircuitBreaker breaker) {
+        final Attempt<T> attempt = new Attempt<>(call, policy, breaker);
+        scheduler.execute(attempt);
+        return attempt.result;
+    }
+
+    private final class Attempt<T> implements Runnable {
+        private final Callable<T> call;
+        private final RetryPolicy policy;
+        private final CircuitBreaker breaker;
+        private final long deadline;
+        private final SettableFuture<T> result = SettableFuture.create();
+        private int retries;
+
+        Attempt(final Callable<T> call, final RetryPolicy policy, final CircuitBreaker breaker) {
+            this.call = call;
+            this.policy = policy;
+            this.breaker = breaker;
+            this.deadline = System.currentTimeMillis() + policy.getDeadlineMillis();
+        }
+
+        @Override
+        public void run() {
+            if (result.isCancelled()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            final long waitMillis = breaker.millisUntilAllowed(now);
+            if (waitMillis > 0) {
+                if (now + waitMillis > deadline) {
+                    breaker.onAbandoned();
+                    result.setException(new CircuitBreakerOpenException("Circuit breaker of " + breaker.getName()
+                            + " is open, giving up on the call."));
+                } else {
+                    scheduler.schedule(this, waitMillis, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+
+            try {
+                final T value = call.call();
+                breaker.onSuccess();
+                result.set(value);
+            } catch (Exception e) {
+                if (!policy.isRetryable(e)) {
+                    // Not a failure of the API (e.g. invalid request): don't count it against the breaker.
+                    breaker.onSuccess();
+                    result.setException(e);
+                    return;
+                }
+                now = System.currentTimeMillis();
+                breaker.onFailure(now);
+                final long backoffMillis = policy.backoffMillis(++retries);
+                if (now + backoffMillis > deadline) {
+                    LOG.warn("Giving up on " + breaker.getName() + " after " + retries + " attempts.", e);
+                    breaker.onAbandoned();
+                    result.setException(e);
+                } else {
+                    LOG.debug("Caught " + e.getClass().getName() + " from " + breaker.getName() + ", retrying in "
+                            + backoffMillis + " ms.");
+                    breaker.onRetry();
+                    scheduler.schedule(this, backoffMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (Error e) {
+                result.setException(e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.utils;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter, shared by the retries of calls (RetryPolicy) and of failed records.
+ */
+public final class Backoff {
+    private Backoff() {
+    }
+
+    /**
+     * The backoff doubles with each retry, up to the max backoff, and is then drawn at random from its upper half (so
+     * that calls or records that failed together are not all retried together).
+     * 
+     * @param initialBackoffMillis Backoff before the first retry (must be positive).
+     * @param maxBackoffMillis Max backoff.
+     * @param doublings Number of times the initial backoff is doubled (0 for the first retry).
+     * @param random Source of the jitter.
+     * @return time to wait before the retry (at least 1 ms).
+     */
+    public static long exponentialWithJitter(final long initialBackoffMillis,
+            final long maxBackoffMillis,
+            final int doublings,
+            final Random random) {
+        long backoff = initialBackoffMillis;
+        for (int i = 0; i < doublings && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+        final long half = backoff / 2;
+        return Math.max(1L, backoff - half + (long) (random.nextDouble() * (half + 1)));
+    }
+}
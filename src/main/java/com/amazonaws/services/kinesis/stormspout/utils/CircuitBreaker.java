@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.utils;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker of an API, shared by the calls AsyncRetrier makes to it. After failureThreshold consecutive failed
+ * attempts, the breaker opens: no attempt is made for openMillis, so that callers don't keep hammering an API that is
+ * down (and throttle each other when it comes back). Then a single attempt is let through (half-open): the breaker
+ * closes if it succeeds, and opens again if it fails.
+ * 
+ * Thread safe. Also counts the retries, rejected attempts and abandoned calls of the API, for metrics.
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of the breaker.
+     */
+    public static enum State {
+        /** Attempts are made. */
+        CLOSED,
+        /** Attempts are held back. */
+        OPEN,
+        /** One attempt is made, the others are held back until it completes. */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    // Guarded by this.
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedMillis;
+    private boolean probing;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong abandonedCalls = new AtomicLong();
+    private final AtomicLong opens = new AtomicLong();
+
+    /**
+     * Constructor.
+     * 
+     * @param name Name of the API (used in metric names, e.g. "getShardIterator").
+     * @param failureThreshold Open the breaker after this many consecutive failed attempts.
+     * @param openMillis Hold attempts back for this long once the breaker is open.
+     */
+    public CircuitBreaker(final String name, final int failureThreshold, final long openMillis) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Value of failureThreshold must be positive, but was "
+                    + failureThreshold);
+        }
+        if (openMillis <= 0) {
+            throw new IllegalArgumentException("Value of openMillis must be positive, but was " + openMillis);
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return name of the API.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return current state of the breaker.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Called before an attempt. If the attempt is allowed while the breaker is half-open, the caller must report
+     * its outcome (onSuccess or onFailure).
+     * 
+     * @param nowMillis Current time.
+     * @return 0 if the attempt can be made now, else the time to wait before asking again.
+     */
+    public synchronized long millisUntilAllowed(final long nowMillis) {
+        switch (state) {
+            case OPEN:
+                if (nowMillis - openedMillis < openMillis) {
+                    rejections.incrementAndGet();
+                    return openedMillis + openMillis - nowMillis;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return 0L;
+            case HALF_OPEN:
+                if (probing) {
+                    rejections.incrementAndGet();
+                    return Math.max(1L, openMillis / 10);
+                }
+                probing = true;
+                return 0L;
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Called when an attempt succeeded (or failed for reasons that don't tell anything about the API's health, e.g.
+     * an invalid request).
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probing = false;
+    }
+
+    /**
+     * Called when an attempt failed.
+     * 
+     * @param nowMillis Current time.
+     */
+    public synchronized void onFailure(final long nowMillis) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedMillis = nowMillis;
+            probing = false;
+            opens.incrementAndGet();
+        }
+    }
+
+    /**
+     * Called when a failed call is retried.
+     */
+    public void onRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Called when a call is given up on (deadline reached).
+     */
+    public void onAbandoned() {
+        abandonedCalls.incrementAndGet();
+    }
+
+    /**
+     * Adds the counters (retries, rejected attempts, abandoned calls, openings) and the state of the breaker (0:
+     * closed, 1: open, 2: half-open) to values, keyed by prefix + metric name, and resets the counters.
+     * 
+     * @param prefix Prefix of the metric names.
+     * @param values Map to add values to.
+     */
+    public void snapshotAndReset(final String prefix, final Map<String, Object> values) {
+        values.put(prefix + "retries", retries.getAndSet(0L));
+        values.put(prefix + "rejectedAttempts", rejections.getAndSet(0L));
+        values.put(prefix + "abandonedCalls", abandonedCalls.getAndSet(0L));
+        values.put(prefix + "circuitOpens", opens.getAndSet(0L));
+        values.put(prefix + "circuitState", getState().ordinal());
+    }
+}
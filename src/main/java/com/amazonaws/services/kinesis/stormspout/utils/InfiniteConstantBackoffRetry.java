@@ -24,7 +24,9 @@ import org.slf4j.LoggerFactory;
  * Does an infinite constant time backoff against an exception.
  *
  * @param <T> return type
+ * @deprecated Sleeps on the calling thread and never gives up. Use AsyncRetrier.
  */
+@Deprecated
 public class InfiniteConstantBackoffRetry<T> implements Callable<T> {
     private static final Logger LOG = LoggerFactory.getLogger(InfiniteConstantBackoffRetry.class);
 
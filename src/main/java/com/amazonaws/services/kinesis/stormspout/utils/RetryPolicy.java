@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a call is retried by AsyncRetrier: which exceptions are retried, the backoff between attempts (exponential,
+ * with jitter) and the deadline after which the call is given up on.
+ */
+public class RetryPolicy {
+    private final Class<? extends Exception> retryOn;
+    private final Class<? extends Exception>[] abortOn;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long deadlineMillis;
+
+    /**
+     * Constructor.
+     * 
+     * @param retryOn Retry the call when it throws an exception of this type.
+     * @param initialBackoffMillis Backoff before the first retry. It doubles with each retry (up to
+     *        maxBackoffMillis), with jitter: the actual backoff is drawn at random from the upper half of that.
+     * @param maxBackoffMillis Max backoff between two attempts.
+     * @param deadlineMillis Give up on the call if it didn't succeed this long after it was submitted (no attempt is
+     *        started after the deadline).
+     * @param abortOn Don't retry exceptions of these types, even if they are of type retryOn (e.g. invalid requests).
+     */
+    @SafeVarargs
+    public RetryPolicy(final Class<? extends Exception> retryOn,
+            final long initialBackoffMillis,
+            final long maxBackoffMillis,
+            final long deadlineMillis,
+            final Class<? extends Exception>... abortOn) {
+        if (initialBackoffMillis <= 0 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("Value of initialBackoffMillis must be positive and at most "
+                    + "maxBackoffMillis, but was " + initialBackoffMillis + " (maxBackoffMillis: " + maxBackoffMillis
+                    + ")");
+        }
+        if (deadlineMillis <= 0) {
+            throw new IllegalArgumentException("Value of deadlineMillis must be positive, but was " + deadlineMillis);
+        }
+        this.retryOn = retryOn;
+        this.abortOn = abortOn;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @param e Exception thrown by an attempt.
+     * @return true if the call should be retried.
+     */
+    public boolean isRetryable(final Throwable e) {
+        if (!retryOn.isInstance(e)) {
+            return false;
+        }
+        for (Class<? extends Exception> type : abortOn) {
+            if (type.isInstance(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param retry Number of the retry (1 for the first retry).
+     * @return time to wait before the retry.
+     */
+    public long backoffMillis(final int retry) {
+        return Backoff.exponentialWithJitter(initialBackoffMillis, maxBackoffMillis, retry - 1,
+                ThreadLocalRandom.current());
+    }
+
+    /**
+     * @return time after which the call is given up on, from the time it was submitted.
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Map;
+import java.util.Random;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseRichBolt;
+import backtype.storm.tuple.Tuple;
+
+/**
+ * Bolt used by the benchmark topology: holds each tuple for a configurable time, then fails a configurable share of
+ * the tuples and acks the rest. It emits nothing.
+ */
+public class BenchmarkBolt extends BaseRichBolt {
+    private static final long serialVersionUID = -2440174311384236172L;
+
+    private final int failPercent;
+    private final long delayMillis;
+
+    private transient OutputCollector collector;
+    private transient Random random;
+
+    /**
+     * @param failPercent Percentage of the tuples to fail (0 to ack every tuple).
+     * @param delayMillis Time spent on each tuple before it is acked or failed.
+     */
+    public BenchmarkBolt(final int failPercent, final long delayMillis) {
+        if (failPercent < 0 || failPercent > 100) {
+            throw new IllegalArgumentException("failPercent must be between 0 and 100, but was " + failPercent);
+        }
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("delayMillis must not be negative, but was " + delayMillis);
+        }
+        this.failPercent = failPercent;
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+        this.collector = collector;
+        this.random = new Random();
+    }
+
+    @Override
+    public void execute(Tuple input) {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failPercent > 0 && random.nextInt(100) < failPercent) {
+            collector.fail(input);
+        } else {
+            collector.ack(input);
+        }
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    }
+
+}
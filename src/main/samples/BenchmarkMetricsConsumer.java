@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Collection;
+import java.util.Map;
+
+import backtype.storm.metric.api.IMetricsConsumer;
+import backtype.storm.task.IErrorReporter;
+import backtype.storm.task.TopologyContext;
+
+/**
+ * Metrics consumer used by the benchmark topology: sums up the metrics reported by the Kinesis spout tasks until they
+ * are collected with drain(). The totals are static, as the benchmark runs the topology in a LocalCluster (in the JVM
+ * that reports them).
+ */
+public class BenchmarkMetricsConsumer implements IMetricsConsumer {
+    private static final String SPOUT_METRICS_NAME = "kinesis-spout";
+    private static final String SEPARATOR = "/";
+
+    private static final Totals TOTALS = new Totals();
+
+    /**
+     * Metrics of the spout tasks since the last drain().
+     */
+    public static class Totals {
+        private long recordsEmitted;
+        private long recordsAcked;
+        private long recordsFailed;
+        private long ackLatencyP99;
+        private long ackLatencyMax;
+
+        /**
+         * @return records emitted (excluding retries).
+         */
+        public long getRecordsEmitted() {
+            return recordsEmitted;
+        }
+
+        /**
+         * @return records (or batches) acked.
+         */
+        public long getRecordsAcked() {
+            return recordsAcked;
+        }
+
+        /**
+         * @return records (or batches) failed.
+         */
+        public long getRecordsFailed() {
+            return recordsFailed;
+        }
+
+        /**
+         * @return highest 99th percentile emit-to-ack latency of a shard.
+         */
+        public long getAckLatencyP99() {
+            return ackLatencyP99;
+        }
+
+        /**
+         * @return highest emit-to-ack latency.
+         */
+        public long getAckLatencyMax() {
+            return ackLatencyMax;
+        }
+
+        private void add(final String metricName, final long value) {
+            switch (metricName) {
+                case "recordsEmitted":
+                    recordsEmitted += value;
+                    break;
+                case "recordsAcked":
+                    recordsAcked += value;
+                    break;
+                case "recordsFailed":
+                    recordsFailed += value;
+                    break;
+                case "ackLatencyP99":
+                    // Percentiles of different shards can't be merged: report the worst shard.
+                    ackLatencyP99 = Math.max(ackLatencyP99, value);
+                    break;
+                case "ackLatencyMax":
+                    ackLatencyMax = Math.max(ackLatencyMax, value);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the metrics reported since the last call (and resets them).
+     */
+    public static Totals drain() {
+        synchronized (TOTALS) {
+            final Totals drained = new Totals();
+            drained.recordsEmitted = TOTALS.recordsEmitted;
+            drained.recordsAcked = TOTALS.recordsAcked;
+            drained.recordsFailed = TOTALS.recordsFailed;
+            drained.ackLatencyP99 = TOTALS.ackLatencyP99;
+            drained.ackLatencyMax = TOTALS.ackLatencyMax;
+            TOTALS.recordsEmitted = 0L;
+            TOTALS.recordsAcked = 0L;
+            TOTALS.recordsFailed = 0L;
+            TOTALS.ackLatencyP99 = 0L;
+            TOTALS.ackLatencyMax = 0L;
+            return drained;
+        }
+    }
+
+    @Override
+    public void prepare(Map stormConf, Object registrationArgument, TopologyContext context,
+            IErrorReporter errorReporter) {
+    }
+
+    @Override
+    public void handleDataPoints(TaskInfo taskInfo, Collection<DataPoint> dataPoints) {
+        for (DataPoint dataPoint : dataPoints) {
+            if (!SPOUT_METRICS_NAME.equals(dataPoint.name) || !(dataPoint.value instanceof Map)) {
+                continue;
+            }
+            synchronized (TOTALS) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) dataPoint.value).entrySet()) {
+                    final String key = e.getKey().toString();
+                    // Keys are "shardId/metricName" (or "phase/metricName", which aren't summed up).
+                    if (e.getValue() instanceof Number && !key.startsWith("phase" + SEPARATOR)) {
+                        TOTALS.add(key.substring(key.lastIndexOf(SEPARATOR) + 1), ((Number) e.getValue()).longValue());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.Config;
+import backtype.storm.LocalCluster;
+import backtype.storm.topology.TopologyBuilder;
+
+import com.amazonaws.services.kinesis.stormspout.InMemoryKinesis;
+import com.amazonaws.services.kinesis.stormspout.InitialPositionInStream;
+import com.amazonaws.services.kinesis.stormspout.KinesisSpout;
+import com.amazonaws.services.kinesis.stormspout.KinesisSpoutConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.ExponentialBackoffRetry;
+import com.netflix.curator.test.TestingServer;
+
+/**
+ * End to end throughput and latency benchmark: runs the sample topology layout in a LocalCluster, with the spout
+ * reading from an InMemoryKinesis stream (fed by a producer thread at a fixed rate) and checkpointing to an embedded
+ * ZooKeeper server, and bolts that delay, ack and fail tuples as configured. Every report interval it logs the records
+ * emitted per second, the p99 emit-to-ack latency, the heap usage and the checkpoint lag (records of the stream not
+ * covered by the checkpoints in ZooKeeper).
+ */
+public class BenchmarkTopology {
+    private static final Logger LOG = LoggerFactory.getLogger(BenchmarkTopology.class);
+    private static final int REPORT_INTERVAL_SECS = 5;
+    private static final String SHARD_END_CHECKPOINT = "SHARD_END";
+
+    private static String topologyName = "BenchmarkTopology";
+    private static String streamName = "BenchmarkStream";
+    private static String zookeeperPrefix = "kinesis_spout";
+    private static int recordRetryLimit = 3;
+    private static int numShards = 4;
+    private static int producerRecordsPerSecond = 10000;
+    private static int recordSizeBytes = 100;
+    private static int durationSecs = 60;
+    private static int spoutParallelism = 2;
+    private static int boltParallelism = 2;
+    private static int boltFailPercent = 0;
+    private static long boltDelayMillis = 0L;
+    private static int maxSpoutPending = 5000;
+    private static int maxRecordsPerTuple = 1;
+    private static int checkpointIntervalMillis = 60000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1) {
+            printUsageAndExit();
+        } else if (args.length == 1) {
+            configure(args[0]);
+        }
+
+        final TestingServer zookeeper = new TestingServer();
+        final InMemoryKinesis stream = InMemoryKinesis.createStream(streamName, numShards);
+        final Producer producer = new Producer(stream);
+        final CuratorFramework zk =
+                CuratorFrameworkFactory.newClient(zookeeper.getConnectString(), new ExponentialBackoffRetry(100, 3));
+        final LocalCluster cluster = new LocalCluster();
+        try {
+            final KinesisSpoutConfig config =
+                    new KinesisSpoutConfig(streamName, zookeeper.getConnectString()).withZookeeperPrefix(zookeeperPrefix)
+                            .withKinesisRecordScheme(new SampleKinesisRecordScheme())
+                            .withInitialPositionInStream(InitialPositionInStream.TRIM_HORIZON)
+                            .withRecordRetryLimit(recordRetryLimit)
+                            .withMaxRecordsPerTuple(maxRecordsPerTuple)
+                            .withCheckpointIntervalMillis(checkpointIntervalMillis)
+                            .withMetricsTimeBucketSecs(REPORT_INTERVAL_SECS);
+            final KinesisSpout spout =
+                    new KinesisSpout(config, stream.getShardListGetter(), stream.getShardGetterBuilder(config));
+
+            TopologyBuilder builder = new TopologyBuilder();
+            builder.setSpout("kinesis_spout", spout, spoutParallelism);
+            builder.setBolt("benchmark_bolt", new BenchmarkBolt(boltFailPercent, boltDelayMillis), boltParallelism)
+                    .shuffleGrouping("kinesis_spout");
+
+            Config topoConf = new Config();
+            topoConf.setFallBackOnJavaSerialization(true);
+            topoConf.setDebug(false);
+            topoConf.setMaxSpoutPending(maxSpoutPending);
+            topoConf.registerMetricsConsumer(BenchmarkMetricsConsumer.class, 1);
+
+            zk.start();
+            producer.start();
+            LOG.info("Starting benchmark topology in LocalMode for " + durationSecs + " seconds ...");
+            cluster.submitTopology(topologyName, topoConf, builder.createTopology());
+            report(stream, zk);
+            cluster.killTopology(topologyName);
+        } finally {
+            producer.stop();
+            cluster.shutdown();
+            zk.close();
+            zookeeper.close();
+            InMemoryKinesis.deleteStream(streamName);
+        }
+    }
+
+    private static void report(final InMemoryKinesis stream, final CuratorFramework zk) throws Exception {
+        long recordsEmitted = 0L;
+        long worstAckLatencyP99 = 0L;
+        long peakHeapBytes = 0L;
+        long checkpointLag = 0L;
+        final long startMillis = System.currentTimeMillis();
+        final long endMillis = startMillis + durationSecs * 1000L;
+        while (System.currentTimeMillis() < endMillis) {
+            Thread.sleep(REPORT_INTERVAL_SECS * 1000L);
+            final BenchmarkMetricsConsumer.Totals totals = BenchmarkMetricsConsumer.drain();
+            final long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            checkpointLag = getCheckpointLag(stream, zk);
+            recordsEmitted += totals.getRecordsEmitted();
+            worstAckLatencyP99 = Math.max(worstAckLatencyP99, totals.getAckLatencyP99());
+            peakHeapBytes = Math.max(peakHeapBytes, heapBytes);
+            LOG.info("Emitted " + totals.getRecordsEmitted() / REPORT_INTERVAL_SECS + " records/s, acked "
+                    + totals.getRecordsAcked() + ", failed " + totals.getRecordsFailed() + ", ackLatencyP99="
+                    + totals.getAckLatencyP99() + " ms, ackLatencyMax=" + totals.getAckLatencyMax() + " ms, heapUsed="
+                    + heapBytes / (1024L * 1024L) + " MB, checkpointLag=" + checkpointLag + " records");
+        }
+        final long elapsedSecs = Math.max(1L, (System.currentTimeMillis() - startMillis) / 1000L);
+        LOG.info("Benchmark done: " + recordsEmitted / elapsedSecs + " records/s, worst ackLatencyP99="
+                + worstAckLatencyP99 + " ms, peak heapUsed=" + peakHeapBytes / (1024L * 1024L)
+                + " MB, final checkpointLag=" + checkpointLag + " records");
+    }
+
+    // Records of the stream after the checkpoints stored in ZooKeeper by the spout.
+    private static long getCheckpointLag(final InMemoryKinesis stream, final CuratorFramework zk) throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        final List<String> shardIds = stream.getOpenShardIds();
+        long lag = 0L;
+        for (String shardId : shardIds) {
+            final String path = "/" + zookeeperPrefix + "/" + topologyName + "/" + streamName + "/" + shardId + "/state";
+            String checkpoint = null;
+            try {
+                final JsonNode state = mapper.readTree(zk.getData().forPath(path));
+                checkpoint = state.path("checkpoint").asText();
+            } catch (NoNodeException e) {
+                // Not checkpointed yet.
+            }
+            if (SHARD_END_CHECKPOINT.equals(checkpoint)) {
+                continue;
+            }
+            if (checkpoint != null && checkpoint.indexOf('.') >= 0) {
+                // Checkpoint of a user record of an aggregated record.
+                checkpoint = checkpoint.substring(0, checkpoint.indexOf('.'));
+            }
+            lag += stream.countRecordsAfter(shardId, checkpoint);
+        }
+        return lag;
+    }
+
+    /**
+     * Puts records of random data (with distinct partition keys) to the stream at a fixed rate.
+     */
+    private static class Producer implements Runnable {
+        private final InMemoryKinesis stream;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private Thread thread;
+
+        Producer(final InMemoryKinesis stream) {
+            this.stream = stream;
+        }
+
+        void start() {
+            running.set(true);
+            thread = new Thread(this, "benchmark-producer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            if (thread != null) {
+                thread.join();
+            }
+        }
+
+        @Override
+        public void run() {
+            final Random random = new Random();
+            final byte[] data = new byte[recordSizeBytes];
+            final long startMillis = System.currentTimeMillis();
+            long put = 0L;
+            while (running.get()) {
+                final long due = (System.currentTimeMillis() - startMillis) * producerRecordsPerSecond / 1000L;
+                if (put >= due) {
+                    try {
+                        Thread.sleep(1L);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                random.nextBytes(data);
+                stream.putRecord(Long.toString(put), ByteBuffer.wrap(data));
+                put++;
+            }
+        }
+    }
+
+    private static void configure(String propertiesFile) throws IOException {
+        FileInputStream inputStream = new FileInputStream(propertiesFile);
+        Properties properties = new Properties();
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        String topologyNameOverride = properties.getProperty(ConfigKeys.TOPOLOGY_NAME_KEY);
+        if (topologyNameOverride != null) {
+            topologyName = topologyNameOverride;
+        }
+        String streamNameOverride = properties.getProperty(ConfigKeys.STREAM_NAME_KEY);
+        if (streamNameOverride != null) {
+            streamName = streamNameOverride;
+        }
+        String zookeeperPrefixOverride = properties.getProperty(ConfigKeys.ZOOKEEPER_PREFIX_KEY);
+        if (zookeeperPrefixOverride != null) {
+            zookeeperPrefix = zookeeperPrefixOverride;
+        }
+        recordRetryLimit = getInt(properties, ConfigKeys.RECORD_RETRY_LIMIT, recordRetryLimit);
+        numShards = getInt(properties, ConfigKeys.NUM_SHARDS_KEY, numShards);
+        producerRecordsPerSecond =
+                getInt(properties, ConfigKeys.PRODUCER_RECORDS_PER_SECOND_KEY, producerRecordsPerSecond);
+        recordSizeBytes = getInt(properties, ConfigKeys.RECORD_SIZE_BYTES_KEY, recordSizeBytes);
+        durationSecs = getInt(properties, ConfigKeys.DURATION_SECS_KEY, durationSecs);
+        spoutParallelism = getInt(properties, ConfigKeys.SPOUT_PARALLELISM_KEY, spoutParallelism);
+        boltParallelism = getInt(properties, ConfigKeys.BOLT_PARALLELISM_KEY, boltParallelism);
+        boltFailPercent = getInt(properties, ConfigKeys.BOLT_FAIL_PERCENT_KEY, boltFailPercent);
+        boltDelayMillis = getInt(properties, ConfigKeys.BOLT_DELAY_MILLIS_KEY, (int) boltDelayMillis);
+        maxSpoutPending = getInt(properties, ConfigKeys.MAX_SPOUT_PENDING_KEY, maxSpoutPending);
+        maxRecordsPerTuple = getInt(properties, ConfigKeys.MAX_RECORDS_PER_TUPLE_KEY, maxRecordsPerTuple);
+        checkpointIntervalMillis =
+                getInt(properties, ConfigKeys.CHECKPOINT_INTERVAL_MILLIS_KEY, checkpointIntervalMillis);
+
+        LOG.info("Using " + numShards + " shards, " + producerRecordsPerSecond + " records/s of " + recordSizeBytes
+                + " bytes, " + spoutParallelism + " spout tasks, " + boltParallelism + " bolt tasks (failing "
+                + boltFailPercent + "%, delay " + boltDelayMillis + " ms), maxSpoutPending " + maxSpoutPending
+                + ", maxRecordsPerTuple " + maxRecordsPerTuple + ", checkpointIntervalMillis "
+                + checkpointIntervalMillis);
+    }
+
+    private static int getInt(final Properties properties, final String key, final int defaultValue) {
+        String value = properties.getProperty(key);
+        return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static void printUsageAndExit() {
+        System.out.println("Usage: " + BenchmarkTopology.class.getName() + " [<propertiesFile>]");
+        System.exit(-1);
+    }
+
+}
@@ -32,4 +32,28 @@ public class ConfigKeys {
     public static final String ZOOKEEPER_PREFIX_KEY = "zookeeperPrefix";
 
     public static final String TOPOLOGY_NAME_KEY = "topologyName";
+
+    // Keys of the benchmark topology.
+
+    public static final String NUM_SHARDS_KEY = "numShards";
+
+    public static final String PRODUCER_RECORDS_PER_SECOND_KEY = "producerRecordsPerSecond";
+
+    public static final String RECORD_SIZE_BYTES_KEY = "recordSizeBytes";
+
+    public static final String DURATION_SECS_KEY = "durationSecs";
+
+    public static final String SPOUT_PARALLELISM_KEY = "spoutParallelism";
+
+    public static final String BOLT_PARALLELISM_KEY = "boltParallelism";
+
+    public static final String BOLT_FAIL_PERCENT_KEY = "boltFailPercent";
+
+    public static final String BOLT_DELAY_MILLIS_KEY = "boltDelayMillis";
+
+    public static final String MAX_SPOUT_PENDING_KEY = "maxSpoutPending";
+
+    public static final String MAX_RECORDS_PER_TUPLE_KEY = "maxRecordsPerTuple";
+
+    public static final String CHECKPOINT_INTERVAL_MILLIS_KEY = "checkpointIntervalMillis";
 }
@@ -19,10 +19,16 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import com.amazonaws.services.kinesis.model.Record;
 import com.amazonaws.services.kinesis.stormspout.BufferedGetter.TimeProvider;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Gauge;
 import com.google.common.collect.ImmutableList;
 
 import junit.framework.Assert;
@@ -83,4 +89,84 @@ public class BufferedGetterTest {
         Assert.assertEquals(sequenceNumber2, testRecords.getRecords().get(0).getSequenceNumber());
     }
 
+    /**
+     * With a byte budget, the number of records requested is adapted to the size of the records.
+     */
+    @Test
+    public final void testByteBudget() {
+        FixedSizeGetter underlyingGetter = new FixedSizeGetter(100);
+        ShardMetrics metrics = new ShardMetrics();
+        BufferedGetter getter = new BufferedGetter(underlyingGetter, 50, 1000L, 1L, new TimeProvider(), metrics);
+
+        getter.getNext(1);
+        // Records are assumed to have the max size of a Kinesis record until some were fetched.
+        Assert.assertEquals(1, (int) underlyingGetter.limits.get(0));
+        Assert.assertEquals(10L, metrics.get(Gauge.FETCH_LIMIT));
+
+        getter.getNext(1);
+        Assert.assertEquals(10, (int) underlyingGetter.limits.get(1));
+        Assert.assertEquals(9, getter.getNext(9).getRecords().size());
+        Assert.assertEquals(2, underlyingGetter.limits.size());
+    }
+
+    /**
+     * Fetches of KPL aggregated records are sized by the size of the Kinesis records (GetRecords limits count those),
+     * not by the size of the user records they contain.
+     */
+    @Test
+    public final void testByteBudgetWithAggregatedRecords() throws Exception {
+        String[] data = new String[100];
+        int[] keyIndexes = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new String(new char[1000]).replace('\0', 'x');
+        }
+        byte[] aggregated = KplDeaggregatorTest.aggregate(new String[] { "pk" }, keyIndexes, data);
+        FixedSizeGetter underlyingGetter = new FixedSizeGetter(aggregated);
+        long maxBytes = 1024L * 1024L;
+        BufferedGetter getter = new BufferedGetter(new DeaggregatingGetter(underlyingGetter),
+                10000,
+                maxBytes,
+                1L,
+                new TimeProvider(),
+                new ShardMetrics());
+
+        Assert.assertEquals(100, getter.getNext(100).getRecords().size());
+        Assert.assertEquals(100, getter.getNext(100).getRecords().size());
+        Assert.assertEquals(2, underlyingGetter.limits.size());
+        Assert.assertEquals(maxBytes / aggregated.length, (long) underlyingGetter.limits.get(1));
+    }
+
+    // Returns as many records (with the same data) as requested.
+    private static class FixedSizeGetter implements IShardGetter {
+        private final byte[] data;
+        private final List<Integer> limits = new ArrayList<>();
+
+        FixedSizeGetter(final int recordBytes) {
+            this(new byte[recordBytes]);
+        }
+
+        FixedSizeGetter(final byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public Records getNext(int maxNumberOfRecords) {
+            limits.add(maxNumberOfRecords);
+            ImmutableList.Builder<Record> records = new ImmutableList.Builder<>();
+            for (int i = 0; i < maxNumberOfRecords; i++) {
+                records.add(new Record().withSequenceNumber(Integer.toString(i))
+                        .withData(ByteBuffer.wrap(data)));
+            }
+            return new Records(records.build(), false);
+        }
+
+        @Override
+        public void seek(ShardPosition position) {
+        }
+
+        @Override
+        public String getAssociatedShard() {
+            return "shardId-0";
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.exceptions.InvalidSeekPositionException;
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for DeaggregatingGetter.
+ */
+public class DeaggregatingGetterTest {
+
+    /**
+     * Seeking after a user record reads its aggregated record again, and skips the user records already processed.
+     */
+    @Test
+    public final void testSeekAfterUserRecord() throws Exception {
+        final Record aggregated = new Record();
+        aggregated.setSequenceNumber("5");
+        aggregated.setData(ByteBuffer.wrap(KplDeaggregatorTest.aggregate(new String[] { "pk" },
+                new int[] { 0, 0, 0 },
+                new String[] { "a", "b", "c" })));
+        final Record next = new Record();
+        next.setSequenceNumber("6");
+        next.setData(ByteBuffer.allocate(0));
+
+        final ShardPosition[] seekedTo = new ShardPosition[1];
+        IShardGetter underlying = new IShardGetter() {
+            @Override
+            public Records getNext(int maxNumberOfRecords) {
+                return new Records(ImmutableList.of(aggregated, next), false);
+            }
+
+            @Override
+            public void seek(ShardPosition position) throws InvalidSeekPositionException {
+                seekedTo[0] = position;
+            }
+
+            @Override
+            public String getAssociatedShard() {
+                return "shardId-0";
+            }
+        };
+
+        DeaggregatingGetter getter = new DeaggregatingGetter(underlying);
+        getter.seek(ShardPosition.afterSequenceNumber("5.1"));
+        Assert.assertEquals(ShardPosition.Position.AT_SEQUENCE_NUMBER, seekedTo[0].getPosition());
+        Assert.assertEquals("5", seekedTo[0].getSequenceNum());
+
+        ImmutableList<Record> records = getter.getNext(10).getRecords();
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("5.2", ExtendedSequenceNumber.keyOf(records.get(0)));
+        Assert.assertEquals("6", ExtendedSequenceNumber.keyOf(records.get(1)));
+
+        // Skipping only applies to the first fetch after the seek.
+        Assert.assertEquals(4, getter.getNext(10).getRecords().size());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for ExtendedSequenceNumber.
+ */
+public class ExtendedSequenceNumberTest {
+
+    @Test
+    public final void testKeyOf() {
+        Record rec = new Record();
+        rec.setSequenceNumber("123");
+        Assert.assertEquals("123", ExtendedSequenceNumber.keyOf(rec));
+        Assert.assertEquals("123.4", ExtendedSequenceNumber.keyOf(new UserRecord("pk", "123", 4, ByteBuffer.allocate(0))));
+    }
+
+    @Test
+    public final void testParse() {
+        ExtendedSequenceNumber plain = ExtendedSequenceNumber.parse("123");
+        Assert.assertEquals("123", plain.getSequenceNumber());
+        Assert.assertFalse(plain.hasSubSequenceNumber());
+
+        ExtendedSequenceNumber extended = ExtendedSequenceNumber.parse("123.4");
+        Assert.assertEquals("123", extended.getSequenceNumber());
+        Assert.assertTrue(extended.hasSubSequenceNumber());
+        Assert.assertEquals(4L, extended.getSubSequenceNumber());
+        Assert.assertEquals("123.4", extended.toString());
+    }
+
+    /**
+     * Sequence numbers are compared numerically, and a whole record comes after its user records.
+     */
+    @Test
+    public final void testCompareTo() {
+        Assert.assertTrue(ExtendedSequenceNumber.parse("99").compareTo(ExtendedSequenceNumber.parse("100")) < 0);
+        Assert.assertTrue(ExtendedSequenceNumber.parse("100.2").compareTo(ExtendedSequenceNumber.parse("100.10")) < 0);
+        Assert.assertTrue(ExtendedSequenceNumber.parse("100.10").compareTo(ExtendedSequenceNumber.parse("100")) < 0);
+        Assert.assertTrue(ExtendedSequenceNumber.parse("99").compareTo(ExtendedSequenceNumber.parse("100.0")) < 0);
+        Assert.assertEquals(0, ExtendedSequenceNumber.parse("100.1").compareTo(ExtendedSequenceNumber.parse("100.1")));
+    }
+}
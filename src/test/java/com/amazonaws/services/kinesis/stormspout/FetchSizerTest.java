@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for FetchSizer.
+ */
+public class FetchSizerTest {
+
+    @Test
+    public final void testUnboundedWithoutByteBudget() {
+        FetchSizer sizer = new FetchSizer(10000, 0L);
+        sizer.onFetch(10, 10L * 1024L * 1024L);
+        sizer.onDrain(10, 100000L);
+        Assert.assertEquals(10000, sizer.getLimit());
+    }
+
+    /**
+     * Records are assumed to have the max size of a Kinesis record until some were fetched.
+     */
+    @Test
+    public final void testLimitFollowsRecordSize() {
+        FetchSizer sizer = new FetchSizer(10000, 2L * 1024L * 1024L);
+        Assert.assertEquals(2, sizer.getLimit());
+
+        sizer.onFetch(2, 2048L);
+        Assert.assertEquals(2048, sizer.getLimit());
+
+        // Not capped by the fetch of no records, capped by maxRecordsPerCall.
+        sizer.onFetch(0, 0L);
+        Assert.assertEquals(2048, sizer.getLimit());
+        sizer = new FetchSizer(100, 2L * 1024L * 1024L);
+        sizer.onFetch(2, 2048L);
+        Assert.assertEquals(100, sizer.getLimit());
+    }
+
+    /**
+     * The average record size follows increases right away, and decreases gradually.
+     */
+    @Test
+    public final void testRecordSizeIncreasesRightAway() {
+        FetchSizer sizer = new FetchSizer(10000, 10000L);
+        sizer.onFetch(10, 1000L);
+        Assert.assertEquals(100, sizer.getLimit());
+
+        sizer.onFetch(1, 5000L);
+        Assert.assertEquals(2, sizer.getLimit());
+
+        // 5000 + 0.25 * (100 - 5000) = 3775 bytes.
+        sizer.onFetch(10, 1000L);
+        Assert.assertEquals(2, sizer.getLimit());
+        for (int i = 0; i < 50; i++) {
+            sizer.onFetch(10, 1000L);
+        }
+        Assert.assertTrue(sizer.getLimit() > 90);
+    }
+
+    @Test
+    public final void testLimitFollowsDrainRate() {
+        FetchSizer sizer = new FetchSizer(10000, 10000L);
+        sizer.onFetch(10, 1000L);
+        Assert.assertEquals(100, sizer.getLimit());
+
+        // 10 records per second.
+        sizer.onDrain(10, 1000L);
+        Assert.assertEquals(10, sizer.getLimit());
+
+        // Drained within a millisecond: only bounded by the byte budget.
+        for (int i = 0; i < 20; i++) {
+            sizer.onDrain(10, 0L);
+        }
+        Assert.assertEquals(100, sizer.getLimit());
+    }
+}
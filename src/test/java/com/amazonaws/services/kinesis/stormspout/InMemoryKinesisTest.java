@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for InMemoryKinesis (read through the spout's Kinesis getters).
+ */
+public class InMemoryKinesisTest {
+    private static final String STREAM = "InMemoryKinesisTest";
+
+    @After
+    public void tearDown() {
+        InMemoryKinesis.deleteStream(STREAM);
+    }
+
+    @Test
+    public final void testReadThroughSpoutGetters() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1).withMaxGetRecordsPerSecond(0);
+        String first = stream.putRecord("key", data("a"));
+        String second = stream.putRecord("key", data("b"));
+        stream.putRecord("key", data("c"));
+
+        KinesisSpoutConfig config = new KinesisSpoutConfig(STREAM, "localhost:2181");
+        IShardGetter getter =
+                stream.getShardGetterBuilder(config).buildGetters(ImmutableList.of("shardId-000000000000")).get(0);
+        getter.seek(ShardPosition.trimHorizon());
+        ImmutableList<Record> records = awaitNext(getter, 10).getRecords();
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(first, records.get(0).getSequenceNumber());
+        Assert.assertEquals("c", StandardCharsets.UTF_8.decode(records.get(2).getData()).toString());
+
+        getter.seek(ShardPosition.afterSequenceNumber(first));
+        Assert.assertEquals(second, awaitNext(getter, 1).getRecords().get(0).getSequenceNumber());
+    }
+
+    /**
+     * A fetch that returns fewer records than requested is at the tip of the shard, even if it isn't empty.
+     */
+    @Test
+    public final void testFetchAtTip() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1).withMaxGetRecordsPerSecond(0);
+        for (int i = 0; i < 3; i++) {
+            stream.putRecord("key", data("x"));
+        }
+        KinesisShardGetter getter = new KinesisShardGetter(STREAM, "shardId-000000000000", client(stream));
+        seek(getter, ShardPosition.trimHorizon());
+        Records records = getter.getNext(2);
+        Assert.assertEquals(2, records.getRecords().size());
+        Assert.assertFalse(records.isAtTip());
+        records = getter.getNext(2);
+        Assert.assertEquals(1, records.getRecords().size());
+        Assert.assertTrue(records.isAtTip());
+
+        // Records taken one at a time from a buffer fetched at the tip are at the tip.
+        stream.putRecord("key", data("y"));
+        stream.putRecord("key", data("z"));
+        BufferedGetter buffered = new BufferedGetter(getter, 10, 0L);
+        Assert.assertTrue(buffered.getNext(1).isAtTip());
+        Assert.assertTrue(buffered.getNext(1).isAtTip());
+    }
+
+    @Test
+    public final void testCountRecordsAfter() {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1);
+        String first = stream.putRecord("key", data("a"));
+        String second = stream.putRecord("key", data("b"));
+        stream.putRecord("key", data("c"));
+
+        Assert.assertEquals(3, stream.countRecordsAfter("shardId-000000000000", null));
+        Assert.assertEquals(2, stream.countRecordsAfter("shardId-000000000000", first));
+        Assert.assertEquals(1, stream.countRecordsAfter("shardId-000000000000", second));
+    }
+
+    @Test
+    public final void testSplitAndMerge() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 2).withMaxGetRecordsPerSecond(0);
+        List<String> children = stream.splitShard("shardId-000000000000");
+        Assert.assertEquals(3, stream.getOpenShardIds().size());
+        String merged = stream.mergeShards(children.get(1), "shardId-000000000001");
+
+        ImmutableSortedMap<String, ShardInfo> shards = stream.getShardListGetter().getShardList();
+        Assert.assertEquals(5, shards.size());
+        Assert.assertEquals(children, shards.get("shardId-000000000000").getSplitsInto());
+        Assert.assertEquals(merged, shards.get("shardId-000000000001").getMergesInto());
+        Assert.assertEquals(ImmutableList.of(children.get(0), merged), stream.getOpenShardIds());
+
+        // Records go to open shards only, and closed shards end once read.
+        for (int i = 0; i < 100; i++) {
+            stream.putRecord("key" + i, data("x"));
+        }
+        KinesisShardGetter parent = new KinesisShardGetter(STREAM, "shardId-000000000000", client(stream));
+        seek(parent, ShardPosition.trimHorizon());
+        Records records = parent.getNext(10);
+        Assert.assertTrue(records.isEmpty());
+        Assert.assertTrue(records.isEndOfShard());
+    }
+
+    @Test
+    public final void testThrottling() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1).withMaxGetRecordsPerSecond(2);
+        stream.putRecord("key", data("a"));
+        ShardMetrics metrics = new ShardMetrics();
+        KinesisShardGetter getter = new KinesisShardGetter(STREAM, "shardId-000000000000", client(stream), metrics);
+        seek(getter, ShardPosition.trimHorizon());
+        Assert.assertEquals(1, getter.getNext(10).getRecords().size());
+        getter.getNext(10);
+        getter.getNext(10);
+        Assert.assertEquals(1L, metrics.get(Counter.GET_RECORDS_THROTTLES));
+    }
+
+    @Test
+    public final void testIteratorExpiry() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1)
+                .withMaxGetRecordsPerSecond(0)
+                .withIteratorExpiryMillis(50L);
+        stream.putRecord("key", data("a"));
+        stream.putRecord("key", data("b"));
+
+        GetShardIteratorRequest iteratorRequest = new GetShardIteratorRequest();
+        iteratorRequest.setStreamName(STREAM);
+        iteratorRequest.setShardId("shardId-000000000000");
+        iteratorRequest.setShardIteratorType(ShardIteratorType.TRIM_HORIZON);
+        String iterator = client(stream).getShardIterator(iteratorRequest).getShardIterator();
+
+        KinesisShardGetter getter = new KinesisShardGetter(STREAM, "shardId-000000000000", client(stream));
+        seek(getter, ShardPosition.trimHorizon());
+        Assert.assertEquals(1, getter.getNext(1).getRecords().size());
+        Thread.sleep(100L);
+
+        GetRecordsRequest request = new GetRecordsRequest();
+        request.setShardIterator(iterator);
+        try {
+            client(stream).getRecords(request);
+            Assert.fail("Expected the iterator to expire.");
+        } catch (ExpiredIteratorException e) {
+            // Expected.
+        }
+        // The getter seeks to its last position when its iterator expires (getNext returns no records until the new
+        // iterator is there).
+        Assert.assertEquals("b", StandardCharsets.UTF_8.decode(awaitNext(getter, 1).getRecords().get(0).getData())
+                .toString());
+    }
+
+    @Test
+    public final void testIteratorRefresh() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1)
+                .withMaxGetRecordsPerSecond(0)
+                .withIteratorExpiryMillis(500L);
+        stream.putRecord("key", data("a"));
+        stream.putRecord("key", data("b"));
+
+        ShardMetrics metrics = new ShardMetrics();
+        KinesisShardGetter getter = new KinesisShardGetter(STREAM,
+                "shardId-000000000000",
+                client(stream),
+                metrics,
+                new ShardIteratorRefresher(100L));
+        seek(getter, ShardPosition.trimHorizon());
+        Assert.assertEquals(1, getter.getNext(1).getRecords().size());
+        Thread.sleep(700L);
+
+        // The iterator was refreshed while the shard was idle, so it didn't expire.
+        Assert.assertEquals("b", StandardCharsets.UTF_8.decode(getter.getNext(1).getRecords().get(0).getData())
+                .toString());
+        Assert.assertEquals(0L, metrics.get(Counter.EXPIRED_ITERATORS));
+        Assert.assertTrue(metrics.get(Counter.ITERATOR_REFRESHES) > 0L);
+        getter.close();
+    }
+
+    /**
+     * An iterator at LATEST that hasn't read a record isn't refreshed: the refreshed iterator would skip the records
+     * put since the seek.
+     */
+    @Test
+    public final void testIteratorAtLatestIsNotRefreshed() throws Exception {
+        InMemoryKinesis stream = InMemoryKinesis.createStream(STREAM, 1).withMaxGetRecordsPerSecond(0);
+        KinesisShardGetter getter = new KinesisShardGetter(STREAM, "shardId-000000000000", client(stream));
+        seek(getter, ShardPosition.end());
+        stream.putRecord("key", data("a"));
+        Thread.sleep(10L);
+
+        Assert.assertFalse(getter.refreshIterator(0L));
+        Assert.assertEquals("a", StandardCharsets.UTF_8.decode(getter.getNext(1).getRecords().get(0).getData())
+                .toString());
+        // Once a record was read, the iterator is for a sequence number position and can be refreshed.
+        Thread.sleep(10L);
+        Assert.assertTrue(getter.refreshIterator(0L));
+    }
+
+    // Seeks, and waits for the getter to get its shard iterator (seek doesn't wait for it).
+    private static void seek(final KinesisShardGetter getter, final ShardPosition position) throws Exception {
+        getter.seek(position);
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (getter.isSeeking()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1L);
+        }
+    }
+
+    // Calls getNext until it returns records.
+    private static Records awaitNext(final IShardGetter getter, final int maxNumberOfRecords) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000L;
+        Records records = getter.getNext(maxNumberOfRecords);
+        while (records.isEmpty()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1L);
+            records = getter.getNext(maxNumberOfRecords);
+        }
+        return records;
+    }
+
+    private static AmazonKinesisClient client(final InMemoryKinesis stream) {
+        return ((KinesisHelper) stream.getShardListGetter()).getSharedkinesisClient();
+    }
+
+    private static ByteBuffer data(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -19,6 +19,8 @@ import org.junit.Test;
 
 import com.amazonaws.regions.Regions;
 
+import junit.framework.Assert;
+
 /**
  * Unit tests for the KinesisSpoutConfig class.
  */
@@ -42,4 +44,24 @@ public class KinesisSpoutConfigTest {
         Regions region = Regions.US_WEST_2;
         config.withRegion(region);
     }
+
+    /**
+     * Test null check for withKinesisPayloadScheme().
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testWithKinesisPayloadSchemeNullCheck() {
+        KinesisSpoutConfig config = new KinesisSpoutConfig("testStream", "testZookeeperConnection");
+        config.withKinesisPayloadScheme(null);
+    }
+
+    /**
+     * The byte budget of shard buffers is opt-in: by default, each GetRecords call requests maxRecordsPerCall records.
+     */
+    @Test
+    public final void testMaxBufferBytesPerShardIsOffByDefault() {
+        KinesisSpoutConfig config = new KinesisSpoutConfig("testStream", "testZookeeperConnection");
+        Assert.assertEquals(0L, config.getMaxBufferBytesPerShard());
+        Assert.assertEquals(config.getMaxRecordsPerCall(),
+                new FetchSizer(config.getMaxRecordsPerCall(), config.getMaxBufferBytesPerShard()).getLimit());
+    }
 }
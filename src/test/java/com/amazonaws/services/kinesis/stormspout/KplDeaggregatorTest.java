@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.base.Charsets;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for KplDeaggregator.
+ */
+public class KplDeaggregatorTest {
+
+    /**
+     * User records get the partition key, data and index of their entry in the aggregated record.
+     */
+    @Test
+    public final void testDeaggregate() throws Exception {
+        Record rec = newRecord("100", aggregate(new String[] { "pk0", "pk1" },
+                new int[] { 1, 0, 1 },
+                new String[] { "a", "bb", "ccc" }));
+
+        List<Record> userRecords = KplDeaggregator.deaggregate(rec);
+
+        Assert.assertEquals(3, userRecords.size());
+        for (int i = 0; i < 3; i++) {
+            UserRecord userRecord = (UserRecord) userRecords.get(i);
+            Assert.assertEquals("100", userRecord.getSequenceNumber());
+            Assert.assertEquals(i, userRecord.getSubSequenceNumber());
+        }
+        Assert.assertEquals("pk1", userRecords.get(0).getPartitionKey());
+        Assert.assertEquals("pk0", userRecords.get(1).getPartitionKey());
+        Assert.assertEquals("bb", toString(userRecords.get(1).getData()));
+        Assert.assertEquals("ccc", toString(userRecords.get(2).getData()));
+    }
+
+    /**
+     * Records that aren't aggregated are returned as is.
+     */
+    @Test
+    public final void testNotAggregated() {
+        Record rec = newRecord("100", "not aggregated, but long enough".getBytes(Charsets.UTF_8));
+        List<Record> records = KplDeaggregator.deaggregate(rec);
+        Assert.assertEquals(1, records.size());
+        Assert.assertSame(rec, records.get(0));
+    }
+
+    /**
+     * Records with the magic bytes but a wrong digest are returned as is.
+     */
+    @Test
+    public final void testDigestMismatch() throws Exception {
+        byte[] data = aggregate(new String[] { "pk" }, new int[] { 0 }, new String[] { "a" });
+        data[data.length - 1]++;
+        Record rec = newRecord("100", data);
+        Assert.assertSame(rec, KplDeaggregator.deaggregate(rec).get(0));
+    }
+
+    /**
+     * User record data are read from the current position of the record data.
+     */
+    @Test
+    public final void testDeaggregateSlice() throws Exception {
+        byte[] aggregated = aggregate(new String[] { "pk" }, new int[] { 0, 0 }, new String[] { "x", "y" });
+        byte[] padded = new byte[aggregated.length + 3];
+        System.arraycopy(aggregated, 0, padded, 3, aggregated.length);
+        ByteBuffer buf = ByteBuffer.wrap(padded);
+        buf.position(3);
+
+        Record rec = new Record();
+        rec.setSequenceNumber("7");
+        rec.setData(buf.slice());
+
+        List<Record> userRecords = KplDeaggregator.deaggregate(rec);
+        Assert.assertEquals(2, userRecords.size());
+        Assert.assertEquals("y", toString(userRecords.get(1).getData()));
+    }
+
+    private static Record newRecord(String sequenceNumber, byte[] data) {
+        Record rec = new Record();
+        rec.setSequenceNumber(sequenceNumber);
+        rec.setPartitionKey("aggregate");
+        rec.setData(ByteBuffer.wrap(data));
+        return rec;
+    }
+
+    private static String toString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Encodes an aggregated record the way the KPL does (magic, AggregatedRecord protobuf message, MD5 digest).
+     */
+    static byte[] aggregate(String[] partitionKeys, int[] keyIndexes, String[] data) throws Exception {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        for (String key : partitionKeys) {
+            writeBytes(message, 1, key.getBytes(Charsets.UTF_8));
+        }
+        for (int i = 0; i < data.length; i++) {
+            ByteArrayOutputStream userRecord = new ByteArrayOutputStream();
+            writeVarint(userRecord, (1 << 3) | 0);
+            writeVarint(userRecord, keyIndexes[i]);
+            writeBytes(userRecord, 3, data[i].getBytes(Charsets.UTF_8));
+            // Unknown field (tags), should be skipped.
+            writeBytes(userRecord, 4, new byte[] { 0x0A, 0x01, 0x6B });
+            writeBytes(message, 3, userRecord.toByteArray());
+        }
+
+        byte[] messageBytes = message.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(KplDeaggregator.MAGIC);
+        out.write(messageBytes);
+        out.write(MessageDigest.getInstance("MD5").digest(messageBytes));
+        return out.toByteArray();
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeVarint(out, (field << 3) | 2);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.Assert;
+
+/**
+ * Tests for LoadBalancedShardAssignmentStrategy.
+ */
+public class LoadBalancedShardAssignmentStrategyTest {
+
+    private final LoadBalancedShardAssignmentStrategy strategy = new LoadBalancedShardAssignmentStrategy(0.0);
+
+    /**
+     * Every shard is assigned to exactly one task, also when no loads are known.
+     */
+    @Test
+    public final void testEachShardIsAssignedOnce() {
+        ImmutableList<String> shardList = makeShardList(50);
+        Map<String, Integer> owners = getOwners(shardList, ImmutableMap.<String, ShardLoad>of(), 7);
+        Assert.assertEquals(50, owners.size());
+
+        int[] counts = new int[7];
+        for (Integer owner : owners.values()) {
+            counts[owner]++;
+        }
+        for (int count : counts) {
+            Assert.assertTrue(count == 7 || count == 8);
+        }
+    }
+
+    /**
+     * Heavy shards end up on different tasks, and light shards fill up the remaining tasks.
+     */
+    @Test
+    public final void testHeavyShardsAreSpreadAcrossTasks() {
+        ImmutableList<String> shardList = makeShardList(6);
+        ImmutableMap<String, ShardLoad> loads = new ImmutableMap.Builder<String, ShardLoad>()
+                .put("shard-0", new ShardLoad(1000.0, 1.0))
+                .put("shard-1", new ShardLoad(1000.0, 1.0))
+                .put("shard-2", new ShardLoad(10.0, 1.0))
+                .put("shard-3", new ShardLoad(10.0, 1.0))
+                .put("shard-4", new ShardLoad(10.0, 1.0))
+                .put("shard-5", new ShardLoad(10.0, 1.0))
+                .build();
+        Map<String, Integer> owners = getOwners(shardList, loads, 3);
+
+        Assert.assertEquals(6, owners.size());
+        Assert.assertFalse(owners.get("shard-0").equals(owners.get("shard-1")));
+        for (int i = 2; i < 6; i++) {
+            Assert.assertFalse(owners.get("shard-" + i).equals(owners.get("shard-0")));
+            Assert.assertFalse(owners.get("shard-" + i).equals(owners.get("shard-1")));
+        }
+    }
+
+    /**
+     * Negative record overheads are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testNegativeRecordOverheadIsRejected() {
+        new LoadBalancedShardAssignmentStrategy(-1.0);
+    }
+
+    private Map<String, Integer> getOwners(ImmutableList<String> shardList,
+            ImmutableMap<String, ShardLoad> loads,
+            int totalNumTasks) {
+        Map<String, Integer> owners = new HashMap<>();
+        for (int taskIndex = 0; taskIndex < totalNumTasks; taskIndex++) {
+            for (String shardId : strategy.getShardAssignment(shardList, loads, taskIndex, totalNumTasks)) {
+                Assert.assertNull("Shard assigned twice: " + shardId, owners.put(shardId, taskIndex));
+            }
+        }
+        return owners;
+    }
+
+    private static ImmutableList<String> makeShardList(int numShards) {
+        ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        for (int i = 0; i < numShards; i++) {
+            builder.add("shard-" + i);
+        }
+        return builder.build();
+    }
+}
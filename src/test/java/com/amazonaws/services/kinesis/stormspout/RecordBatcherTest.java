@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for RecordBatcher.
+ */
+public class RecordBatcherTest {
+
+    @Test
+    public final void testBatchIsCompleteAtMaxRecords() {
+        QueueGetter getter = new QueueGetter(1, 2, 3, 4, 5);
+        RecordBatcher batcher = new RecordBatcher(2, 1000L, 1000L);
+
+        assertBatch(batcher.next(getter, 0L), "1", "2");
+        assertBatch(batcher.next(getter, 0L), "3", "4");
+        Assert.assertFalse(batcher.isLastFetchEmpty());
+        Assert.assertFalse(batcher.isLastFetchAtTip());
+    }
+
+    @Test
+    public final void testBatchIsCompleteAtMaxBytes() {
+        QueueGetter getter = new QueueGetter(4, 4, 4);
+        RecordBatcher batcher = new RecordBatcher(10, 10L, 1000L);
+
+        // The third record doesn't fit, it starts the next batch.
+        assertBatch(batcher.next(getter, 0L), "1", "2");
+        Assert.assertNull(batcher.next(getter, 0L));
+        assertBatch(batcher.next(getter, 1000L), "3");
+    }
+
+    @Test
+    public final void testIncompleteBatchLingers() {
+        QueueGetter getter = new QueueGetter(1);
+        RecordBatcher batcher = new RecordBatcher(10, 1000L, 50L);
+
+        Assert.assertNull(batcher.next(getter, 100L));
+        Assert.assertTrue(batcher.isLastFetchEmpty());
+        getter.add(1);
+        Assert.assertNull(batcher.next(getter, 120L));
+        assertBatch(batcher.next(getter, 150L), "1", "2");
+    }
+
+    @Test
+    public final void testIncompleteBatchIsEmittedAtEndOfShard() {
+        QueueGetter getter = new QueueGetter(1);
+        getter.closed = true;
+        RecordBatcher batcher = new RecordBatcher(10, 1000L, 1000L);
+
+        Assert.assertFalse(batcher.isEndOfShard());
+        assertBatch(batcher.next(getter, 0L), "1");
+        // The shard ends once its last batch was emitted.
+        Assert.assertFalse(batcher.isEndOfShard());
+        Assert.assertNull(batcher.next(getter, 0L));
+        Assert.assertTrue(batcher.isEndOfShard());
+    }
+
+    /**
+     * The last full batch and the end of the shard are read by the same call: the batch is returned before the shard
+     * ends.
+     */
+    @Test
+    public final void testLastBatchAndEndOfShardInSameFetch() {
+        QueueGetter getter = new QueueGetter(1, 1, 1);
+        getter.closed = true;
+        RecordBatcher batcher = new RecordBatcher(2, 1000L, 1000L);
+
+        assertBatch(batcher.next(getter, 0L), "1", "2");
+        Assert.assertFalse(batcher.isEndOfShard());
+        assertBatch(batcher.next(getter, 0L), "3");
+        Assert.assertTrue(batcher.isLastFetchEmpty());
+        Assert.assertFalse(batcher.isEndOfShard());
+        Assert.assertNull(batcher.next(getter, 0L));
+        Assert.assertTrue(batcher.isEndOfShard());
+    }
+
+    @Test
+    public final void testIncompleteBatchIsDiscardedWhenGetterChanges() {
+        RecordBatcher batcher = new RecordBatcher(2, 1000L, 1000L);
+        Assert.assertNull(batcher.next(new QueueGetter(1), 0L));
+
+        // The new getter starts over from the checkpoint, so the pending record would be a duplicate.
+        assertBatch(batcher.next(new QueueGetter(1, 1), 0L), "1", "2");
+    }
+
+    private static void assertBatch(ImmutableList<Record> batch, String... sequenceNumbers) {
+        Assert.assertNotNull(batch);
+        Assert.assertEquals(sequenceNumbers.length, batch.size());
+        for (int i = 0; i < sequenceNumbers.length; i++) {
+            Assert.assertEquals(sequenceNumbers[i], batch.get(i).getSequenceNumber());
+        }
+    }
+
+    /**
+     * Getter returning queued records (with sequence numbers 1, 2, ...) one at a time.
+     */
+    private static class QueueGetter implements IShardGetter {
+        private final LinkedList<Record> queue = new LinkedList<>();
+        private int nextSequenceNumber = 1;
+        private boolean closed = false;
+
+        QueueGetter(int... sizes) {
+            add(sizes);
+        }
+
+        void add(int... sizes) {
+            for (int size : sizes) {
+                Record rec = new Record();
+                rec.setSequenceNumber(Integer.toString(nextSequenceNumber++));
+                rec.setData(ByteBuffer.allocate(size));
+                queue.add(rec);
+            }
+        }
+
+        @Override
+        public Records getNext(int maxNumberOfRecords) {
+            if (queue.isEmpty()) {
+                return Records.empty(closed);
+            }
+            return new Records(ImmutableList.of(queue.poll()), false);
+        }
+
+        @Override
+        public void seek(ShardPosition position) {
+        }
+
+        @Override
+        public String getAssociatedShard() {
+            return "shardId-0";
+        }
+    }
+}
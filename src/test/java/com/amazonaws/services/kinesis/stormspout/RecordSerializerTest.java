@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for RecordSerializer and ByteBufferSerializer.
+ */
+public class RecordSerializerTest {
+
+    @Test
+    public final void testRecordRoundTrip() {
+        Record rec = new Record();
+        rec.setPartitionKey("pk");
+        rec.setSequenceNumber("123");
+        ByteBuffer data = ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 });
+        data.position(1);
+        rec.setData(data);
+
+        Record copy = (Record) roundTrip(rec);
+        Assert.assertEquals(Record.class, copy.getClass());
+        Assert.assertEquals("pk", copy.getPartitionKey());
+        Assert.assertEquals("123", copy.getSequenceNumber());
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), copy.getData());
+        Assert.assertEquals(1, data.position());
+    }
+
+    @Test
+    public final void testUserRecordRoundTrip() {
+        UserRecord copy = (UserRecord) roundTrip(new UserRecord("pk", "123", 7, ByteBuffer.wrap(new byte[] { 5 })));
+        Assert.assertEquals("123.7", ExtendedSequenceNumber.keyOf(copy));
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] { 5 }), copy.getData());
+    }
+
+    @Test
+    public final void testReadOnlyBufferRoundTrip() {
+        ByteBuffer copy = (ByteBuffer) roundTrip(ByteBuffer.wrap(new byte[] { 1, 2 }).asReadOnlyBuffer());
+        Assert.assertTrue(copy.isReadOnly());
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] { 1, 2 }), copy);
+    }
+
+    /**
+     * Registers the serializers the way Storm does with the spout's component configuration.
+     */
+    private static Object roundTrip(Object obj) {
+        Kryo kryo = new Kryo();
+        for (Object registration : SerializationHelper.getKryoRegistrations()) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) registration).entrySet()) {
+                try {
+                    kryo.register(Class.forName((String) e.getKey()),
+                            (RecordSerializer.class.getName().equals(e.getValue())) ? new RecordSerializer()
+                                    : new ByteBufferSerializer());
+                } catch (ClassNotFoundException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        }
+        kryo.setRegistrationRequired(true);
+
+        Output output = new Output(64, -1);
+        kryo.writeClassAndObject(output, obj);
+        return kryo.readClassAndObject(new Input(output.toBytes()));
+    }
+}
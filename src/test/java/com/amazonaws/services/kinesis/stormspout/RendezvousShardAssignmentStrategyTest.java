@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.Assert;
+
+/**
+ * Tests for RendezvousShardAssignmentStrategy.
+ */
+public class RendezvousShardAssignmentStrategyTest {
+
+    private static final int NUM_SHARDS = 200;
+    private static final ImmutableMap<String, ShardLoad> NO_LOADS = ImmutableMap.of();
+    private final RendezvousShardAssignmentStrategy strategy = new RendezvousShardAssignmentStrategy();
+
+    /**
+     * Every shard is assigned to exactly one task.
+     */
+    @Test
+    public final void testEachShardIsAssignedOnce() {
+        ImmutableList<String> shardList = makeShardList(NUM_SHARDS);
+        Map<String, Integer> owners = getOwners(shardList, 7);
+        Assert.assertEquals(NUM_SHARDS, owners.size());
+    }
+
+    /**
+     * Adding a task only moves shards to the new task.
+     */
+    @Test
+    public final void testAddingTaskOnlyMovesShardsToNewTask() {
+        ImmutableList<String> shardList = makeShardList(NUM_SHARDS);
+        Map<String, Integer> before = getOwners(shardList, 4);
+        Map<String, Integer> after = getOwners(shardList, 5);
+
+        int moved = 0;
+        for (String shardId : shardList) {
+            if (!before.get(shardId).equals(after.get(shardId))) {
+                Assert.assertEquals(4, after.get(shardId).intValue());
+                moved++;
+            }
+        }
+        // Expect ~1/5 of the shards to move, allow for some variance.
+        Assert.assertTrue("Moved " + moved + " shards", moved > 0 && moved < NUM_SHARDS / 3);
+    }
+
+    /**
+     * Adding a shard doesn't move existing shards.
+     */
+    @Test
+    public final void testAddingShardDoesNotMoveOtherShards() {
+        ImmutableList<String> shardList = makeShardList(NUM_SHARDS);
+        Map<String, Integer> before = getOwners(shardList, 6);
+        Map<String, Integer> after = getOwners(makeShardList(NUM_SHARDS + 1), 6);
+
+        for (String shardId : shardList) {
+            Assert.assertEquals(before.get(shardId), after.get(shardId));
+        }
+    }
+
+    private Map<String, Integer> getOwners(ImmutableList<String> shardList, int totalNumTasks) {
+        Map<String, Integer> owners = new HashMap<>();
+        for (int taskIndex = 0; taskIndex < totalNumTasks; taskIndex++) {
+            for (String shardId : strategy.getShardAssignment(shardList, NO_LOADS, taskIndex, totalNumTasks)) {
+                Assert.assertNull("Shard " + shardId + " assigned twice", owners.put(shardId, taskIndex));
+            }
+        }
+        return owners;
+    }
+
+    private ImmutableList<String> makeShardList(int numShards) {
+        ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        for (int i = 0; i < numShards; i++) {
+            builder.add(String.format("shardId-%012d", i));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for SerializationHelper.
+ */
+public class SerializationHelperTest {
+
+    /**
+     * An array holding exactly the data is returned as is.
+     */
+    @Test
+    public final void testCopyDataReturnsBackingArray() {
+        byte[] data = { 1, 2, 3 };
+        Assert.assertSame(data, SerializationHelper.copyData(ByteBuffer.wrap(data)));
+    }
+
+    /**
+     * Only the bytes between position and limit are returned, and the position of the buffer is not modified.
+     */
+    @Test
+    public final void testCopyDataRespectsPositionAndLimit() {
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 });
+        buf.position(1);
+        buf.limit(4);
+        Assert.assertTrue(Arrays.equals(new byte[] { 2, 3, 4 }, SerializationHelper.copyData(buf)));
+        Assert.assertEquals(1, buf.position());
+    }
+
+    /**
+     * The offset of a slice in its backing array is taken into account.
+     */
+    @Test
+    public final void testCopyDataRespectsArrayOffset() {
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 });
+        buf.position(2);
+        Assert.assertTrue(Arrays.equals(new byte[] { 3, 4, 5 }, SerializationHelper.copyData(buf.slice())));
+    }
+
+    /**
+     * Read-only buffers (no accessible array) are copied without moving their position.
+     */
+    @Test
+    public final void testCopyDataOfReadOnlyBuffer() {
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] { 1, 2, 3 }).asReadOnlyBuffer();
+        buf.position(1);
+        Assert.assertTrue(Arrays.equals(new byte[] { 2, 3 }, SerializationHelper.copyData(buf)));
+        Assert.assertEquals(1, buf.position());
+    }
+
+    /**
+     * Objects (including the spout's registered types) survive a round trip through the shared Kryo instances.
+     */
+    @Test
+    public final void testKryoRoundTrip() {
+        UserRecord rec = new UserRecord("pk", "42", 3, ByteBuffer.wrap(new byte[] { 9, 8 }));
+        UserRecord copy = (UserRecord) SerializationHelper.kryoDeserializeObject(
+                SerializationHelper.kryoSerializeObject(rec));
+        Assert.assertEquals("42.3", ExtendedSequenceNumber.keyOf(copy));
+        Assert.assertEquals(rec.getData(), copy.getData());
+
+        ShardPosition position = ShardPosition.afterSequenceNumber("42");
+        ShardPosition positionCopy = (ShardPosition) SerializationHelper.kryoDeserializeObject(
+                SerializationHelper.kryoSerializeObject(position));
+        Assert.assertEquals("42", positionCopy.getSequenceNum());
+    }
+
+    /**
+     * Kryo instances are reused by a thread, and not shared between threads.
+     */
+    @Test
+    public final void testKryoIsThreadLocal() throws Exception {
+        final Object[] other = new Object[1];
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = SerializationHelper.getKryo();
+            }
+        });
+        t.start();
+        t.join();
+
+        Assert.assertSame(SerializationHelper.getKryo(), SerializationHelper.getKryo());
+        Assert.assertNotSame(SerializationHelper.getKryo(), other[0]);
+    }
+}
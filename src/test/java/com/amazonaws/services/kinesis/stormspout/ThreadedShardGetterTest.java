@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for the ThreadedShardGetter class.
+ */
+public class ThreadedShardGetterTest {
+    private static final long TIMEOUT_MILLIS = 10000L;
+
+    private final ShardMetrics fetchMetrics = new ShardMetrics();
+    private final ShardMetrics metrics = new ShardMetrics();
+    private ThreadedShardGetter getter;
+
+    @After
+    public void tearDown() throws IOException {
+        if (getter != null) {
+            getter.close();
+        }
+    }
+
+    @Test
+    public final void testRecordsAreHandedOverInOrder() {
+        final ShardStub shard = new ShardStub(25, true);
+        getter = new ThreadedShardGetter(shard, 4, 1L, 0L, 2, new FetcherThreadFactory(false), fetchMetrics, metrics);
+
+        final List<String> sequenceNumbers = readToEndOfShard(3);
+        Assert.assertEquals(25, sequenceNumbers.size());
+        for (int i = 0; i < 25; i++) {
+            Assert.assertEquals(Integer.toString(i), sequenceNumbers.get(i));
+        }
+        Assert.assertTrue(getter.getNext(1).isEndOfShard());
+        // Fetch counters reported by the fetcher thread end up in the shard metrics.
+        Assert.assertEquals(7L, metrics.get(Counter.GET_RECORDS_CALLS));
+        Assert.assertEquals(0L, fetchMetrics.get(Counter.GET_RECORDS_CALLS));
+    }
+
+    @Test
+    public final void testSeekDropsQueuedRecords() throws Exception {
+        final ShardStub shard = new ShardStub(100, true);
+        getter = new ThreadedShardGetter(shard, 10, 1L, 0L, 2, new FetcherThreadFactory(false), fetchMetrics, metrics);
+        Assert.assertEquals("0", awaitRecords().getRecords().get(0).getSequenceNumber());
+
+        getter.seek(ShardPosition.afterSequenceNumber("49"));
+        final List<String> sequenceNumbers = readToEndOfShard(10);
+        Assert.assertEquals(50, sequenceNumbers.size());
+        Assert.assertEquals("50", sequenceNumbers.get(0));
+    }
+
+    @Test
+    public final void testEmptyWhileNothingFetched() {
+        final ShardStub shard = new ShardStub(0, false);
+        getter = new ThreadedShardGetter(shard, 10, 1L, 0L, 2, new FetcherThreadFactory(false), fetchMetrics, metrics);
+        final Records records = getter.getNext(1);
+        Assert.assertTrue(records.isEmpty());
+        Assert.assertFalse(records.isEndOfShard());
+    }
+
+    @Test
+    public final void testVirtualThreadsFallBack() {
+        // Platform threads are used when the JVM doesn't support virtual threads.
+        final FetcherThreadFactory factory = new FetcherThreadFactory(true);
+        final Thread thread = factory.newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertTrue(factory.isVirtual() || thread.isDaemon());
+    }
+
+    private Records awaitRecords() {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            final Records records = getter.getNext(1);
+            if (!records.isEmpty()) {
+                return records;
+            }
+            Thread.yield();
+        }
+        throw new AssertionError("No records fetched.");
+    }
+
+    private List<String> readToEndOfShard(final int maxRecords) {
+        final List<String> sequenceNumbers = new ArrayList<>();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            final Records records = getter.getNext(maxRecords);
+            Assert.assertTrue(records.getRecords().size() <= maxRecords);
+            for (Record record : records.getRecords()) {
+                sequenceNumbers.add(record.getSequenceNumber());
+            }
+            if (records.isEndOfShard()) {
+                return sequenceNumbers;
+            }
+            Thread.yield();
+        }
+        throw new AssertionError("End of shard not reached.");
+    }
+
+    /**
+     * Shard with records "0" to "numRecords - 1". Reports GetRecords calls to fetchMetrics.
+     */
+    private final class ShardStub implements IShardGetter {
+        private final int numRecords;
+        private final boolean closed;
+        private int next;
+
+        ShardStub(final int numRecords, final boolean closed) {
+            this.numRecords = numRecords;
+            this.closed = closed;
+        }
+
+        @Override
+        public Records getNext(int maxNumberOfRecords) {
+            fetchMetrics.increment(Counter.GET_RECORDS_CALLS);
+            final ImmutableList.Builder<Record> records = new ImmutableList.Builder<>();
+            while (next < numRecords && maxNumberOfRecords-- > 0) {
+                records.add(new Record().withSequenceNumber(Integer.toString(next++)));
+            }
+            return new Records(records.build(), closed && next == numRecords);
+        }
+
+        @Override
+        public void seek(ShardPosition position) {
+            next = Integer.parseInt(position.getSequenceNum()) + 1;
+        }
+
+        @Override
+        public String getAssociatedShard() {
+            return "shardId-0";
+        }
+    }
+}
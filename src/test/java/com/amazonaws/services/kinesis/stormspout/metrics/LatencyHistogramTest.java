@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public final void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 20; v++) {
+            histogram.record(v);
+        }
+        Assert.assertEquals(20L, histogram.getCount());
+        Assert.assertEquals(10L, histogram.getValueAtPercentile(50.0));
+        Assert.assertEquals(20L, histogram.getValueAtPercentile(100.0));
+        Assert.assertEquals(20L, histogram.getMax());
+    }
+
+    @Test
+    public final void testRelativeError() {
+        for (long v = 0; v <= LatencyHistogram.MAX_VALUE; v = v * 3 / 2 + 1) {
+            long upper = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(v));
+            Assert.assertTrue("value " + v, upper >= v);
+            Assert.assertTrue("value " + v, upper - v <= v / 16);
+        }
+    }
+
+    @Test
+    public final void testTailPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 998; i++) {
+            histogram.record(5L);
+        }
+        histogram.record(1000L);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(5L, histogram.getValueAtPercentile(99.0));
+        long p999 = histogram.getValueAtPercentile(99.9);
+        Assert.assertTrue(p999 >= 1000L && p999 < 1064L);
+        Assert.assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public final void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42L);
+        histogram.reset();
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getValueAtPercentile(99.0));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.stormspout.metrics.PhaseTimer.Phase;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for PhaseTimer.
+ */
+public class PhaseTimerTest {
+
+    @Test
+    public final void testDisabledTimerDoesNotTime() {
+        PhaseTimer timer = new PhaseTimer(0);
+        timer.beginCall();
+        timer.stop(Phase.FETCH, timer.start());
+        timer.stop(Phase.COMMIT, timer.startIfEnabled());
+        Assert.assertEquals(0L, timer.getCount(Phase.FETCH));
+        Assert.assertEquals(0L, timer.getCount(Phase.COMMIT));
+    }
+
+    @Test
+    public final void testSamplesOneCallInSampleRate() {
+        PhaseTimer timer = new PhaseTimer(4);
+        for (int i = 0; i < 10; i++) {
+            timer.beginCall();
+            timer.stop(Phase.EMIT, timer.start());
+            timer.stop(Phase.COMMIT, timer.startIfEnabled());
+        }
+        Assert.assertEquals(3L, timer.getCount(Phase.EMIT));
+        Assert.assertEquals(10L, timer.getCount(Phase.COMMIT));
+    }
+
+    @Test
+    public final void testToggleAtRuntime() {
+        PhaseTimer timer = new PhaseTimer(0);
+        timer.beginCall();
+        timer.stop(Phase.TRACK, timer.start());
+        timer.setSampleRate(1);
+        timer.beginCall();
+        timer.stop(Phase.TRACK, timer.start());
+        Assert.assertEquals(1L, timer.getCount(Phase.TRACK));
+        timer.setSampleRate(0);
+        timer.beginCall();
+        timer.stop(Phase.TRACK, timer.start());
+        Assert.assertEquals(1L, timer.getCount(Phase.TRACK));
+    }
+
+    @Test
+    public final void testSnapshotAndReset() {
+        PhaseTimer timer = new PhaseTimer(1);
+        timer.beginCall();
+        timer.stop(Phase.DESERIALIZE, timer.start());
+
+        Map<String, Object> values = new HashMap<>();
+        timer.snapshotAndReset("phase/", values);
+        Assert.assertEquals(1L, values.get("phase/sampledCalls"));
+        Assert.assertEquals(1L, values.get("phase/deserializeCount"));
+        Assert.assertEquals(0L, values.get("phase/fetchCount"));
+        Assert.assertTrue(values.containsKey("phase/deserializeMicros"));
+        Assert.assertEquals(0L, timer.getCount(Phase.DESERIALIZE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testNegativeSampleRate() {
+        new PhaseTimer(-1);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.metrics;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Gauge;
+import com.amazonaws.services.kinesis.stormspout.utils.CircuitBreaker;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for SpoutMetrics.
+ */
+public class SpoutMetricsTest {
+
+    @Test
+    public final void testForShardReturnsSameMetrics() {
+        SpoutMetrics metrics = new SpoutMetrics();
+        Assert.assertSame(metrics.forShard("shardId-0"), metrics.forShard("shardId-0"));
+        Assert.assertNotSame(metrics.forShard("shardId-0"), metrics.forShard("shardId-1"));
+    }
+
+    /**
+     * Counters are reset when metrics are collected, gauges keep their last value.
+     */
+    @Test
+    public final void testGetValueAndReset() {
+        SpoutMetrics metrics = new SpoutMetrics();
+        ShardMetrics shard = metrics.forShard("shardId-0");
+        shard.increment(Counter.RECORDS_EMITTED);
+        shard.add(Counter.BYTES_EMITTED, 100L);
+        shard.set(Gauge.INFLIGHT_RECORDS, 7L);
+
+        Map<?, ?> values = (Map<?, ?>) metrics.getValueAndReset();
+        Assert.assertEquals(1L, values.get("shardId-0/recordsEmitted"));
+        Assert.assertEquals(100L, values.get("shardId-0/bytesEmitted"));
+        Assert.assertEquals(7L, values.get("shardId-0/inflightRecords"));
+
+        values = (Map<?, ?>) metrics.getValueAndReset();
+        Assert.assertEquals(0L, values.get("shardId-0/recordsEmitted"));
+        Assert.assertEquals(7L, values.get("shardId-0/inflightRecords"));
+    }
+
+    @Test
+    public final void testLatencyPercentiles() {
+        SpoutMetrics metrics = new SpoutMetrics();
+        ShardMetrics shard = metrics.forShard("shardId-0");
+        shard.recordAckLatency(3L);
+        shard.recordAckLatency(9L);
+
+        Map<?, ?> values = (Map<?, ?>) metrics.getValueAndReset();
+        Assert.assertEquals(3L, values.get("shardId-0/ackLatencyP50"));
+        Assert.assertEquals(9L, values.get("shardId-0/ackLatencyP999"));
+        Assert.assertEquals(9L, values.get("shardId-0/ackLatencyMax"));
+        Assert.assertEquals(0L, values.get("shardId-0/failLatencyP99"));
+
+        values = (Map<?, ?>) metrics.getValueAndReset();
+        Assert.assertEquals(0L, values.get("shardId-0/ackLatencyMax"));
+    }
+
+    @Test
+    public final void testApiMetrics() {
+        SpoutMetrics metrics = new SpoutMetrics();
+        CircuitBreaker breaker = new CircuitBreaker("getShardIterator", 5, 1000L);
+        metrics.registerApi(breaker);
+        breaker.onRetry();
+
+        Map<?, ?> values = (Map<?, ?>) metrics.getValueAndReset();
+        Assert.assertEquals(1L, values.get("api/getShardIterator/retries"));
+        Assert.assertEquals(0, values.get("api/getShardIterator/circuitState"));
+    }
+}
@@ -16,6 +16,7 @@
 package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.junit.After;
@@ -25,6 +26,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.UserRecord;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
 import com.amazonaws.services.kinesis.stormspout.state.zookeeper.InflightRecordTracker.RecordNode;
 import com.amazonaws.services.kinesis.stormspout.state.zookeeper.InflightRecordTracker.RecordNodeList;
 
@@ -107,6 +111,73 @@ public class InflightRecordTrackerTest {
         Assert.assertEquals("4", tracker.getCheckpointSequenceNumber());
     }
 
+    @Test
+    public final void testAckReturnsEmitTime() {
+        long before = System.currentTimeMillis();
+        tracker.onEmit(newRecordWithSequenceNumber("1"), false);
+        tracker.onEmit(newRecordWithSequenceNumber("2"), false);
+        long emitted = tracker.onFail("1");
+        Assert.assertTrue(emitted >= before && emitted <= System.currentTimeMillis());
+        Assert.assertTrue(tracker.onAck("2") >= before);
+        Assert.assertEquals(-1L, tracker.onAck("2"));
+        Assert.assertEquals(-1L, tracker.onAck("5"));
+    }
+
+    /**
+     * User records of an aggregated record are tracked (and checkpointed) individually.
+     */
+    @Test
+    public final void testCheckpointUserRecords() {
+        boolean isRetry = false;
+        tracker.onEmit(newRecordWithSequenceNumber("1"), isRetry);
+        tracker.onEmit(new UserRecord("pk", "2", 0, ByteBuffer.allocate(0)), isRetry);
+        tracker.onEmit(new UserRecord("pk", "2", 1, ByteBuffer.allocate(0)), isRetry);
+        tracker.onEmit(new UserRecord("pk", "2", 2, ByteBuffer.allocate(0)), isRetry);
+        tracker.onAck("1");
+        tracker.onAck("2.0");
+        tracker.onAck("2.2");
+        Assert.assertEquals("2.0", tracker.getCheckpointSequenceNumber());
+
+        tracker.onFail("2.1");
+        Assert.assertTrue(tracker.shouldRetry());
+        Record retry = tracker.recordToRetry();
+        Assert.assertEquals(1L, ((UserRecord) retry).getSubSequenceNumber());
+        tracker.onEmit(retry, true);
+        tracker.onAck("2.1");
+        Assert.assertEquals("2.2", tracker.getCheckpointSequenceNumber());
+    }
+
+    /**
+     * A batch of records is acked, failed and retried as a whole, using the sequence number of its last record.
+     */
+    @Test
+    public final void testBatch() {
+        boolean isRetry = false;
+        ImmutableList<Record> batch = ImmutableList.of(newRecordWithSequenceNumber("2"),
+                newRecordWithSequenceNumber("3"),
+                newRecordWithSequenceNumber("4"));
+        tracker.onEmitBatch(batch, isRetry);
+        tracker.onEmit(newRecordWithSequenceNumber("5"), isRetry);
+        Assert.assertEquals(2, tracker.getRecordNodeList().size());
+
+        tracker.onFail("4");
+        Assert.assertEquals(batch, tracker.batchToRetry());
+        tracker.onEmitBatch(batch, true);
+        tracker.onAck("5");
+        Assert.assertEquals(INITIAL_SEQUENCE_NUMBER, tracker.getCheckpointSequenceNumber());
+        tracker.onAck("4");
+        Assert.assertEquals("5", tracker.getCheckpointSequenceNumber());
+    }
+
+    /**
+     * User records must be emitted in (sequence number, sub-sequence number) order.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testUserRecordsOutOfOrder() {
+        tracker.onEmit(new UserRecord("pk", "2", 1, ByteBuffer.allocate(0)), false);
+        tracker.onEmit(new UserRecord("pk", "2", 0, ByteBuffer.allocate(0)), false);
+    }
+
     /**
      * Test method for
      * {@link com.amazonaws.services.kinesis.stormspout.state.zookeeper.InflightRecordTracker#onEmit(com.amazonaws.services.kinesis.model.Record, boolean)}.
@@ -414,6 +485,25 @@ public class InflightRecordTrackerTest {
         validateInternalState();
     }
 
+    @Test
+    public final void testDelayedRetry() throws InterruptedException {
+        RetryTimerWheel retryWheel = new RetryTimerWheel(200L, 200L);
+        tracker = new InflightRecordTracker(SHARD_ID, INITIAL_SEQUENCE_NUMBER, RECORD_RETRY_LIMIT, retryWheel,
+                new RecordQuarantine(null, new SpoutMetrics()));
+        Record record = newRecordWithSequenceNumber("1");
+        tracker.onEmit(record, false);
+        tracker.onFail("1");
+        Assert.assertFalse(tracker.shouldRetry());
+        Assert.assertEquals(1, retryWheel.size());
+
+        Thread.sleep(250L);
+        Assert.assertTrue(tracker.shouldRetry());
+        Assert.assertSame(record, tracker.recordToRetry());
+        tracker.onEmit(record, true);
+        Assert.assertFalse(tracker.shouldRetry());
+        validateInternalState();
+    }
+
     private void validateInternalState() {
         Map<String, RecordNode> seqNumToNodeMap = tracker.getSequenceNumberToRecordNodeMap();
         RecordNodeList list = tracker.getRecordNodeList();
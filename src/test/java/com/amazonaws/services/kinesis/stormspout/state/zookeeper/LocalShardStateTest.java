@@ -38,6 +38,22 @@ public class LocalShardStateTest {
         state = new LocalShardState("shardId-0", "", 3);
     }
 
+    /** A load-only update is due once the load was last sampled at least an interval ago, if records were emitted. */
+    @Test
+    public void loadIsDueOncePerInterval() {
+        final long start = System.currentTimeMillis();
+        assertFalse(state.isLoadDue(start + 10000L, 1000L));
+
+        state.emit(newRecordWithSequenceNumber("01"), false);
+        assertFalse(state.isLoadDue(start - 1L, 1000L));
+        assertTrue(state.isLoadDue(start + 10000L, 1000L));
+
+        state.sampleLoad(start + 10000L);
+        state.emit(newRecordWithSequenceNumber("02"), false);
+        assertFalse(state.isLoadDue(start + 10500L, 1000L));
+        assertTrue(state.isLoadDue(start + 11000L, 1000L));
+    }
+
     @Test
     public void ackDoesNotCauseRetry() {
         state.emit(newRecordWithSequenceNumber("01"), false);
@@ -137,6 +153,23 @@ public class LocalShardStateTest {
         assertThat(state.shouldRetry(), is(equalTo(shouldRetry)));
     }
 
+    /** In at-most-once mode, the checkpoint follows the last emitted record, and nothing is kept in flight. */
+    @Test
+    public void emitAdvancesCheckpointInAtMostOnceMode() {
+        state = new LocalShardState("shardId-0", "", new AtMostOnceRecordTracker(""));
+        state.emit(newRecordWithSequenceNumber("01"), false);
+        state.emit(newRecordWithSequenceNumber("02"), false);
+
+        assertThat(state.getLatestValidSeqNum(), is(equalTo("02")));
+        assertTrue(state.isDirty());
+        assertTrue(state.isDrained());
+
+        state.fail("02");
+        assertFalse(state.shouldRetry());
+        state.commit("02");
+        assertFalse(state.isDirty());
+    }
+
     private Record newRecordWithSequenceNumber(final String sequenceNumber) {
         Record record = new Record();
         record.setPartitionKey("TestPartitionKey");
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.Assert;
+
+/**
+ * Tests for RangeInflightRecordTracker.
+ */
+public class RangeInflightRecordTrackerTest {
+
+    private static final String SHARD_ID = "shardId-0";
+    private static final int RECORD_RETRY_LIMIT = 3;
+    private static final String INITIAL_SEQUENCE_NUMBER = "000";
+    private RangeInflightRecordTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        tracker = new RangeInflightRecordTracker(SHARD_ID, INITIAL_SEQUENCE_NUMBER, RECORD_RETRY_LIMIT);
+    }
+
+    /**
+     * Same scenario as InflightRecordTrackerTest.testGetCheckpointSequenceNumber.
+     */
+    @Test
+    public final void testGetCheckpointSequenceNumber() {
+        Assert.assertEquals(INITIAL_SEQUENCE_NUMBER, tracker.getCheckpointSequenceNumber());
+        boolean isRetry = false;
+        tracker.onEmit(newRecordWithSequenceNumber("1"), isRetry);
+        Record record = newRecordWithSequenceNumber("2");
+        tracker.onEmit(record, isRetry);
+        tracker.onEmit(newRecordWithSequenceNumber("3"), isRetry);
+        tracker.onEmit(newRecordWithSequenceNumber("4"), isRetry);
+        Assert.assertEquals(INITIAL_SEQUENCE_NUMBER, tracker.getCheckpointSequenceNumber());
+        tracker.onFail("1");
+        Assert.assertEquals(INITIAL_SEQUENCE_NUMBER, tracker.getCheckpointSequenceNumber());
+        tracker.onAck("1");
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+        tracker.onAck("3");
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+
+        isRetry = true;
+        tracker.onFail("2");
+        tracker.onEmit(record, isRetry);
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+        tracker.onFail("2");
+        tracker.onEmit(record, isRetry);
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+        tracker.onFail("2");
+        tracker.onEmit(record, isRetry);
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+        tracker.onFail("2");
+        Assert.assertEquals("3", tracker.getCheckpointSequenceNumber());
+
+        tracker.onAck("4");
+        Assert.assertEquals("4", tracker.getCheckpointSequenceNumber());
+        Assert.assertTrue(tracker.isEmpty());
+    }
+
+    @Test
+    public final void testRetry() {
+        Record record = newRecordWithSequenceNumber("1");
+        tracker.onEmit(record, false);
+        Assert.assertFalse(tracker.shouldRetry());
+        tracker.onFail("1");
+        Assert.assertTrue(tracker.shouldRetry());
+        Assert.assertSame(record, tracker.recordToRetry());
+        tracker.onEmit(record, true);
+        Assert.assertFalse(tracker.shouldRetry());
+        Assert.assertFalse(tracker.isEmpty());
+    }
+
+    @Test
+    public final void testDelayedRetry() throws InterruptedException {
+        RetryTimerWheel retryWheel = new RetryTimerWheel(200L, 200L);
+        tracker = new RangeInflightRecordTracker(SHARD_ID, INITIAL_SEQUENCE_NUMBER, RECORD_RETRY_LIMIT, retryWheel,
+                new RecordQuarantine(null, new SpoutMetrics()));
+        Record record = newRecordWithSequenceNumber("1");
+        tracker.onEmit(record, false);
+        tracker.onEmit(newRecordWithSequenceNumber("2"), false);
+        tracker.onFail("1");
+        tracker.onFail("2");
+        Assert.assertFalse(tracker.shouldRetry());
+        Assert.assertEquals(2, retryWheel.size());
+        // Acked while waiting for its retry: not retried.
+        tracker.onAck("2");
+
+        Thread.sleep(250L);
+        Assert.assertTrue(tracker.shouldRetry());
+        Assert.assertSame(record, tracker.recordToRetry());
+        tracker.onEmit(record, true);
+        Assert.assertFalse(tracker.shouldRetry());
+        Assert.assertTrue(retryWheel.isEmpty());
+    }
+
+    /**
+     * Acks in any order, with enough records to wrap around and grow the ring buffer.
+     */
+    @Test
+    public final void testOutOfOrderAcksAcrossGrowth() {
+        int numRecords = 1000;
+        for (int i = 1; i <= numRecords; i++) {
+            tracker.onEmit(newRecordWithSequenceNumber(Integer.toString(i)), false);
+            if (i % 3 == 0) {
+                tracker.onAck(Integer.toString(i - 2));
+            }
+        }
+        // Only record 1 is acked at the start of the range.
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+        for (int i = numRecords; i >= 1; i--) {
+            tracker.onAck(Integer.toString(i));
+        }
+        Assert.assertEquals(Integer.toString(numRecords), tracker.getCheckpointSequenceNumber());
+        Assert.assertEquals(0, tracker.getNumInflightRecords());
+    }
+
+    @Test
+    public final void testBatch() {
+        ImmutableList<Record> batch = ImmutableList.of(newRecordWithSequenceNumber("2"),
+                newRecordWithSequenceNumber("3"));
+        tracker.onEmitBatch(batch, false);
+        tracker.onEmit(newRecordWithSequenceNumber("5"), false);
+        tracker.onFail("3");
+        Assert.assertEquals(batch, tracker.batchToRetry());
+        tracker.onAck("3");
+        Assert.assertEquals("3", tracker.getCheckpointSequenceNumber());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testOutOfOrderEmit() {
+        tracker.onEmit(newRecordWithSequenceNumber("2"), false);
+        tracker.onEmit(newRecordWithSequenceNumber("1"), false);
+    }
+
+    /**
+     * Records aren't tracked when they are not retried.
+     */
+    @Test
+    public final void testNoRetries() {
+        tracker = new RangeInflightRecordTracker(SHARD_ID, INITIAL_SEQUENCE_NUMBER, 0);
+        tracker.onEmit(newRecordWithSequenceNumber("1"), false);
+        Assert.assertTrue(tracker.isEmpty());
+    }
+
+    private Record newRecordWithSequenceNumber(String sequenceNumber) {
+        Record record = new Record();
+        record.setSequenceNumber(sequenceNumber);
+        return record;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.stormspout.IQuarantineSink;
+import com.amazonaws.services.kinesis.stormspout.metrics.ShardMetrics.Counter;
+import com.amazonaws.services.kinesis.stormspout.metrics.SpoutMetrics;
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.Assert;
+
+/**
+ * Tests for RecordQuarantine, and quarantining by the in-flight record trackers.
+ */
+public class RecordQuarantineTest {
+    private static final String SHARD_ID = "shardId-0";
+    private static final String INITIAL_SEQUENCE_NUMBER = "000";
+
+    @Test
+    public final void testRecordsAreDeliveredInOrder() throws InterruptedException {
+        CollectingSink sink = new CollectingSink(50L);
+        SpoutMetrics metrics = new SpoutMetrics();
+        RecordQuarantine quarantine = new RecordQuarantine(sink, metrics);
+        quarantine.add(SHARD_ID, ImmutableList.of(newRecord("1"), newRecord("2")),
+                IQuarantineSink.Reason.RETRIES_EXHAUSTED);
+        quarantine.add(SHARD_ID, ImmutableList.of(newRecord("3")), IQuarantineSink.Reason.MAX_AGE_EXCEEDED);
+        Assert.assertTrue(quarantine.awaitDelivered(5000L));
+
+        Assert.assertEquals(2, sink.calls.size());
+        Assert.assertEquals("1,2:RETRIES_EXHAUSTED", sink.calls.get(0));
+        Assert.assertEquals("3:MAX_AGE_EXCEEDED", sink.calls.get(1));
+        Assert.assertEquals(3L, metrics.forShard(SHARD_ID).get(Counter.RECORDS_QUARANTINED));
+    }
+
+    /**
+     * Adding records doesn't wait for the sink, and the shards with records waiting for the sink are known.
+     */
+    @Test
+    public final void testAddDoesNotWaitForSink() throws InterruptedException {
+        CollectingSink sink = new CollectingSink(200L);
+        RecordQuarantine quarantine = new RecordQuarantine(sink, new SpoutMetrics());
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            quarantine.add(SHARD_ID, ImmutableList.of(newRecord(Integer.toString(i))),
+                    IQuarantineSink.Reason.RETRIES_EXHAUSTED);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 200L);
+        Assert.assertTrue(quarantine.hasPending(SHARD_ID));
+        Assert.assertFalse(quarantine.hasPending("shardId-1"));
+        Assert.assertFalse(quarantine.awaitDelivered(10L));
+
+        Assert.assertTrue(quarantine.awaitDelivered(5000L));
+        Assert.assertFalse(quarantine.hasPending(SHARD_ID));
+        Assert.assertEquals(5, sink.calls.size());
+    }
+
+    @Test
+    public final void testRetriesExhausted() throws InterruptedException {
+        CollectingSink sink = new CollectingSink(0L);
+        RecordQuarantine quarantine = new RecordQuarantine(sink, new SpoutMetrics());
+        InflightRecordTracker tracker = new InflightRecordTracker(SHARD_ID,
+                INITIAL_SEQUENCE_NUMBER,
+                1,
+                new RetryTimerWheel(0L, 0L),
+                quarantine);
+        Record record = newRecord("1");
+        tracker.onEmit(record, false);
+        tracker.onFail("1");
+        tracker.onEmit(record, true);
+        tracker.onFail("1");
+        Assert.assertTrue(quarantine.awaitDelivered(5000L));
+
+        Assert.assertEquals(Collections.singletonList("1:RETRIES_EXHAUSTED"), sink.calls);
+        Assert.assertEquals("1", tracker.getCheckpointSequenceNumber());
+        Assert.assertTrue(tracker.isEmpty());
+    }
+
+    /**
+     * Only the records holding back the checkpoint are expired.
+     */
+    @Test
+    public final void testExpireRecords() throws InterruptedException {
+        CollectingSink sink = new CollectingSink(0L);
+        RecordQuarantine quarantine = new RecordQuarantine(sink, new SpoutMetrics());
+        IInflightRecordTracker[] trackers = {
+            new InflightRecordTracker(SHARD_ID, INITIAL_SEQUENCE_NUMBER, 3, new RetryTimerWheel(0L, 0L), quarantine),
+            new RangeInflightRecordTracker(SHARD_ID, INITIAL_SEQUENCE_NUMBER, 3, new RetryTimerWheel(0L, 0L),
+                    quarantine) };
+        for (IInflightRecordTracker tracker : trackers) {
+            sink.calls.clear();
+            tracker.onEmit(newRecord("1"), false);
+            tracker.onEmit(newRecord("2"), false);
+            tracker.onEmit(newRecord("3"), false);
+            tracker.onAck("2");
+            Thread.sleep(20L);
+            long emittedBefore = System.currentTimeMillis();
+            tracker.onEmit(newRecord("4"), false);
+
+            Assert.assertEquals(0, tracker.expireRecords(emittedBefore - 1000L));
+            // 1 is quarantined, the checkpoint moves past the acked 2, and 3 is quarantined.
+            Assert.assertEquals(2, tracker.expireRecords(emittedBefore));
+            Assert.assertTrue(quarantine.awaitDelivered(5000L));
+            Assert.assertEquals(2, sink.calls.size());
+            Assert.assertEquals("1:MAX_AGE_EXCEEDED", sink.calls.get(0));
+            Assert.assertEquals("3:MAX_AGE_EXCEEDED", sink.calls.get(1));
+            Assert.assertEquals("3", tracker.getCheckpointSequenceNumber());
+            Assert.assertEquals(1, tracker.getNumInflightRecords());
+        }
+    }
+
+    private static Record newRecord(final String sequenceNumber) {
+        return new Record().withPartitionKey("TestPartitionKey").withSequenceNumber(sequenceNumber);
+    }
+
+    private static class CollectingSink implements IQuarantineSink {
+        private static final long serialVersionUID = 1L;
+        private final long delayMillis;
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+        CollectingSink(final long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void quarantine(final String shardId, final ImmutableList<Record> records, final Reason reason) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StringBuilder call = new StringBuilder();
+            for (Record record : records) {
+                call.append(call.length() == 0 ? "" : ",").append(record.getSequenceNumber());
+            }
+            calls.add(call.append(":").append(reason).toString());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.Assert;
+
+/**
+ * Tests for RetryTimerWheel.
+ */
+public class RetryTimerWheelTest {
+
+    @Test
+    public final void testNoBackoff() {
+        RetryTimerWheel wheel = new RetryTimerWheel(0L, 60000L);
+        Assert.assertEquals(0L, wheel.backoffMillis(0));
+        Assert.assertEquals(0L, wheel.backoffMillis(5));
+    }
+
+    @Test
+    public final void testExponentialBackoffWithJitter() {
+        RetryTimerWheel wheel = new RetryTimerWheel(100L, 1000L, new Random(42L));
+        for (int i = 0; i < 100; i++) {
+            long first = wheel.backoffMillis(0);
+            Assert.assertTrue(first >= 50L && first <= 100L);
+            long third = wheel.backoffMillis(2);
+            Assert.assertTrue(third >= 200L && third <= 400L);
+            long capped = wheel.backoffMillis(20);
+            Assert.assertTrue(capped >= 500L && capped <= 1000L);
+        }
+    }
+
+    @Test
+    public final void testExpire() {
+        RetryTimerWheel wheel = new RetryTimerWheel(100L, 1000L);
+        long now = 1000000L;
+        wheel.schedule("1", now, 100L);
+        wheel.schedule("2", now, 50L);
+        wheel.schedule("3", now, 130L);
+        Assert.assertEquals(3, wheel.size());
+
+        Assert.assertTrue(wheel.expire(now + 49L).isEmpty());
+        Assert.assertEquals(ImmutableList.of("2"), wheel.expire(now + 50L));
+        // Same tick as the due time of "3", but earlier.
+        Assert.assertEquals(ImmutableList.of("1"), wheel.expire(now + 125L));
+        Assert.assertEquals(ImmutableList.of("3"), wheel.expire(now + 130L));
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    /**
+     * Retries due after more than a turn of the wheel, and calls more than a turn apart.
+     */
+    @Test
+    public final void testLongDelays() {
+        RetryTimerWheel wheel = new RetryTimerWheel(4L, 1000000L);
+        long now = 0L;
+        for (int i = 0; i < 1000; i++) {
+            wheel.schedule(Integer.toString(i), now, i * 10L);
+        }
+        Set<String> expired = new HashSet<>();
+        for (int t = 0; t < 5000; t += 7) {
+            for (String sequenceNumber : wheel.expire(t)) {
+                // Expired by the first call at or after its due time.
+                long dueMillis = Integer.parseInt(sequenceNumber) * 10L;
+                Assert.assertTrue(dueMillis <= t && dueMillis > t - 7);
+                Assert.assertTrue(expired.add(sequenceNumber));
+            }
+        }
+        Assert.assertEquals(500, expired.size());
+        Assert.assertEquals(500, wheel.size());
+
+        // Jump past all due times at once.
+        Assert.assertEquals(500, wheel.expire(100000L).size());
+        Assert.assertTrue(wheel.isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import junit.framework.Assert;
+
+/**
+ * Tests for the lease selection policies of ShardLeaseCoordinator.
+ */
+public class ShardLeaseCoordinatorTest {
+
+    private static final long STEAL_LAG_MILLIS = 1000L;
+
+    @Test
+    public final void testTargetNumLeasesRoundsUp() {
+        Assert.assertEquals(3, ShardLeaseCoordinator.targetNumLeases(10, 4));
+        Assert.assertEquals(2, ShardLeaseCoordinator.targetNumLeases(8, 4));
+        Assert.assertEquals(0, ShardLeaseCoordinator.targetNumLeases(0, 4));
+    }
+
+    @Test
+    public final void testPickVictimPicksTaskFurthestBehind() {
+        List<TaskStateV0> tasks = Arrays.asList(
+                new TaskStateV0("self", 0, 1, "shard-0", 0L),
+                new TaskStateV0("a", 1, 2, "shard-1", 5000L),
+                new TaskStateV0("b", 2, 3, "shard-2", 9000L),
+                new TaskStateV0("c", 3, 3, "shard-3", 500L));
+        Assert.assertEquals("b", ShardLeaseCoordinator.pickVictim(tasks, "self", 1, STEAL_LAG_MILLIS).getOwner());
+    }
+
+    @Test
+    public final void testPickVictimIgnoresTasksWithOneLeaseOrFewerLeasesThanThief() {
+        List<TaskStateV0> tasks = Arrays.asList(
+                new TaskStateV0("a", 1, 1, "shard-1", 5000L),
+                new TaskStateV0("b", 2, 2, "shard-2", 9000L));
+        Assert.assertNull(ShardLeaseCoordinator.pickVictim(tasks, "self", 3, STEAL_LAG_MILLIS));
+        Assert.assertEquals("b", ShardLeaseCoordinator.pickVictim(tasks, "self", 2, STEAL_LAG_MILLIS).getOwner());
+    }
+
+    @Test
+    public final void testPickVictimIgnoresTasksThatAreCaughtUp() {
+        List<TaskStateV0> tasks = Arrays.asList(new TaskStateV0("a", 1, 4, "shard-1", STEAL_LAG_MILLIS - 1));
+        Assert.assertNull(ShardLeaseCoordinator.pickVictim(tasks, "self", 0, STEAL_LAG_MILLIS));
+    }
+
+    /**
+     * A busy shard read at its tip never gets an empty fetch, but its fetches return fewer records than requested
+     * (the spout reports them as caught up): its lag stays low, and its task is not a steal victim.
+     */
+    @Test
+    public final void testBusyCaughtUpShardIsNotStolen() {
+        LocalShardState state = new LocalShardState("shard-1", "0", 3);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 10; i++) {
+            now += STEAL_LAG_MILLIS / 2;
+            state.emit(new Record().withSequenceNumber(Integer.toString(i)), false);
+            state.caughtUp(now);
+        }
+        long lagMillis = state.getLagMillis(now + STEAL_LAG_MILLIS / 2);
+        Assert.assertTrue(lagMillis < STEAL_LAG_MILLIS);
+
+        List<TaskStateV0> tasks = Arrays.asList(new TaskStateV0("a", 1, 4, "shard-1", lagMillis));
+        Assert.assertNull(ShardLeaseCoordinator.pickVictim(tasks, "self", 0, STEAL_LAG_MILLIS));
+    }
+
+    @Test
+    public final void testPickShardsToShedPrefersNonPreferredShards() {
+        List<String> shards = Arrays.asList("shard-0", "shard-1", "shard-2", "shard-3");
+        ImmutableSet<String> preferred = ImmutableSet.of("shard-1", "shard-3");
+
+        Assert.assertEquals(ImmutableList.of("shard-2"),
+                ShardLeaseCoordinator.pickShardsToShed(shards, preferred, 1));
+        Assert.assertEquals(ImmutableList.of("shard-2", "shard-0", "shard-3"),
+                ShardLeaseCoordinator.pickShardsToShed(shards, preferred, 3));
+        Assert.assertTrue(ShardLeaseCoordinator.pickShardsToShed(shards, preferred, -1).isEmpty());
+    }
+
+    @Test
+    public final void testOrderFreeShardsSkipsLeasedShardsAndPutsPreferredFirst() {
+        List<String> shardList = Arrays.asList("shard-0", "shard-1", "shard-2", "shard-3");
+        Assert.assertEquals(ImmutableList.of("shard-3", "shard-0"),
+                ShardLeaseCoordinator.orderFreeShards(shardList, ImmutableSet.of("shard-1", "shard-2"),
+                        ImmutableSet.of("shard-2", "shard-3")));
+    }
+}
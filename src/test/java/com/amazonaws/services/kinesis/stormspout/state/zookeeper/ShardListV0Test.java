@@ -16,7 +16,10 @@
 package com.amazonaws.services.kinesis.stormspout.state.zookeeper;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -26,6 +29,7 @@ import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import junit.framework.Assert;
 
@@ -80,4 +84,94 @@ public class ShardListV0Test {
         Assert.assertEquals(shardList.size(), shardList2.size());
     }
 
+    /**
+     * Lineage and closed shards survive serialization.
+     *
+     * @throws IOException
+     *             Thrown if we encounter errors when serializing/deserializing.
+     */
+    @Test
+    public final void testJSONSerializationOfLineage() throws IOException {
+        ShardListV0 shards = new ShardListV0(Arrays.asList("shardId-0", "shardId-1", "shardId-2"));
+        shards.merge(ImmutableList.<String>of(), makeSplit("shardId-0", "shardId-1", "shardId-2"),
+                ImmutableSet.of("shardId-0"));
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        ShardListV0 shards2 = objectMapper.readValue(objectMapper.writeValueAsBytes(shards), ShardListV0.class);
+        Assert.assertEquals(Arrays.asList("shardId-0"), shards2.getParents().get("shardId-1"));
+        Assert.assertEquals(ImmutableSet.of("shardId-0"), shards2.getClosedShards());
+    }
+
+    /**
+     * Children of a split can only be processed once their parent is closed.
+     */
+    @Test
+    public final void testChildrenCanBeProcessedOnceParentIsClosed() {
+        ShardListV0 shards = new ShardListV0(Arrays.asList("shardId-0", "shardId-1", "shardId-2"));
+        shards.merge(ImmutableList.<String>of(), makeSplit("shardId-0", "shardId-1", "shardId-2"),
+                ImmutableSet.<String>of());
+        Assert.assertTrue(shards.canProcess("shardId-0"));
+        Assert.assertFalse(shards.canProcess("shardId-1"));
+        Assert.assertFalse(shards.canProcess("shardId-2"));
+
+        shards.merge(ImmutableList.<String>of(), new HashMap<String, List<String>>(), ImmutableSet.of("shardId-0"));
+        Assert.assertFalse(shards.canProcess("shardId-0"));
+        Assert.assertTrue(shards.canProcess("shardId-1"));
+        Assert.assertTrue(shards.canProcess("shardId-2"));
+    }
+
+    /**
+     * A child whose parent is no longer in the list (e.g. trimmed) can be processed.
+     */
+    @Test
+    public final void testChildOfUnknownParentCanBeProcessed() {
+        ShardListV0 shards = new ShardListV0(Arrays.asList("shardId-1"));
+        shards.merge(ImmutableList.<String>of(), makeSplit("shardId-0", "shardId-1"), ImmutableSet.<String>of());
+        Assert.assertTrue(shards.canProcess("shardId-1"));
+    }
+
+    /**
+     * Merging keeps the list sorted, and only reports a modification if something was added.
+     */
+    @Test
+    public final void testMergeKeepsListSorted() {
+        ShardListV0 shards = new ShardListV0(Arrays.asList("shardId-0", "shardId-10"));
+        Assert.assertTrue(shards.merge(Arrays.asList("shardId-9", "shardId-0"), new HashMap<String, List<String>>(),
+                ImmutableSet.<String>of()));
+        Assert.assertEquals(Arrays.asList("shardId-0", "shardId-9", "shardId-10"), shards.getShardList());
+
+        Assert.assertFalse(shards.merge(Arrays.asList("shardId-9"), new HashMap<String, List<String>>(),
+                ImmutableSet.<String>of()));
+    }
+
+    /**
+     * Closed shards that are no longer in the stream are removed with their lineage. Shards that aren't closed are
+     * kept, even if they are no longer in the stream.
+     */
+    @Test
+    public final void testRemoveExpiredShards() {
+        ShardListV0 shards = new ShardListV0(Arrays.asList("shardId-0", "shardId-1", "shardId-2", "shardId-3"));
+        Map<String, List<String>> parents = makeSplit("shardId-0", "shardId-1", "shardId-2");
+        parents.put("shardId-0", Arrays.asList("shardId-9"));
+        shards.merge(ImmutableList.<String>of(), parents, ImmutableSet.of("shardId-0", "shardId-9"));
+
+        // shardId-0 (closed) and shardId-3 (not closed) expired.
+        Assert.assertTrue(shards.removeExpiredShards(Arrays.asList("shardId-1", "shardId-2")));
+        Assert.assertEquals(Arrays.asList("shardId-1", "shardId-2", "shardId-3"), shards.getShardList());
+        Assert.assertTrue(shards.getClosedShards().isEmpty());
+        Assert.assertFalse(shards.getParents().containsKey("shardId-0"));
+        Assert.assertEquals(Arrays.asList("shardId-0"), shards.getParents().get("shardId-1"));
+        Assert.assertTrue(shards.canProcess("shardId-1"));
+
+        Assert.assertFalse(shards.removeExpiredShards(Arrays.asList("shardId-1", "shardId-2")));
+    }
+
+    private static Map<String, List<String>> makeSplit(String parent, String... children) {
+        Map<String, List<String>> parents = new HashMap<>();
+        for (String child : children) {
+            parents.put(child, Arrays.asList(parent));
+        }
+        return parents;
+    }
+
 }
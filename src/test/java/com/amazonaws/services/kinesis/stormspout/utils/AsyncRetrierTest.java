@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kinesis.model.InvalidArgumentException;
+import com.amazonaws.services.kinesis.stormspout.exceptions.CircuitBreakerOpenException;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for AsyncRetrier.
+ */
+public class AsyncRetrierTest {
+    private static final RetryPolicy POLICY =
+            new RetryPolicy(AmazonClientException.class, 1L, 4L, 5000L, InvalidArgumentException.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AsyncRetrier retrier = new AsyncRetrier(scheduler);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public final void testRetriesUntilSuccess() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("api", 10, 1000L);
+        ListenableFuture<String> result = retrier.submit(new FailingCall(3, new AmazonClientException("down")),
+                POLICY, breaker);
+        Assert.assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public final void testGivesUpAtDeadline() throws Exception {
+        RetryPolicy policy = new RetryPolicy(AmazonClientException.class, 10L, 10L, 50L);
+        CircuitBreaker breaker = new CircuitBreaker("api", 1000, 1000L);
+        ListenableFuture<String> result = retrier.submit(new FailingCall(Integer.MAX_VALUE,
+                new AmazonClientException("down")), policy, breaker);
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail("Call should have been given up on.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof AmazonClientException);
+        }
+    }
+
+    @Test
+    public final void testDoesNotRetryAbortOn() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("api", 1, 1000L);
+        FailingCall call = new FailingCall(Integer.MAX_VALUE, new InvalidArgumentException("bad"));
+        ListenableFuture<String> result = retrier.submit(call, POLICY, breaker);
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail("Call should have failed.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof InvalidArgumentException);
+        }
+        Assert.assertEquals(1, call.attempts.get());
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * Calls are not attempted while the breaker is open, and given up on if it stays open until their deadline.
+     */
+    @Test
+    public final void testOpenBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("api", 1, 60000L);
+        breaker.onFailure(System.currentTimeMillis());
+        FailingCall call = new FailingCall(0, null);
+        ListenableFuture<String> result = retrier.submit(call, POLICY, breaker);
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail("Call should have been given up on.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+        }
+        Assert.assertEquals(0, call.attempts.get());
+    }
+
+    // Fails a number of times, then returns "ok".
+    private static class FailingCall implements Callable<String> {
+        private final int failures;
+        private final RuntimeException exception;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        FailingCall(final int failures, final RuntimeException exception) {
+            this.failures = failures;
+            this.exception = exception;
+        }
+
+        @Override
+        public String call() {
+            if (attempts.incrementAndGet() <= failures) {
+                throw exception;
+            }
+            return "ok";
+        }
+    }
+}
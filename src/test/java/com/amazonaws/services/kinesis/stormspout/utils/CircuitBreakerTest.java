@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kinesis.stormspout.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for CircuitBreaker.
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public final void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("api", 2, 1000L);
+        breaker.onFailure(0L);
+        breaker.onSuccess();
+        breaker.onFailure(0L);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(0L, breaker.millisUntilAllowed(0L));
+
+        breaker.onFailure(100L);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(600L, breaker.millisUntilAllowed(500L));
+    }
+
+    /**
+     * Once the breaker has been open for openMillis, a single attempt is let through. The breaker closes if it
+     * succeeds, and opens again if it fails.
+     */
+    @Test
+    public final void testHalfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker("api", 1, 1000L);
+        breaker.onFailure(0L);
+        Assert.assertEquals(0L, breaker.millisUntilAllowed(1000L));
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assert.assertTrue(breaker.millisUntilAllowed(1000L) > 0);
+
+        breaker.onFailure(1100L);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertTrue(breaker.millisUntilAllowed(1500L) > 0);
+
+        Assert.assertEquals(0L, breaker.millisUntilAllowed(2100L));
+        breaker.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(0L, breaker.millisUntilAllowed(2100L));
+    }
+
+    @Test
+    public final void testSnapshotAndReset() {
+        CircuitBreaker breaker = new CircuitBreaker("api", 1, 1000L);
+        breaker.onRetry();
+        breaker.onFailure(0L);
+        breaker.millisUntilAllowed(0L);
+
+        Map<String, Object> values = new HashMap<>();
+        breaker.snapshotAndReset("api/", values);
+        Assert.assertEquals(1L, values.get("api/retries"));
+        Assert.assertEquals(1L, values.get("api/rejectedAttempts"));
+        Assert.assertEquals(1L, values.get("api/circuitOpens"));
+        Assert.assertEquals(CircuitBreaker.State.OPEN.ordinal(), values.get("api/circuitState"));
+
+        breaker.snapshotAndReset("api/", values);
+        Assert.assertEquals(0L, values.get("api/retries"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidFailureThreshold() {
+        new CircuitBreaker("api", 0, 1000L);
+    }
+}